@@ -0,0 +1,727 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.api;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.io.stream.NonBlockingBufferedInputStream;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.mime.EMimeContentType;
+import com.helger.commons.mime.IMimeType;
+
+import eu.de4a.ial.api.jaxb.AtuLevelType;
+import eu.de4a.ial.api.jaxb.ErrorType;
+import eu.de4a.ial.api.jaxb.ParameterSetType;
+import eu.de4a.ial.api.jaxb.ParameterType;
+import eu.de4a.ial.api.jaxb.ProvisionType;
+import eu.de4a.ial.api.jaxb.ResponseItemType;
+import eu.de4a.ial.api.jaxb.ResponseLookupRoutingInformationType;
+import eu.de4a.ial.api.jaxb.ResponsePerCountryType;
+
+/**
+ * Compact binary encoding of {@link ResponseLookupRoutingInformationType}
+ * based on CBOR (RFC 8949). The structure is the same as the one of the JSON
+ * representation, but small unsigned integers are used as map keys:
+ * <ul>
+ * <li>Response: 0 = items (array), 1 = errors (array)</li>
+ * <li>Error: 0 = code, 1 = text</li>
+ * <li>Item: 0 = canonicalObjectTypeId, 1 = countries (array)</li>
+ * <li>Country: 0 = countryCode, 1 = provisions (array)</li>
+ * <li>Provision: 0 = atuLevel, 1 = atuCode, 2 = atuLatinName, 3 =
+ * dataOwnerId, 4 = dataOwnerPrefLabel, 5 = parameterSets (array)</li>
+ * <li>Parameter set: 0 = title, 1 = parameters (array)</li>
+ * <li>Parameter: 0 = name, 1 = optional (boolean)</li>
+ * </ul>
+ * Fields without a value are omitted. When reading, unknown keys are ignored
+ * so that new fields can be added in a compatible way.
+ *
+ * @author Philip Helger
+ */
+@Immutable
+public final class IALCBORCodec
+{
+  /** The MIME type to be used in the HTTP <code>Accept</code> header */
+  public static final IMimeType MIME_TYPE = EMimeContentType.APPLICATION.buildMimeType ("cbor");
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (IALCBORCodec.class);
+
+  // CBOR major types
+  private static final int MT_UINT = 0;
+  private static final int MT_NEGINT = 1;
+  private static final int MT_BYTES = 2;
+  private static final int MT_TEXT = 3;
+  private static final int MT_ARRAY = 4;
+  private static final int MT_MAP = 5;
+  private static final int MT_TAG = 6;
+  private static final int MT_SIMPLE = 7;
+
+  private static final int SIMPLE_FALSE = 20;
+  private static final int SIMPLE_TRUE = 21;
+  private static final int SIMPLE_NULL = 22;
+  private static final int SIMPLE_UNDEFINED = 23;
+  private static final int ADDITIONAL_INDEFINITE = 31;
+  private static final int BREAK = 0xff;
+  // Larger strings are read in chunks of this size
+  private static final int MAX_CHUNK_BYTES = 64 * 1024;
+  // The maximum nesting of skipped unknown values, to avoid a stack overflow
+  private static final int MAX_SKIP_DEPTH = 64;
+
+  private IALCBORCodec ()
+  {}
+
+  private static void _writeHead (@Nonnull final OutputStream aOS,
+                                  final int nMajorType,
+                                  final long nValue) throws IOException
+  {
+    final int nMT = nMajorType << 5;
+    if (nValue < 24)
+      aOS.write (nMT | (int) nValue);
+    else
+      if (nValue <= 0xff)
+      {
+        aOS.write (nMT | 24);
+        aOS.write ((int) nValue);
+      }
+      else
+        if (nValue <= 0xffff)
+        {
+          aOS.write (nMT | 25);
+          aOS.write ((int) (nValue >> 8));
+          aOS.write ((int) nValue);
+        }
+        else
+          if (nValue <= 0xffffffffL)
+          {
+            aOS.write (nMT | 26);
+            for (int nShift = 24; nShift >= 0; nShift -= 8)
+              aOS.write ((int) (nValue >> nShift));
+          }
+          else
+          {
+            aOS.write (nMT | 27);
+            for (int nShift = 56; nShift >= 0; nShift -= 8)
+              aOS.write ((int) (nValue >> nShift));
+          }
+  }
+
+  private static void _writeText (@Nonnull final OutputStream aOS, @Nonnull final String s) throws IOException
+  {
+    final byte [] aBytes = s.getBytes (StandardCharsets.UTF_8);
+    _writeHead (aOS, MT_TEXT, aBytes.length);
+    aOS.write (aBytes);
+  }
+
+  private static void _writeTextEntry (@Nonnull final OutputStream aOS,
+                                       final int nKey,
+                                       @Nullable final String s) throws IOException
+  {
+    if (s != null)
+    {
+      _writeHead (aOS, MT_UINT, nKey);
+      _writeText (aOS, s);
+    }
+  }
+
+  private static int _count (@Nonnull final Object... aValues)
+  {
+    int ret = 0;
+    for (final Object o : aValues)
+      if (o != null)
+        ret++;
+    return ret;
+  }
+
+  private static void _writeProvision (@Nonnull final OutputStream aOS,
+                                       @Nonnull final ProvisionType aProvision) throws IOException
+  {
+    final String sAtuLevel = aProvision.getAtuLevel () == null ? null : aProvision.getAtuLevel ().value ();
+    final List <ParameterSetType> aParamSets = aProvision.hasParameterSetEntries () ? aProvision.getParameterSet ()
+                                                                                    : null;
+    _writeHead (aOS,
+                MT_MAP,
+                _count (sAtuLevel,
+                        aProvision.getAtuCode (),
+                        aProvision.getAtuLatinName (),
+                        aProvision.getDataOwnerId (),
+                        aProvision.getDataOwnerPrefLabel (),
+                        aParamSets));
+    _writeTextEntry (aOS, 0, sAtuLevel);
+    _writeTextEntry (aOS, 1, aProvision.getAtuCode ());
+    _writeTextEntry (aOS, 2, aProvision.getAtuLatinName ());
+    _writeTextEntry (aOS, 3, aProvision.getDataOwnerId ());
+    _writeTextEntry (aOS, 4, aProvision.getDataOwnerPrefLabel ());
+    if (aParamSets != null)
+    {
+      _writeHead (aOS, MT_UINT, 5);
+      _writeHead (aOS, MT_ARRAY, aParamSets.size ());
+      for (final ParameterSetType aParamSet : aParamSets)
+      {
+        _writeHead (aOS, MT_MAP, _count (aParamSet.getTitle ()) + 1);
+        _writeTextEntry (aOS, 0, aParamSet.getTitle ());
+        _writeHead (aOS, MT_UINT, 1);
+        _writeHead (aOS, MT_ARRAY, aParamSet.getParameterCount ());
+        for (final ParameterType aParam : aParamSet.getParameter ())
+        {
+          _writeHead (aOS, MT_MAP, _count (aParam.getName ()) + 1);
+          _writeTextEntry (aOS, 0, aParam.getName ());
+          _writeHead (aOS, MT_UINT, 1);
+          aOS.write ((MT_SIMPLE << 5) | (aParam.isOptional () ? SIMPLE_TRUE : SIMPLE_FALSE));
+        }
+      }
+    }
+  }
+
+  /**
+   * Write the response in the CBOR encoding.
+   *
+   * @param aResponse
+   *        The response to write. May not be <code>null</code>.
+   * @param aOS
+   *        The output stream to write to. Is not closed. May not be
+   *        <code>null</code>.
+   * @throws IOException
+   *         In case writing fails
+   */
+  public static void write (@Nonnull final ResponseLookupRoutingInformationType aResponse,
+                            @Nonnull final OutputStream aOS) throws IOException
+  {
+    final boolean bHasItems = aResponse.hasResponseItemEntries ();
+    final boolean bHasErrors = aResponse.hasErrorEntries ();
+    _writeHead (aOS, MT_MAP, (bHasItems ? 1 : 0) + (bHasErrors ? 1 : 0));
+    if (bHasItems)
+    {
+      _writeHead (aOS, MT_UINT, 0);
+      _writeHead (aOS, MT_ARRAY, aResponse.getResponseItemCount ());
+      for (final ResponseItemType aItem : aResponse.getResponseItem ())
+      {
+        _writeHead (aOS, MT_MAP, _count (aItem.getCanonicalObjectTypeId ()) + 1);
+        _writeTextEntry (aOS, 0, aItem.getCanonicalObjectTypeId ());
+        _writeHead (aOS, MT_UINT, 1);
+        _writeHead (aOS, MT_ARRAY, aItem.getResponsePerCountryCount ());
+        for (final ResponsePerCountryType aPerCountry : aItem.getResponsePerCountry ())
+        {
+          _writeHead (aOS, MT_MAP, _count (aPerCountry.getCountryCode ()) + 1);
+          _writeTextEntry (aOS, 0, aPerCountry.getCountryCode ());
+          _writeHead (aOS, MT_UINT, 1);
+          _writeHead (aOS, MT_ARRAY, aPerCountry.getProvisionCount ());
+          for (final ProvisionType aProvision : aPerCountry.getProvision ())
+            _writeProvision (aOS, aProvision);
+        }
+      }
+    }
+    if (bHasErrors)
+    {
+      _writeHead (aOS, MT_UINT, 1);
+      _writeHead (aOS, MT_ARRAY, aResponse.getErrorCount ());
+      for (final ErrorType aError : aResponse.getError ())
+      {
+        _writeHead (aOS, MT_MAP, _count (aError.getCode (), aError.getText ()));
+        _writeTextEntry (aOS, 0, aError.getCode ());
+        _writeTextEntry (aOS, 1, aError.getText ());
+      }
+    }
+  }
+
+  /**
+   * Get the response in the CBOR encoding.
+   *
+   * @param aResponse
+   *        The response to convert. May not be <code>null</code>.
+   * @return The encoded bytes. Never <code>null</code>.
+   */
+  @Nonnull
+  public static byte [] getAsBytes (@Nonnull final ResponseLookupRoutingInformationType aResponse)
+  {
+    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream (4 * 1024))
+    {
+      write (aResponse, aBAOS);
+      return aBAOS.toByteArray ();
+    }
+    catch (final IOException ex)
+    {
+      // Cannot happen for in-memory streams
+      throw new IllegalStateException ("Failed to write CBOR", ex);
+    }
+  }
+
+  /**
+   * Streaming CBOR reader for the subset of CBOR that is used by this codec.
+   * Indefinite length items and other data types are skipped as unknown
+   * values.
+   */
+  private static final class Reader
+  {
+    private final InputStream m_aIS;
+    // The initial byte of the current data item
+    private int m_nHead;
+    // The argument of the current data item; -1 for indefinite length
+    private long m_nArg;
+
+    Reader (@Nonnull final InputStream aIS)
+    {
+      m_aIS = aIS;
+    }
+
+    private int _readByte () throws IOException
+    {
+      final int ret = m_aIS.read ();
+      if (ret < 0)
+        throw new EOFException ("Unexpected end of CBOR data");
+      return ret;
+    }
+
+    /**
+     * Read the head of the next data item.
+     *
+     * @return The major type
+     */
+    int readHead () throws IOException
+    {
+      m_nHead = _readByte ();
+      final int nAdditional = m_nHead & 0x1f;
+      if (nAdditional < 24)
+        m_nArg = nAdditional;
+      else
+        if (nAdditional <= 27)
+        {
+          final int nBytes = 1 << (nAdditional - 24);
+          long nArg = 0;
+          for (int i = 0; i < nBytes; ++i)
+            nArg = (nArg << 8) | _readByte ();
+          if (nArg < 0)
+            throw new IOException ("CBOR length is too large");
+          m_nArg = nArg;
+        }
+        else
+          if (nAdditional == ADDITIONAL_INDEFINITE && m_nHead != BREAK)
+            m_nArg = -1;
+          else
+            if (m_nHead == BREAK)
+              m_nArg = 0;
+            else
+              throw new IOException ("Invalid CBOR additional information " + nAdditional);
+      return m_nHead >>> 5;
+    }
+
+    boolean isBreak ()
+    {
+      return m_nHead == BREAK;
+    }
+
+    long getArg ()
+    {
+      return m_nArg;
+    }
+
+    private void _expect (final int nMajorType, final int nActualMajorType) throws IOException
+    {
+      if (nMajorType != nActualMajorType)
+        throw new IOException ("Expected CBOR major type " + nMajorType + " but found " + nActualMajorType);
+    }
+
+    /**
+     * Read the head of an array or map.
+     *
+     * @return The number of elements or -1 for indefinite length
+     */
+    long readContainer (final int nMajorType) throws IOException
+    {
+      _expect (nMajorType, readHead ());
+      return m_nArg;
+    }
+
+    /**
+     * @return <code>true</code> if the container with the provided remaining
+     *         element count has more elements.
+     */
+    boolean hasNext (final long nRemaining) throws IOException
+    {
+      if (nRemaining >= 0)
+        return nRemaining > 0;
+      // Indefinite length - peek for the break byte
+      m_aIS.mark (1);
+      final int n = _readByte ();
+      if (n == BREAK)
+        return false;
+      m_aIS.reset ();
+      return true;
+    }
+
+    /**
+     * @return The map key or -1 if it is not a small unsigned integer.
+     */
+    int readKey () throws IOException
+    {
+      final int nMT = readHead ();
+      if (nMT != MT_UINT || m_nArg > Integer.MAX_VALUE)
+      {
+        // Unknown key type - skip it
+        _skipRest (nMT, 0);
+        return -1;
+      }
+      return (int) m_nArg;
+    }
+
+    private void _readFully (@Nonnull final byte [] aBuf, final int nLength) throws IOException
+    {
+      int nOfs = 0;
+      while (nOfs < nLength)
+      {
+        final int nRead = m_aIS.read (aBuf, nOfs, nLength - nOfs);
+        if (nRead < 0)
+          throw new EOFException ("Unexpected end of CBOR data");
+        nOfs += nRead;
+      }
+    }
+
+    @Nonnull
+    private byte [] _readBytes (final long nLength) throws IOException
+    {
+      if (nLength > Integer.MAX_VALUE)
+        throw new IOException ("CBOR string is too long");
+      if (nLength <= MAX_CHUNK_BYTES)
+      {
+        final byte [] ret = new byte [(int) nLength];
+        _readFully (ret, ret.length);
+        return ret;
+      }
+
+      // Don't trust the declared length - only grow with the data really read
+      try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream (MAX_CHUNK_BYTES))
+      {
+        final byte [] aBuf = new byte [MAX_CHUNK_BYTES];
+        long nRemaining = nLength;
+        while (nRemaining > 0)
+        {
+          final int nChunk = (int) Math.min (aBuf.length, nRemaining);
+          _readFully (aBuf, nChunk);
+          aBAOS.write (aBuf, 0, nChunk);
+          nRemaining -= nChunk;
+        }
+        return aBAOS.getBufferOrCopy ();
+      }
+    }
+
+    private void _skipBytes (final long nLength) throws IOException
+    {
+      final byte [] aBuf = new byte [(int) Math.min (MAX_CHUNK_BYTES, nLength)];
+      long nRemaining = nLength;
+      while (nRemaining > 0)
+      {
+        final int nChunk = (int) Math.min (aBuf.length, nRemaining);
+        _readFully (aBuf, nChunk);
+        nRemaining -= nChunk;
+      }
+    }
+
+    @Nullable
+    String readTextOrNull () throws IOException
+    {
+      final int nMT = readHead ();
+      if (nMT == MT_SIMPLE && (m_nArg == SIMPLE_NULL || m_nArg == SIMPLE_UNDEFINED))
+        return null;
+      _expect (MT_TEXT, nMT);
+      if (m_nArg >= 0)
+        return new String (_readBytes (m_nArg), StandardCharsets.UTF_8);
+
+      // Indefinite length text consisting of definite length chunks
+      try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+      {
+        while (true)
+        {
+          final int nChunkMT = readHead ();
+          if (isBreak ())
+            break;
+          _expect (MT_TEXT, nChunkMT);
+          aBAOS.write (_readBytes (m_nArg));
+        }
+        return aBAOS.getAsString (StandardCharsets.UTF_8);
+      }
+    }
+
+    boolean readBoolean () throws IOException
+    {
+      final int nMT = readHead ();
+      _expect (MT_SIMPLE, nMT);
+      if (m_nArg == SIMPLE_TRUE)
+        return true;
+      if (m_nArg == SIMPLE_FALSE)
+        return false;
+      throw new IOException ("Expected CBOR boolean but found simple value " + m_nArg);
+    }
+
+    private void _skipRest (final int nMajorType, final int nDepth) throws IOException
+    {
+      if (nDepth > MAX_SKIP_DEPTH)
+        throw new IOException ("CBOR values are nested deeper than " + MAX_SKIP_DEPTH + " levels");
+      switch (nMajorType)
+      {
+        case MT_UINT:
+        case MT_NEGINT:
+          break;
+        case MT_BYTES:
+        case MT_TEXT:
+          if (m_nArg >= 0)
+            _skipBytes (m_nArg);
+          else
+            while (true)
+            {
+              readHead ();
+              if (isBreak ())
+                break;
+              _skipBytes (m_nArg);
+            }
+          break;
+        case MT_ARRAY:
+        case MT_MAP:
+        {
+          final int nFactor = nMajorType == MT_MAP ? 2 : 1;
+          long nRemaining = m_nArg < 0 ? -1 : m_nArg * nFactor;
+          while (hasNext (nRemaining))
+          {
+            _skipValue (nDepth + 1);
+            if (nRemaining > 0)
+              nRemaining--;
+          }
+          break;
+        }
+        case MT_TAG:
+          _skipValue (nDepth + 1);
+          break;
+        case MT_SIMPLE:
+          // Floats are read completely as part of the head
+          break;
+        default:
+          throw new IOException ("Invalid CBOR major type " + nMajorType);
+      }
+    }
+
+    private void _skipValue (final int nDepth) throws IOException
+    {
+      _skipRest (readHead (), nDepth);
+    }
+
+    void skipValue () throws IOException
+    {
+      _skipValue (0);
+    }
+  }
+
+  @Nonnull
+  private static ParameterSetType _readParameterSet (@Nonnull final Reader aReader) throws IOException
+  {
+    final ParameterSetType ret = new ParameterSetType ();
+    for (long n = aReader.readContainer (MT_MAP); aReader.hasNext (n); n--)
+      switch (aReader.readKey ())
+      {
+        case 0:
+          ret.setTitle (aReader.readTextOrNull ());
+          break;
+        case 1:
+          for (long nParams = aReader.readContainer (MT_ARRAY); aReader.hasNext (nParams); nParams--)
+          {
+            final ParameterType aParam = new ParameterType ();
+            for (long nParam = aReader.readContainer (MT_MAP); aReader.hasNext (nParam); nParam--)
+              switch (aReader.readKey ())
+              {
+                case 0:
+                  aParam.setName (aReader.readTextOrNull ());
+                  break;
+                case 1:
+                  aParam.setOptional (aReader.readBoolean ());
+                  break;
+                default:
+                  aReader.skipValue ();
+              }
+            ret.addParameter (aParam);
+          }
+          break;
+        default:
+          aReader.skipValue ();
+      }
+    return ret;
+  }
+
+  @Nonnull
+  private static ProvisionType _readProvision (@Nonnull final Reader aReader) throws IOException
+  {
+    final ProvisionType ret = new ProvisionType ();
+    for (long n = aReader.readContainer (MT_MAP); aReader.hasNext (n); n--)
+      switch (aReader.readKey ())
+      {
+        case 0:
+          final String sAtuLevel = aReader.readTextOrNull ();
+          try
+          {
+            ret.setAtuLevel (sAtuLevel == null ? null : AtuLevelType.fromValue (sAtuLevel));
+          }
+          catch (final IllegalArgumentException ex)
+          {
+            throw new IOException ("Invalid ATU level '" + sAtuLevel + "'", ex);
+          }
+          break;
+        case 1:
+          ret.setAtuCode (aReader.readTextOrNull ());
+          break;
+        case 2:
+          ret.setAtuLatinName (aReader.readTextOrNull ());
+          break;
+        case 3:
+          ret.setDataOwnerId (aReader.readTextOrNull ());
+          break;
+        case 4:
+          ret.setDataOwnerPrefLabel (aReader.readTextOrNull ());
+          break;
+        case 5:
+          for (long nSets = aReader.readContainer (MT_ARRAY); aReader.hasNext (nSets); nSets--)
+            ret.addParameterSet (_readParameterSet (aReader));
+          break;
+        default:
+          aReader.skipValue ();
+      }
+    return ret;
+  }
+
+  @Nonnull
+  private static ResponsePerCountryType _readPerCountry (@Nonnull final Reader aReader) throws IOException
+  {
+    final ResponsePerCountryType ret = new ResponsePerCountryType ();
+    for (long n = aReader.readContainer (MT_MAP); aReader.hasNext (n); n--)
+      switch (aReader.readKey ())
+      {
+        case 0:
+          ret.setCountryCode (aReader.readTextOrNull ());
+          break;
+        case 1:
+          for (long nProvisions = aReader.readContainer (MT_ARRAY); aReader.hasNext (nProvisions); nProvisions--)
+            ret.addProvision (_readProvision (aReader));
+          break;
+        default:
+          aReader.skipValue ();
+      }
+    return ret;
+  }
+
+  @Nonnull
+  private static ResponseItemType _readItem (@Nonnull final Reader aReader) throws IOException
+  {
+    final ResponseItemType ret = new ResponseItemType ();
+    for (long n = aReader.readContainer (MT_MAP); aReader.hasNext (n); n--)
+      switch (aReader.readKey ())
+      {
+        case 0:
+          ret.setCanonicalObjectTypeId (aReader.readTextOrNull ());
+          break;
+        case 1:
+          for (long nCountries = aReader.readContainer (MT_ARRAY); aReader.hasNext (nCountries); nCountries--)
+            ret.addResponsePerCountry (_readPerCountry (aReader));
+          break;
+        default:
+          aReader.skipValue ();
+      }
+    return ret;
+  }
+
+  @Nonnull
+  private static ErrorType _readError (@Nonnull final Reader aReader) throws IOException
+  {
+    final ErrorType ret = new ErrorType ();
+    for (long n = aReader.readContainer (MT_MAP); aReader.hasNext (n); n--)
+      switch (aReader.readKey ())
+      {
+        case 0:
+          ret.setCode (aReader.readTextOrNull ());
+          break;
+        case 1:
+          ret.setText (aReader.readTextOrNull ());
+          break;
+        default:
+          aReader.skipValue ();
+      }
+    return ret;
+  }
+
+  @Nonnull
+  private static ResponseLookupRoutingInformationType _read (@Nonnull final Reader aReader) throws IOException
+  {
+    final ResponseLookupRoutingInformationType ret = new ResponseLookupRoutingInformationType ();
+    for (long n = aReader.readContainer (MT_MAP); aReader.hasNext (n); n--)
+      switch (aReader.readKey ())
+      {
+        case 0:
+          for (long nItems = aReader.readContainer (MT_ARRAY); aReader.hasNext (nItems); nItems--)
+            ret.addResponseItem (_readItem (aReader));
+          break;
+        case 1:
+          for (long nErrors = aReader.readContainer (MT_ARRAY); aReader.hasNext (nErrors); nErrors--)
+            ret.addError (_readError (aReader));
+          break;
+        default:
+          aReader.skipValue ();
+      }
+    return ret;
+  }
+
+  /**
+   * Read a response from the CBOR encoding.
+   *
+   * @param aIS
+   *        The input stream to read from. If it does not support mark and
+   *        reset, it is buffered. Is not closed. May not be <code>null</code>.
+   * @return <code>null</code> if the data could not be read.
+   */
+  @Nullable
+  public static ResponseLookupRoutingInformationType read (@Nonnull final InputStream aIS)
+  {
+    try
+    {
+      return _read (new Reader (aIS.markSupported () ? aIS : new NonBlockingBufferedInputStream (aIS)));
+    }
+    catch (final IOException ex)
+    {
+      LOGGER.warn ("Failed to read IAL CBOR data: " + ex.getMessage ());
+      return null;
+    }
+  }
+
+  /**
+   * Read a response from the CBOR encoding.
+   *
+   * @param aBytes
+   *        The bytes to read. May not be <code>null</code>.
+   * @return <code>null</code> if the data could not be read.
+   */
+  @Nullable
+  public static ResponseLookupRoutingInformationType read (@Nonnull final byte [] aBytes)
+  {
+    return read (new NonBlockingByteArrayInputStream (aBytes));
+  }
+}
@@ -0,0 +1,589 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.concurrent.BasicThreadFactory;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.http.CHttp;
+import com.helger.commons.http.CHttpHeader;
+import com.helger.commons.io.stream.NonBlockingBufferedInputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.mime.CMimeType;
+import com.helger.commons.mime.IMimeType;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.StringParser;
+import com.helger.commons.url.URLHelper;
+
+import eu.de4a.ial.api.jaxb.ResponseLookupRoutingInformationType;
+
+/**
+ * Client for the provision API of an IAL server.
+ * <ul>
+ * <li>Connections are kept alive and reused by the JDK. Each response body is
+ * read completely, so that the connection can go back to the pool. The pool
+ * size per host is controlled by the system property
+ * <code>http.maxConnections</code>.</li>
+ * <li>Responses are cached in memory. The <code>Cache-Control</code> header of
+ * the server is honoured and the configured default time to live is used if
+ * the header is missing. Expired entries with an <code>ETag</code> are
+ * revalidated with <code>If-None-Match</code>.</li>
+ * <li>Concurrent queries for the same URL are only sent once, and all callers
+ * get the same result.</li>
+ * </ul>
+ * Every caller gets its own copy of the response, so the results may be
+ * modified.
+ *
+ * @author Philip Helger
+ */
+@ThreadSafe
+public class IALClient implements AutoCloseable
+{
+  /**
+   * The response formats that can be requested from the server.
+   */
+  public enum EFormat
+  {
+    XML (CMimeType.APPLICATION_XML),
+    JSON (IALJsonCodec.MIME_TYPE),
+    CBOR (IALCBORCodec.MIME_TYPE);
+
+    private final IMimeType m_aMimeType;
+
+    EFormat (@Nonnull final IMimeType aMimeType)
+    {
+      m_aMimeType = aMimeType;
+    }
+
+    @Nonnull
+    public IMimeType getMimeType ()
+    {
+      return m_aMimeType;
+    }
+  }
+
+  /**
+   * A single cached response.
+   */
+  @Immutable
+  private static final class CacheEntry
+  {
+    private final ResponseLookupRoutingInformationType m_aResponse;
+    private final String m_sETag;
+    private final long m_nExpirationMillis;
+
+    CacheEntry (@Nonnull final ResponseLookupRoutingInformationType aResponse,
+                @Nullable final String sETag,
+                final long nExpirationMillis)
+    {
+      m_aResponse = aResponse;
+      m_sETag = sETag;
+      m_nExpirationMillis = nExpirationMillis;
+    }
+
+    boolean isExpired (final long nNowMillis)
+    {
+      return nNowMillis >= m_nExpirationMillis;
+    }
+  }
+
+  public static final int DEFAULT_CONNECT_TIMEOUT_MS = 5_000;
+  public static final int DEFAULT_READ_TIMEOUT_MS = 60_000;
+  public static final long DEFAULT_TTL_MS = 60_000;
+  public static final int DEFAULT_MAX_CACHE_ENTRIES = 1_000;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (IALClient.class);
+
+  private final String m_sBaseURL;
+  private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
+  // Access ordered, so that the least recently used entry is evicted first
+  @GuardedBy ("m_aRWLock")
+  private final Map <String, CacheEntry> m_aCache = new LinkedHashMap <> (16, 0.75f, true);
+  private final ConcurrentMap <String, CompletableFuture <ResponseLookupRoutingInformationType>> m_aInFlight = new ConcurrentHashMap <> ();
+  private volatile int m_nConnectTimeoutMS = DEFAULT_CONNECT_TIMEOUT_MS;
+  private volatile int m_nReadTimeoutMS = DEFAULT_READ_TIMEOUT_MS;
+  private volatile EFormat m_eFormat = EFormat.XML;
+  private volatile long m_nDefaultTTLMillis = DEFAULT_TTL_MS;
+  private volatile int m_nMaxCacheEntries = DEFAULT_MAX_CACHE_ENTRIES;
+  private volatile ExecutorService m_aExecutor;
+  private volatile boolean m_bOwnsExecutor = false;
+
+  /**
+   * Constructor
+   *
+   * @param sBaseURL
+   *        The base URL of the API, e.g.
+   *        <code>https://ial.example.org/api</code>. May neither be
+   *        <code>null</code> nor empty.
+   */
+  public IALClient (@Nonnull final String sBaseURL)
+  {
+    ValueEnforcer.notEmpty (sBaseURL, "BaseURL");
+    m_sBaseURL = StringHelper.trimEnd (sBaseURL, '/');
+  }
+
+  @Nonnull
+  public final String getBaseURL ()
+  {
+    return m_sBaseURL;
+  }
+
+  @Nonnull
+  public final IALClient setConnectTimeoutMS (@Nonnegative final int nConnectTimeoutMS)
+  {
+    ValueEnforcer.isGE0 (nConnectTimeoutMS, "ConnectTimeoutMS");
+    m_nConnectTimeoutMS = nConnectTimeoutMS;
+    return this;
+  }
+
+  @Nonnull
+  public final IALClient setReadTimeoutMS (@Nonnegative final int nReadTimeoutMS)
+  {
+    ValueEnforcer.isGE0 (nReadTimeoutMS, "ReadTimeoutMS");
+    m_nReadTimeoutMS = nReadTimeoutMS;
+    return this;
+  }
+
+  @Nonnull
+  public final EFormat getFormat ()
+  {
+    return m_eFormat;
+  }
+
+  /**
+   * @param eFormat
+   *        The response format to request from the server. May not be
+   *        <code>null</code>. CBOR is the most compact one.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final IALClient setFormat (@Nonnull final EFormat eFormat)
+  {
+    ValueEnforcer.notNull (eFormat, "Format");
+    m_eFormat = eFormat;
+    return this;
+  }
+
+  /**
+   * @param nDefaultTTLMillis
+   *        The time to live of cached responses, if the server did not send a
+   *        <code>Cache-Control</code> header. Use 0 to not cache such
+   *        responses.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final IALClient setDefaultTTLMillis (@Nonnegative final long nDefaultTTLMillis)
+  {
+    ValueEnforcer.isGE0 (nDefaultTTLMillis, "DefaultTTLMillis");
+    m_nDefaultTTLMillis = nDefaultTTLMillis;
+    return this;
+  }
+
+  /**
+   * @param nMaxCacheEntries
+   *        The maximum number of cached responses. If the cache is full, the
+   *        least recently used response is evicted. Use 0 to disable the
+   *        cache.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final IALClient setMaxCacheEntries (@Nonnegative final int nMaxCacheEntries)
+  {
+    ValueEnforcer.isGE0 (nMaxCacheEntries, "MaxCacheEntries");
+    m_nMaxCacheEntries = nMaxCacheEntries;
+    m_aRWLock.writeLocked ( () -> _evictLRU (nMaxCacheEntries));
+    return this;
+  }
+
+  /**
+   * @param aExecutor
+   *        The executor to run asynchronous queries on. May be
+   *        <code>null</code> to use an internal pool of daemon threads. An
+   *        executor provided here is not shut down by {@link #close()}.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final synchronized IALClient setExecutor (@Nullable final ExecutorService aExecutor)
+  {
+    if (m_bOwnsExecutor)
+      m_aExecutor.shutdown ();
+    m_aExecutor = aExecutor;
+    m_bOwnsExecutor = false;
+    return this;
+  }
+
+  @Nonnull
+  private synchronized ExecutorService _getExecutor ()
+  {
+    if (m_aExecutor == null)
+    {
+      m_aExecutor = Executors.newCachedThreadPool (new BasicThreadFactory.Builder ().namingPattern ("ial-client-%d")
+                                                                                   .daemon (true)
+                                                                                   .build ());
+      m_bOwnsExecutor = true;
+    }
+    return m_aExecutor;
+  }
+
+  /**
+   * @return The number of currently cached responses.
+   */
+  @Nonnegative
+  public final int getCachedResponseCount ()
+  {
+    return m_aRWLock.readLockedInt (m_aCache::size);
+  }
+
+  /**
+   * Remove all cached responses.
+   */
+  public final void clearCache ()
+  {
+    m_aRWLock.writeLocked (m_aCache::clear);
+  }
+
+  @Nonnull
+  private String _createURL (@Nonnull final Collection <String> aCOTIDs, @Nullable final String sAtuCode)
+  {
+    final StringBuilder aSB = new StringBuilder (m_sBaseURL).append ("/provision/");
+    boolean bFirst = true;
+    for (final String sCOTID : aCOTIDs)
+    {
+      if (bFirst)
+        bFirst = false;
+      else
+        aSB.append (',');
+      aSB.append (URLHelper.urlEncode (sCOTID));
+    }
+    if (StringHelper.hasText (sAtuCode))
+      aSB.append ('/').append (URLHelper.urlEncode (sAtuCode));
+    return aSB.toString ();
+  }
+
+  /**
+   * Query the provisions of the provided Canonical Object Types on the calling
+   * thread.
+   *
+   * @param aCOTIDs
+   *        The Canonical Object Type IDs to query. May neither be
+   *        <code>null</code> nor empty.
+   * @param sAtuCode
+   *        The optional ATU code to filter for. May be <code>null</code>.
+   * @return The response of the server. Never <code>null</code>. Responses
+   *         without matches contain an error.
+   * @throws IALClientException
+   *         If the query failed
+   */
+  @Nonnull
+  public ResponseLookupRoutingInformationType getProvisions (@Nonnull final Collection <String> aCOTIDs,
+                                                             @Nullable final String sAtuCode) throws IALClientException
+  {
+    ValueEnforcer.notEmptyNoNullValue (aCOTIDs, "COTIDs");
+
+    final EFormat eFormat = m_eFormat;
+    final String sURL = _createURL (aCOTIDs, sAtuCode);
+    final String sKey = eFormat.name () + ' ' + sURL;
+
+    // Write lock, because the access order changes
+    final CacheEntry aEntry = m_aRWLock.writeLockedGet ( () -> m_aCache.get (sKey));
+    if (aEntry != null && !aEntry.isExpired (System.currentTimeMillis ()))
+      return aEntry.m_aResponse.clone ();
+
+    // Only one query per URL at a time
+    final CompletableFuture <ResponseLookupRoutingInformationType> aOwnFuture = new CompletableFuture <> ();
+    final CompletableFuture <ResponseLookupRoutingInformationType> aOtherFuture = m_aInFlight.putIfAbsent (sKey,
+                                                                                                           aOwnFuture);
+    if (aOtherFuture != null)
+    {
+      LOGGER.debug ("Joining the running query for '" + sURL + "'");
+      return _join (aOtherFuture).clone ();
+    }
+
+    try
+    {
+      final ResponseLookupRoutingInformationType ret = _query (sKey, sURL, eFormat, aEntry);
+      aOwnFuture.complete (ret);
+      return ret.clone ();
+    }
+    catch (final IALClientException | RuntimeException ex)
+    {
+      aOwnFuture.completeExceptionally (ex);
+      throw ex;
+    }
+    finally
+    {
+      m_aInFlight.remove (sKey, aOwnFuture);
+    }
+  }
+
+  /**
+   * Query the provisions of the provided Canonical Object Types
+   * asynchronously.
+   *
+   * @param aCOTIDs
+   *        The Canonical Object Type IDs to query. May neither be
+   *        <code>null</code> nor empty.
+   * @param sAtuCode
+   *        The optional ATU code to filter for. May be <code>null</code>.
+   * @return The future response. Never <code>null</code>. If the query fails,
+   *         the future completes with an {@link IALClientException}.
+   */
+  @Nonnull
+  public CompletableFuture <ResponseLookupRoutingInformationType> getProvisionsAsync (@Nonnull final Collection <String> aCOTIDs,
+                                                                                     @Nullable final String sAtuCode)
+  {
+    return CompletableFuture.supplyAsync ( () -> {
+      try
+      {
+        return getProvisions (aCOTIDs, sAtuCode);
+      }
+      catch (final IALClientException ex)
+      {
+        throw new CompletionException (ex);
+      }
+    }, _getExecutor ());
+  }
+
+  @Nonnull
+  private static ResponseLookupRoutingInformationType _join (@Nonnull final CompletableFuture <ResponseLookupRoutingInformationType> aFuture) throws IALClientException
+  {
+    try
+    {
+      return aFuture.get ();
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+      throw new IALClientException ("Interrupted while waiting for the running query", ex);
+    }
+    catch (final ExecutionException ex)
+    {
+      final Throwable aCause = ex.getCause ();
+      if (aCause instanceof IALClientException)
+        throw (IALClientException) aCause;
+      throw new IALClientException ("The running query failed", aCause);
+    }
+  }
+
+  /**
+   * Determine the expiration time from the <code>Cache-Control</code> header.
+   *
+   * @return -1 if the response may not be stored at all.
+   */
+  private long _getExpirationMillis (@Nullable final String sCacheControl, final long nNowMillis)
+  {
+    if (StringHelper.hasNoText (sCacheControl))
+      return nNowMillis + m_nDefaultTTLMillis;
+
+    long ret = nNowMillis + m_nDefaultTTLMillis;
+    for (final String sPart : StringHelper.getExploded (',', sCacheControl))
+    {
+      final String sDirective = sPart.trim ().toLowerCase (Locale.ROOT);
+      if (sDirective.equals ("no-store"))
+        return -1;
+      if (sDirective.equals ("no-cache"))
+        ret = nNowMillis;
+      else
+        if (sDirective.startsWith ("max-age=") && ret > nNowMillis)
+        {
+          final long nSeconds = StringParser.parseLong (sDirective.substring (8), -1);
+          if (nSeconds >= 0)
+            ret = nNowMillis + TimeUnit.SECONDS.toMillis (nSeconds);
+        }
+    }
+    return ret;
+  }
+
+  private void _cache (@Nonnull final String sKey, @Nonnull final CacheEntry aEntry)
+  {
+    final int nMaxEntries = m_nMaxCacheEntries;
+    if (nMaxEntries <= 0)
+      return;
+    if (aEntry.m_sETag == null && aEntry.isExpired (System.currentTimeMillis ()))
+    {
+      // Can neither be used nor revalidated
+      _uncache (sKey);
+      return;
+    }
+    m_aRWLock.writeLocked ( () -> {
+      m_aCache.put (sKey, aEntry);
+      _evictLRU (nMaxEntries);
+    });
+  }
+
+  @GuardedBy ("m_aRWLock")
+  private void _evictLRU (final int nMaxEntries)
+  {
+    while (m_aCache.size () > nMaxEntries)
+      m_aCache.remove (m_aCache.keySet ().iterator ().next ());
+  }
+
+  private void _uncache (@Nonnull final String sKey)
+  {
+    m_aRWLock.writeLocked ( () -> m_aCache.remove (sKey));
+  }
+
+  @Nonnull
+  private static InputStream _getDecodedStream (@Nonnull final HttpURLConnection aConn) throws IOException
+  {
+    final InputStream aIS = aConn.getInputStream ();
+    final String sEncoding = aConn.getContentEncoding ();
+    if ("gzip".equalsIgnoreCase (sEncoding) || "x-gzip".equalsIgnoreCase (sEncoding))
+      return new GZIPInputStream (aIS);
+    if ("deflate".equalsIgnoreCase (sEncoding))
+      return new InflaterInputStream (aIS);
+    return aIS;
+  }
+
+  /**
+   * Read and discard the remaining body, so that the connection can be reused.
+   */
+  private static void _drain (@Nullable final InputStream aIS)
+  {
+    if (aIS != null)
+      try
+      {
+        StreamHelper.getAllBytes (aIS);
+      }
+      catch (final RuntimeException ex)
+      {
+        // Ignore - the connection is just not reused
+      }
+  }
+
+  @Nullable
+  private static ResponseLookupRoutingInformationType _decode (@Nonnull final InputStream aIS,
+                                                              @Nonnull final EFormat eFormat)
+  {
+    switch (eFormat)
+    {
+      case JSON:
+        return IALJsonCodec.read (aIS);
+      case CBOR:
+        return IALCBORCodec.read (new NonBlockingBufferedInputStream (aIS));
+      case XML:
+      default:
+        // Responses with field selection are not schema compliant
+        return IALMarshaller.responseLookupRoutingInformationMarshallerNoValidation ().read (aIS);
+    }
+  }
+
+  @Nonnull
+  private ResponseLookupRoutingInformationType _query (@Nonnull final String sKey,
+                                                       @Nonnull final String sURL,
+                                                       @Nonnull final EFormat eFormat,
+                                                       @Nullable final CacheEntry aExpiredEntry) throws IALClientException
+  {
+    HttpURLConnection aConn = null;
+    try
+    {
+      aConn = (HttpURLConnection) new URL (sURL).openConnection ();
+      aConn.setConnectTimeout (m_nConnectTimeoutMS);
+      aConn.setReadTimeout (m_nReadTimeoutMS);
+      aConn.setUseCaches (false);
+      aConn.setRequestProperty (CHttpHeader.ACCEPT, eFormat.getMimeType ().getAsString ());
+      aConn.setRequestProperty (CHttpHeader.ACCEPT_ENCODING, "gzip, deflate");
+      if (aExpiredEntry != null && aExpiredEntry.m_sETag != null)
+        aConn.setRequestProperty (CHttpHeader.IF_NON_MATCH, aExpiredEntry.m_sETag);
+
+      final int nStatusCode = aConn.getResponseCode ();
+      final long nNowMillis = System.currentTimeMillis ();
+      final long nExpirationMillis = _getExpirationMillis (aConn.getHeaderField (CHttpHeader.CACHE_CONTROL),
+                                                           nNowMillis);
+
+      if (nStatusCode == CHttp.HTTP_NOT_MODIFIED && aExpiredEntry != null)
+      {
+        _drain (aConn.getInputStream ());
+        LOGGER.debug ("The cached response of '" + sURL + "' is still valid");
+        if (nExpirationMillis >= 0)
+          _cache (sKey, new CacheEntry (aExpiredEntry.m_aResponse, aExpiredEntry.m_sETag, nExpirationMillis));
+        return aExpiredEntry.m_aResponse;
+      }
+
+      if (nStatusCode != CHttp.HTTP_OK)
+      {
+        _drain (aConn.getErrorStream ());
+        throw new IALClientException ("The query of '" + sURL + "' failed with HTTP status " + nStatusCode,
+                                      nStatusCode);
+      }
+
+      final ResponseLookupRoutingInformationType ret;
+      try (final InputStream aIS = _getDecodedStream (aConn))
+      {
+        ret = _decode (aIS, eFormat);
+        _drain (aIS);
+      }
+      if (ret == null)
+        throw new IALClientException ("The response of '" + sURL + "' could not be read as " + eFormat,
+                                      nStatusCode);
+
+      if (nExpirationMillis >= 0)
+        _cache (sKey, new CacheEntry (ret, aConn.getHeaderField (CHttpHeader.ETAG), nExpirationMillis));
+      else
+        _uncache (sKey);
+      return ret;
+    }
+    catch (final IOException ex)
+    {
+      if (aConn != null)
+        _drain (aConn.getErrorStream ());
+      throw new IALClientException ("Failed to query '" + sURL + "'", ex);
+    }
+  }
+
+  /**
+   * Shut down the internal thread pool, if it was created.
+   */
+  public synchronized void close ()
+  {
+    if (m_bOwnsExecutor && m_aExecutor != null)
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (m_aExecutor);
+    m_aExecutor = null;
+    m_bOwnsExecutor = false;
+  }
+}
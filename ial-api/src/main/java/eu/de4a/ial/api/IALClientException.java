@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.api;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Exception thrown by the {@link IALClient} if a query could not be performed.
+ *
+ * @author Philip Helger
+ */
+public class IALClientException extends Exception
+{
+  /** The status code used, if no HTTP response was received */
+  public static final int NO_STATUS_CODE = -1;
+
+  private final int m_nStatusCode;
+
+  public IALClientException (@Nonnull final String sMessage, final int nStatusCode)
+  {
+    super (sMessage);
+    m_nStatusCode = nStatusCode;
+  }
+
+  public IALClientException (@Nonnull final String sMessage, @Nullable final Throwable aCause)
+  {
+    super (sMessage, aCause);
+    m_nStatusCode = NO_STATUS_CODE;
+  }
+
+  /**
+   * @return The HTTP status code of the response or {@link #NO_STATUS_CODE}
+   *         if no response was received.
+   */
+  public final int getStatusCode ()
+  {
+    return m_nStatusCode;
+  }
+}
@@ -0,0 +1,1003 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.mime.CMimeType;
+import com.helger.commons.mime.IMimeType;
+
+import eu.de4a.ial.api.jaxb.AtuLevelType;
+import eu.de4a.ial.api.jaxb.ErrorType;
+import eu.de4a.ial.api.jaxb.ParameterSetType;
+import eu.de4a.ial.api.jaxb.ParameterType;
+import eu.de4a.ial.api.jaxb.ProvisionType;
+import eu.de4a.ial.api.jaxb.ResponseItemType;
+import eu.de4a.ial.api.jaxb.ResponseLookupRoutingInformationType;
+import eu.de4a.ial.api.jaxb.ResponsePerCountryType;
+
+/**
+ * Streaming codec for the JSON representation of
+ * {@link ResponseLookupRoutingInformationType}, as returned by the IAL
+ * webapp. No intermediate JSON tree is created - the objects are written as
+ * UTF-8 bytes directly to the stream and read directly from the stream into
+ * the JAXB objects. The output is indented with 2 spaces per level. When
+ * reading, unknown properties and the <code>nextCursor</code> are ignored.
+ *
+ * @author Philip Helger
+ */
+@Immutable
+public final class IALJsonCodec
+{
+  /** The MIME type to be used in the HTTP <code>Accept</code> header */
+  public static final IMimeType MIME_TYPE = CMimeType.APPLICATION_JSON;
+
+  public static final String FIELD_ATU_LEVEL = "atuLevel";
+  public static final String FIELD_ATU_CODE = "atuCode";
+  public static final String FIELD_ATU_LATIN_NAME = "atuLatinName";
+  public static final String FIELD_DATA_OWNER_ID = "dataOwnerID";
+  public static final String FIELD_DATA_OWNER_PREF_LABEL = "dataOwnerPrefLabel";
+  public static final String FIELD_PARAMETER_SETS = "parameterSets";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (IALJsonCodec.class);
+  private static final int BUFFER_SIZE = 8 * 1024;
+  private static final byte [] HEX = "0123456789abcdef".getBytes ();
+  // The maximum nesting of skipped unknown values, to avoid a stack overflow
+  private static final int MAX_SKIP_DEPTH = 64;
+
+  private IALJsonCodec ()
+  {}
+
+  /**
+   * Buffered writer that encodes directly to UTF-8 and keeps track of the
+   * indentation.
+   */
+  private static final class Writer
+  {
+    private final OutputStream m_aOS;
+    private final byte [] m_aBuf = new byte [BUFFER_SIZE];
+    private int m_nPos = 0;
+    private int m_nLevel;
+    private boolean m_bFirst = true;
+
+    Writer (@Nonnull final OutputStream aOS, @Nonnegative final int nLevel)
+    {
+      m_aOS = aOS;
+      m_nLevel = nLevel;
+    }
+
+    private void _write (final int b) throws IOException
+    {
+      if (m_nPos == m_aBuf.length)
+        flush ();
+      m_aBuf[m_nPos++] = (byte) b;
+    }
+
+    private void _writeASCII (@Nonnull final String s) throws IOException
+    {
+      final int nLen = s.length ();
+      for (int i = 0; i < nLen; ++i)
+        _write (s.charAt (i));
+    }
+
+    private void _newLine () throws IOException
+    {
+      _write ('\n');
+      for (int i = 0; i < m_nLevel; ++i)
+      {
+        _write (' ');
+        _write (' ');
+      }
+    }
+
+    private void _writeString (@Nonnull final String s) throws IOException
+    {
+      _write ('"');
+      final int nLen = s.length ();
+      for (int i = 0; i < nLen; ++i)
+      {
+        final char c = s.charAt (i);
+        switch (c)
+        {
+          case '"':
+          case '\\':
+            _write ('\\');
+            _write (c);
+            break;
+          case '\b':
+            _writeASCII ("\\b");
+            break;
+          case '\t':
+            _writeASCII ("\\t");
+            break;
+          case '\n':
+            _writeASCII ("\\n");
+            break;
+          case '\f':
+            _writeASCII ("\\f");
+            break;
+          case '\r':
+            _writeASCII ("\\r");
+            break;
+          default:
+            if (c < 0x20)
+            {
+              _writeASCII ("\\u00");
+              _write (HEX[c >> 4]);
+              _write (HEX[c & 0xf]);
+            }
+            else
+              if (c < 0x80)
+                _write (c);
+              else
+                if (c < 0x800)
+                {
+                  _write (0xc0 | (c >> 6));
+                  _write (0x80 | (c & 0x3f));
+                }
+                else
+                  if (Character.isHighSurrogate (c) && i + 1 < nLen && Character.isLowSurrogate (s.charAt (i + 1)))
+                  {
+                    final int nCP = Character.toCodePoint (c, s.charAt (++i));
+                    _write (0xf0 | (nCP >> 18));
+                    _write (0x80 | ((nCP >> 12) & 0x3f));
+                    _write (0x80 | ((nCP >> 6) & 0x3f));
+                    _write (0x80 | (nCP & 0x3f));
+                  }
+                  else
+                    if (Character.isSurrogate (c))
+                    {
+                      // Unpaired surrogate
+                      _write ('?');
+                    }
+                    else
+                    {
+                      _write (0xe0 | (c >> 12));
+                      _write (0x80 | ((c >> 6) & 0x3f));
+                      _write (0x80 | (c & 0x3f));
+                    }
+        }
+      }
+      _write ('"');
+    }
+
+    void startObject () throws IOException
+    {
+      _write ('{');
+      m_nLevel++;
+      m_bFirst = true;
+    }
+
+    private void _end (final char cClose) throws IOException
+    {
+      m_nLevel--;
+      if (!m_bFirst)
+        _newLine ();
+      _write (cClose);
+      m_bFirst = false;
+    }
+
+    void endObject () throws IOException
+    {
+      _end ('}');
+    }
+
+    void startArray () throws IOException
+    {
+      _write ('[');
+      m_nLevel++;
+      m_bFirst = true;
+    }
+
+    void endArray () throws IOException
+    {
+      _end (']');
+    }
+
+    /**
+     * Start the next element of an array.
+     */
+    void nextElement () throws IOException
+    {
+      if (!m_bFirst)
+        _write (',');
+      _newLine ();
+      m_bFirst = false;
+    }
+
+    void name (@Nonnull final String sName) throws IOException
+    {
+      nextElement ();
+      _writeString (sName);
+      _write (':');
+    }
+
+    void property (@Nonnull final String sName, @Nullable final String sValue) throws IOException
+    {
+      name (sName);
+      if (sValue == null)
+        _writeASCII ("null");
+      else
+        _writeString (sValue);
+      m_bFirst = false;
+    }
+
+    void property (@Nonnull final String sName, final boolean bValue) throws IOException
+    {
+      name (sName);
+      _writeASCII (bValue ? "true" : "false");
+      m_bFirst = false;
+    }
+
+    void flush () throws IOException
+    {
+      m_aOS.write (m_aBuf, 0, m_nPos);
+      m_nPos = 0;
+    }
+  }
+
+  private static boolean _isField (@Nullable final Set <String> aFields, @Nonnull final String sField)
+  {
+    return aFields == null || aFields.contains (sField);
+  }
+
+  private static void _writeProvision (@Nonnull final Writer aWriter,
+                                       @Nonnull final ProvisionType aProvision,
+                                       @Nullable final Set <String> aFields) throws IOException
+  {
+    aWriter.startObject ();
+    if (aProvision.getAtuLevel () != null && _isField (aFields, FIELD_ATU_LEVEL))
+      aWriter.property (FIELD_ATU_LEVEL, aProvision.getAtuLevel ().value ());
+    if (_isField (aFields, FIELD_ATU_CODE))
+      aWriter.property (FIELD_ATU_CODE, aProvision.getAtuCode ());
+    if (_isField (aFields, FIELD_ATU_LATIN_NAME))
+      aWriter.property (FIELD_ATU_LATIN_NAME, aProvision.getAtuLatinName ());
+    if (_isField (aFields, FIELD_DATA_OWNER_ID))
+      aWriter.property (FIELD_DATA_OWNER_ID, aProvision.getDataOwnerId ());
+    if (_isField (aFields, FIELD_DATA_OWNER_PREF_LABEL))
+      aWriter.property (FIELD_DATA_OWNER_PREF_LABEL, aProvision.getDataOwnerPrefLabel ());
+    if (aProvision.hasParameterSetEntries () && _isField (aFields, FIELD_PARAMETER_SETS))
+    {
+      aWriter.name (FIELD_PARAMETER_SETS);
+      aWriter.startArray ();
+      for (final ParameterSetType aParamSet : aProvision.getParameterSet ())
+      {
+        aWriter.nextElement ();
+        aWriter.startObject ();
+        aWriter.property ("title", aParamSet.getTitle ());
+        aWriter.name ("parameterList");
+        aWriter.startArray ();
+        for (final ParameterType aParam : aParamSet.getParameter ())
+        {
+          aWriter.nextElement ();
+          aWriter.startObject ();
+          aWriter.property ("name", aParam.getName ());
+          aWriter.property ("optional", aParam.isOptional ());
+          aWriter.endObject ();
+        }
+        aWriter.endArray ();
+        aWriter.endObject ();
+      }
+      aWriter.endArray ();
+    }
+    aWriter.endObject ();
+  }
+
+  /**
+   * Write a single provision as JSON object.
+   *
+   * @param aProvision
+   *        The provision to write. May not be <code>null</code>.
+   * @param aFields
+   *        The names of the provision fields to write. May be
+   *        <code>null</code> to write all fields.
+   * @param nIndentLevel
+   *        The indentation level of the object. The first line is not
+   *        indented. Must be &ge; 0.
+   * @param aOS
+   *        The output stream to write to. Is not closed. May not be
+   *        <code>null</code>.
+   * @throws IOException
+   *         In case writing fails
+   */
+  public static void writeProvision (@Nonnull final ProvisionType aProvision,
+                                     @Nullable final Set <String> aFields,
+                                     @Nonnegative final int nIndentLevel,
+                                     @Nonnull final OutputStream aOS) throws IOException
+  {
+    final Writer aWriter = new Writer (aOS, nIndentLevel);
+    _writeProvision (aWriter, aProvision, aFields);
+    aWriter.flush ();
+  }
+
+  /**
+   * Write a response as JSON.
+   *
+   * @param aResponse
+   *        The response to write. May not be <code>null</code>.
+   * @param aFields
+   *        The names of the provision fields to write. May be
+   *        <code>null</code> to write all fields.
+   * @param sNextCursor
+   *        The optional pagination cursor to add. May be <code>null</code>.
+   * @param aOS
+   *        The output stream to write to. Is not closed. May not be
+   *        <code>null</code>.
+   * @throws IOException
+   *         In case writing fails
+   */
+  public static void write (@Nonnull final ResponseLookupRoutingInformationType aResponse,
+                            @Nullable final Set <String> aFields,
+                            @Nullable final String sNextCursor,
+                            @Nonnull final OutputStream aOS) throws IOException
+  {
+    final Writer aWriter = new Writer (aOS, 0);
+    aWriter.startObject ();
+    if (aResponse.hasErrorEntries ())
+    {
+      aWriter.name ("errors");
+      aWriter.startArray ();
+      for (final ErrorType aError : aResponse.getError ())
+      {
+        aWriter.nextElement ();
+        aWriter.startObject ();
+        aWriter.property ("code", aError.getCode ());
+        aWriter.property ("text", aError.getText ());
+        aWriter.endObject ();
+      }
+      aWriter.endArray ();
+    }
+    else
+    {
+      aWriter.name ("items");
+      aWriter.startArray ();
+      for (final ResponseItemType aItem : aResponse.getResponseItem ())
+      {
+        aWriter.nextElement ();
+        aWriter.startObject ();
+        aWriter.property ("canonicalObjectTypeId", aItem.getCanonicalObjectTypeId ());
+        aWriter.name ("countries");
+        aWriter.startArray ();
+        for (final ResponsePerCountryType aPerCountry : aItem.getResponsePerCountry ())
+        {
+          aWriter.nextElement ();
+          aWriter.startObject ();
+          aWriter.property ("countryCode", aPerCountry.getCountryCode ());
+          aWriter.name ("provisions");
+          aWriter.startArray ();
+          for (final ProvisionType aProvision : aPerCountry.getProvision ())
+          {
+            aWriter.nextElement ();
+            _writeProvision (aWriter, aProvision, aFields);
+          }
+          aWriter.endArray ();
+          aWriter.endObject ();
+        }
+        aWriter.endArray ();
+        aWriter.endObject ();
+      }
+      aWriter.endArray ();
+    }
+    if (sNextCursor != null)
+      aWriter.property ("nextCursor", sNextCursor);
+    aWriter.endObject ();
+    aWriter.flush ();
+  }
+
+  /**
+   * Write a response with all fields as JSON.
+   *
+   * @param aResponse
+   *        The response to write. May not be <code>null</code>.
+   * @param aOS
+   *        The output stream to write to. Is not closed. May not be
+   *        <code>null</code>.
+   * @throws IOException
+   *         In case writing fails
+   */
+  public static void write (@Nonnull final ResponseLookupRoutingInformationType aResponse,
+                            @Nonnull final OutputStream aOS) throws IOException
+  {
+    write (aResponse, null, null, aOS);
+  }
+
+  /**
+   * Get the response as UTF-8 encoded JSON.
+   *
+   * @param aResponse
+   *        The response to write. May not be <code>null</code>.
+   * @param aFields
+   *        The names of the provision fields to write. May be
+   *        <code>null</code> to write all fields.
+   * @param sNextCursor
+   *        The optional pagination cursor to add. May be <code>null</code>.
+   * @return The JSON bytes. Never <code>null</code>.
+   */
+  @Nonnull
+  public static byte [] getAsBytes (@Nonnull final ResponseLookupRoutingInformationType aResponse,
+                                    @Nullable final Set <String> aFields,
+                                    @Nullable final String sNextCursor)
+  {
+    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream (BUFFER_SIZE))
+    {
+      write (aResponse, aFields, sNextCursor, aBAOS);
+      return aBAOS.toByteArray ();
+    }
+    catch (final IOException ex)
+    {
+      // Cannot happen with a byte array
+      throw new IllegalStateException ("Failed to write JSON", ex);
+    }
+  }
+
+  /**
+   * Get the response with all fields as UTF-8 encoded JSON.
+   *
+   * @param aResponse
+   *        The response to write. May not be <code>null</code>.
+   * @return The JSON bytes. Never <code>null</code>.
+   */
+  @Nonnull
+  public static byte [] getAsBytes (@Nonnull final ResponseLookupRoutingInformationType aResponse)
+  {
+    return getAsBytes (aResponse, null, null);
+  }
+
+  /**
+   * Buffered pull parser working directly on the UTF-8 bytes.
+   */
+  private static final class Reader
+  {
+    private final InputStream m_aIS;
+    private final byte [] m_aBuf = new byte [BUFFER_SIZE];
+    private int m_nPos = 0;
+    private int m_nLen = 0;
+    private final StringBuilder m_aSB = new StringBuilder ();
+
+    Reader (@Nonnull final InputStream aIS)
+    {
+      m_aIS = aIS;
+    }
+
+    private int _read () throws IOException
+    {
+      if (m_nPos == m_nLen)
+      {
+        m_nLen = m_aIS.read (m_aBuf, 0, m_aBuf.length);
+        m_nPos = 0;
+        if (m_nLen <= 0)
+        {
+          m_nLen = 0;
+          throw new IOException ("Unexpected end of JSON");
+        }
+      }
+      return m_aBuf[m_nPos++] & 0xff;
+    }
+
+    /**
+     * @return The next non-whitespace character, which is also consumed.
+     */
+    private int _next () throws IOException
+    {
+      int c;
+      do
+      {
+        c = _read ();
+      } while (c == ' ' || c == '\t' || c == '\n' || c == '\r');
+      return c;
+    }
+
+    private void _expect (final int nExpected) throws IOException
+    {
+      final int c = _next ();
+      if (c != nExpected)
+        throw new IOException ("Expected '" + (char) nExpected + "' but found '" + (char) c + "'");
+    }
+
+    private void _expectLiteral (@Nonnull final String sRest) throws IOException
+    {
+      for (int i = 0; i < sRest.length (); ++i)
+        if (_read () != sRest.charAt (i))
+          throw new IOException ("Invalid JSON literal");
+    }
+
+    private int _readContinuation () throws IOException
+    {
+      final int c = _read ();
+      if ((c & 0xc0) != 0x80)
+        throw new IOException ("Invalid UTF-8 sequence");
+      return c & 0x3f;
+    }
+
+    private int _readHex4 () throws IOException
+    {
+      int ret = 0;
+      for (int i = 0; i < 4; ++i)
+      {
+        final int nDigit = Character.digit (_read (), 16);
+        if (nDigit < 0)
+          throw new IOException ("Invalid unicode escape");
+        ret = (ret << 4) | nDigit;
+      }
+      return ret;
+    }
+
+    /**
+     * Read the rest of a string after the opening quote.
+     */
+    @Nonnull
+    private String _readStringContent () throws IOException
+    {
+      final StringBuilder aSB = m_aSB;
+      aSB.setLength (0);
+      while (true)
+      {
+        final int c = _read ();
+        if (c == '"')
+          return aSB.toString ();
+        if (c == '\\')
+        {
+          final int e = _read ();
+          switch (e)
+          {
+            case '"':
+            case '\\':
+            case '/':
+              aSB.append ((char) e);
+              break;
+            case 'b':
+              aSB.append ('\b');
+              break;
+            case 'f':
+              aSB.append ('\f');
+              break;
+            case 'n':
+              aSB.append ('\n');
+              break;
+            case 'r':
+              aSB.append ('\r');
+              break;
+            case 't':
+              aSB.append ('\t');
+              break;
+            case 'u':
+              aSB.append ((char) _readHex4 ());
+              break;
+            default:
+              throw new IOException ("Invalid escape sequence '\\" + (char) e + "'");
+          }
+        }
+        else
+          if (c < 0x80)
+            aSB.append ((char) c);
+          else
+            if ((c & 0xe0) == 0xc0)
+              aSB.append ((char) (((c & 0x1f) << 6) | _readContinuation ()));
+            else
+              if ((c & 0xf0) == 0xe0)
+                aSB.append ((char) (((c & 0x0f) << 12) | (_readContinuation () << 6) | _readContinuation ()));
+              else
+                if ((c & 0xf8) == 0xf0)
+                  aSB.appendCodePoint (((c & 0x07) << 18) |
+                                       (_readContinuation () << 12) |
+                                       (_readContinuation () << 6) |
+                                       _readContinuation ());
+                else
+                  throw new IOException ("Invalid UTF-8 start byte");
+      }
+    }
+
+    @Nullable
+    String readStringOrNull () throws IOException
+    {
+      final int c = _next ();
+      if (c == '"')
+        return _readStringContent ();
+      if (c == 'n')
+      {
+        _expectLiteral ("ull");
+        return null;
+      }
+      throw new IOException ("Expected a string but found '" + (char) c + "'");
+    }
+
+    boolean readBoolean () throws IOException
+    {
+      final int c = _next ();
+      if (c == 't')
+      {
+        _expectLiteral ("rue");
+        return true;
+      }
+      if (c == 'f')
+      {
+        _expectLiteral ("alse");
+        return false;
+      }
+      throw new IOException ("Expected a boolean but found '" + (char) c + "'");
+    }
+
+    /**
+     * Start reading an object.
+     *
+     * @return <code>false</code> if the value is <code>null</code>.
+     */
+    boolean startObject () throws IOException
+    {
+      return _startContainer ('{');
+    }
+
+    /**
+     * Start reading an array.
+     *
+     * @return <code>false</code> if the value is <code>null</code>.
+     */
+    boolean startArray () throws IOException
+    {
+      return _startContainer ('[');
+    }
+
+    private boolean _startContainer (final int nStart) throws IOException
+    {
+      final int c = _next ();
+      if (c == nStart)
+        return true;
+      if (c == 'n')
+      {
+        _expectLiteral ("ull");
+        return false;
+      }
+      throw new IOException ("Expected '" + (char) nStart + "' but found '" + (char) c + "'");
+    }
+
+    /**
+     * Check if another element follows in the current array. Must be called
+     * before each element.
+     *
+     * @param bFirst
+     *        <code>true</code> for the first element of the array.
+     */
+    boolean hasNextElement (final boolean bFirst) throws IOException
+    {
+      final int c = _next ();
+      if (c == ']')
+        return false;
+      if (bFirst)
+      {
+        m_nPos--;
+        return true;
+      }
+      if (c != ',')
+        throw new IOException ("Expected ',' or ']' but found '" + (char) c + "'");
+      return true;
+    }
+
+    /**
+     * Read the name of the next property of the current object.
+     *
+     * @param bFirst
+     *        <code>true</code> for the first property of the object.
+     * @return <code>null</code> if the object is finished.
+     */
+    @Nullable
+    String nextName (final boolean bFirst) throws IOException
+    {
+      int c = _next ();
+      if (c == '}')
+        return null;
+      if (!bFirst)
+      {
+        if (c != ',')
+          throw new IOException ("Expected ',' or '}' but found '" + (char) c + "'");
+        c = _next ();
+      }
+      if (c != '"')
+        throw new IOException ("Expected a property name but found '" + (char) c + "'");
+      final String ret = _readStringContent ();
+      _expect (':');
+      return ret;
+    }
+
+    void skipValue () throws IOException
+    {
+      _skipValue (0);
+    }
+
+    private void _skipValue (final int nDepth) throws IOException
+    {
+      if (nDepth > MAX_SKIP_DEPTH)
+        throw new IOException ("JSON values are nested deeper than " + MAX_SKIP_DEPTH + " levels");
+      final int c = _next ();
+      switch (c)
+      {
+        case '"':
+          _readStringContent ();
+          break;
+        case '{':
+          for (boolean bFirst = true; nextName (bFirst) != null; bFirst = false)
+            _skipValue (nDepth + 1);
+          break;
+        case '[':
+          for (boolean bFirst = true; hasNextElement (bFirst); bFirst = false)
+            _skipValue (nDepth + 1);
+          break;
+        case 't':
+          _expectLiteral ("rue");
+          break;
+        case 'f':
+          _expectLiteral ("alse");
+          break;
+        case 'n':
+          _expectLiteral ("ull");
+          break;
+        default:
+          if (c != '-' && (c < '0' || c > '9'))
+            throw new IOException ("Unexpected character '" + (char) c + "'");
+          // Skip the rest of the number
+          int n = _read ();
+          while ((n >= '0' && n <= '9') || n == '.' || n == 'e' || n == 'E' || n == '+' || n == '-')
+            n = _read ();
+          m_nPos--;
+      }
+    }
+
+    void expectEnd () throws IOException
+    {
+      // Whitespace only
+      while (true)
+      {
+        if (m_nPos == m_nLen)
+        {
+          m_nLen = m_aIS.read (m_aBuf, 0, m_aBuf.length);
+          m_nPos = 0;
+          if (m_nLen <= 0)
+            return;
+        }
+        final int c = m_aBuf[m_nPos++];
+        if (c != ' ' && c != '\t' && c != '\n' && c != '\r')
+          throw new IOException ("Unexpected content after the JSON object");
+      }
+    }
+  }
+
+  private static <T> void _readArray (@Nonnull final Reader aReader,
+                                      @Nonnull final List <T> aTarget,
+                                      @Nonnull final IReadFunction <T> aElementReader) throws IOException
+  {
+    if (aReader.startArray ())
+      for (boolean bFirst = true; aReader.hasNextElement (bFirst); bFirst = false)
+        aTarget.add (aElementReader.read (aReader));
+  }
+
+  @FunctionalInterface
+  private interface IReadFunction <T>
+  {
+    T read (@Nonnull Reader aReader) throws IOException;
+  }
+
+  @Nonnull
+  private static ParameterType _readParameter (@Nonnull final Reader aReader) throws IOException
+  {
+    final ParameterType ret = new ParameterType ();
+    if (aReader.startObject ())
+      for (String sName = aReader.nextName (true); sName != null; sName = aReader.nextName (false))
+        switch (sName)
+        {
+          case "name":
+            ret.setName (aReader.readStringOrNull ());
+            break;
+          case "optional":
+            ret.setOptional (aReader.readBoolean ());
+            break;
+          default:
+            aReader.skipValue ();
+        }
+    return ret;
+  }
+
+  @Nonnull
+  private static ParameterSetType _readParameterSet (@Nonnull final Reader aReader) throws IOException
+  {
+    final ParameterSetType ret = new ParameterSetType ();
+    if (aReader.startObject ())
+      for (String sName = aReader.nextName (true); sName != null; sName = aReader.nextName (false))
+        switch (sName)
+        {
+          case "title":
+            ret.setTitle (aReader.readStringOrNull ());
+            break;
+          case "parameterList":
+            _readArray (aReader, ret.getParameter (), IALJsonCodec::_readParameter);
+            break;
+          default:
+            aReader.skipValue ();
+        }
+    return ret;
+  }
+
+  @Nonnull
+  private static ProvisionType _readProvision (@Nonnull final Reader aReader) throws IOException
+  {
+    final ProvisionType ret = new ProvisionType ();
+    if (aReader.startObject ())
+      for (String sName = aReader.nextName (true); sName != null; sName = aReader.nextName (false))
+        switch (sName)
+        {
+          case FIELD_ATU_LEVEL:
+            final String sAtuLevel = aReader.readStringOrNull ();
+            try
+            {
+              ret.setAtuLevel (sAtuLevel == null ? null : AtuLevelType.fromValue (sAtuLevel));
+            }
+            catch (final IllegalArgumentException ex)
+            {
+              throw new IOException ("Invalid ATU level '" + sAtuLevel + "'", ex);
+            }
+            break;
+          case FIELD_ATU_CODE:
+            ret.setAtuCode (aReader.readStringOrNull ());
+            break;
+          case FIELD_ATU_LATIN_NAME:
+            ret.setAtuLatinName (aReader.readStringOrNull ());
+            break;
+          case FIELD_DATA_OWNER_ID:
+            ret.setDataOwnerId (aReader.readStringOrNull ());
+            break;
+          case FIELD_DATA_OWNER_PREF_LABEL:
+            ret.setDataOwnerPrefLabel (aReader.readStringOrNull ());
+            break;
+          case FIELD_PARAMETER_SETS:
+            _readArray (aReader, ret.getParameterSet (), IALJsonCodec::_readParameterSet);
+            break;
+          default:
+            aReader.skipValue ();
+        }
+    return ret;
+  }
+
+  @Nonnull
+  private static ResponsePerCountryType _readPerCountry (@Nonnull final Reader aReader) throws IOException
+  {
+    final ResponsePerCountryType ret = new ResponsePerCountryType ();
+    if (aReader.startObject ())
+      for (String sName = aReader.nextName (true); sName != null; sName = aReader.nextName (false))
+        switch (sName)
+        {
+          case "countryCode":
+            ret.setCountryCode (aReader.readStringOrNull ());
+            break;
+          case "provisions":
+            _readArray (aReader, ret.getProvision (), IALJsonCodec::_readProvision);
+            break;
+          default:
+            aReader.skipValue ();
+        }
+    return ret;
+  }
+
+  @Nonnull
+  private static ResponseItemType _readItem (@Nonnull final Reader aReader) throws IOException
+  {
+    final ResponseItemType ret = new ResponseItemType ();
+    if (aReader.startObject ())
+      for (String sName = aReader.nextName (true); sName != null; sName = aReader.nextName (false))
+        switch (sName)
+        {
+          case "canonicalObjectTypeId":
+            ret.setCanonicalObjectTypeId (aReader.readStringOrNull ());
+            break;
+          case "countries":
+            _readArray (aReader, ret.getResponsePerCountry (), IALJsonCodec::_readPerCountry);
+            break;
+          default:
+            aReader.skipValue ();
+        }
+    return ret;
+  }
+
+  @Nonnull
+  private static ErrorType _readError (@Nonnull final Reader aReader) throws IOException
+  {
+    final ErrorType ret = new ErrorType ();
+    if (aReader.startObject ())
+      for (String sName = aReader.nextName (true); sName != null; sName = aReader.nextName (false))
+        switch (sName)
+        {
+          case "code":
+            ret.setCode (aReader.readStringOrNull ());
+            break;
+          case "text":
+            ret.setText (aReader.readStringOrNull ());
+            break;
+          default:
+            aReader.skipValue ();
+        }
+    return ret;
+  }
+
+  @Nonnull
+  private static ResponseLookupRoutingInformationType _read (@Nonnull final Reader aReader) throws IOException
+  {
+    final ResponseLookupRoutingInformationType ret = new ResponseLookupRoutingInformationType ();
+    if (!aReader.startObject ())
+      throw new IOException ("The JSON response must be an object");
+    for (String sName = aReader.nextName (true); sName != null; sName = aReader.nextName (false))
+      switch (sName)
+      {
+        case "items":
+          _readArray (aReader, ret.getResponseItem (), IALJsonCodec::_readItem);
+          break;
+        case "errors":
+          _readArray (aReader, ret.getError (), IALJsonCodec::_readError);
+          break;
+        default:
+          aReader.skipValue ();
+      }
+    aReader.expectEnd ();
+    return ret;
+  }
+
+  /**
+   * Read a response from its JSON representation.
+   *
+   * @param aIS
+   *        The input stream with the UTF-8 encoded JSON. Is read until the end
+   *        but not closed. May not be <code>null</code>.
+   * @return <code>null</code> if the data could not be read.
+   */
+  @Nullable
+  public static ResponseLookupRoutingInformationType read (@Nonnull final InputStream aIS)
+  {
+    try
+    {
+      return _read (new Reader (aIS));
+    }
+    catch (final IOException ex)
+    {
+      LOGGER.warn ("Failed to read IAL JSON data: " + ex.getMessage ());
+      return null;
+    }
+  }
+
+  /**
+   * Read a response from its JSON representation.
+   *
+   * @param aBytes
+   *        The UTF-8 encoded JSON. May not be <code>null</code>.
+   * @return <code>null</code> if the data could not be read.
+   */
+  @Nullable
+  public static ResponseLookupRoutingInformationType read (@Nonnull final byte [] aBytes)
+  {
+    return read (new NonBlockingByteArrayInputStream (aBytes));
+  }
+}
@@ -71,4 +71,17 @@ public class IALMarshaller <JAXBTYPE> extends GenericJAXBMarshaller <JAXBTYPE>
                                  new CommonsArrayList <> (CIALJAXB.XSD_IAL),
                                  new eu.de4a.ial.api.jaxb.ObjectFactory ()::createResponseLookupRoutingInformation);
   }
+
+  /**
+   * @return A new marshaller for the response, that does not validate against
+   *         the XML Schema. This is needed for responses, where mandatory
+   *         elements were deliberately left out. Never <code>null</code>.
+   */
+  @Nonnull
+  public static IALMarshaller <ResponseLookupRoutingInformationType> responseLookupRoutingInformationMarshallerNoValidation ()
+  {
+    return new IALMarshaller <> (ResponseLookupRoutingInformationType.class,
+                                 null,
+                                 new eu.de4a.ial.api.jaxb.ObjectFactory ()::createResponseLookupRoutingInformation);
+  }
 }
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.api;
+
+import java.io.InputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.xml.XMLConstants;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.state.ESuccess;
+import com.helger.jaxb.JAXBContextCache;
+
+import eu.de4a.ial.api.jaxb.ErrorType;
+import eu.de4a.ial.api.jaxb.ProvisionType;
+
+/**
+ * Streaming reader for IAL responses. In contrast to {@link IALMarshaller} the
+ * response is not read into memory as a whole, but each
+ * <code>ResponseItem</code>, <code>ResponsePerCountry</code> and
+ * <code>Provision</code> is passed to a handler while parsing. Only a single
+ * provision is kept in memory at a time. Only elements in a namespace that is
+ * registered in {@link IALNamespaceContext} are considered. Note: the document
+ * is not validated against the XML Schema.
+ *
+ * @author Philip Helger
+ */
+@Immutable
+public final class IALStreamingReader
+{
+  /**
+   * Handler for the parts of a response. All methods are invoked in document
+   * order on the reading thread.
+   */
+  public interface IResponseHandler
+  {
+    /**
+     * Called when a <code>ResponseItem</code> starts.
+     *
+     * @param sCOTID
+     *        The Canonical Object Type ID of the item. May be
+     *        <code>null</code> in invalid documents.
+     */
+    default void onResponseItemStart (@Nullable final String sCOTID)
+    {}
+
+    /**
+     * Called when a <code>ResponsePerCountry</code> starts.
+     *
+     * @param sCOTID
+     *        The Canonical Object Type ID of the surrounding item. May be
+     *        <code>null</code> in invalid documents.
+     * @param sCountryCode
+     *        The country code. May be <code>null</code> in invalid documents.
+     */
+    default void onResponsePerCountryStart (@Nullable final String sCOTID, @Nullable final String sCountryCode)
+    {}
+
+    /**
+     * Called for each <code>Provision</code>.
+     *
+     * @param sCOTID
+     *        The Canonical Object Type ID of the surrounding item. May be
+     *        <code>null</code> in invalid documents.
+     * @param sCountryCode
+     *        The country code of the surrounding element. May be
+     *        <code>null</code> in invalid documents.
+     * @param aProvision
+     *        The provision. Never <code>null</code>.
+     */
+    void onProvision (@Nullable String sCOTID, @Nullable String sCountryCode, @Nonnull ProvisionType aProvision);
+
+    /**
+     * Called when a <code>ResponsePerCountry</code> ends.
+     *
+     * @param sCOTID
+     *        The Canonical Object Type ID of the surrounding item. May be
+     *        <code>null</code> in invalid documents.
+     * @param sCountryCode
+     *        The country code. May be <code>null</code> in invalid documents.
+     */
+    default void onResponsePerCountryEnd (@Nullable final String sCOTID, @Nullable final String sCountryCode)
+    {}
+
+    /**
+     * Called when a <code>ResponseItem</code> ends.
+     *
+     * @param sCOTID
+     *        The Canonical Object Type ID of the item. May be
+     *        <code>null</code> in invalid documents.
+     */
+    default void onResponseItemEnd (@Nullable final String sCOTID)
+    {}
+
+    /**
+     * Called for each <code>Error</code> of an error response.
+     *
+     * @param aError
+     *        The error. Never <code>null</code>.
+     */
+    default void onError (@Nonnull final ErrorType aError)
+    {}
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (IALStreamingReader.class);
+
+  private static final String ELEMENT_ROOT = "ResponseLookupRoutingInformation";
+  private static final String ELEMENT_RESPONSE_ITEM = "ResponseItem";
+  private static final String ELEMENT_RESPONSE_PER_COUNTRY = "ResponsePerCountry";
+  private static final String ELEMENT_PROVISION = "Provision";
+  private static final String ELEMENT_ERROR = "Error";
+  private static final String ATTR_COT_ID = "CanonicalObjectTypeId";
+  private static final String ATTR_COUNTRY_CODE = "CountryCode";
+  // Thread-safe once configured
+  private static final XMLInputFactory XML_INPUT_FACTORY = _createXMLInputFactory ();
+
+  private IALStreamingReader ()
+  {}
+
+  @Nonnull
+  private static XMLInputFactory _createXMLInputFactory ()
+  {
+    final XMLInputFactory ret = XMLInputFactory.newInstance ();
+    // No DTDs and no external entities
+    ret.setProperty (XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    ret.setProperty (XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    ret.setProperty (XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+    return ret;
+  }
+
+  private static boolean _isIALElement (@Nonnull final XMLStreamReader aReader, @Nonnull final String sLocalName)
+  {
+    if (!sLocalName.equals (aReader.getLocalName ()))
+      return false;
+    final String sNamespaceURI = aReader.getNamespaceURI ();
+    return sNamespaceURI != null &&
+           !XMLConstants.NULL_NS_URI.equals (sNamespaceURI) &&
+           IALNamespaceContext.getInstance ().getPrefix (sNamespaceURI) != null;
+  }
+
+  private static void _read (@Nonnull final XMLStreamReader aReader,
+                             @Nonnull final Unmarshaller aUnmarshaller,
+                             @Nonnull final IResponseHandler aHandler) throws XMLStreamException, JAXBException
+  {
+    // Find the root element
+    while (aReader.hasNext () && aReader.next () != XMLStreamConstants.START_ELEMENT)
+    {}
+    if (!aReader.isStartElement () || !_isIALElement (aReader, ELEMENT_ROOT))
+      throw new XMLStreamException ("The document element is not an IAL " + ELEMENT_ROOT);
+
+    String sCOTID = null;
+    String sCountryCode = null;
+    int nEventType = aReader.next ();
+    while (true)
+    {
+      if (nEventType == XMLStreamConstants.START_ELEMENT)
+      {
+        if (_isIALElement (aReader, ELEMENT_PROVISION))
+        {
+          // Unmarshal the whole element - continues after the end element
+          final ProvisionType aProvision = aUnmarshaller.unmarshal (aReader, ProvisionType.class).getValue ();
+          aHandler.onProvision (sCOTID, sCountryCode, aProvision);
+          nEventType = aReader.getEventType ();
+          continue;
+        }
+        if (_isIALElement (aReader, ELEMENT_ERROR))
+        {
+          final ErrorType aError = aUnmarshaller.unmarshal (aReader, ErrorType.class).getValue ();
+          aHandler.onError (aError);
+          nEventType = aReader.getEventType ();
+          continue;
+        }
+        if (_isIALElement (aReader, ELEMENT_RESPONSE_ITEM))
+        {
+          sCOTID = aReader.getAttributeValue (null, ATTR_COT_ID);
+          aHandler.onResponseItemStart (sCOTID);
+        }
+        else
+          if (_isIALElement (aReader, ELEMENT_RESPONSE_PER_COUNTRY))
+          {
+            sCountryCode = aReader.getAttributeValue (null, ATTR_COUNTRY_CODE);
+            aHandler.onResponsePerCountryStart (sCOTID, sCountryCode);
+          }
+      }
+      else
+        if (nEventType == XMLStreamConstants.END_ELEMENT)
+        {
+          if (_isIALElement (aReader, ELEMENT_RESPONSE_PER_COUNTRY))
+          {
+            aHandler.onResponsePerCountryEnd (sCOTID, sCountryCode);
+            sCountryCode = null;
+          }
+          else
+            if (_isIALElement (aReader, ELEMENT_RESPONSE_ITEM))
+            {
+              aHandler.onResponseItemEnd (sCOTID);
+              sCOTID = null;
+            }
+            else
+              if (_isIALElement (aReader, ELEMENT_ROOT))
+                break;
+        }
+        else
+          if (nEventType == XMLStreamConstants.END_DOCUMENT)
+            throw new XMLStreamException ("Unexpected end of document");
+      nEventType = aReader.next ();
+    }
+  }
+
+  /**
+   * Read an IAL response from the provided input stream and pass all contained
+   * elements to the handler.
+   *
+   * @param aIS
+   *        The input stream to read from. Is not closed. May not be
+   *        <code>null</code>.
+   * @param aHandler
+   *        The handler to be invoked. May not be <code>null</code>.
+   * @return {@link ESuccess#FAILURE} if the document could not be read. In
+   *         this case the handler may already have received some elements.
+   *         Never <code>null</code>.
+   */
+  @Nonnull
+  public static ESuccess read (@Nonnull final InputStream aIS, @Nonnull final IResponseHandler aHandler)
+  {
+    XMLStreamReader aReader = null;
+    try
+    {
+      aReader = XML_INPUT_FACTORY.createXMLStreamReader (aIS);
+      final Unmarshaller aUnmarshaller = JAXBContextCache.getInstance ()
+                                                         .getFromCache (ProvisionType.class)
+                                                         .createUnmarshaller ();
+      _read (aReader, aUnmarshaller, aHandler);
+      return ESuccess.SUCCESS;
+    }
+    catch (final XMLStreamException | JAXBException ex)
+    {
+      LOGGER.warn ("Failed to read IAL response: " + ex.getMessage ());
+      return ESuccess.FAILURE;
+    }
+    finally
+    {
+      if (aReader != null)
+        try
+        {
+          aReader.close ();
+        }
+        catch (final XMLStreamException ex)
+        {
+          // Ignore
+        }
+    }
+  }
+}
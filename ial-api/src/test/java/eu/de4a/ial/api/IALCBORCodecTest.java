@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import eu.de4a.ial.api.jaxb.ErrorType;
+import eu.de4a.ial.api.jaxb.ResponseLookupRoutingInformationType;
+
+/**
+ * Test class for class {@link IALCBORCodec}.
+ *
+ * @author Philip Helger
+ */
+public final class IALCBORCodecTest
+{
+  private static final String BASE_PATH = "src/test/resources/ial/";
+
+  private static void _testRoundTrip (@Nonnull final ResponseLookupRoutingInformationType aResponse)
+  {
+    final byte [] aBytes = IALCBORCodec.getAsBytes (aResponse);
+    assertNotNull (aBytes);
+
+    final ResponseLookupRoutingInformationType aRead = IALCBORCodec.read (aBytes);
+    assertNotNull (aRead);
+
+    // Compare the XML, because JAXB distinguishes between null and empty lists
+    final IALMarshaller <ResponseLookupRoutingInformationType> aMarshaller = IALMarshaller.responseLookupRoutingInformationMarshallerNoValidation ();
+    assertEquals (aMarshaller.getAsString (aResponse), aMarshaller.getAsString (aRead));
+  }
+
+  @Test
+  public void testReadWrite ()
+  {
+    for (final String sFilename : new String [] { "IDK-response-routing.xml", "IDK-response-routing-min.xml" })
+    {
+      final File aFile = new File (BASE_PATH + sFilename);
+      final ResponseLookupRoutingInformationType aResponse = IALMarshaller.responseLookupRoutingInformationMarshaller ()
+                                                                          .read (aFile);
+      assertNotNull (aResponse);
+      _testRoundTrip (aResponse);
+
+      // Much smaller than the XML
+      assertTrue (IALCBORCodec.getAsBytes (aResponse).length * 3 < aFile.length ());
+    }
+
+    final ResponseLookupRoutingInformationType aErrorResponse = new ResponseLookupRoutingInformationType ();
+    final ErrorType aError = new ErrorType ();
+    aError.setCode ("E1");
+    aError.setText ("Something with äöü went wrong");
+    aErrorResponse.addError (aError);
+    _testRoundTrip (aErrorResponse);
+
+    _testRoundTrip (new ResponseLookupRoutingInformationType ());
+  }
+
+  @Test
+  public void testReadIndefiniteAndUnknown ()
+  {
+    // {_ 0: [_ {0: (_ "ab", "c"), 1: [], 7: [1.5, h'00']}], 9: "x"}
+    final byte [] aBytes = { (byte) 0xbf,
+                             0x00,
+                             (byte) 0x9f,
+                             (byte) 0xa3,
+                             0x00,
+                             0x7f,
+                             0x62,
+                             'a',
+                             'b',
+                             0x61,
+                             'c',
+                             (byte) 0xff,
+                             0x01,
+                             (byte) 0x80,
+                             0x07,
+                             (byte) 0x82,
+                             (byte) 0xf9,
+                             0x3e,
+                             0x00,
+                             0x41,
+                             0x00,
+                             (byte) 0xff,
+                             0x09,
+                             0x61,
+                             'x',
+                             (byte) 0xff };
+    final ResponseLookupRoutingInformationType aRead = IALCBORCodec.read (aBytes);
+    assertNotNull (aRead);
+    assertEquals (1, aRead.getResponseItemCount ());
+    assertEquals ("abc", aRead.getResponseItemAtIndex (0).getCanonicalObjectTypeId ());
+    assertEquals (0, aRead.getResponseItemAtIndex (0).getResponsePerCountryCount ());
+  }
+
+  @Test
+  public void testReadInvalid ()
+  {
+    final ResponseLookupRoutingInformationType aResponse = IALMarshaller.responseLookupRoutingInformationMarshaller ()
+                                                                        .read (new File (BASE_PATH +
+                                                                                         "IDK-response-routing.xml"));
+    final byte [] aBytes = IALCBORCodec.getAsBytes (aResponse);
+
+    // Truncated
+    assertNull (IALCBORCodec.read (Arrays.copyOf (aBytes, aBytes.length - 1)));
+    // Not a map
+    assertNull (IALCBORCodec.read (new byte [] { 0x61, 'x' }));
+    // Empty
+    assertNull (IALCBORCodec.read (new byte [0]));
+  }
+
+  @Test
+  public void testReadHugeDeclaredLength ()
+  {
+    // {0: [{0: "a..." with a declared length of 2^31-1 bytes}]}
+    assertNull (IALCBORCodec.read (new byte [] { (byte) 0xa1,
+                                                 0x00,
+                                                 (byte) 0x81,
+                                                 (byte) 0xa1,
+                                                 0x00,
+                                                 0x7a,
+                                                 0x7f,
+                                                 (byte) 0xff,
+                                                 (byte) 0xff,
+                                                 (byte) 0xff,
+                                                 'a' }));
+    // {9: "x..." with a declared length of 2^31-1 bytes} - unknown key is
+    // skipped
+    assertNull (IALCBORCodec.read (new byte [] { (byte) 0xa1,
+                                                 0x09,
+                                                 0x7a,
+                                                 0x7f,
+                                                 (byte) 0xff,
+                                                 (byte) 0xff,
+                                                 (byte) 0xff,
+                                                 'x' }));
+  }
+
+  @Nonnull
+  private static byte [] _createNestedUnknownValue (final int nDepth)
+  {
+    // {9: [[[...[0]...]]]}
+    final byte [] ret = new byte [nDepth + 3];
+    ret[0] = (byte) 0xa1;
+    ret[1] = 0x09;
+    Arrays.fill (ret, 2, nDepth + 2, (byte) 0x81);
+    ret[nDepth + 2] = 0x00;
+    return ret;
+  }
+
+  @Test
+  public void testReadDeeplyNestedUnknown ()
+  {
+    // Moderately nested unknown values are skipped
+    assertNotNull (IALCBORCodec.read (_createNestedUnknownValue (32)));
+    // Must not end in a StackOverflowError
+    assertNull (IALCBORCodec.read (_createNestedUnknownValue (300_000)));
+  }
+
+  @Test
+  public void testReadWithoutMarkSupport ()
+  {
+    final ResponseLookupRoutingInformationType aResponse = IALMarshaller.responseLookupRoutingInformationMarshaller ()
+                                                                        .read (new File (BASE_PATH +
+                                                                                         "IDK-response-routing.xml"));
+    final byte [] aBytes = IALCBORCodec.getAsBytes (aResponse);
+    final InputStream aIS = new FilterInputStream (new ByteArrayInputStream (aBytes))
+    {
+      @Override
+      public boolean markSupported ()
+      {
+        return false;
+      }
+    };
+    final ResponseLookupRoutingInformationType aRead = IALCBORCodec.read (aIS);
+    assertNotNull (aRead);
+    final IALMarshaller <ResponseLookupRoutingInformationType> aMarshaller = IALMarshaller.responseLookupRoutingInformationMarshallerNoValidation ();
+    assertEquals (aMarshaller.getAsString (aResponse), aMarshaller.getAsString (aRead));
+  }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nonnull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.http.CHttp;
+import com.helger.commons.http.CHttpHeader;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import eu.de4a.ial.api.jaxb.ResponseLookupRoutingInformationType;
+
+/**
+ * Test class for class {@link IALClient}.
+ *
+ * @author Philip Helger
+ */
+public final class IALClientTest
+{
+  private static final List <String> COTIDS = new CommonsArrayList <> ("urn:de4a-eu:CanonicalEvidenceType::CompanyRegistration:1.0");
+
+  private final AtomicInteger m_aCallCount = new AtomicInteger (0);
+  private final AtomicReference <String> m_aCacheControl = new AtomicReference <> ();
+  private final AtomicReference <String> m_aLastIfNoneMatch = new AtomicReference <> ();
+  private volatile long m_nDelayMillis = 0;
+  private HttpServer m_aServer;
+  private byte [] m_aXML;
+  private byte [] m_aJson;
+  private byte [] m_aCBOR;
+
+  private void _handle (@Nonnull final HttpExchange aExchange) throws IOException
+  {
+    m_aCallCount.incrementAndGet ();
+    if (m_nDelayMillis > 0)
+      try
+      {
+        Thread.sleep (m_nDelayMillis);
+      }
+      catch (final InterruptedException ex)
+      {
+        Thread.currentThread ().interrupt ();
+      }
+
+    if (!aExchange.getRequestURI ().getRawPath ().startsWith ("/api/provision/urn%3Ade4a-eu"))
+    {
+      aExchange.sendResponseHeaders (CHttp.HTTP_NOT_FOUND, -1);
+      aExchange.close ();
+      return;
+    }
+
+    final String sIfNoneMatch = aExchange.getRequestHeaders ().getFirst (CHttpHeader.IF_NON_MATCH);
+    m_aLastIfNoneMatch.set (sIfNoneMatch);
+    if (m_aCacheControl.get () != null)
+      aExchange.getResponseHeaders ().add (CHttpHeader.CACHE_CONTROL, m_aCacheControl.get ());
+    aExchange.getResponseHeaders ().add (CHttpHeader.ETAG, "W/\"1\"");
+    if ("W/\"1\"".equals (sIfNoneMatch))
+    {
+      aExchange.sendResponseHeaders (CHttp.HTTP_NOT_MODIFIED, -1);
+      aExchange.close ();
+      return;
+    }
+
+    final String sAccept = aExchange.getRequestHeaders ().getFirst (CHttpHeader.ACCEPT);
+    final byte [] aBytes;
+    if (IALCBORCodec.MIME_TYPE.getAsString ().equals (sAccept))
+      aBytes = m_aCBOR;
+    else
+      if (IALJsonCodec.MIME_TYPE.getAsString ().equals (sAccept))
+        aBytes = m_aJson;
+      else
+        aBytes = m_aXML;
+    aExchange.sendResponseHeaders (CHttp.HTTP_OK, aBytes.length);
+    try (final OutputStream aOS = aExchange.getResponseBody ())
+    {
+      aOS.write (aBytes);
+    }
+  }
+
+  @Before
+  public void before () throws IOException
+  {
+    final ResponseLookupRoutingInformationType aResponse = IALMarshaller.responseLookupRoutingInformationMarshaller ()
+                                                                        .read (new File ("src/test/resources/ial/IDK-response-routing.xml"));
+    assertNotNull (aResponse);
+    m_aXML = IALMarshaller.responseLookupRoutingInformationMarshaller ().getAsBytes (aResponse);
+    m_aJson = IALJsonCodec.getAsBytes (aResponse);
+    m_aCBOR = IALCBORCodec.getAsBytes (aResponse);
+
+    m_aServer = HttpServer.create (new InetSocketAddress ("localhost", 0), 0);
+    m_aServer.createContext ("/api", this::_handle);
+    m_aServer.setExecutor (null);
+    m_aServer.start ();
+  }
+
+  @After
+  public void after ()
+  {
+    m_aServer.stop (0);
+  }
+
+  @Nonnull
+  private IALClient _createClient ()
+  {
+    return new IALClient ("http://localhost:" + m_aServer.getAddress ().getPort () + "/api/");
+  }
+
+  @Test
+  public void testCached () throws Exception
+  {
+    m_aCacheControl.set ("max-age=60");
+    try (final IALClient aClient = _createClient ())
+    {
+      for (final IALClient.EFormat eFormat : IALClient.EFormat.values ())
+      {
+        aClient.setFormat (eFormat);
+        final ResponseLookupRoutingInformationType aResponse1 = aClient.getProvisions (COTIDS, null);
+        final ResponseLookupRoutingInformationType aResponse2 = aClient.getProvisions (COTIDS, null);
+        assertTrue (aResponse1.getResponseItemCount () > 0);
+        // Each caller gets its own copy
+        assertNotSame (aResponse1, aResponse2);
+        assertEquals (aResponse1, aResponse2);
+      }
+      // Once per format
+      assertEquals (3, m_aCallCount.get ());
+      assertEquals (3, aClient.getCachedResponseCount ());
+    }
+  }
+
+  @Test
+  public void testCacheIsBounded () throws Exception
+  {
+    m_aCacheControl.set ("max-age=60");
+    try (final IALClient aClient = _createClient ().setMaxCacheEntries (2))
+    {
+      aClient.getProvisions (COTIDS, "AT");
+      aClient.getProvisions (COTIDS, "BE");
+      // Cache hit - makes "BE" the least recently used entry
+      aClient.getProvisions (COTIDS, "AT");
+      assertEquals (2, m_aCallCount.get ());
+
+      aClient.getProvisions (COTIDS, "DE");
+      assertEquals (3, m_aCallCount.get ());
+      assertEquals (2, aClient.getCachedResponseCount ());
+
+      // "AT" is still cached, "BE" was evicted
+      aClient.getProvisions (COTIDS, "AT");
+      assertEquals (3, m_aCallCount.get ());
+      aClient.getProvisions (COTIDS, "BE");
+      assertEquals (4, m_aCallCount.get ());
+      assertEquals (2, aClient.getCachedResponseCount ());
+
+      aClient.setMaxCacheEntries (1);
+      assertEquals (1, aClient.getCachedResponseCount ());
+    }
+  }
+
+  @Test
+  public void testRevalidate () throws Exception
+  {
+    m_aCacheControl.set ("max-age=0");
+    try (final IALClient aClient = _createClient ())
+    {
+      final ResponseLookupRoutingInformationType aResponse1 = aClient.getProvisions (COTIDS, "AT");
+      assertNull (m_aLastIfNoneMatch.get ());
+      final ResponseLookupRoutingInformationType aResponse2 = aClient.getProvisions (COTIDS, "AT");
+      assertEquals ("W/\"1\"", m_aLastIfNoneMatch.get ());
+      assertEquals (aResponse1, aResponse2);
+      assertEquals (2, m_aCallCount.get ());
+    }
+
+    // Nothing is stored
+    m_aCacheControl.set ("no-cache, no-store, must-revalidate");
+    try (final IALClient aClient = _createClient ())
+    {
+      aClient.getProvisions (COTIDS, null);
+      aClient.getProvisions (COTIDS, null);
+      assertEquals (0, aClient.getCachedResponseCount ());
+      assertEquals (4, m_aCallCount.get ());
+    }
+  }
+
+  @Test
+  public void testSingleFlight () throws Exception
+  {
+    m_aCacheControl.set ("no-store");
+    m_nDelayMillis = 500;
+    try (final IALClient aClient = _createClient ())
+    {
+      final List <CompletableFuture <ResponseLookupRoutingInformationType>> aFutures = new CommonsArrayList <> ();
+      for (int i = 0; i < 5; ++i)
+        aFutures.add (aClient.getProvisionsAsync (COTIDS, null));
+      for (final CompletableFuture <ResponseLookupRoutingInformationType> aFuture : aFutures)
+        assertTrue (aFuture.get ().getResponseItemCount () > 0);
+      assertEquals (1, m_aCallCount.get ());
+    }
+  }
+
+  @Test
+  public void testError ()
+  {
+    try (final IALClient aClient = new IALClient ("http://localhost:" + m_aServer.getAddress ().getPort () + "/api/x"))
+    {
+      aClient.getProvisions (COTIDS, null);
+      fail ();
+    }
+    catch (final IALClientException ex)
+    {
+      assertEquals (CHttp.HTTP_NOT_FOUND, ex.getStatusCode ());
+    }
+  }
+}
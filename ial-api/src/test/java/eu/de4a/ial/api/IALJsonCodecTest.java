@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.string.StringHelper;
+
+import eu.de4a.ial.api.jaxb.ErrorType;
+import eu.de4a.ial.api.jaxb.ResponseLookupRoutingInformationType;
+
+/**
+ * Test class for class {@link IALJsonCodec}.
+ *
+ * @author Philip Helger
+ */
+public final class IALJsonCodecTest
+{
+  private static final String BASE_PATH = "src/test/resources/ial/";
+
+  private static void _testRoundTrip (@Nonnull final ResponseLookupRoutingInformationType aResponse)
+  {
+    final byte [] aBytes = IALJsonCodec.getAsBytes (aResponse);
+    assertNotNull (aBytes);
+
+    final ResponseLookupRoutingInformationType aRead = IALJsonCodec.read (aBytes);
+    assertNotNull (aRead);
+
+    // Compare the XML, because JAXB distinguishes between null and empty lists
+    final IALMarshaller <ResponseLookupRoutingInformationType> aMarshaller = IALMarshaller.responseLookupRoutingInformationMarshallerNoValidation ();
+    assertEquals (aMarshaller.getAsString (aResponse), aMarshaller.getAsString (aRead));
+  }
+
+  @Test
+  public void testReadWrite ()
+  {
+    for (final String sFilename : new String [] { "IDK-response-routing.xml", "IDK-response-routing-min.xml" })
+    {
+      final ResponseLookupRoutingInformationType aResponse = IALMarshaller.responseLookupRoutingInformationMarshaller ()
+                                                                          .read (new File (BASE_PATH + sFilename));
+      assertNotNull (aResponse);
+      _testRoundTrip (aResponse);
+    }
+
+    final ResponseLookupRoutingInformationType aErrorResponse = new ResponseLookupRoutingInformationType ();
+    final ErrorType aError = new ErrorType ();
+    aError.setCode ("E1");
+    aError.setText ("Something \"with\" äöü 😀\nwent wrong\u0001");
+    aErrorResponse.addError (aError);
+    _testRoundTrip (aErrorResponse);
+
+    assertEquals ("{\n" +
+                  "  \"errors\":[\n" +
+                  "    {\n" +
+                  "      \"code\":\"E1\",\n" +
+                  "      \"text\":\"Something \\\"with\\\" äöü 😀\\nwent wrong\\u0001\"\n" +
+                  "    }\n" +
+                  "  ],\n" +
+                  "  \"nextCursor\":\"abc\"\n" +
+                  "}",
+                  new String (IALJsonCodec.getAsBytes (aErrorResponse, null, "abc"), StandardCharsets.UTF_8));
+
+    _testRoundTrip (new ResponseLookupRoutingInformationType ());
+    assertEquals ("{\n  \"items\":[]\n}",
+                  new String (IALJsonCodec.getAsBytes (new ResponseLookupRoutingInformationType ()),
+                              StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testFieldSelection ()
+  {
+    final ResponseLookupRoutingInformationType aResponse = IALMarshaller.responseLookupRoutingInformationMarshaller ()
+                                                                        .read (new File (BASE_PATH +
+                                                                                         "IDK-response-routing.xml"));
+    assertNotNull (aResponse);
+    final String sJson = new String (IALJsonCodec.getAsBytes (aResponse,
+                                                              new CommonsHashSet <> (IALJsonCodec.FIELD_ATU_CODE),
+                                                              null),
+                                     StandardCharsets.UTF_8);
+    assertTrue (sJson.contains ("\"" + IALJsonCodec.FIELD_ATU_CODE + "\""));
+    assertFalse (sJson.contains ("\"" + IALJsonCodec.FIELD_DATA_OWNER_ID + "\""));
+    assertFalse (sJson.contains ("\"" + IALJsonCodec.FIELD_PARAMETER_SETS + "\""));
+
+    final ResponseLookupRoutingInformationType aRead = IALJsonCodec.read (sJson.getBytes (StandardCharsets.UTF_8));
+    assertNotNull (aRead);
+    assertEquals (aResponse.getResponseItemCount (), aRead.getResponseItemCount ());
+    assertNull (aRead.getResponseItemAtIndex (0)
+                     .getResponsePerCountryAtIndex (0)
+                     .getProvisionAtIndex (0)
+                     .getDataOwnerId ());
+  }
+
+  @Test
+  public void testReadLenient ()
+  {
+    final String sJson = " {\"x\":{\"a\":[1,-2.5e3,true,null,{}]},\"items\" : [ {\"canonicalObjectTypeId\":\"a\\u00e4\\/b\"," +
+                         "\"countries\":null} ],\"nextCursor\":\"c\"}\r\n";
+    final ResponseLookupRoutingInformationType aRead = IALJsonCodec.read (sJson.getBytes (StandardCharsets.UTF_8));
+    assertNotNull (aRead);
+    assertEquals (1, aRead.getResponseItemCount ());
+    assertEquals ("aä/b", aRead.getResponseItemAtIndex (0).getCanonicalObjectTypeId ());
+    assertEquals (0, aRead.getResponseItemAtIndex (0).getResponsePerCountryCount ());
+  }
+
+  @Test
+  public void testReadInvalid ()
+  {
+    assertNull (IALJsonCodec.read (new byte [0]));
+    assertNull (IALJsonCodec.read ("[]".getBytes (StandardCharsets.UTF_8)));
+    assertNull (IALJsonCodec.read ("{\"items\":[}".getBytes (StandardCharsets.UTF_8)));
+    assertNull (IALJsonCodec.read ("{\"items\":[]} x".getBytes (StandardCharsets.UTF_8)));
+    assertNull (IALJsonCodec.read ("{\"items\":[{\"countries\":[{\"provisions\":[{\"atuLevel\":\"foo\"}]}]}]}".getBytes (StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void testReadDeeplyNestedUnknown ()
+  {
+    // Moderately nested unknown values are skipped
+    assertNotNull (IALJsonCodec.read (("{\"x\":" +
+                                       StringHelper.getRepeated ('[', 32) +
+                                       StringHelper.getRepeated (']', 32) +
+                                       "}").getBytes (StandardCharsets.UTF_8)));
+    // Must not end in a StackOverflowError
+    assertNull (IALJsonCodec.read (("{\"x\":" + StringHelper.getRepeated ('[', 200_000)).getBytes (StandardCharsets.UTF_8)));
+  }
+}
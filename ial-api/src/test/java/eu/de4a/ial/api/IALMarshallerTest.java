@@ -18,6 +18,7 @@
 package eu.de4a.ial.api;
 
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -30,6 +31,11 @@ import org.slf4j.LoggerFactory;
 
 import com.helger.jaxb.GenericJAXBMarshaller;
 
+import eu.de4a.ial.api.jaxb.ProvisionType;
+import eu.de4a.ial.api.jaxb.ResponseItemType;
+import eu.de4a.ial.api.jaxb.ResponseLookupRoutingInformationType;
+import eu.de4a.ial.api.jaxb.ResponsePerCountryType;
+
 /**
  * Test class for class {@link IALMarshaller}.
  *
@@ -73,4 +79,26 @@ public final class IALMarshallerTest
     _testReadWrite (IALMarshaller.responseLookupRoutingInformationMarshaller (),
                     new File (BASE_PATH + "IDK-response-routing-min.xml"));
   }
+
+  @Test
+  public void testNoValidation ()
+  {
+    // Mandatory elements are missing
+    final ProvisionType aProvision = new ProvisionType ();
+    aProvision.setAtuCode ("AT13");
+    aProvision.setDataOwnerId ("iso6523-actorid-upis::9999:at000000271");
+    final ResponsePerCountryType aPerCountry = new ResponsePerCountryType ();
+    aPerCountry.setCountryCode ("AT");
+    aPerCountry.addProvision (aProvision);
+    final ResponseItemType aItem = new ResponseItemType ();
+    aItem.setCanonicalObjectTypeId ("urn:de4a-eu:CanonicalEvidenceType::CompanyRegistration:1.0");
+    aItem.addResponsePerCountry (aPerCountry);
+    final ResponseLookupRoutingInformationType aResponse = new ResponseLookupRoutingInformationType ();
+    aResponse.addResponseItem (aItem);
+
+    final IALMarshaller <ResponseLookupRoutingInformationType> aMarshaller = IALMarshaller.responseLookupRoutingInformationMarshaller ();
+    aMarshaller.writeExceptionCallbacks ().removeAll ();
+    assertNull (aMarshaller.getAsBytes (aResponse));
+    assertNotNull (IALMarshaller.responseLookupRoutingInformationMarshallerNoValidation ().getAsBytes (aResponse));
+  }
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+
+import eu.de4a.ial.api.jaxb.ErrorType;
+import eu.de4a.ial.api.jaxb.ProvisionType;
+import eu.de4a.ial.api.jaxb.ResponseLookupRoutingInformationType;
+
+/**
+ * Test class for class {@link IALStreamingReader}.
+ *
+ * @author Philip Helger
+ */
+public final class IALStreamingReaderTest
+{
+  private static final String BASE_PATH = "src/test/resources/ial/";
+
+  private static final class CollectingHandler implements IALStreamingReader.IResponseHandler
+  {
+    private final ICommonsList <String> m_aEvents = new CommonsArrayList <> ();
+
+    @Override
+    public void onResponseItemStart (@Nullable final String sCOTID)
+    {
+      m_aEvents.add ("item:" + sCOTID);
+    }
+
+    @Override
+    public void onResponsePerCountryStart (@Nullable final String sCOTID, @Nullable final String sCountryCode)
+    {
+      m_aEvents.add ("country:" + sCountryCode);
+    }
+
+    public void onProvision (@Nullable final String sCOTID,
+                             @Nullable final String sCountryCode,
+                             @Nonnull final ProvisionType aProvision)
+    {
+      m_aEvents.add ("provision:" + sCountryCode + ":" + aProvision.getAtuCode ());
+    }
+
+    @Override
+    public void onResponsePerCountryEnd (@Nullable final String sCOTID, @Nullable final String sCountryCode)
+    {
+      m_aEvents.add ("/country");
+    }
+
+    @Override
+    public void onResponseItemEnd (@Nullable final String sCOTID)
+    {
+      m_aEvents.add ("/item");
+    }
+
+    @Override
+    public void onError (@Nonnull final ErrorType aError)
+    {
+      m_aEvents.add ("error:" + aError.getCode ());
+    }
+  }
+
+  @Test
+  public void testRead () throws Exception
+  {
+    final File aFile = new File (BASE_PATH + "IDK-response-routing.xml");
+    final CollectingHandler aHandler = new CollectingHandler ();
+    assertTrue (IALStreamingReader.read (new NonBlockingByteArrayInputStream (Files.readAllBytes (aFile.toPath ())), aHandler).isSuccess ());
+    assertEquals (new CommonsArrayList <> ("item:urn:de4a-eu:CanonicalEvidenceType::CompanyRegistration:1.0",
+                                           "country:AT",
+                                           "provision:AT:AT123",
+                                           "provision:AT:AT130",
+                                           "/country",
+                                           "country:BE",
+                                           "provision:BE:BE",
+                                           "/country",
+                                           "/item"),
+                  aHandler.m_aEvents);
+
+    // The provisions are complete
+    final ResponseLookupRoutingInformationType aResponse = IALMarshaller.responseLookupRoutingInformationMarshaller ()
+                                                                        .read (aFile);
+    final ICommonsList <ProvisionType> aProvisions = new CommonsArrayList <> ();
+    assertTrue (IALStreamingReader.read (new NonBlockingByteArrayInputStream (Files.readAllBytes (aFile.toPath ())),
+                                         (sCOTID, sCountryCode, aProvision) -> aProvisions.add (aProvision))
+                                  .isSuccess ());
+    assertEquals (aResponse.getResponseItemAtIndex (0).getResponsePerCountryAtIndex (0).getProvision (),
+                  aProvisions.subList (0, 2));
+  }
+
+  @Test
+  public void testReadPrefixedAndErrors ()
+  {
+    // Written with the "ial" prefix
+    final ResponseLookupRoutingInformationType aResponse = IALMarshaller.responseLookupRoutingInformationMarshaller ()
+                                                                        .read (new File (BASE_PATH +
+                                                                                         "IDK-response-routing-min.xml"));
+    final byte [] aBytes = IALMarshaller.responseLookupRoutingInformationMarshaller ().getAsBytes (aResponse);
+    CollectingHandler aHandler = new CollectingHandler ();
+    assertTrue (IALStreamingReader.read (new NonBlockingByteArrayInputStream (aBytes), aHandler).isSuccess ());
+    assertEquals (5, aHandler.m_aEvents.size ());
+    assertEquals ("provision:AT:AT", aHandler.m_aEvents.get (2));
+
+    final String sErrors = "<ResponseLookupRoutingInformation xmlns='" +
+                           CIALJAXB.NAMESPACE_URI_IAL +
+                           "'><Error><Code>E1</Code><Text>Error 1</Text></Error>" +
+                           "<Error><Code>E2</Code><Text>Error 2</Text></Error></ResponseLookupRoutingInformation>";
+    aHandler = new CollectingHandler ();
+    assertTrue (IALStreamingReader.read (new NonBlockingByteArrayInputStream (sErrors.getBytes (StandardCharsets.UTF_8)),
+                                         aHandler)
+                                  .isSuccess ());
+    assertEquals (new CommonsArrayList <> ("error:E1", "error:E2"), aHandler.m_aEvents);
+  }
+
+  @Test
+  public void testReadInvalid ()
+  {
+    final CollectingHandler aHandler = new CollectingHandler ();
+    // Wrong namespace
+    assertTrue (IALStreamingReader.read (new NonBlockingByteArrayInputStream ("<ResponseLookupRoutingInformation xmlns='urn:other'/>".getBytes (StandardCharsets.UTF_8)),
+                                         aHandler)
+                                  .isFailure ());
+    // Truncated
+    assertTrue (IALStreamingReader.read (new NonBlockingByteArrayInputStream (("<ResponseLookupRoutingInformation xmlns='" +
+                                                                               CIALJAXB.NAMESPACE_URI_IAL +
+                                                                               "'><ResponseItem>").getBytes (StandardCharsets.UTF_8)),
+                                         aHandler)
+                                  .isFailure ());
+    // Not XML
+    assertTrue (IALStreamingReader.read (new NonBlockingByteArrayInputStream (new byte [] { 1, 2 }), aHandler)
+                                  .isFailure ());
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.benchmarks;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Constants shared by all benchmarks.
+ *
+ * @author Philip Helger
+ */
+@Immutable
+public final class CBenchmark
+{
+  /** The JVM argument for the forked benchmark JVMs to reduce the logging */
+  public static final String JVM_ARG_LOG_CONFIG = "-Dlog4j2.configurationFile=log4j2-benchmarks.xml";
+
+  /** The class path directory of the recorded Directory search results */
+  public static final String DIRECTORY_FIXTURE_PATH = "fixtures/directory/";
+
+  /** The prefix of the Canonical Object Type IDs of the fixtures */
+  public static final String COTID_PREFIX = "urn:de4a-eu:CanonicalEvidenceType::";
+
+  /** The fixture with many matches */
+  public static final String FIXTURE_COMPANY_REGISTRATION = "CompanyRegistration_1.0";
+
+  /** The fixture with few matches, but parameter sets */
+  public static final String FIXTURE_BIRTH_EVIDENCE = "BirthEvidence_1.0";
+
+  private CBenchmark ()
+  {}
+
+  /**
+   * @param sFixture
+   *        The fixture name, e.g. {@link #FIXTURE_COMPANY_REGISTRATION}.
+   * @return The Canonical Object Type ID queried for the fixture.
+   */
+  public static String getCOTID (final String sFixture)
+  {
+    return COTID_PREFIX + sFixture.replace ('_', ':');
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the IAL benchmarks. All JMH command line options are supported. In
+ * contrast to the plain JMH runner, the results are written as JSON to
+ * <code>jmh-result.json</code> by default, so that different runs can be
+ * compared.
+ *
+ * @author Philip Helger
+ */
+public final class IALBenchmarkMain
+{
+  private IALBenchmarkMain ()
+  {}
+
+  public static void main (final String [] args) throws Exception
+  {
+    final CommandLineOptions aCLI = new CommandLineOptions (args);
+    if (aCLI.shouldHelp ())
+    {
+      aCLI.showHelp ();
+      return;
+    }
+
+    final ChainedOptionsBuilder aOptions = new OptionsBuilder ().parent (aCLI);
+    if (!aCLI.getResultFormat ().hasValue ())
+      aOptions.resultFormat (ResultFormatType.JSON);
+
+    final Runner aRunner = new Runner (aOptions.build ());
+    if (aCLI.shouldList ())
+      aRunner.list ();
+    else
+      aRunner.run ();
+  }
+}
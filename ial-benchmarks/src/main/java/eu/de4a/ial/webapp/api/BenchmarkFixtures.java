@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.io.InputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.state.ETriState;
+import com.helger.pd.searchapi.PDSearchAPIReader;
+import com.helger.pd.searchapi.v1.ResultListType;
+
+import eu.de4a.ial.api.jaxb.ResponseLookupRoutingInformationType;
+import eu.de4a.ial.benchmarks.CBenchmark;
+
+/**
+ * Access to the recorded Directory search results. This class is in the
+ * package of the webapp to access the package private classes.
+ *
+ * @author Philip Helger
+ */
+@Immutable
+final class BenchmarkFixtures
+{
+  static final String LOG_PREFIX = "[BENCH] ";
+
+  private BenchmarkFixtures ()
+  {}
+
+  /**
+   * @param sFixture
+   *        The fixture name. May not be <code>null</code>.
+   * @return The bytes of the recorded <code>/search/1.0/xml</code> response.
+   */
+  @Nonnull
+  static byte [] getDirectoryResponse (@Nonnull final String sFixture)
+  {
+    final InputStream aIS = new ClassPathResource (CBenchmark.DIRECTORY_FIXTURE_PATH + sFixture + ".xml").getInputStream ();
+    if (aIS == null)
+      throw new IllegalArgumentException ("No such fixture '" + sFixture + "'");
+    return StreamHelper.getAllBytes (aIS);
+  }
+
+  @Nonnull
+  static ResultListType readResultList (@Nonnull final byte [] aXML)
+  {
+    final ResultListType ret = PDSearchAPIReader.resultListV1 ().read (aXML);
+    if (ret == null)
+      throw new IllegalStateException ("Failed to parse the Directory search result");
+    return ret;
+  }
+
+  /**
+   * @param sFixture
+   *        The fixture name. May not be <code>null</code>.
+   * @param aXML
+   *        The bytes of the fixture. May not be <code>null</code>.
+   * @return New Directory results, that are not shared with other callers.
+   */
+  @Nonnull
+  static DirectoryResults createDirectoryResults (@Nonnull final String sFixture, @Nonnull final byte [] aXML)
+  {
+    final DirectoryResults ret = new DirectoryResults ();
+    ret.addMatches (CBenchmark.getCOTID (sFixture), readResultList (aXML));
+    return ret;
+  }
+
+  /**
+   * @param aDirectoryResults
+   *        The Directory results. All matches are considered to be verified.
+   *        May not be <code>null</code>.
+   * @return The IAL response for all matches.
+   */
+  @Nonnull
+  static ResponseLookupRoutingInformationType createResponse (@Nonnull final DirectoryResults aDirectoryResults)
+  {
+    for (final DirectoryMatch aMatch : aDirectoryResults.getAllMatches ())
+      aMatch.smpState = ETriState.TRUE;
+    return ProvisionFactory.createResponse (ProvisionFactory.createGroupedProvisions (LOG_PREFIX,
+                                                                                      aDirectoryResults,
+                                                                                      null));
+  }
+}
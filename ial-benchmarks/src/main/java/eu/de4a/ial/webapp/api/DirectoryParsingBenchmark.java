@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.helger.pd.searchapi.PDSearchAPIReader;
+import com.helger.pd.searchapi.v1.ResultListType;
+
+import eu.de4a.ial.benchmarks.CBenchmark;
+
+/**
+ * Benchmark of reading a recorded Directory search result and converting it
+ * to {@link DirectoryMatch} objects.
+ *
+ * @author Philip Helger
+ */
+@State (Scope.Thread)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 3, time = 2)
+@Measurement (iterations = 5, time = 2)
+@Fork (value = 1, jvmArgsAppend = CBenchmark.JVM_ARG_LOG_CONFIG)
+public class DirectoryParsingBenchmark
+{
+  @Param ({ CBenchmark.FIXTURE_COMPANY_REGISTRATION, CBenchmark.FIXTURE_BIRTH_EVIDENCE })
+  public String fixture;
+
+  private byte [] m_aXML;
+  private String m_sCOTID;
+
+  @Setup
+  public void setup ()
+  {
+    m_aXML = BenchmarkFixtures.getDirectoryResponse (fixture);
+    m_sCOTID = CBenchmark.getCOTID (fixture);
+  }
+
+  @Benchmark
+  public ResultListType readResultList ()
+  {
+    return PDSearchAPIReader.resultListV1 ().read (m_aXML);
+  }
+
+  @Benchmark
+  public DirectoryResults readAndAddMatches ()
+  {
+    final DirectoryResults ret = new DirectoryResults ();
+    ret.addMatches (m_sCOTID, BenchmarkFixtures.readResultList (m_aXML));
+    return ret;
+  }
+}
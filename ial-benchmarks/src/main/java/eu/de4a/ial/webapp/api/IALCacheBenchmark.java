@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.helger.commons.state.ETriState;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.factory.SimpleIdentifierFactory;
+
+import eu.de4a.ial.benchmarks.CBenchmark;
+
+/**
+ * Benchmark of the SMP result cache {@link IALCache} with concurrent readers
+ * and writers.
+ *
+ * @author Philip Helger
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.Throughput)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 3, time = 2)
+@Measurement (iterations = 5, time = 2)
+@Fork (value = 1, jvmArgsAppend = CBenchmark.JVM_ARG_LOG_CONFIG)
+public class IALCacheBenchmark
+{
+  private static final int PARTICIPANT_COUNT = 1_000;
+
+  private IParticipantIdentifier [] m_aParticipantIDs;
+  private IDocumentTypeIdentifier m_aDocTypeID;
+
+  @Setup
+  public void setup ()
+  {
+    IALCache.clearCache ();
+    m_aParticipantIDs = new IParticipantIdentifier [PARTICIPANT_COUNT];
+    for (int i = 0; i < PARTICIPANT_COUNT; ++i)
+      m_aParticipantIDs[i] = SimpleIdentifierFactory.INSTANCE.createParticipantIdentifier ("iso6523-actorid-upis",
+                                                                                          "9999:at" + (1000 + i));
+    m_aDocTypeID = SimpleIdentifierFactory.INSTANCE.createDocumentTypeIdentifier ("urn:de4a-eu:CanonicalEvidenceType",
+                                                                                 "CompanyRegistration:1.0");
+    // Half of the participants are cached
+    for (int i = 0; i < PARTICIPANT_COUNT; i += 2)
+      IALCache.cacheState (m_aParticipantIDs[i], m_aDocTypeID, true);
+  }
+
+  @TearDown
+  public void tearDown ()
+  {
+    IALCache.clearCache ();
+  }
+
+  private IParticipantIdentifier _getRandomParticipantID ()
+  {
+    return m_aParticipantIDs[ThreadLocalRandom.current ().nextInt (PARTICIPANT_COUNT)];
+  }
+
+  @Benchmark
+  @Threads (8)
+  public ETriState getStateOnly ()
+  {
+    return IALCache.getState (_getRandomParticipantID (), m_aDocTypeID);
+  }
+
+  @Benchmark
+  @Group ("readWrite")
+  @GroupThreads (7)
+  public ETriState readWriteGetState ()
+  {
+    return IALCache.getState (_getRandomParticipantID (), m_aDocTypeID);
+  }
+
+  @Benchmark
+  @Group ("readWrite")
+  @GroupThreads (1)
+  public void readWriteCacheState ()
+  {
+    IALCache.cacheState (_getRandomParticipantID (), m_aDocTypeID, ThreadLocalRandom.current ().nextBoolean ());
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.helger.commons.collection.impl.ICommonsList;
+
+import eu.de4a.ial.benchmarks.CBenchmark;
+
+/**
+ * Benchmark of the ATU enrichment of the provisions, which looks up the NUTS
+ * and LAU names and parses the parameter sets.
+ *
+ * @author Philip Helger
+ */
+@State (Scope.Thread)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 3, time = 2)
+@Measurement (iterations = 5, time = 2)
+@Fork (value = 1, jvmArgsAppend = CBenchmark.JVM_ARG_LOG_CONFIG)
+public class ProvisionFactoryBenchmark
+{
+  @Param ({ CBenchmark.FIXTURE_COMPANY_REGISTRATION, CBenchmark.FIXTURE_BIRTH_EVIDENCE })
+  public String fixture;
+
+  private ICommonsList <DirectoryMatch> m_aMatches;
+
+  @Setup
+  public void setup ()
+  {
+    m_aMatches = BenchmarkFixtures.createDirectoryResults (fixture, BenchmarkFixtures.getDirectoryResponse (fixture))
+                                  .getAllMatches ();
+  }
+
+  @Benchmark
+  public void createProvisions (final Blackhole aBH)
+  {
+    for (final DirectoryMatch aMatch : m_aMatches)
+      ProvisionFactory.forEachProvision (BenchmarkFixtures.LOG_PREFIX, aMatch, null, (c, p) -> aBH.consume (p));
+  }
+
+  @Benchmark
+  public void createProvisionsForAtuCode (final Blackhole aBH)
+  {
+    for (final DirectoryMatch aMatch : m_aMatches)
+      ProvisionFactory.forEachProvision (BenchmarkFixtures.LOG_PREFIX, aMatch, "AT1", (c, p) -> aBH.consume (p));
+  }
+
+  @Benchmark
+  public void getAtuCodes (final Blackhole aBH)
+  {
+    for (final DirectoryMatch aMatch : m_aMatches)
+      aMatch.entity.forEach (x -> aBH.consume (ProvisionFactory.getAtuCode (x)));
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.helger.json.serialize.JsonWriterSettings;
+
+import eu.de4a.ial.api.IALCBORCodec;
+import eu.de4a.ial.api.IALJsonCodec;
+import eu.de4a.ial.api.IALMarshaller;
+import eu.de4a.ial.api.jaxb.ResponseLookupRoutingInformationType;
+import eu.de4a.ial.benchmarks.CBenchmark;
+
+/**
+ * Benchmark of the different ways to render a response.
+ *
+ * @author Philip Helger
+ */
+@State (Scope.Thread)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 3, time = 2)
+@Measurement (iterations = 5, time = 2)
+@Fork (value = 1, jvmArgsAppend = CBenchmark.JVM_ARG_LOG_CONFIG)
+public class ResponseRenderingBenchmark
+{
+  private static final JsonWriterSettings JSON_SETTINGS = new JsonWriterSettings ().setIndentEnabled (true);
+
+  @Param ({ CBenchmark.FIXTURE_COMPANY_REGISTRATION, CBenchmark.FIXTURE_BIRTH_EVIDENCE })
+  public String fixture;
+
+  private ResponseLookupRoutingInformationType m_aResponse;
+  private Set <EProvisionField> m_aAllFields;
+
+  @Setup
+  public void setup ()
+  {
+    m_aResponse = BenchmarkFixtures.createResponse (BenchmarkFixtures.createDirectoryResults (fixture,
+                                                                                              BenchmarkFixtures.getDirectoryResponse (fixture)));
+    m_aAllFields = EProvisionField.getAll ();
+    ProvisionFragmentRenderer.clearCache ();
+  }
+
+  @Benchmark
+  public String jsonTree ()
+  {
+    return ApiGetGetAllDOs.getAsJson (m_aResponse).getAsJsonString (JSON_SETTINGS);
+  }
+
+  @Benchmark
+  public byte [] jsonCodec ()
+  {
+    return IALJsonCodec.getAsBytes (m_aResponse);
+  }
+
+  @Benchmark
+  public byte [] jsonFragments ()
+  {
+    return ProvisionFragmentRenderer.getAsJson (m_aResponse, m_aAllFields, null);
+  }
+
+  @Benchmark
+  public byte [] xmlMarshaller ()
+  {
+    return IALMarshaller.responseLookupRoutingInformationMarshaller ().formatted ().getAsBytes (m_aResponse);
+  }
+
+  @Benchmark
+  public byte [] xmlMarshallerNoValidation ()
+  {
+    return IALMarshaller.responseLookupRoutingInformationMarshallerNoValidation ().formatted ().getAsBytes (m_aResponse);
+  }
+
+  @Benchmark
+  public byte [] xmlFragments ()
+  {
+    return ProvisionFragmentRenderer.getAsXML (m_aResponse, true);
+  }
+
+  @Benchmark
+  public byte [] cbor ()
+  {
+    return IALCBORCodec.getAsBytes (m_aResponse);
+  }
+}
@@ -44,6 +44,8 @@ public class ApiClearSmpClientCache implements IAPIExecutor
     LOGGER.info (sLogPrefix + "Clearing IAL cache");
 
     IALCache.clearCache ();
+    IALResponseCache.clearCache ();
+    ProvisionFragmentRenderer.clearCache ();
     aUnifiedResponse.setContentAndCharset ("IAL caches was cleared", StandardCharsets.UTF_8)
                     .setMimeType (CMimeType.TEXT_PLAIN);
   }
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.http.CHttpHeader;
+import com.helger.commons.string.StringHelper;
+import com.helger.json.IJsonArray;
+import com.helger.json.IJsonObject;
+import com.helger.json.JsonArray;
+import com.helger.json.JsonObject;
+import com.helger.json.serialize.JsonWriterSettings;
+import com.helger.photon.api.IAPIDescriptor;
+import com.helger.photon.api.IAPIExecutor;
+import com.helger.photon.app.PhotonUnifiedResponse;
+import com.helger.servlet.response.UnifiedResponse;
+import com.helger.web.scope.IRequestWebScopeWithoutResponse;
+
+import eu.de4a.ial.webapp.api.IALProvisionChangeLog.ChangeSet;
+import eu.de4a.ial.webapp.api.IALProvisionChangeLog.ProvisionChange;
+
+/**
+ * Provide the provision change feed of the provision index. Without the
+ * <code>since</code> parameter only the current change token is returned.
+ * With a token, all changes after that token are returned together with the
+ * token for the next call. If the token is unknown or too old,
+ * <code>resyncRequired</code> is <code>true</code> and the client needs to
+ * reload the complete data, e.g. via <code>/export/provision</code>.
+ *
+ * @author Philip Helger
+ */
+public class ApiGetProvisionChanges implements IAPIExecutor
+{
+  public static final String PARAM_SINCE = "since";
+  public static final String PARAM_MAX = "max";
+  public static final int DEFAULT_MAX_CHANGES = 1000;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (ApiGetProvisionChanges.class);
+
+  public final void invokeAPI (@Nonnull final IAPIDescriptor aAPIDescriptor,
+                               @Nonnull @Nonempty final String sPath,
+                               @Nonnull final Map <String, String> aPathVariables,
+                               @Nonnull final IRequestWebScopeWithoutResponse aRequestScope,
+                               @Nonnull final UnifiedResponse aUnifiedResponse) throws Exception
+  {
+    final String sLogPrefix = "[IAL-" + ApiGetGetAllDOs.COUNTER.incrementAndGet () + "] ";
+
+    final PhotonUnifiedResponse aPUR = (PhotonUnifiedResponse) aUnifiedResponse;
+    aPUR.setJsonWriterSettings (new JsonWriterSettings ().setIndentEnabled (true));
+    aPUR.disableCaching ();
+
+    if (!IALProvisionIndex.isEnabled ())
+      throw new IALBadRequestException ("The provision index is not enabled", aRequestScope);
+
+    final String sSince = aRequestScope.params ().getAsString (PARAM_SINCE);
+    final int nMax = aRequestScope.params ().getAsInt (PARAM_MAX, DEFAULT_MAX_CHANGES);
+    if (nMax <= 0 || nMax > DEFAULT_MAX_CHANGES)
+      throw new IALBadRequestException ("The parameter '" +
+                                        PARAM_MAX +
+                                        "' must be between 1 and " +
+                                        DEFAULT_MAX_CHANGES,
+                                        aRequestScope);
+
+    final IJsonObject aJson = new JsonObject ();
+    if (StringHelper.hasNoText (sSince))
+    {
+      // Just return the starting point
+      aJson.add ("token", IALProvisionIndex.getChangeToken ());
+      aJson.addJson ("changes", new JsonArray ());
+    }
+    else
+    {
+      final ChangeSet aChangeSet = IALProvisionChangeLog.getChangesSince (sSince, nMax);
+      if (aChangeSet == null)
+      {
+        LOGGER.info (sLogPrefix + "The change token '" + sSince + "' is unknown or too old");
+        aJson.add ("resyncRequired", true);
+        aJson.add ("token", IALProvisionIndex.getChangeToken ());
+      }
+      else
+      {
+        LOGGER.info (sLogPrefix +
+                     "Returning " +
+                     aChangeSet.getAllChanges ().size () +
+                     " provision changes since '" +
+                     sSince +
+                     "'");
+        final IJsonArray aJsonChanges = new JsonArray ();
+        for (final ProvisionChange aChange : aChangeSet.getAllChanges ())
+          aJsonChanges.add (new JsonObject ().add ("type", aChange.getType ().getID ())
+                                             .add ("canonicalObjectTypeId", aChange.getCOTID ())
+                                             .add ("countryCode", aChange.getCountryCode ())
+                                             .addJson ("provision",
+                                                       ApiGetGetAllDOs.getProvisionAsJson (aChange.getProvision ())));
+        aJson.add ("resyncRequired", false);
+        aJson.add ("token", aChangeSet.getToken ());
+        aJson.add ("hasMore", aChangeSet.hasMore ());
+        aJson.addJson ("changes", aJsonChanges);
+      }
+    }
+    RenderedResponse.createJson (aJson, null).applyTo (aRequestScope, aPUR);
+
+    // Allow CORS safe calls
+    aPUR.addCustomResponseHeader (CHttpHeader.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+  }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsLinkedHashSet;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsOrderedSet;
+import com.helger.commons.http.CHttp;
+import com.helger.commons.http.CHttpHeader;
+import com.helger.commons.string.StringHelper;
+import com.helger.json.IJsonArray;
+import com.helger.json.IJsonObject;
+import com.helger.json.IJsonValue;
+import com.helger.json.JsonArray;
+import com.helger.json.JsonObject;
+import com.helger.json.serialize.JsonReader;
+import com.helger.json.serialize.JsonWriterSettings;
+import com.helger.photon.api.IAPIDescriptor;
+import com.helger.photon.api.IAPIExecutor;
+import com.helger.photon.app.PhotonUnifiedResponse;
+import com.helger.servlet.response.UnifiedResponse;
+import com.helger.web.scope.IRequestWebScopeWithoutResponse;
+
+import eu.de4a.ial.api.jaxb.ResponseLookupRoutingInformationType;
+import eu.de4a.ial.webapp.config.IALConfig;
+
+/**
+ * Provide the batch query API. The request body is a JSON object like
+ *
+ * <pre>
+ * { "queries": [ { "canonicalObjectTypeIds": [ "a", "b" ], "atuCode": "AT13" }, ... ] }
+ * </pre>
+ *
+ * where <code>atuCode</code> is optional. Each Canonical Object Type is only
+ * queried once in the Directory and each participant is only checked once in
+ * its SMP, independent of the number of queries it is contained in. The JSON
+ * response contains one result per query, in the order of the request.
+ *
+ * @author Philip Helger
+ */
+public class ApiPostBatchLookup implements IAPIExecutor
+{
+  /**
+   * A single query of the batch
+   */
+  private static final class BatchQuery
+  {
+    private final ICommonsOrderedSet <String> m_aCOTIDs;
+    private final String m_sAtuCode;
+    private DirectoryResults m_aDirectoryResults;
+    private ResponseLookupRoutingInformationType m_aResponse;
+
+    BatchQuery (@Nonnull @Nonempty final ICommonsOrderedSet <String> aCOTIDs, @Nullable final String sAtuCode)
+    {
+      m_aCOTIDs = aCOTIDs;
+      m_sAtuCode = sAtuCode;
+    }
+  }
+
+  @Nonnull
+  private static ICommonsList <BatchQuery> _readQueries (@Nonnull final String sLogPrefix,
+                                                        @Nonnull final IRequestWebScopeWithoutResponse aRequestScope) throws Exception
+  {
+    final IJsonObject aJson = JsonReader.builder ()
+                                        .source (aRequestScope.getRequest ().getInputStream (), StandardCharsets.UTF_8)
+                                        .readAsObject ();
+    if (aJson == null)
+      throw new IALBadRequestException ("The request body is not a JSON object", aRequestScope);
+
+    final IJsonArray aJsonQueries = aJson.getAsArray ("queries");
+    if (aJsonQueries == null || aJsonQueries.isEmpty ())
+      throw new IALBadRequestException ("No query was passed", aRequestScope);
+
+    final int nMaxQueries = IALConfig.REST.getBatchMaxQueries ();
+    if (aJsonQueries.size () > nMaxQueries)
+      throw new IALBadRequestException ("At most " + nMaxQueries + " queries may be passed in one batch", aRequestScope);
+
+    final ICommonsList <BatchQuery> ret = new CommonsArrayList <> (aJsonQueries.size ());
+    for (final IJsonObject aJsonQuery : aJsonQueries.iteratorObjects ())
+    {
+      final ICommonsOrderedSet <String> aCOTIDs = new CommonsLinkedHashSet <> ();
+      final IJsonArray aJsonCOTIDs = aJsonQuery.getAsArray ("canonicalObjectTypeIds");
+      if (aJsonCOTIDs != null)
+        for (final IJsonValue aJsonCOTID : aJsonCOTIDs.iteratorValues ())
+        {
+          final String sCOTID = StringHelper.trim (aJsonCOTID.getAsString ());
+          if (StringHelper.hasText (sCOTID))
+            aCOTIDs.add (sCOTID);
+        }
+      if (aCOTIDs.isEmpty ())
+        throw new IALBadRequestException ("No Canonical Object Type ID was passed in query " + (ret.size () + 1),
+                                          aRequestScope);
+
+      final String sRawAtuCode = aJsonQuery.getAsString ("atuCode");
+      final String sAtuCode = StringHelper.hasText (sRawAtuCode) ? ProvisionFactory.unifyATU (sRawAtuCode.trim ())
+                                                                 : null;
+      if (sAtuCode != null)
+        ApiGetGetAllDOs.checkAtuCode (sLogPrefix, sAtuCode, aRequestScope);
+
+      ret.add (new BatchQuery (aCOTIDs, sAtuCode));
+    }
+    if (ret.size () != aJsonQueries.size ())
+      throw new IALBadRequestException ("All queries must be JSON objects", aRequestScope);
+    return ret;
+  }
+
+  public final void invokeAPI (@Nonnull final IAPIDescriptor aAPIDescriptor,
+                               @Nonnull @Nonempty final String sPath,
+                               @Nonnull final Map <String, String> aPathVariables,
+                               @Nonnull final IRequestWebScopeWithoutResponse aRequestScope,
+                               @Nonnull final UnifiedResponse aUnifiedResponse) throws Exception
+  {
+    final String sLogPrefix = "[IAL-" + ApiGetGetAllDOs.COUNTER.incrementAndGet () + "] ";
+
+    final PhotonUnifiedResponse aPUR = (PhotonUnifiedResponse) aUnifiedResponse;
+    aPUR.setJsonWriterSettings (new JsonWriterSettings ().setIndentEnabled (true));
+    aPUR.disableCaching ();
+
+    final String sAPI = "provision-batch";
+    final IALRequestTimings aTimings = new IALRequestTimings (sAPI);
+    final IALRequestSummary aSummary = new IALRequestSummary (sLogPrefix, sAPI);
+
+    final ICommonsList <BatchQuery> aQueries = _readQueries (sLogPrefix, aRequestScope);
+    aSummary.add ("queries", aQueries.size ());
+
+    // Try to answer from the materialized index first
+    if (IALProvisionIndex.isEnabled ())
+    {
+      int nIndexed = 0;
+      for (final BatchQuery aQuery : aQueries)
+      {
+        aQuery.m_aResponse = aTimings.getTimed (EIALPhase.INDEX,
+                                                () -> IALProvisionIndex.createResponseOrNull (aQuery.m_aCOTIDs,
+                                                                                              aQuery.m_sAtuCode));
+        if (aQuery.m_aResponse != null)
+          nIndexed++;
+      }
+      aSummary.add ("indexed", nIndexed);
+    }
+
+    // All COT IDs that need to be queried from the Directory
+    final ICommonsOrderedSet <String> aAllCOTIDs = new CommonsLinkedHashSet <> ();
+    for (final BatchQuery aQuery : aQueries)
+      if (aQuery.m_aResponse == null)
+        aAllCOTIDs.addAll (aQuery.m_aCOTIDs);
+
+    if (aAllCOTIDs.isNotEmpty ())
+    {
+      // Perform one Directory query per Canonical Object Type
+      final DirectoryResults aAllDirectoryResults = aTimings.getTimed (EIALPhase.DIRECTORY,
+                                                                       () -> DirectoryResults.createQueryingDirectory (sLogPrefix,
+                                                                                                                       aAllCOTIDs));
+      aSummary.add ("cotids", aAllCOTIDs.size ()).add ("directory-matches", aAllDirectoryResults.getMatchCount ());
+
+      // Only verify the matches that are relevant for at least one query
+      final ICommonsOrderedSet <DirectoryMatch> aRelevantMatches = new CommonsLinkedHashSet <> ();
+      aTimings.runTimed (EIALPhase.DIRECTORY, () -> {
+        for (final BatchQuery aQuery : aQueries)
+          if (aQuery.m_aResponse == null)
+          {
+            // The first two chars of the ATU code are the country code
+            final String sCountryCode = aQuery.m_sAtuCode == null ? null : aQuery.m_sAtuCode.substring (0, 2);
+            aQuery.m_aDirectoryResults = aAllDirectoryResults.getSubset (aQuery.m_aCOTIDs, sCountryCode);
+            aRelevantMatches.addAll (aQuery.m_aDirectoryResults.getAllMatches ());
+          }
+      });
+
+      // Verify all matches at once, so that each participant is only resolved
+      // once for the whole batch
+      final SMPVerifier aSMPVerifier = new SMPVerifier (sLogPrefix);
+      aTimings.runTimed (EIALPhase.SMP, () -> aSMPVerifier.verify (aRelevantMatches));
+      aSummary.add ("relevant-matches", aRelevantMatches.size ())
+              .add ("cache-hits", aSMPVerifier.getCacheHitCount ())
+              .add ("smp-queries", aSMPVerifier.getSMPCallCount ())
+              .add ("participants", aSMPVerifier.getParticipantCount ());
+
+      aTimings.runTimed (EIALPhase.ENRICHMENT, () -> {
+        for (final BatchQuery aQuery : aQueries)
+          if (aQuery.m_aResponse == null)
+            aQuery.m_aResponse = ProvisionFactory.createResponse (ProvisionFactory.createGroupedProvisions (sLogPrefix,
+                                                                                                            aQuery.m_aDirectoryResults,
+                                                                                                            aQuery.m_sAtuCode));
+      });
+    }
+
+    // Combine all responses
+    final long nRenderStart = System.nanoTime ();
+    final IJsonArray aJsonResults = new JsonArray ();
+    for (final BatchQuery aQuery : aQueries)
+    {
+      ApiGetGetAllDOs.addErrorIfNoMatch (aQuery.m_aResponse,
+                                         StringHelper.getImploded (',', aQuery.m_aCOTIDs),
+                                         aQuery.m_sAtuCode);
+
+      final IJsonObject aJsonResult = new JsonObject ();
+      aJsonResult.addJson ("canonicalObjectTypeIds", new JsonArray ().addAll (aQuery.m_aCOTIDs));
+      if (aQuery.m_sAtuCode != null)
+        aJsonResult.add ("atuCode", aQuery.m_sAtuCode);
+      aJsonResult.addJson ("response", ApiGetGetAllDOs.getAsJson (aQuery.m_aResponse));
+      aJsonResults.add (aJsonResult);
+    }
+    RenderedResponse.createJson (new JsonObject ().addJson ("results", aJsonResults), null)
+                    .applyTo (aRequestScope, aPUR);
+    aTimings.addNanos (EIALPhase.RENDERING, System.nanoTime () - nRenderStart);
+
+    // Allow CORS safe calls
+    aPUR.addCustomResponseHeader (CHttpHeader.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+
+    aTimings.finish ();
+    if (IALConfig.REST.isServerTimingEnabled ())
+      aPUR.addCustomResponseHeader (IALRequestTimings.HEADER_SERVER_TIMING, aTimings.getServerTimingHeaderValue ());
+
+    aSummary.add ("status", CHttp.HTTP_OK).log (aTimings);
+  }
+}
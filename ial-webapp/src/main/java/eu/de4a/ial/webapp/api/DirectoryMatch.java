@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.util.List;
+
+import com.helger.commons.state.ETriState;
+import com.helger.pd.searchapi.v1.EntityType;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+
+/**
+ * Simplified Directory match, containing exactly one document type.
+ *
+ * @author Philip Helger
+ */
+final class DirectoryMatch
+{
+  IParticipantIdentifier participantID;
+  IDocumentTypeIdentifier docTypeID;
+  List <EntityType> entity;
+  // The outcome of the SMP verification - filled by the SMPVerifier
+  ETriState smpState = ETriState.UNDEFINED;
+}
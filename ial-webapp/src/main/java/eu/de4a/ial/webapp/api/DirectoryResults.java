@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsOrderedSet;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.equals.EqualsHelper;
+import com.helger.commons.http.CHttp;
+import com.helger.commons.url.SimpleURL;
+import com.helger.httpclient.HttpClientManager;
+import com.helger.httpclient.response.ExtendedHttpResponseException;
+import com.helger.httpclient.response.ResponseHandlerXml;
+import com.helger.pd.searchapi.PDSearchAPIReader;
+import com.helger.pd.searchapi.v1.EntityType;
+import com.helger.pd.searchapi.v1.IDType;
+import com.helger.pd.searchapi.v1.MatchType;
+import com.helger.pd.searchapi.v1.ResultListType;
+import com.helger.peppolid.CIdentifier;
+import com.helger.peppolid.factory.IIdentifierFactory;
+import com.helger.peppolid.factory.SimpleIdentifierFactory;
+import com.helger.xml.serialize.write.XMLWriter;
+
+import eu.de4a.ial.webapp.config.IALConfig;
+import eu.de4a.ial.webapp.config.IALHttpClientSettings;
+
+/**
+ * The Directory results of a single query, grouped by Canonical Object Type
+ * ID.
+ *
+ * @author Philip Helger
+ */
+final class DirectoryResults
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (DirectoryResults.class);
+  private static final IIdentifierFactory IF = SimpleIdentifierFactory.INSTANCE;
+
+  final ICommonsMap <String, List <DirectoryMatch>> m_aDirectoryResults = new CommonsHashMap <> ();
+  // All COT IDs for which the Directory query failed
+  private final ICommonsSet <String> m_aFailedCOTIDs = new CommonsHashSet <> ();
+
+  DirectoryResults ()
+  {}
+
+  public boolean isEmpty ()
+  {
+    return m_aDirectoryResults.isEmpty ();
+  }
+
+  @Nonnegative
+  public int size ()
+  {
+    return m_aDirectoryResults.size ();
+  }
+
+  /**
+   * @param sCOTID
+   *        The Canonical Object Type ID to check. May be <code>null</code>.
+   * @return <code>true</code> if the Directory query for the provided COT ID
+   *         failed, <code>false</code> if it succeeded or was not performed.
+   */
+  public boolean isQueryFailed (@Nullable final String sCOTID)
+  {
+    return m_aFailedCOTIDs.contains (sCOTID);
+  }
+
+  @Nonnegative
+  public int getMatchCount ()
+  {
+    int ret = 0;
+    for (final List <DirectoryMatch> aMatches : m_aDirectoryResults.values ())
+      ret += aMatches.size ();
+    return ret;
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <DirectoryMatch> getAllMatches ()
+  {
+    final ICommonsList <DirectoryMatch> ret = new CommonsArrayList <> (getMatchCount ());
+    for (final List <DirectoryMatch> aMatches : m_aDirectoryResults.values ())
+      ret.addAll (aMatches);
+    return ret;
+  }
+
+  @Nonnull
+  public Set <Map.Entry <String, List <DirectoryMatch>>> entrySet ()
+  {
+    return m_aDirectoryResults.entrySet ();
+  }
+
+  public void keepOnlyMatchesForCountryCode (@Nonnull final String sLogPrefix, @Nonnull final String sCountryCode)
+  {
+    ValueEnforcer.isTrue (sCountryCode.length () == 2, "Invalid country code");
+
+    for (final Map.Entry <String, List <DirectoryMatch>> aEntry : new CommonsArrayList <> (m_aDirectoryResults.entrySet ()))
+    {
+      final List <DirectoryMatch> aMatches = aEntry.getValue ();
+
+      // Work on a copy
+      for (final DirectoryMatch aMatch : new CommonsArrayList <> (aMatches))
+      {
+        // Work on a copy
+        for (final EntityType aEntity : new CommonsArrayList <> (aMatch.entity))
+        {
+          // Filter out invalid country codes
+          if (!EqualsHelper.equals (aEntity.getCountryCode (), sCountryCode))
+          {
+            if (LOGGER.isDebugEnabled ())
+              LOGGER.debug (sLogPrefix +
+                            "Skipping Entity, because it doesn't match country code '" +
+                            sCountryCode +
+                            "' (has '" +
+                            aEntity.getCountryCode () +
+                            "')");
+            aMatch.entity.remove (aEntity);
+          }
+        }
+
+        if (aMatch.entity.isEmpty ())
+        {
+          if (LOGGER.isDebugEnabled ())
+            LOGGER.debug (sLogPrefix + "Entity List of match is now empty - removing the match");
+          aMatches.remove (aMatch);
+        }
+      }
+
+      if (aMatches.isEmpty ())
+      {
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug (sLogPrefix + "Match List is now empty - removing the result entry");
+        m_aDirectoryResults.remove (aEntry.getKey ());
+      }
+    }
+  }
+
+  /**
+   * Get the results of some COT IDs only, optionally restricted to a country.
+   * Matches are shared with this object if all their entities are contained
+   * and copied otherwise, so this object is not modified.
+   *
+   * @param aCOTIDs
+   *        The COT IDs to be contained. May not be <code>null</code>.
+   * @param sCountryCode
+   *        The country code of the entities to keep. May be <code>null</code>
+   *        to keep all entities.
+   * @return A new object and never <code>null</code>.
+   */
+  @Nonnull
+  public DirectoryResults getSubset (@Nonnull final Set <String> aCOTIDs, @Nullable final String sCountryCode)
+  {
+    final DirectoryResults ret = new DirectoryResults ();
+    for (final String sCOTID : aCOTIDs)
+    {
+      final List <DirectoryMatch> aMatches = m_aDirectoryResults.get (sCOTID);
+      if (aMatches == null)
+        continue;
+
+      if (sCountryCode == null)
+        ret.m_aDirectoryResults.put (sCOTID, aMatches);
+      else
+      {
+        final ICommonsList <DirectoryMatch> aLocalMatches = new CommonsArrayList <> ();
+        for (final DirectoryMatch aMatch : aMatches)
+        {
+          final ICommonsList <EntityType> aEntities = CommonsArrayList.createFiltered (aMatch.entity,
+                                                                                      x -> EqualsHelper.equals (x.getCountryCode (),
+                                                                                                                sCountryCode));
+          if (aEntities.size () == aMatch.entity.size ())
+            aLocalMatches.add (aMatch);
+          else
+            if (aEntities.isNotEmpty ())
+            {
+              final DirectoryMatch dm = new DirectoryMatch ();
+              dm.participantID = aMatch.participantID;
+              dm.docTypeID = aMatch.docTypeID;
+              dm.entity = aEntities;
+              aLocalMatches.add (dm);
+            }
+        }
+        if (aLocalMatches.isNotEmpty ())
+          ret.m_aDirectoryResults.put (sCOTID, aLocalMatches);
+      }
+      if (m_aFailedCOTIDs.contains (sCOTID))
+        ret.m_aFailedCOTIDs.add (sCOTID);
+    }
+    return ret;
+  }
+
+  /**
+   * Add the matches of a parsed Directory search result. All document types
+   * other than the queried one are removed from the matches.
+   *
+   * @param sCOTID
+   *        The queried Canonical Object Type ID. May not be <code>null</code>.
+   * @param aResultList
+   *        The search result. It is modified. May not be <code>null</code>.
+   */
+  void addMatches (@Nonnull final String sCOTID, @Nonnull final ResultListType aResultList)
+  {
+    // Remove all other DocumentTypes then the queried one
+    final ICommonsList <DirectoryMatch> aLocalMatches = new CommonsArrayList <> (aResultList.getMatchCount ());
+    for (final MatchType m : aResultList.getMatch ())
+    {
+      // Make sure the queried Document Type is contained
+      for (final IDType id : new CommonsArrayList <> (m.getDocTypeID ()))
+      {
+        final String sCurID = CIdentifier.getURIEncoded (id.getScheme (), id.getValue ());
+        if (!sCurID.matches (sCOTID))
+          m.getDocTypeID ().remove (id);
+      }
+      if (m.hasNoDocTypeIDEntries ())
+        throw new IllegalStateException ("No document type left after filtering - weird");
+      if (m.getDocTypeIDCount () != 1)
+        throw new IllegalStateException ("Not exactly 1 document type left but " + m.getDocTypeIDCount ());
+
+      // Use simplified match data type
+      final DirectoryMatch dm = new DirectoryMatch ();
+      dm.participantID = IF.createParticipantIdentifier (m.getParticipantID ().getScheme (),
+                                                         m.getParticipantID ().getValue ());
+      dm.docTypeID = IF.createDocumentTypeIdentifier (m.getDocTypeIDAtIndex (0).getScheme (),
+                                                      m.getDocTypeIDAtIndex (0).getValue ());
+      dm.entity = m.getEntity ();
+      aLocalMatches.add (dm);
+    }
+    m_aDirectoryResults.put (sCOTID, aLocalMatches);
+  }
+
+  @Nonnull
+  public static DirectoryResults createQueryingDirectory (@Nonnull final String sLogPrefix,
+                                                          @Nonnull final ICommonsOrderedSet <String> aCOTIDs)
+  {
+    final DirectoryResults ret = new DirectoryResults ();
+    final String sDirectoryBaseURL = IALConfig.Directory.getBaseURL ();
+    try (final HttpClientManager aHCM = HttpClientManager.create (new IALHttpClientSettings ()))
+    {
+      for (final String sCOTID : aCOTIDs)
+      {
+        // Build base URL and fetch all records per HTTP request
+        final SimpleURL aBaseURL = new SimpleURL (sDirectoryBaseURL + "/search/1.0/xml");
+        // More than 1000 is not allowed
+        aBaseURL.add ("rpc", 1000);
+        aBaseURL.add ("doctype", sCOTID);
+
+        // Don't add the country code to the URL, because it would use an "OR"
+        // on DocType and CountryCode, but we need an "AND"
+
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug (sLogPrefix + "Querying Directory for DocTypeID '" + sCOTID + "'");
+
+        final IALDirectoryQueryEvent aEvent = new IALDirectoryQueryEvent ();
+        aEvent.begin ();
+        String sOutcome = IALDirectoryQueryEvent.OUTCOME_ERROR;
+
+        // Main client call
+        try
+        {
+          final String sQueryURL = aBaseURL.getAsStringWithEncodedParameters ();
+          final HttpGet aGet = new HttpGet (sQueryURL);
+          final long nStart = IALMetrics.onUpstreamCallStart (EIALUpstream.DIRECTORY);
+          boolean bSuccess = false;
+          final Document aResponseXML;
+          try
+          {
+            aResponseXML = aHCM.execute (aGet, new ResponseHandlerXml (false));
+            bSuccess = true;
+          }
+          finally
+          {
+            IALMetrics.onUpstreamCallEnd (EIALUpstream.DIRECTORY, sDirectoryBaseURL, nStart, bSuccess);
+          }
+          if (IALTrafficRecorder.isRecording ())
+            IALTrafficRecorder.recordDirectoryResponse (sCOTID,
+                                                        sQueryURL,
+                                                        CHttp.HTTP_OK,
+                                                        XMLWriter.getNodeAsString (aResponseXML));
+
+          // Parse result
+          final ResultListType aDirectoryResultList = PDSearchAPIReader.resultListV1 ().read (aResponseXML);
+          if (aDirectoryResultList != null)
+          {
+            sOutcome = IALDirectoryQueryEvent.OUTCOME_SUCCESS;
+            if (aDirectoryResultList.hasMatchEntries ())
+              ret.addMatches (sCOTID, aDirectoryResultList);
+            else
+              LOGGER.warn (sLogPrefix + "Search results have no matches");
+          }
+          else
+          {
+            LOGGER.error (sLogPrefix + "Failed to parse Directory result as XML");
+            ret.m_aFailedCOTIDs.add (sCOTID);
+          }
+        }
+        catch (final ExtendedHttpResponseException ex)
+        {
+          IALTrafficRecorder.recordDirectoryResponse (sCOTID,
+                                                      aBaseURL.getAsStringWithEncodedParameters (),
+                                                      ex.getStatusCode (),
+                                                      null);
+          LOGGER.error (sLogPrefix + "Failed to query remote Directory", ex);
+          ret.m_aFailedCOTIDs.add (sCOTID);
+        }
+        finally
+        {
+          final List <DirectoryMatch> aCOTMatches = ret.m_aDirectoryResults.get (sCOTID);
+          aEvent.endAndCommit (sCOTID, sDirectoryBaseURL, aCOTMatches == null ? 0 : aCOTMatches.size (), sOutcome);
+        }
+      }
+    }
+    catch (final IOException ex)
+    {
+      throw new UncheckedIOException (ex);
+    }
+    catch (final GeneralSecurityException ex)
+    {
+      throw new IllegalStateException (ex);
+    }
+    return ret;
+  }
+}
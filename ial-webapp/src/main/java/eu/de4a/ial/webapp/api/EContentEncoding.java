@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.lang.EnumHelper;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.StringParser;
+
+/**
+ * The HTTP content encodings supported for API responses, in the order of
+ * preference.
+ *
+ * @author Philip Helger
+ */
+public enum EContentEncoding implements IHasID <String>
+{
+  /** gzip compression */
+  GZIP ("gzip"),
+  /** zlib (deflate) compression */
+  DEFLATE ("deflate"),
+  /** No compression */
+  IDENTITY ("identity");
+
+  private final String m_sID;
+
+  EContentEncoding (@Nonnull @Nonempty final String sID)
+  {
+    m_sID = sID;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  /**
+   * @return <code>true</code> if this encoding compresses the content.
+   */
+  public boolean isCompressed ()
+  {
+    return this != IDENTITY;
+  }
+
+  /**
+   * Encode the provided bytes with this encoding.
+   *
+   * @param aBytes
+   *        The uncompressed bytes. May not be <code>null</code>.
+   * @return The encoded bytes. Never <code>null</code>.
+   */
+  @Nonnull
+  public byte [] encode (@Nonnull final byte [] aBytes)
+  {
+    if (this == IDENTITY)
+      return aBytes;
+
+    // Compressed responses are usually at least 10 times smaller
+    final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream (Math.max (64,
+                                                                                                   aBytes.length / 8));
+    try (final OutputStream aOS = this == GZIP ? new GZIPOutputStream (aBAOS) : new DeflaterOutputStream (aBAOS))
+    {
+      aOS.write (aBytes);
+    }
+    catch (final IOException ex)
+    {
+      throw new UncheckedIOException ("Failed to " + m_sID + " encode " + aBytes.length + " bytes", ex);
+    }
+    return aBAOS.toByteArray ();
+  }
+
+  @Nullable
+  public static EContentEncoding getFromIDOrNull (@Nullable final String sID)
+  {
+    return EnumHelper.getFromIDOrNull (EContentEncoding.class, sID);
+  }
+
+  /**
+   * Determine the best encoding based on the value of the
+   * <code>Accept-Encoding</code> HTTP request header. Between encodings with
+   * the same quality, the order of this enum is used.
+   *
+   * @param sAcceptEncoding
+   *        The header value. May be <code>null</code>.
+   * @return {@link #IDENTITY} if no compression is accepted. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public static EContentEncoding getBestEncoding (@Nullable final String sAcceptEncoding)
+  {
+    if (StringHelper.hasNoText (sAcceptEncoding))
+      return IDENTITY;
+
+    EContentEncoding ret = IDENTITY;
+    double dBestQuality = 0;
+    double dWildcardQuality = -1;
+    boolean bGZipListed = false;
+    boolean bDeflateListed = false;
+    for (final String sPart : StringHelper.getExploded (',', sAcceptEncoding))
+    {
+      // E.g. "gzip;q=0.8"
+      final int nSemi = sPart.indexOf (';');
+      final String sName = (nSemi < 0 ? sPart : sPart.substring (0, nSemi)).trim ().toLowerCase (Locale.ROOT);
+      double dQuality = 1;
+      if (nSemi >= 0)
+      {
+        final String sParam = sPart.substring (nSemi + 1).trim ();
+        if (sParam.startsWith ("q="))
+          dQuality = StringParser.parseDouble (sParam.substring (2).trim (), 0);
+      }
+
+      if ("*".equals (sName))
+        dWildcardQuality = dQuality;
+      else
+      {
+        final EContentEncoding eEncoding = "x-gzip".equals (sName) ? GZIP : getFromIDOrNull (sName);
+        if (eEncoding != null && eEncoding.isCompressed ())
+        {
+          if (eEncoding == GZIP)
+            bGZipListed = true;
+          else
+            bDeflateListed = true;
+          // A quality of 0 means "not acceptable"
+          if (dQuality > dBestQuality ||
+              (dQuality > 0 && dQuality == dBestQuality && eEncoding.ordinal () < ret.ordinal ()))
+          {
+            ret = eEncoding;
+            dBestQuality = dQuality;
+          }
+        }
+      }
+    }
+
+    // The wildcard applies to all encodings not explicitly listed
+    if (dWildcardQuality > dBestQuality)
+    {
+      if (!bGZipListed)
+        ret = GZIP;
+      else
+        if (!bDeflateListed)
+          ret = DEFLATE;
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.lang.EnumHelper;
+import com.helger.commons.name.IHasDisplayName;
+
+/**
+ * The phases of a single provision query that are timed individually.
+ *
+ * @author Philip Helger
+ */
+public enum EIALPhase implements IHasID <String>, IHasDisplayName
+{
+  /** Lookup in the materialized provision index */
+  INDEX ("index", "Provision index"),
+  /** Querying the Directory and filtering the matches */
+  DIRECTORY ("directory", "Directory query"),
+  /** Verifying the matches against the SMPs */
+  SMP ("smp", "SMP verification"),
+  /** Creating the provisions incl. the ATU lookup */
+  ENRICHMENT ("enrich", "ATU enrichment"),
+  /** Serializing and compressing the response */
+  RENDERING ("render", "Rendering"),
+  /** The whole request */
+  TOTAL ("total", "Total");
+
+  private final String m_sID;
+  private final String m_sDisplayName;
+
+  EIALPhase (@Nonnull @Nonempty final String sID, @Nonnull @Nonempty final String sDisplayName)
+  {
+    m_sID = sID;
+    m_sDisplayName = sDisplayName;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getDisplayName ()
+  {
+    return m_sDisplayName;
+  }
+
+  @Nullable
+  public static EIALPhase getFromIDOrNull (@Nullable final String sID)
+  {
+    return EnumHelper.getFromIDOrNull (EIALPhase.class, sID);
+  }
+}
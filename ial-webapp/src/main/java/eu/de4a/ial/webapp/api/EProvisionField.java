@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.lang.EnumHelper;
+
+import eu.de4a.ial.api.IALJsonCodec;
+import eu.de4a.ial.api.jaxb.ProvisionType;
+
+/**
+ * The fields of a provision that can be selected in a query. The IDs are
+ * identical to the JSON property names.
+ *
+ * @author Philip Helger
+ */
+public enum EProvisionField implements IHasID <String>
+{
+  ATU_LEVEL (IALJsonCodec.FIELD_ATU_LEVEL),
+  ATU_CODE (IALJsonCodec.FIELD_ATU_CODE),
+  ATU_LATIN_NAME (IALJsonCodec.FIELD_ATU_LATIN_NAME),
+  DATA_OWNER_ID (IALJsonCodec.FIELD_DATA_OWNER_ID),
+  DATA_OWNER_PREF_LABEL (IALJsonCodec.FIELD_DATA_OWNER_PREF_LABEL),
+  PARAMETER_SETS (IALJsonCodec.FIELD_PARAMETER_SETS);
+
+  private final String m_sID;
+
+  EProvisionField (@Nonnull @Nonempty final String sID)
+  {
+    m_sID = sID;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  /**
+   * @return <code>true</code> if the field is mandatory in the XML Schema.
+   */
+  public boolean isMandatoryInXML ()
+  {
+    return this != PARAMETER_SETS;
+  }
+
+  /**
+   * @return A new set with all fields. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static Set <EProvisionField> getAll ()
+  {
+    return EnumSet.allOf (EProvisionField.class);
+  }
+
+  /**
+   * Create a copy of the provision that only contains the selected fields.
+   * The parameter sets are referenced and not copied.
+   *
+   * @param aProvision
+   *        Source provision. May not be <code>null</code>.
+   * @param aFields
+   *        The fields to copy. May not be <code>null</code>.
+   * @return The new provision. Never <code>null</code>.
+   */
+  @Nonnull
+  public static ProvisionType getProjected (@Nonnull final ProvisionType aProvision,
+                                            @Nonnull final Set <EProvisionField> aFields)
+  {
+    final ProvisionType ret = new ProvisionType ();
+    if (aFields.contains (ATU_LEVEL))
+      ret.setAtuLevel (aProvision.getAtuLevel ());
+    if (aFields.contains (ATU_CODE))
+      ret.setAtuCode (aProvision.getAtuCode ());
+    if (aFields.contains (ATU_LATIN_NAME))
+      ret.setAtuLatinName (aProvision.getAtuLatinName ());
+    if (aFields.contains (DATA_OWNER_ID))
+      ret.setDataOwnerId (aProvision.getDataOwnerId ());
+    if (aFields.contains (DATA_OWNER_PREF_LABEL))
+      ret.setDataOwnerPrefLabel (aProvision.getDataOwnerPrefLabel ());
+    if (aFields.contains (PARAMETER_SETS))
+      ret.getParameterSet ().addAll (aProvision.getParameterSet ());
+    return ret;
+  }
+
+  /**
+   * @param aFields
+   *        The fields to get the IDs of. May not be <code>null</code>.
+   * @return A new set with the IDs of the provided fields, as used by
+   *         {@link IALJsonCodec}. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static Set <String> getAllIDs (@Nonnull final Set <EProvisionField> aFields)
+  {
+    final Set <String> ret = new HashSet <> (aFields.size () * 2);
+    for (final EProvisionField e : aFields)
+      ret.add (e.getID ());
+    return ret;
+  }
+
+  @Nullable
+  public static EProvisionField getFromIDOrNull (@Nullable final String sID)
+  {
+    return EnumHelper.getFromIDOrNull (EProvisionField.class, sID);
+  }
+}
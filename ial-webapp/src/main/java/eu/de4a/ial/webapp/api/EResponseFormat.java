@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.lang.EnumHelper;
+import com.helger.commons.mime.CMimeType;
+import com.helger.commons.mime.IMimeType;
+import com.helger.http.AcceptMimeTypeList;
+
+import eu.de4a.ial.api.IALCBORCodec;
+
+/**
+ * The output formats of the provision API.
+ *
+ * @author Philip Helger
+ */
+public enum EResponseFormat implements IHasID <String>
+{
+  /** Formatted XML according to the IAL XML Schema - the default */
+  XML ("xml", CMimeType.APPLICATION_XML),
+  /** Indented JSON */
+  JSON ("json", CMimeType.APPLICATION_JSON),
+  /** Compact binary CBOR encoding */
+  CBOR ("cbor", IALCBORCodec.MIME_TYPE);
+
+  private final String m_sID;
+  private final IMimeType m_aMimeType;
+
+  EResponseFormat (@Nonnull @Nonempty final String sID, @Nonnull final IMimeType aMimeType)
+  {
+    m_sID = sID;
+    m_aMimeType = aMimeType;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  @Nonnull
+  public IMimeType getMimeType ()
+  {
+    return m_aMimeType;
+  }
+
+  @Nullable
+  public static EResponseFormat getFromIDOrNull (@Nullable final String sID)
+  {
+    return EnumHelper.getFromIDOrNull (EResponseFormat.class, sID);
+  }
+
+  /**
+   * Determine the response format from the HTTP <code>Accept</code> header.
+   * Only a strictly higher quality than XML selects another format.
+   *
+   * @param aAccept
+   *        The accepted MIME types of the request. May not be
+   *        <code>null</code>.
+   * @return The response format to use. Never <code>null</code>.
+   */
+  @Nonnull
+  public static EResponseFormat getFromAccept (@Nonnull final AcceptMimeTypeList aAccept)
+  {
+    EResponseFormat ret = XML;
+    double dBestQuality = aAccept.getQualityOfMimeType (XML.m_aMimeType);
+    for (final EResponseFormat e : values ())
+    {
+      final double dQuality = aAccept.getQualityOfMimeType (e.m_aMimeType);
+      if (dQuality > dBestQuality)
+      {
+        ret = e;
+        dBestQuality = dQuality;
+      }
+    }
+    return ret;
+  }
+}
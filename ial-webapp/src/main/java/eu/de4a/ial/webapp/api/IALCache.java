@@ -20,7 +20,9 @@ package eu.de4a.ial.webapp.api;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
@@ -77,6 +79,9 @@ public final class IALCache
   @GuardedBy ("RW_LOCK")
   private static LocalDateTime s_aNextCacheCleansingDT = PDTFactory.getCurrentLocalDateTime ()
                                                                    .plus (CLEANSING_INTERVAL);
+  private static final LongAdder HIT_COUNT = new LongAdder ();
+  private static final LongAdder MISS_COUNT = new LongAdder ();
+  private static final LongAdder EVICTION_COUNT = new LongAdder ();
 
   private IALCache ()
   {}
@@ -97,6 +102,8 @@ public final class IALCache
     {
       LOGGER.info ("Expiring IAL SMP cache entries if necessary");
       RW_LOCK.writeLocked ( () -> {
+        final IALCacheSweepEvent aEvent = new IALCacheSweepEvent ();
+        aEvent.begin ();
         int nExpired = 0;
         // Iterate on copy
         for (final Map.Entry <String, CacheValue> aEntry : new CommonsHashSet <> (MAP.entrySet ()))
@@ -108,6 +115,14 @@ public final class IALCache
             nExpired++;
           }
         s_aNextCacheCleansingDT = aNow.plus (CLEANSING_INTERVAL);
+        EVICTION_COUNT.add (nExpired);
+        aEvent.end ();
+        if (aEvent.shouldCommit ())
+        {
+          aEvent.expiredCount = nExpired;
+          aEvent.remainingCount = MAP.size ();
+          aEvent.commit ();
+        }
         if (nExpired > 0)
           LOGGER.info ("Expired " + nExpired + " IAL SMP cache entries. " + MAP.size () + " entries left");
       });
@@ -123,6 +138,10 @@ public final class IALCache
     // Main cache lookup
     final String sKey = _getKey (aParticipantID, aDocumentTypeID);
     final CacheValue aValue = RW_LOCK.readLockedGet ( () -> MAP.get (sKey));
+    if (aValue == null)
+      MISS_COUNT.increment ();
+    else
+      HIT_COUNT.increment ();
     return aValue == null ? ETriState.UNDEFINED : ETriState.valueOf (aValue.isFound ());
   }
 
@@ -143,6 +162,44 @@ public final class IALCache
       MAP.clear ();
       return ret2;
     });
+    EVICTION_COUNT.add (ret);
     LOGGER.info ("Finished clearing IAL cache - " + ret + " entries evicted");
   }
+
+  /**
+   * @return The number of entries currently in the cache.
+   */
+  @Nonnegative
+  public static int getSize ()
+  {
+    return RW_LOCK.readLockedInt (MAP::size);
+  }
+
+  /**
+   * @return The number of lookups that found an entry since startup.
+   */
+  @Nonnegative
+  public static long getHitCount ()
+  {
+    return HIT_COUNT.sum ();
+  }
+
+  /**
+   * @return The number of lookups that found no entry since startup.
+   */
+  @Nonnegative
+  public static long getMissCount ()
+  {
+    return MISS_COUNT.sum ();
+  }
+
+  /**
+   * @return The number of entries removed because they expired or the cache
+   *         was cleared since startup.
+   */
+  @Nonnegative
+  public static long getEvictionCount ()
+  {
+    return EVICTION_COUNT.sum ();
+  }
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for the removal of the expired entries of the
+ * {@link IALCache}.
+ *
+ * @author Philip Helger
+ */
+@Name ("eu.de4a.ial.CacheSweep")
+@Label ("IAL Cache Sweep")
+@Category ({ "DE4A", "IAL" })
+@Description ("Removal of the expired SMP lookup cache entries")
+@StackTrace (false)
+final class IALCacheSweepEvent extends Event
+{
+  @Label ("Expired Entries")
+  int expiredCount;
+
+  @Label ("Remaining Entries")
+  int remainingCount;
+}
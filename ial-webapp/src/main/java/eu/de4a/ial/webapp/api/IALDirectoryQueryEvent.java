@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import javax.annotation.Nonnull;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for a single Directory query of one Canonical
+ * Object Type ID.
+ *
+ * @author Philip Helger
+ */
+@Name ("eu.de4a.ial.DirectoryQuery")
+@Label ("Directory Query")
+@Category ({ "DE4A", "IAL" })
+@Description ("A single search call to the Directory")
+@StackTrace (false)
+final class IALDirectoryQueryEvent extends Event
+{
+  static final String OUTCOME_SUCCESS = "success";
+  static final String OUTCOME_ERROR = "error";
+
+  @Label ("Canonical Object Type ID")
+  String cotid;
+
+  @Label ("Directory URL")
+  String directoryUrl;
+
+  @Label ("Match Count")
+  int matchCount;
+
+  @Label ("Outcome")
+  String outcome;
+
+  /**
+   * End the event and commit it, if it is enabled and above the threshold.
+   * The fields are only filled for committed events.
+   *
+   * @param sCOTID
+   *        The queried Canonical Object Type ID. May not be <code>null</code>.
+   * @param sDirectoryURL
+   *        The base URL of the Directory. May not be <code>null</code>.
+   * @param nMatchCount
+   *        The number of matches found.
+   * @param sOutcome
+   *        The outcome of the query. May not be <code>null</code>.
+   */
+  void endAndCommit (@Nonnull final String sCOTID,
+                     @Nonnull final String sDirectoryURL,
+                     final int nMatchCount,
+                     @Nonnull final String sOutcome)
+  {
+    end ();
+    if (shouldCommit ())
+    {
+      cotid = sCOTID;
+      directoryUrl = sDirectoryURL;
+      matchCount = nMatchCount;
+      outcome = sOutcome;
+      commit ();
+    }
+  }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.net.URI;
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.concurrent.BasicThreadFactory;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.datetime.PDTFactory;
+import com.helger.commons.http.CHttp;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.url.SimpleURL;
+import com.helger.commons.url.URLHelper;
+import com.helger.httpclient.HttpClientManager;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.factory.SimpleIdentifierFactory;
+import com.helger.smpclient.bdxr1.BDXRClientReadOnly;
+
+import eu.de4a.ial.webapp.config.IALConfig;
+import eu.de4a.ial.webapp.config.IALHttpClientSettings;
+
+/**
+ * Regularly probes the upstream services of the IAL in the background and
+ * remembers the outcome of the last probe. The Directory is always probed,
+ * BDXL and SMP only if a participant ID is configured. The results are part
+ * of the <code>/status</code> output, so that checking the health of a node
+ * costs nothing on the request path.
+ *
+ * @author Philip Helger
+ */
+@ThreadSafe
+public final class IALHealthProber
+{
+  public static final String PROBE_DIRECTORY = "directory";
+  public static final String PROBE_BDXL = "bdxl";
+  public static final String PROBE_SMP = "smp";
+
+  /**
+   * The result of a single probe.
+   */
+  @Immutable
+  public static final class ProbeResult
+  {
+    private final boolean m_bSuccess;
+    private final long m_nDurationMillis;
+    private final String m_sErrorMessage;
+    private final OffsetDateTime m_aCheckDT;
+
+    ProbeResult (final boolean bSuccess, final long nDurationMillis, @Nullable final String sErrorMessage)
+    {
+      m_bSuccess = bSuccess;
+      m_nDurationMillis = nDurationMillis;
+      m_sErrorMessage = sErrorMessage;
+      m_aCheckDT = PDTFactory.getCurrentOffsetDateTimeUTC ();
+    }
+
+    public boolean isSuccess ()
+    {
+      return m_bSuccess;
+    }
+
+    public long getDurationMillis ()
+    {
+      return m_nDurationMillis;
+    }
+
+    @Nullable
+    public String getErrorMessage ()
+    {
+      return m_sErrorMessage;
+    }
+
+    @Nonnull
+    public OffsetDateTime getCheckDT ()
+    {
+      return m_aCheckDT;
+    }
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (IALHealthProber.class);
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  @GuardedBy ("RW_LOCK")
+  private static ICommonsOrderedMap <String, ProbeResult> s_aResults = new CommonsLinkedHashMap <> ();
+  @GuardedBy ("RW_LOCK")
+  private static ScheduledExecutorService s_aExecutor;
+
+  private IALHealthProber ()
+  {}
+
+  @Nonnull
+  private static ProbeResult _createFailure (final long nStartNanos, @Nonnull final Exception ex)
+  {
+    return new ProbeResult (false,
+                            TimeUnit.NANOSECONDS.toMillis (System.nanoTime () - nStartNanos),
+                            ex.getClass ().getName () + " - " + ex.getMessage ());
+  }
+
+  @Nonnull
+  private static ProbeResult _probeURL (@Nonnull final HttpClientManager aHCM,
+                                        @Nonnull final String sURL,
+                                        final boolean bAllowNotFound)
+  {
+    final long nStart = System.nanoTime ();
+    try
+    {
+      final int nStatusCode = aHCM.execute (new HttpGet (sURL), aHttpResponse -> Integer.valueOf (aHttpResponse.getCode ()))
+                                  .intValue ();
+      final long nMillis = TimeUnit.NANOSECONDS.toMillis (System.nanoTime () - nStart);
+      if (nStatusCode >= CHttp.HTTP_OK && nStatusCode < CHttp.HTTP_BAD_REQUEST)
+        return new ProbeResult (true, nMillis, null);
+      if (bAllowNotFound && nStatusCode == CHttp.HTTP_NOT_FOUND)
+        return new ProbeResult (true, nMillis, null);
+      return new ProbeResult (false, nMillis, "HTTP status code " + nStatusCode);
+    }
+    catch (final Exception ex)
+    {
+      return _createFailure (nStart, ex);
+    }
+  }
+
+  /**
+   * Run all probes once and remember the results. This method is called
+   * regularly in the background after {@link #start()}.
+   */
+  public static void probeAll ()
+  {
+    final ICommonsOrderedMap <String, ProbeResult> aResults = new CommonsLinkedHashMap <> ();
+    try (final HttpClientManager aHCM = HttpClientManager.create (new IALHttpClientSettings ()))
+    {
+      // Directory
+      final String sCOTID = IALConfig.Health.getDirectoryCOTID ();
+      final String sDirectoryURL;
+      if (StringHelper.hasText (sCOTID))
+        sDirectoryURL = new SimpleURL (IALConfig.Directory.getBaseURL () + "/search/1.0/xml").add ("rpc", 1)
+                                                                                              .add ("doctype", sCOTID)
+                                                                                              .getAsStringWithEncodedParameters ();
+      else
+        sDirectoryURL = IALConfig.Directory.getBaseURL () + "/";
+      aResults.put (PROBE_DIRECTORY, _probeURL (aHCM, sDirectoryURL, false));
+
+      // BDXL and SMP
+      final String sParticipantID = IALConfig.Health.getParticipantID ();
+      if (StringHelper.hasText (sParticipantID))
+      {
+        final IParticipantIdentifier aParticipantID = SimpleIdentifierFactory.INSTANCE.parseParticipantIdentifier (sParticipantID);
+        if (aParticipantID == null)
+          aResults.put (PROBE_BDXL, new ProbeResult (false, 0, "Invalid participant ID '" + sParticipantID + "'"));
+        else
+        {
+          final URI aFixedSMPURI = URLHelper.getAsURI (IALConfig.SMP.getFixedURL ());
+          final long nStart = System.nanoTime ();
+          BDXRClientReadOnly aSMPClient = null;
+          try
+          {
+            aSMPClient = SMPVerifier.createSMPClient (aHCM, aFixedSMPURI, aParticipantID);
+            // No DNS lookup with a fixed SMP URL
+            if (aFixedSMPURI == null)
+              aResults.put (PROBE_BDXL,
+                            new ProbeResult (true, TimeUnit.NANOSECONDS.toMillis (System.nanoTime () - nStart), null));
+          }
+          catch (final Exception ex)
+          {
+            aResults.put (PROBE_BDXL, _createFailure (nStart, ex));
+          }
+
+          // The service group is cheap to query - 404 means the SMP is alive
+          if (aSMPClient != null)
+            aResults.put (PROBE_SMP,
+                          _probeURL (aHCM, aSMPClient.getSMPHostURI () + aParticipantID.getURIPercentEncoded (), true));
+        }
+      }
+    }
+    catch (final Exception ex)
+    {
+      LOGGER.error ("Failed to run the health probes", ex);
+    }
+
+    for (final Map.Entry <String, ProbeResult> aEntry : aResults.entrySet ())
+      if (!aEntry.getValue ().isSuccess ())
+        LOGGER.warn ("Health probe '" + aEntry.getKey () + "' failed: " + aEntry.getValue ().getErrorMessage ());
+
+    RW_LOCK.writeLocked ( () -> s_aResults = aResults);
+  }
+
+  /**
+   * Start the background probing, if it is enabled.
+   */
+  public static void start ()
+  {
+    if (!IALConfig.Health.isEnabled ())
+      return;
+
+    final int nIntervalSeconds = IALConfig.Health.getIntervalSeconds ();
+    LOGGER.info ("Starting the health prober with an interval of " + nIntervalSeconds + " seconds");
+
+    RW_LOCK.writeLocked ( () -> {
+      if (s_aExecutor == null)
+      {
+        s_aExecutor = Executors.newSingleThreadScheduledExecutor (BasicThreadFactory.builder ()
+                                                                                    .namingPattern ("IAL-Health-%d")
+                                                                                    .daemon (true)
+                                                                                    .build ());
+        s_aExecutor.scheduleWithFixedDelay (IALHealthProber::probeAll, 0, nIntervalSeconds, TimeUnit.SECONDS);
+      }
+    });
+  }
+
+  /**
+   * Stop the background probing and forget all results.
+   */
+  public static void stop ()
+  {
+    final ScheduledExecutorService aExecutor = RW_LOCK.writeLockedGet ( () -> {
+      final ScheduledExecutorService ret = s_aExecutor;
+      s_aExecutor = null;
+      s_aResults = new CommonsLinkedHashMap <> ();
+      return ret;
+    });
+    if (aExecutor != null)
+    {
+      LOGGER.info ("Stopping the health prober");
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aExecutor);
+    }
+  }
+
+  /**
+   * @return The results of the last probes by probe name. Empty if no probe
+   *         finished so far. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static ICommonsOrderedMap <String, ProbeResult> getAllResults ()
+  {
+    return RW_LOCK.readLockedGet ( () -> s_aResults.getClone ());
+  }
+
+  /**
+   * @param aResults
+   *        The results to check. May not be <code>null</code>.
+   * @return <code>up</code> if all probes succeeded, <code>down</code> if at
+   *         least one failed and <code>unknown</code> if there are no results.
+   */
+  @Nonnull
+  @Nonempty
+  public static String getOverallStatus (@Nonnull final ICommonsOrderedMap <String, ProbeResult> aResults)
+  {
+    if (aResults.isEmpty ())
+      return "unknown";
+    return aResults.containsAnyValue (x -> !x.isSuccess ()) ? "down" : "up";
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+
+/**
+ * Lock-free latency histogram with fixed bucket boundaries from 0.5
+ * milliseconds to 30 seconds. Recording only increments atomic counters, so
+ * that it can be used on every request without contention. Percentiles are
+ * estimated with the upper bound of the bucket they fall into.
+ *
+ * @author Philip Helger
+ */
+@ThreadSafe
+public final class IALLatencyHistogram
+{
+  private static final long [] BUCKET_UPPER_BOUNDS_NANOS;
+  static
+  {
+    final long [] aMicros = { 500,
+                              1_000,
+                              2_500,
+                              5_000,
+                              10_000,
+                              25_000,
+                              50_000,
+                              100_000,
+                              250_000,
+                              500_000,
+                              1_000_000,
+                              2_500_000,
+                              5_000_000,
+                              10_000_000,
+                              30_000_000 };
+    BUCKET_UPPER_BOUNDS_NANOS = new long [aMicros.length];
+    for (int i = 0; i < aMicros.length; ++i)
+      BUCKET_UPPER_BOUNDS_NANOS[i] = TimeUnit.MICROSECONDS.toNanos (aMicros[i]);
+  }
+
+  // One more bucket for all values above the last upper bound
+  private final AtomicLongArray m_aBuckets = new AtomicLongArray (BUCKET_UPPER_BOUNDS_NANOS.length + 1);
+  private final LongAdder m_aCount = new LongAdder ();
+  private final LongAdder m_aSumNanos = new LongAdder ();
+
+  public IALLatencyHistogram ()
+  {}
+
+  /**
+   * @return A copy of the inclusive upper bounds of all buckets in
+   *         nanoseconds, excluding the last bucket that has no upper bound.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static long [] getAllBucketUpperBoundsNanos ()
+  {
+    return BUCKET_UPPER_BOUNDS_NANOS.clone ();
+  }
+
+  /**
+   * Record a single duration.
+   *
+   * @param nNanos
+   *        The duration in nanoseconds. Must be &ge; 0.
+   */
+  public void record (@Nonnegative final long nNanos)
+  {
+    ValueEnforcer.isGE0 (nNanos, "Nanos");
+    int nIndex = 0;
+    while (nIndex < BUCKET_UPPER_BOUNDS_NANOS.length && nNanos > BUCKET_UPPER_BOUNDS_NANOS[nIndex])
+      nIndex++;
+    m_aBuckets.incrementAndGet (nIndex);
+    m_aSumNanos.add (nNanos);
+    m_aCount.increment ();
+  }
+
+  /**
+   * @return The number of recorded durations.
+   */
+  @Nonnegative
+  public long getCount ()
+  {
+    return m_aCount.sum ();
+  }
+
+  /**
+   * @return The sum of all recorded durations in nanoseconds.
+   */
+  @Nonnegative
+  public long getSumNanos ()
+  {
+    return m_aSumNanos.sum ();
+  }
+
+  /**
+   * @return The number of recorded durations per bucket. The array has one
+   *         more element than {@link #getAllBucketUpperBoundsNanos()}, for
+   *         all durations above the last upper bound.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public long [] getAllBucketCounts ()
+  {
+    final long [] ret = new long [m_aBuckets.length ()];
+    for (int i = 0; i < ret.length; ++i)
+      ret[i] = m_aBuckets.get (i);
+    return ret;
+  }
+
+  /**
+   * Estimate a percentile.
+   *
+   * @param dPercentile
+   *        The percentile between 0 and 1, e.g. 0.99.
+   * @return The upper bound of the bucket containing the percentile in
+   *         nanoseconds, 0 if nothing was recorded, or
+   *         {@link Long#MAX_VALUE} if the percentile is above the last upper
+   *         bound.
+   */
+  public long getPercentileNanos (final double dPercentile)
+  {
+    ValueEnforcer.isBetweenInclusive (dPercentile, "Percentile", 0, 1);
+    final long [] aCounts = getAllBucketCounts ();
+    long nTotal = 0;
+    for (final long n : aCounts)
+      nTotal += n;
+    if (nTotal == 0)
+      return 0;
+
+    final long nRank = Math.max (1, (long) Math.ceil (dPercentile * nTotal));
+    long nSum = 0;
+    for (int i = 0; i < BUCKET_UPPER_BOUNDS_NANOS.length; ++i)
+    {
+      nSum += aCounts[i];
+      if (nSum >= nRank)
+        return BUCKET_UPPER_BOUNDS_NANOS[i];
+    }
+    return Long.MAX_VALUE;
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.photon.api.IAPIDescriptor;
+import com.helger.photon.api.IAPIExecutor;
+import com.helger.servlet.response.UnifiedResponse;
+import com.helger.web.scope.IRequestWebScopeWithoutResponse;
+
+/**
+ * An {@link IAPIExecutor} that records the duration and the outcome of each
+ * call of the wrapped executor in {@link IALMetrics}.
+ *
+ * @author Philip Helger
+ */
+public final class IALMeteredAPIExecutor implements IAPIExecutor
+{
+  private final String m_sAPIID;
+  private final IAPIExecutor m_aExecutor;
+
+  public IALMeteredAPIExecutor (@Nonnull @Nonempty final String sAPIID, @Nonnull final IAPIExecutor aExecutor)
+  {
+    ValueEnforcer.notEmpty (sAPIID, "APIID");
+    ValueEnforcer.notNull (aExecutor, "Executor");
+    m_sAPIID = sAPIID;
+    m_aExecutor = aExecutor;
+  }
+
+  public void invokeAPI (@Nonnull final IAPIDescriptor aAPIDescriptor,
+                         @Nonnull @Nonempty final String sPath,
+                         @Nonnull final Map <String, String> aPathVariables,
+                         @Nonnull final IRequestWebScopeWithoutResponse aRequestScope,
+                         @Nonnull final UnifiedResponse aUnifiedResponse) throws Exception
+  {
+    final long nStart = System.nanoTime ();
+    boolean bSuccess = false;
+    try
+    {
+      m_aExecutor.invokeAPI (aAPIDescriptor, sPath, aPathVariables, aRequestScope, aUnifiedResponse);
+      bSuccess = true;
+    }
+    finally
+    {
+      IALMetrics.recordAPICall (m_sAPIID, System.nanoTime () - nStart, bSuccess);
+    }
+  }
+}
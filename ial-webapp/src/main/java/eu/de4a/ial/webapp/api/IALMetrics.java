@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsTreeMap;
+import com.helger.commons.collection.impl.ICommonsSortedMap;
+
+/**
+ * Global runtime metrics of the IAL: calls per API and calls per upstream
+ * host. All values are only increased with atomic or striped counters, so
+ * recording is cheap enough for every request. The values are exposed via
+ * the <code>/metrics</code> servlet.
+ *
+ * @author Philip Helger
+ */
+@ThreadSafe
+public final class IALMetrics
+{
+  /**
+   * The statistics of a single API or a single upstream host.
+   */
+  @ThreadSafe
+  public static final class CallStats
+  {
+    private final LongAdder m_aSuccessCount = new LongAdder ();
+    private final LongAdder m_aErrorCount = new LongAdder ();
+    private final IALLatencyHistogram m_aHistogram = new IALLatencyHistogram ();
+
+    CallStats ()
+    {}
+
+    void record (@Nonnegative final long nNanos, final boolean bSuccess)
+    {
+      if (bSuccess)
+        m_aSuccessCount.increment ();
+      else
+        m_aErrorCount.increment ();
+      m_aHistogram.record (nNanos);
+    }
+
+    @Nonnegative
+    public long getSuccessCount ()
+    {
+      return m_aSuccessCount.sum ();
+    }
+
+    @Nonnegative
+    public long getErrorCount ()
+    {
+      return m_aErrorCount.sum ();
+    }
+
+    @Nonnull
+    public IALLatencyHistogram getHistogram ()
+    {
+      return m_aHistogram;
+    }
+  }
+
+  private static final ConcurrentMap <String, CallStats> API_STATS = new ConcurrentHashMap <> ();
+  private static final Map <EIALUpstream, ConcurrentMap <String, CallStats>> UPSTREAM_STATS = new EnumMap <> (EIALUpstream.class);
+  private static final Map <EIALUpstream, AtomicInteger> UPSTREAM_IN_FLIGHT = new EnumMap <> (EIALUpstream.class);
+  static
+  {
+    for (final EIALUpstream e : EIALUpstream.values ())
+    {
+      UPSTREAM_STATS.put (e, new ConcurrentHashMap <> ());
+      UPSTREAM_IN_FLIGHT.put (e, new AtomicInteger (0));
+    }
+  }
+
+  private IALMetrics ()
+  {}
+
+  /**
+   * Record a finished API call.
+   *
+   * @param sAPIID
+   *        The ID of the API. May neither be <code>null</code> nor empty.
+   * @param nNanos
+   *        The duration of the call in nanoseconds. Must be &ge; 0.
+   * @param bSuccess
+   *        <code>true</code> if the call succeeded, <code>false</code> if it
+   *        failed with an exception.
+   */
+  public static void recordAPICall (@Nonnull @Nonempty final String sAPIID,
+                                    @Nonnegative final long nNanos,
+                                    final boolean bSuccess)
+  {
+    ValueEnforcer.notEmpty (sAPIID, "APIID");
+    API_STATS.computeIfAbsent (sAPIID, k -> new CallStats ()).record (nNanos, bSuccess);
+  }
+
+  /**
+   * Must be called before an upstream HTTP call is started. Each call to
+   * this method must be followed by a call to
+   * {@link #onUpstreamCallEnd(EIALUpstream, String, long, boolean)}.
+   *
+   * @param eUpstream
+   *        The upstream to be called. May not be <code>null</code>.
+   * @return The start time in nanoseconds.
+   */
+  public static long onUpstreamCallStart (@Nonnull final EIALUpstream eUpstream)
+  {
+    UPSTREAM_IN_FLIGHT.get (eUpstream).incrementAndGet ();
+    return System.nanoTime ();
+  }
+
+  /**
+   * Must be called after an upstream HTTP call finished, independent of the
+   * outcome.
+   *
+   * @param eUpstream
+   *        The called upstream. May not be <code>null</code>.
+   * @param sHost
+   *        The base URL of the called host. May neither be <code>null</code>
+   *        nor empty.
+   * @param nStartNanos
+   *        The value returned by {@link #onUpstreamCallStart(EIALUpstream)}.
+   * @param bSuccess
+   *        <code>true</code> if the call succeeded, <code>false</code> if
+   *        not.
+   */
+  public static void onUpstreamCallEnd (@Nonnull final EIALUpstream eUpstream,
+                                        @Nonnull @Nonempty final String sHost,
+                                        final long nStartNanos,
+                                        final boolean bSuccess)
+  {
+    final long nNanos = System.nanoTime () - nStartNanos;
+    UPSTREAM_IN_FLIGHT.get (eUpstream).decrementAndGet ();
+    UPSTREAM_STATS.get (eUpstream).computeIfAbsent (sHost, k -> new CallStats ()).record (nNanos, bSuccess);
+  }
+
+  /**
+   * @return A copy of the statistics of all APIs that were called at least
+   *         once, sorted by API ID. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static ICommonsSortedMap <String, CallStats> getAllAPIStats ()
+  {
+    return new CommonsTreeMap <> (API_STATS);
+  }
+
+  /**
+   * @param eUpstream
+   *        The upstream to query. May not be <code>null</code>.
+   * @return A copy of the statistics of all hosts of the provided upstream
+   *         that were called at least once, sorted by host. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static ICommonsSortedMap <String, CallStats> getAllUpstreamStats (@Nonnull final EIALUpstream eUpstream)
+  {
+    return new CommonsTreeMap <> (UPSTREAM_STATS.get (eUpstream));
+  }
+
+  /**
+   * @param eUpstream
+   *        The upstream to query. May not be <code>null</code>.
+   * @return The number of currently running HTTP calls to the provided
+   *         upstream.
+   */
+  @Nonnegative
+  public static int getUpstreamInFlightCount (@Nonnull final EIALUpstream eUpstream)
+  {
+    return UPSTREAM_IN_FLIGHT.get (eUpstream).get ();
+  }
+}
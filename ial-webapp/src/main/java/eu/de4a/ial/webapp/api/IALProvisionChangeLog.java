@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.lang.EnumHelper;
+import com.helger.commons.string.StringParser;
+
+import eu.de4a.ial.api.jaxb.ProvisionType;
+import eu.de4a.ial.webapp.config.IALConfig;
+
+/**
+ * Bounded, append-only log of the provision changes detected by the
+ * {@link IALProvisionIndex} between two refreshes. Every change has a
+ * monotonic sequence number, and clients use the opaque change token to only
+ * get the changes since their last call. The token contains the start time of
+ * the application, so that tokens of a previous run are detected.
+ *
+ * @author Philip Helger
+ */
+@ThreadSafe
+public final class IALProvisionChangeLog
+{
+  /**
+   * The type of a single provision change.
+   */
+  public enum EProvisionChangeType implements IHasID <String>
+  {
+    /** The provision is new */
+    ADDED ("added"),
+    /** The provision is no longer available */
+    REMOVED ("removed"),
+    /** The provision is still available but e.g. the parameter sets changed */
+    CHANGED ("changed");
+
+    private final String m_sID;
+
+    EProvisionChangeType (@Nonnull @Nonempty final String sID)
+    {
+      m_sID = sID;
+    }
+
+    @Nonnull
+    @Nonempty
+    public String getID ()
+    {
+      return m_sID;
+    }
+
+    @Nullable
+    public static EProvisionChangeType getFromIDOrNull (@Nullable final String sID)
+    {
+      return EnumHelper.getFromIDOrNull (EProvisionChangeType.class, sID);
+    }
+  }
+
+  /**
+   * A single provision change.
+   */
+  @Immutable
+  public static final class ProvisionChange
+  {
+    private final long m_nSequence;
+    private final EProvisionChangeType m_eType;
+    private final String m_sCOTID;
+    private final String m_sCountryCode;
+    private final ProvisionType m_aProvision;
+
+    private ProvisionChange (final long nSequence,
+                             @Nonnull final EProvisionChangeType eType,
+                             @Nonnull final String sCOTID,
+                             @Nonnull final String sCountryCode,
+                             @Nonnull final ProvisionType aProvision)
+    {
+      m_nSequence = nSequence;
+      m_eType = eType;
+      m_sCOTID = sCOTID;
+      m_sCountryCode = sCountryCode;
+      m_aProvision = aProvision;
+    }
+
+    /**
+     * Create a change that is not yet part of the log. The sequence number is
+     * assigned when adding it to the log.
+     */
+    ProvisionChange (@Nonnull final EProvisionChangeType eType,
+                     @Nonnull final String sCOTID,
+                     @Nonnull final String sCountryCode,
+                     @Nonnull final ProvisionType aProvision)
+    {
+      this (-1, eType, sCOTID, sCountryCode, aProvision);
+    }
+
+    public long getSequence ()
+    {
+      return m_nSequence;
+    }
+
+    @Nonnull
+    public EProvisionChangeType getType ()
+    {
+      return m_eType;
+    }
+
+    @Nonnull
+    public String getCOTID ()
+    {
+      return m_sCOTID;
+    }
+
+    @Nonnull
+    public String getCountryCode ()
+    {
+      return m_sCountryCode;
+    }
+
+    /**
+     * @return The new provision, or the last known provision for removals.
+     */
+    @Nonnull
+    public ProvisionType getProvision ()
+    {
+      return m_aProvision;
+    }
+  }
+
+  /**
+   * The changes since a provided change token.
+   */
+  @Immutable
+  public static final class ChangeSet
+  {
+    private final ICommonsList <ProvisionChange> m_aChanges;
+    private final String m_sToken;
+    private final boolean m_bHasMore;
+
+    ChangeSet (@Nonnull final ICommonsList <ProvisionChange> aChanges,
+               @Nonnull final String sToken,
+               final boolean bHasMore)
+    {
+      m_aChanges = aChanges;
+      m_sToken = sToken;
+      m_bHasMore = bHasMore;
+    }
+
+    /**
+     * @return The changes in the order they were detected. Never
+     *         <code>null</code> but maybe empty.
+     */
+    @Nonnull
+    public ICommonsList <ProvisionChange> getAllChanges ()
+    {
+      return m_aChanges;
+    }
+
+    /**
+     * @return The token to be used for the next call. Never <code>null</code>.
+     */
+    @Nonnull
+    public String getToken ()
+    {
+      return m_sToken;
+    }
+
+    /**
+     * @return <code>true</code> if not all changes fitted into this change
+     *         set, and the next call will immediately return more changes.
+     */
+    public boolean hasMore ()
+    {
+      return m_bHasMore;
+    }
+  }
+
+  private static final char TOKEN_SEPARATOR = '-';
+  private static final long EPOCH = System.currentTimeMillis ();
+
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  @GuardedBy ("RW_LOCK")
+  private static final Deque <ProvisionChange> CHANGES = new ArrayDeque <> ();
+  @GuardedBy ("RW_LOCK")
+  private static long s_nLastSequence = 0;
+
+  private IALProvisionChangeLog ()
+  {}
+
+  @Nonnull
+  private static String _createToken (final long nSequence)
+  {
+    return Long.toString (EPOCH, 36) + TOKEN_SEPARATOR + Long.toString (nSequence, 36);
+  }
+
+  /**
+   * Append changes to the log. The oldest entries are dropped if the log
+   * exceeds the configured maximum size.
+   *
+   * @param aChanges
+   *        The changes without sequence number, in the order to be added. May
+   *        not be <code>null</code>.
+   */
+  static void addChanges (@Nonnull final List <ProvisionChange> aChanges)
+  {
+    if (aChanges.isEmpty ())
+      return;
+
+    final int nMaxEntries = Math.max (1, IALConfig.Index.getChangeLogMaxEntries ());
+    RW_LOCK.writeLocked ( () -> {
+      for (final ProvisionChange aChange : aChanges)
+      {
+        CHANGES.addLast (new ProvisionChange (++s_nLastSequence,
+                                              aChange.m_eType,
+                                              aChange.m_sCOTID,
+                                              aChange.m_sCountryCode,
+                                              aChange.m_aProvision));
+      }
+      while (CHANGES.size () > nMaxEntries)
+        CHANGES.removeFirst ();
+    });
+  }
+
+  /**
+   * @return The token representing the current state of the log. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public static String getCurrentToken ()
+  {
+    return RW_LOCK.readLockedGet ( () -> _createToken (s_nLastSequence));
+  }
+
+  /**
+   * Get the changes since the provided token.
+   *
+   * @param sToken
+   *        The token from a previous call. May be <code>null</code>.
+   * @param nMaxChanges
+   *        The maximum number of changes to return. Must be &gt; 0.
+   * @return <code>null</code> if the token is invalid, from a previous run or
+   *         older than the oldest contained change. In this case the client
+   *         needs to reload the complete data.
+   */
+  @Nullable
+  public static ChangeSet getChangesSince (@Nullable final String sToken, @Nonnegative final int nMaxChanges)
+  {
+    if (sToken == null)
+      return null;
+    final int nSep = sToken.indexOf (TOKEN_SEPARATOR);
+    if (nSep < 0)
+      return null;
+    final long nEpoch = StringParser.parseLong (sToken.substring (0, nSep), 36, -1);
+    final long nSince = StringParser.parseLong (sToken.substring (nSep + 1), 36, -1);
+    if (nEpoch != EPOCH || nSince < 0)
+      return null;
+
+    return RW_LOCK.readLockedGet ( () -> {
+      if (nSince > s_nLastSequence)
+        return null;
+
+      // Were changes after the token already dropped?
+      final ProvisionChange aOldest = CHANGES.peekFirst ();
+      final long nOldestSequence = aOldest != null ? aOldest.getSequence () : s_nLastSequence + 1;
+      if (nSince < nOldestSequence - 1)
+        return null;
+
+      final ICommonsList <ProvisionChange> aResult = new CommonsArrayList <> ();
+      long nLastSequence = nSince;
+      boolean bHasMore = false;
+      for (final ProvisionChange aChange : CHANGES)
+        if (aChange.getSequence () > nSince)
+        {
+          if (aResult.size () >= nMaxChanges)
+          {
+            bHasMore = true;
+            break;
+          }
+          aResult.add (aChange);
+          nLastSequence = aChange.getSequence ();
+        }
+      return new ChangeSet (aResult, _createToken (nLastSequence), bHasMore);
+    });
+  }
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.CommonsLinkedHashSet;
+import com.helger.commons.collection.impl.CommonsTreeMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.collection.impl.ICommonsOrderedSet;
+import com.helger.commons.concurrent.BasicThreadFactory;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.timing.StopWatch;
+
+import eu.de4a.ial.api.jaxb.ProvisionType;
+import eu.de4a.ial.api.jaxb.ResponseLookupRoutingInformationType;
+import eu.de4a.ial.webapp.api.IALProvisionChangeLog.EProvisionChangeType;
+import eu.de4a.ial.webapp.api.IALProvisionChangeLog.ProvisionChange;
+import eu.de4a.ial.webapp.config.IALConfig;
+
+/**
+ * Optional materialized index of all verified provisions of the configured
+ * Canonical Object Type IDs. The index is rebuilt in the background, one COT ID
+ * after the other, and each rebuild replaces the immutable snapshot. Queries
+ * that only contain indexed COT IDs can be answered without any Directory or
+ * SMP call.
+ *
+ * @author Philip Helger
+ */
+@ThreadSafe
+public final class IALProvisionIndex
+{
+  /**
+   * The index entry of a single COT ID. Neither the tree nor the contained
+   * provisions are modified after creation.
+   */
+  @Immutable
+  private static final class IndexEntry
+  {
+    private final ProvisionATUTree m_aTree;
+
+    IndexEntry (@Nonnull final ProvisionATUTree aTree)
+    {
+      m_aTree = aTree;
+    }
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (IALProvisionIndex.class);
+  private static final String LOG_PREFIX = "[IAL-Index] ";
+
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  // Copy on write: the map itself is never modified but replaced
+  @GuardedBy ("RW_LOCK")
+  private static ICommonsMap <String, IndexEntry> s_aSnapshot = new CommonsHashMap <> ();
+  @GuardedBy ("RW_LOCK")
+  private static ScheduledExecutorService s_aExecutor;
+
+  private IALProvisionIndex ()
+  {}
+
+  /**
+   * @return <code>true</code> if the provision index is enabled in the
+   *         configuration.
+   */
+  public static boolean isEnabled ()
+  {
+    return IALConfig.Index.isEnabled ();
+  }
+
+  @Nonnull
+  private static ICommonsOrderedMap <String, ProvisionChange> _getAllChanges (@Nonnull final EProvisionChangeType eType,
+                                                                              @Nonnull final String sCOTID,
+                                                                              @Nullable final IndexEntry aEntry)
+  {
+    final ICommonsOrderedMap <String, ProvisionChange> ret = new CommonsLinkedHashMap <> ();
+    if (aEntry != null)
+      aEntry.m_aTree.forEachProvision ( (sCountryCode, aProvision) -> ret.put (sCountryCode +
+                                                                               ' ' +
+                                                                               aProvision.getAtuCode () +
+                                                                               ' ' +
+                                                                               aProvision.getDataOwnerId (),
+                                                                               new ProvisionChange (eType,
+                                                                                                    sCOTID,
+                                                                                                    sCountryCode,
+                                                                                                    aProvision)));
+    return ret;
+  }
+
+  /**
+   * Determine the changes between two index entries of the same COT ID. A
+   * provision is identified by country code, ATU code and Data Owner ID.
+   */
+  @Nonnull
+  private static ICommonsList <ProvisionChange> _getChanges (@Nonnull final String sCOTID,
+                                                             @Nullable final IndexEntry aOldEntry,
+                                                             @Nullable final IndexEntry aNewEntry)
+  {
+    final ICommonsOrderedMap <String, ProvisionChange> aOld = _getAllChanges (EProvisionChangeType.REMOVED,
+                                                                              sCOTID,
+                                                                              aOldEntry);
+    final ICommonsList <ProvisionChange> ret = new CommonsArrayList <> ();
+    for (final Map.Entry <String, ProvisionChange> aEntry : _getAllChanges (EProvisionChangeType.ADDED,
+                                                                            sCOTID,
+                                                                            aNewEntry).entrySet ())
+    {
+      final ProvisionChange aNew = aEntry.getValue ();
+      final ProvisionChange aPrev = aOld.remove (aEntry.getKey ());
+      if (aPrev == null)
+        ret.add (aNew);
+      else
+        if (!aPrev.getProvision ().equals (aNew.getProvision ()))
+          ret.add (new ProvisionChange (EProvisionChangeType.CHANGED,
+                                        sCOTID,
+                                        aNew.getCountryCode (),
+                                        aNew.getProvision ()));
+    }
+    // All remaining ones were removed
+    ret.addAll (aOld.values ());
+    return ret;
+  }
+
+  /**
+   * Rebuild the index entry of a single COT ID. If the Directory query fails,
+   * the previous entry is kept.
+   *
+   * @param sCOTID
+   *        The Canonical Object Type ID to index. May not be <code>null</code>.
+   */
+  static void refresh (@Nonnull final String sCOTID)
+  {
+    final String sLogPrefix = LOG_PREFIX + "[" + sCOTID + "] ";
+    final StopWatch aSW = StopWatch.createdStarted ();
+
+    final DirectoryResults aDirectoryResults = DirectoryResults.createQueryingDirectory (sLogPrefix,
+                                                                                        new CommonsLinkedHashSet <> (sCOTID));
+    if (aDirectoryResults.isQueryFailed (sCOTID))
+    {
+      LOGGER.warn (sLogPrefix + "Directory query failed - keeping the previous index entry");
+      return;
+    }
+
+    // Unchanged participants are usually contained in the IALCache
+    final SMPVerifier aSMPVerifier = new SMPVerifier (sLogPrefix);
+    aSMPVerifier.verify (aDirectoryResults.getAllMatches ());
+
+    final ICommonsMap <String, ICommonsList <ProvisionType>> aPerCountry = ProvisionFactory.createGroupedProvisions (sLogPrefix,
+                                                                                                                      aDirectoryResults,
+                                                                                                                      null)
+                                                                                           .get (sCOTID);
+    final ProvisionATUTree aTree = new ProvisionATUTree ();
+    if (aPerCountry != null)
+      for (final Map.Entry <String, ICommonsList <ProvisionType>> aEntry : aPerCountry.entrySet ())
+        for (final ProvisionType aProvision : aEntry.getValue ())
+          aTree.add (aEntry.getKey (), aProvision);
+    aTree.sortProvisions ();
+    final IndexEntry aNewEntry = new IndexEntry (aTree);
+
+    // Only this thread modifies the index
+    final IndexEntry aOldEntry = RW_LOCK.readLockedGet ( () -> s_aSnapshot.get (sCOTID));
+    final ICommonsList <ProvisionChange> aChanges = _getChanges (sCOTID, aOldEntry, aNewEntry);
+
+    RW_LOCK.writeLocked ( () -> {
+      final ICommonsMap <String, IndexEntry> aNewSnapshot = new CommonsHashMap <> (s_aSnapshot);
+      aNewSnapshot.put (sCOTID, aNewEntry);
+      s_aSnapshot = aNewSnapshot;
+      // Within the same lock, so that the snapshot and the change token match
+      IALProvisionChangeLog.addChanges (aChanges);
+    });
+
+    aSW.stop ();
+    LOGGER.info (sLogPrefix +
+                 "Indexed " +
+                 aTree.getCount () +
+                 " provisions (" +
+                 aChanges.size () +
+                 " changes) with " +
+                 aSMPVerifier.getSMPCallCount () +
+                 " SMP queries - took " +
+                 aSW.getMillis () +
+                 " milliseconds");
+  }
+
+  /**
+   * Rebuild the index entries of all configured COT IDs, one after the other.
+   * COT IDs that are no longer configured are removed from the index.
+   */
+  public static void refreshAll ()
+  {
+    final ICommonsOrderedSet <String> aCOTIDs = IALConfig.Index.getAllCOTIDs ();
+    LOGGER.info (LOG_PREFIX + "Refreshing the provision index for " + aCOTIDs.size () + " COT IDs");
+
+    for (final String sCOTID : aCOTIDs)
+    {
+      try
+      {
+        refresh (sCOTID);
+      }
+      catch (final RuntimeException ex)
+      {
+        // Keep the previous entry and continue with the next one
+        LOGGER.error (LOG_PREFIX + "Failed to refresh the provision index for '" + sCOTID + "'", ex);
+      }
+    }
+
+    RW_LOCK.writeLocked ( () -> {
+      if (!aCOTIDs.containsAll (s_aSnapshot.keySet ()))
+      {
+        final ICommonsMap <String, IndexEntry> aNewSnapshot = new CommonsHashMap <> (s_aSnapshot);
+        aNewSnapshot.removeIfKey (x -> !aCOTIDs.contains (x));
+        for (final Map.Entry <String, IndexEntry> aEntry : s_aSnapshot.entrySet ())
+          if (!aNewSnapshot.containsKey (aEntry.getKey ()))
+            IALProvisionChangeLog.addChanges (_getChanges (aEntry.getKey (), aEntry.getValue (), null));
+        s_aSnapshot = aNewSnapshot;
+      }
+    });
+  }
+
+  /**
+   * Start the background refresh of the index, if it is enabled.
+   */
+  public static void start ()
+  {
+    if (!isEnabled ())
+      return;
+
+    final int nIntervalMinutes = IALConfig.Index.getRefreshIntervalMinutes ();
+    LOGGER.info (LOG_PREFIX + "Starting the provision index with a refresh interval of " + nIntervalMinutes + " minutes");
+
+    RW_LOCK.writeLocked ( () -> {
+      if (s_aExecutor == null)
+      {
+        s_aExecutor = Executors.newSingleThreadScheduledExecutor (BasicThreadFactory.builder ()
+                                                                                    .namingPattern ("IAL-Index-%d")
+                                                                                    .daemon (true)
+                                                                                    .build ());
+        s_aExecutor.scheduleWithFixedDelay (IALProvisionIndex::refreshAll, 0, nIntervalMinutes, TimeUnit.MINUTES);
+      }
+    });
+  }
+
+  /**
+   * Stop the background refresh and clear the index.
+   */
+  public static void stop ()
+  {
+    final ScheduledExecutorService aExecutor = RW_LOCK.writeLockedGet ( () -> {
+      final ScheduledExecutorService ret = s_aExecutor;
+      s_aExecutor = null;
+      s_aSnapshot = new CommonsHashMap <> ();
+      return ret;
+    });
+    if (aExecutor != null)
+    {
+      LOGGER.info (LOG_PREFIX + "Stopping the provision index");
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aExecutor);
+    }
+  }
+
+  /**
+   * @return The number of COT IDs currently contained in the index. Always
+   *         &ge; 0.
+   */
+  @Nonnegative
+  public static int getIndexedCOTIDCount ()
+  {
+    return RW_LOCK.readLockedInt ( () -> s_aSnapshot.size ());
+  }
+
+  /**
+   * @return The change token of {@link IALProvisionChangeLog} that matches the
+   *         current index snapshot. Never <code>null</code>.
+   */
+  @Nonnull
+  public static String getChangeToken ()
+  {
+    return RW_LOCK.readLockedGet (IALProvisionChangeLog::getCurrentToken);
+  }
+
+  /**
+   * Iterate all provisions of all indexed COT IDs, ordered by COT ID, ATU code
+   * and Data Owner ID. The current snapshot is used without copying, so the
+   * memory consumption does not depend on the index size.
+   *
+   * @param aChangeTokenConsumer
+   *        An optional consumer that receives the change token matching the
+   *        iterated snapshot, before the first provision is passed on. May be
+   *        <code>null</code>.
+   * @param aConsumer
+   *        The consumer for each provision. May not be <code>null</code>.
+   */
+  public static void forEachProvision (@Nullable final Consumer <String> aChangeTokenConsumer,
+                                       @Nonnull final ProvisionStreamer.IProvisionConsumer aConsumer)
+  {
+    final String [] aChangeToken = new String [1];
+    final ICommonsMap <String, IndexEntry> aSnapshot = RW_LOCK.readLockedGet ( () -> {
+      aChangeToken[0] = IALProvisionChangeLog.getCurrentToken ();
+      return s_aSnapshot;
+    });
+    if (aChangeTokenConsumer != null)
+      aChangeTokenConsumer.accept (aChangeToken[0]);
+    for (final Map.Entry <String, IndexEntry> aEntry : aSnapshot.getSortedByKey (Comparator.naturalOrder ()).entrySet ())
+    {
+      final String sCOTID = aEntry.getKey ();
+      aEntry.getValue ().m_aTree.forEachProvision ( (sCountryCode, aProvision) -> aConsumer.onProvision (sCOTID,
+                                                                                                         sCountryCode,
+                                                                                                         aProvision));
+    }
+  }
+
+  /**
+   * Answer a query from the index.
+   *
+   * @param aCOTIDs
+   *        The Canonical Object Type IDs to query. May not be
+   *        <code>null</code>.
+   * @param sAtuCode
+   *        The unified ATU code to filter for. May be <code>null</code>.
+   * @return <code>null</code> if at least one of the COT IDs is not indexed.
+   */
+  @Nullable
+  static ResponseLookupRoutingInformationType createResponseOrNull (@Nonnull final ICommonsOrderedSet <String> aCOTIDs,
+                                                                    @Nullable final String sAtuCode)
+  {
+    final ICommonsMap <String, IndexEntry> aSnapshot = RW_LOCK.readLockedGet ( () -> s_aSnapshot);
+
+    final ICommonsMap <String, ICommonsMap <String, ICommonsList <ProvisionType>>> aGroupedMap = new CommonsTreeMap <> ();
+    for (final String sCOTID : aCOTIDs)
+    {
+      final IndexEntry aEntry = aSnapshot.get (sCOTID);
+      if (aEntry == null)
+        return null;
+
+      // Only visits the sub tree of the requested ATU code
+      aGroupedMap.put (sCOTID, aEntry.m_aTree.getAllProvisions (sAtuCode));
+    }
+    return ProvisionFactory.createResponse (aGroupedMap);
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.annotation.Nonempty;
+
+/**
+ * The single summary log line of a request. Instead of logging each step of
+ * a request at INFO level, all counters are collected in this object and
+ * logged once at the end of the request as <code>key=value</code> pairs,
+ * together with the phase durations. The summaries use their own logger, so
+ * that they can be routed separately. If INFO is disabled for that logger,
+ * nothing is collected at all.
+ *
+ * @author Philip Helger
+ */
+@NotThreadSafe
+public final class IALRequestSummary
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (IALRequestSummary.class);
+
+  private final StringBuilder m_aSB;
+
+  /**
+   * @param sLogPrefix
+   *        The log prefix of the request. May not be <code>null</code>.
+   * @param sAPIID
+   *        The ID of the called API. May neither be <code>null</code> nor
+   *        empty.
+   */
+  public IALRequestSummary (@Nonnull final String sLogPrefix, @Nonnull @Nonempty final String sAPIID)
+  {
+    if (LOGGER.isInfoEnabled ())
+    {
+      m_aSB = new StringBuilder (256);
+      m_aSB.append (sLogPrefix).append ("api=").append (sAPIID);
+    }
+    else
+      m_aSB = null;
+  }
+
+  @Nonnull
+  private StringBuilder _key (@Nonnull final String sKey)
+  {
+    return m_aSB.append (' ').append (sKey).append ('=');
+  }
+
+  @Nonnull
+  public IALRequestSummary add (@Nonnull @Nonempty final String sKey, final long nValue)
+  {
+    if (m_aSB != null)
+      _key (sKey).append (nValue);
+    return this;
+  }
+
+  @Nonnull
+  public IALRequestSummary add (@Nonnull @Nonempty final String sKey, final boolean bValue)
+  {
+    if (m_aSB != null)
+      _key (sKey).append (bValue);
+    return this;
+  }
+
+  /**
+   * Add a text value. Values containing spaces or quotes are quoted.
+   *
+   * @param sKey
+   *        The key. May neither be <code>null</code> nor empty.
+   * @param sValue
+   *        The value. May be <code>null</code> in which case <code>-</code>
+   *        is logged.
+   * @return this for chaining
+   */
+  @Nonnull
+  public IALRequestSummary add (@Nonnull @Nonempty final String sKey, @Nullable final String sValue)
+  {
+    if (m_aSB != null)
+    {
+      final StringBuilder aSB = _key (sKey);
+      if (sValue == null)
+        aSB.append ('-');
+      else
+        if (sValue.indexOf (' ') >= 0 || sValue.indexOf ('"') >= 0)
+          aSB.append ('"').append (sValue.replace ("\"", "\\\"")).append ('"');
+        else
+          aSB.append (sValue);
+    }
+    return this;
+  }
+
+  /**
+   * Log the summary at INFO level including the duration of all executed
+   * phases in milliseconds with microsecond precision.
+   *
+   * @param aTimings
+   *        The finished timings of the request. May not be <code>null</code>.
+   */
+  public void log (@Nonnull final IALRequestTimings aTimings)
+  {
+    if (m_aSB != null)
+    {
+      for (final EIALPhase e : EIALPhase.values ())
+        if (aTimings.isPhaseUsed (e) || e == EIALPhase.TOTAL)
+        {
+          // Avoid String.format to keep this cheap
+          final long nMicros = aTimings.getMicros (e);
+          final long nFraction = nMicros % 1000;
+          m_aSB.append (' ')
+               .append (e.getID ())
+               .append ("-ms=")
+               .append (nMicros / 1000)
+               .append ('.')
+               .append (nFraction < 100 ? nFraction < 10 ? "00" : "0" : "")
+               .append (nFraction);
+        }
+      LOGGER.info (m_aSB.toString ());
+    }
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsTreeSet;
+import com.helger.commons.collection.impl.ICommonsSortedSet;
+
+/**
+ * The durations of the phases of a single request. When the request is
+ * finished, the durations are added to the global per API and phase
+ * {@link IALLatencyHistogram} and can be returned to the client in a
+ * <code>Server-Timing</code> HTTP header.
+ *
+ * @author Philip Helger
+ */
+@NotThreadSafe
+public final class IALRequestTimings
+{
+  public static final String HEADER_SERVER_TIMING = "Server-Timing";
+
+  // API ID to the histograms per phase
+  private static final Map <String, Map <EIALPhase, IALLatencyHistogram>> HISTOGRAMS = new ConcurrentHashMap <> ();
+
+  private final String m_sAPI;
+  private final long m_nStartNanos = System.nanoTime ();
+  private final long [] m_aPhaseNanos = new long [EIALPhase.values ().length];
+  private final boolean [] m_aPhaseUsed = new boolean [EIALPhase.values ().length];
+  private long m_nTotalNanos = -1;
+
+  /**
+   * Constructor
+   *
+   * @param sAPI
+   *        The ID of the API that is timed, e.g. <code>provision</code>. The
+   *        histograms are kept separately per API. May neither be
+   *        <code>null</code> nor empty.
+   */
+  public IALRequestTimings (@Nonnull @Nonempty final String sAPI)
+  {
+    ValueEnforcer.notEmpty (sAPI, "API");
+    m_sAPI = sAPI;
+  }
+
+  @Nonnull
+  private static Map <EIALPhase, IALLatencyHistogram> _getHistograms (@Nonnull final String sAPI)
+  {
+    return HISTOGRAMS.computeIfAbsent (sAPI, k -> {
+      final Map <EIALPhase, IALLatencyHistogram> ret = new EnumMap <> (EIALPhase.class);
+      for (final EIALPhase e : EIALPhase.values ())
+        ret.put (e, new IALLatencyHistogram ());
+      return ret;
+    });
+  }
+
+  /**
+   * @return The IDs of all APIs that finished at least one request. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static ICommonsSortedSet <String> getAllAPIs ()
+  {
+    return new CommonsTreeSet <> (HISTOGRAMS.keySet ());
+  }
+
+  /**
+   * @param sAPI
+   *        The ID of the API to query. May not be <code>null</code>.
+   * @param ePhase
+   *        The phase to query. May not be <code>null</code>.
+   * @return The global histogram of the phase of the API. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public static IALLatencyHistogram getHistogram (@Nonnull final String sAPI, @Nonnull final EIALPhase ePhase)
+  {
+    return _getHistograms (sAPI).get (ePhase);
+  }
+
+  /**
+   * Add a duration to a phase. A phase may be executed more than once per
+   * request.
+   *
+   * @param ePhase
+   *        The phase. May not be <code>null</code>.
+   * @param nNanos
+   *        The duration in nanoseconds.
+   */
+  public void addNanos (@Nonnull final EIALPhase ePhase, final long nNanos)
+  {
+    m_aPhaseNanos[ePhase.ordinal ()] += nNanos;
+    m_aPhaseUsed[ePhase.ordinal ()] = true;
+  }
+
+  /**
+   * Run the provided code and add its duration to the phase.
+   *
+   * @param ePhase
+   *        The phase. May not be <code>null</code>.
+   * @param aSupplier
+   *        The code to run. May not be <code>null</code>.
+   * @return The result of the supplier.
+   * @param <T>
+   *        The result type
+   */
+  public <T> T getTimed (@Nonnull final EIALPhase ePhase, @Nonnull final Supplier <T> aSupplier)
+  {
+    final long nStart = System.nanoTime ();
+    try
+    {
+      return aSupplier.get ();
+    }
+    finally
+    {
+      addNanos (ePhase, System.nanoTime () - nStart);
+    }
+  }
+
+  /**
+   * Run the provided code and add its duration to the phase.
+   *
+   * @param ePhase
+   *        The phase. May not be <code>null</code>.
+   * @param aRunnable
+   *        The code to run. May not be <code>null</code>.
+   */
+  public void runTimed (@Nonnull final EIALPhase ePhase, @Nonnull final Runnable aRunnable)
+  {
+    final long nStart = System.nanoTime ();
+    try
+    {
+      aRunnable.run ();
+    }
+    finally
+    {
+      addNanos (ePhase, System.nanoTime () - nStart);
+    }
+  }
+
+  /**
+   * @param ePhase
+   *        The phase to query. May not be <code>null</code>.
+   * @return <code>true</code> if the phase was executed at least once.
+   *         {@link EIALPhase#TOTAL} is used after {@link #finish()}.
+   */
+  public boolean isPhaseUsed (@Nonnull final EIALPhase ePhase)
+  {
+    return m_aPhaseUsed[ePhase.ordinal ()];
+  }
+
+  /**
+   * @param ePhase
+   *        The phase to query. May not be <code>null</code>.
+   * @return The duration of the phase in milliseconds. For
+   *         {@link EIALPhase#TOTAL} the time since the creation of this object
+   *         until {@link #finish()}.
+   */
+  public long getMillis (@Nonnull final EIALPhase ePhase)
+  {
+    return TimeUnit.NANOSECONDS.toMillis (_getNanos (ePhase));
+  }
+
+  /**
+   * @param ePhase
+   *        The phase to query. May not be <code>null</code>.
+   * @return The duration of the phase in microseconds. For
+   *         {@link EIALPhase#TOTAL} the time since the creation of this object
+   *         until {@link #finish()}.
+   */
+  public long getMicros (@Nonnull final EIALPhase ePhase)
+  {
+    return TimeUnit.NANOSECONDS.toMicros (_getNanos (ePhase));
+  }
+
+  private long _getNanos (@Nonnull final EIALPhase ePhase)
+  {
+    if (ePhase == EIALPhase.TOTAL)
+      return m_nTotalNanos >= 0 ? m_nTotalNanos : System.nanoTime () - m_nStartNanos;
+    return m_aPhaseNanos[ePhase.ordinal ()];
+  }
+
+  /**
+   * Finish the request and add the durations of all executed phases to the
+   * global histograms of the API. Must be called only once.
+   */
+  public void finish ()
+  {
+    if (m_nTotalNanos >= 0)
+      throw new IllegalStateException ("The request timings were already finished");
+    m_nTotalNanos = System.nanoTime () - m_nStartNanos;
+    m_aPhaseUsed[EIALPhase.TOTAL.ordinal ()] = true;
+
+    final Map <EIALPhase, IALLatencyHistogram> aHistograms = _getHistograms (m_sAPI);
+    for (final EIALPhase e : EIALPhase.values ())
+      if (m_aPhaseUsed[e.ordinal ()])
+        aHistograms.get (e).record (_getNanos (e));
+  }
+
+  /**
+   * @return The value of the <code>Server-Timing</code> HTTP header with all
+   *         executed phases in milliseconds, e.g.
+   *         <code>directory;desc="Directory query";dur=12.345</code>. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @Nonempty
+  public String getServerTimingHeaderValue ()
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    for (final EIALPhase e : EIALPhase.values ())
+      if (m_aPhaseUsed[e.ordinal ()] || e == EIALPhase.TOTAL)
+      {
+        if (aSB.length () > 0)
+          aSB.append (", ");
+        aSB.append (e.getID ())
+           .append (";desc=\"")
+           .append (e.getDisplayName ())
+           .append ("\";dur=")
+           .append (String.format (Locale.ROOT, "%.3f", Double.valueOf (_getNanos (e) / 1_000_000d)));
+      }
+    return aSB.toString ();
+  }
+}
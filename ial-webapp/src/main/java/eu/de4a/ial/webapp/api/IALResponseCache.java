@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+
+import eu.de4a.ial.webapp.config.IALConfig;
+
+/**
+ * Cache for rendered API responses, including their compressed variants. Only
+ * responses created from the {@link IALProvisionIndex} are cached, and the
+ * change token of the index is part of the cache key, so that entries are
+ * implicitly outdated when the index changes. The least recently used entries
+ * are evicted first.
+ *
+ * @author Philip Helger
+ */
+@ThreadSafe
+public final class IALResponseCache
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (IALResponseCache.class);
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  @GuardedBy ("RW_LOCK")
+  private static final Map <String, RenderedResponse> MAP = new LinkedHashMap <> (16, 0.75f, true);
+
+  private IALResponseCache ()
+  {}
+
+  /**
+   * @return <code>true</code> if the response cache is enabled.
+   */
+  public static boolean isEnabled ()
+  {
+    return IALConfig.REST.getResponseCacheMaxEntries () > 0;
+  }
+
+  /**
+   * Get a cached response.
+   *
+   * @param sKey
+   *        The cache key. May not be <code>null</code>.
+   * @return <code>null</code> if no such response is cached.
+   */
+  @Nullable
+  public static RenderedResponse getCachedResponse (@Nonnull final String sKey)
+  {
+    // Write lock, because the access order is updated
+    return RW_LOCK.writeLockedGet ( () -> MAP.get (sKey));
+  }
+
+  /**
+   * Put a response into the cache and evict the least recently used entries
+   * if the configured maximum is exceeded.
+   *
+   * @param sKey
+   *        The cache key. May not be <code>null</code>.
+   * @param aResponse
+   *        The response to cache. May not be <code>null</code>.
+   */
+  public static void cacheResponse (@Nonnull final String sKey, @Nonnull final RenderedResponse aResponse)
+  {
+    final int nMaxEntries = IALConfig.REST.getResponseCacheMaxEntries ();
+    if (nMaxEntries <= 0)
+      return;
+
+    RW_LOCK.writeLocked ( () -> {
+      MAP.put (sKey, aResponse);
+      while (MAP.size () > nMaxEntries)
+        MAP.remove (MAP.keySet ().iterator ().next ());
+    });
+  }
+
+  /**
+   * @return The number of cached responses.
+   */
+  public static int getCachedResponseCount ()
+  {
+    return RW_LOCK.readLockedInt (MAP::size);
+  }
+
+  public static void clearCache ()
+  {
+    LOGGER.info ("Clearing IAL response cache");
+    final int ret = RW_LOCK.writeLockedInt ( () -> {
+      final int ret2 = MAP.size ();
+      MAP.clear ();
+      return ret2;
+    });
+    LOGGER.info ("Finished clearing IAL response cache - " + ret + " entries evicted");
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.state.ETriState;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for a single SMP service metadata query of one
+ * participant and document type.
+ *
+ * @author Philip Helger
+ */
+@Name ("eu.de4a.ial.SMPQuery")
+@Label ("SMP Query")
+@Category ({ "DE4A", "IAL" })
+@Description ("A single service metadata call to an SMP")
+@StackTrace (false)
+final class IALSMPQueryEvent extends Event
+{
+  @Label ("Participant ID")
+  String participantId;
+
+  @Label ("Document Type ID")
+  String documentTypeId;
+
+  @Label ("SMP Host")
+  String smpHost;
+
+  @Label ("Outcome")
+  @Description ("One of 'found', 'not-found', 'undefined' or 'error'")
+  String outcome;
+
+  @Nonnull
+  private static String _getOutcome (@Nullable final ETriState eState)
+  {
+    if (eState == null)
+      return "error";
+    if (eState.isUndefined ())
+      return "undefined";
+    return eState.isTrue () ? "found" : "not-found";
+  }
+
+  /**
+   * End the event and commit it, if it is enabled and above the threshold.
+   * The fields are only filled for committed events.
+   *
+   * @param aParticipantID
+   *        The queried participant ID. May not be <code>null</code>.
+   * @param aDocTypeID
+   *        The queried document type ID. May not be <code>null</code>.
+   * @param sSMPHost
+   *        The URL of the SMP. May not be <code>null</code>.
+   * @param eState
+   *        The state of the process ID check. <code>null</code> if the query
+   *        failed.
+   */
+  void endAndCommit (@Nonnull final IParticipantIdentifier aParticipantID,
+                     @Nonnull final IDocumentTypeIdentifier aDocTypeID,
+                     @Nonnull final String sSMPHost,
+                     @Nullable final ETriState eState)
+  {
+    end ();
+    if (shouldCommit ())
+    {
+      participantId = aParticipantID.getURIEncoded ();
+      documentTypeId = aDocTypeID.getURIEncoded ();
+      smpHost = sSMPHost;
+      outcome = _getOutcome (eState);
+      commit ();
+    }
+  }
+}
@@ -0,0 +1,414 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.concurrent.BasicThreadFactory;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.io.file.FileHelper;
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.state.ETriState;
+import com.helger.commons.string.StringHelper;
+import com.helger.json.IJsonObject;
+import com.helger.json.JsonObject;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.photon.io.WebFileIO;
+
+import eu.de4a.ial.webapp.config.IALConfig;
+
+/**
+ * Optional recorder of the production traffic, to replay the real query mix
+ * in performance tests. Every <code>/provision</code> request is written with
+ * its normalized path, query string, Accept header and duration. Additionally
+ * the Directory responses and SMP results are written, whenever they differ
+ * from the last recorded answer, so that the upstream systems can be stubbed
+ * during the replay.<br>
+ * The records are written as gzip compressed JSON lines to the folder
+ * <code>traffic</code> of the data path. The request threads only queue the
+ * records, a background thread writes and flushes them periodically. If the
+ * queue is full, records are dropped. The recording stops when the configured
+ * maximum number of records is reached.
+ *
+ * @author Philip Helger
+ */
+@ThreadSafe
+public final class IALTrafficRecorder
+{
+  public static final String TRAFFIC_FOLDER = "traffic";
+
+  public static final String FIELD_TYPE = "type";
+  public static final String FIELD_TIME = "time";
+  public static final String FIELD_PATH = "path";
+  public static final String FIELD_QUERY = "query";
+  public static final String FIELD_ACCEPT = "accept";
+  public static final String FIELD_DURATION_MILLIS = "durationMillis";
+  public static final String FIELD_COTID = "canonicalObjectTypeId";
+  public static final String FIELD_STATUS_CODE = "statusCode";
+  public static final String FIELD_XML = "xml";
+  public static final String FIELD_PARTICIPANT_ID = "participantId";
+  public static final String FIELD_DOCTYPE_ID = "docTypeId";
+  public static final String FIELD_STATE = "state";
+
+  public static final String TYPE_REQUEST = "request";
+  public static final String TYPE_DIRECTORY = "directory";
+  public static final String TYPE_SMP = "smp";
+
+  /** The maximum number of records waiting to be written */
+  public static final int QUEUE_CAPACITY = 10_000;
+  /** The interval in which the queued records are written */
+  public static final long FLUSH_INTERVAL_MILLIS = 1_000;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (IALTrafficRecorder.class);
+
+  private static final Lock LOCK = new ReentrantLock ();
+  @GuardedBy ("LOCK")
+  private static Writer s_aWriter;
+  @GuardedBy ("LOCK")
+  private static ScheduledExecutorService s_aExecutor;
+  private static volatile boolean s_bRecording = false;
+  private static final BlockingQueue <IJsonObject> QUEUE = new LinkedBlockingQueue <> (QUEUE_CAPACITY);
+  private static final AtomicInteger RECORD_COUNT = new AtomicInteger (0);
+  private static final AtomicInteger DROPPED_COUNT = new AtomicInteger (0);
+  // Digest of the last recorded Directory response per Directory query
+  private static final Map <String, String> DIRECTORY_DIGESTS = new ConcurrentHashMap <> ();
+  // Last recorded SMP state per participant and document type
+  private static final Map <String, ETriState> SMP_STATES = new ConcurrentHashMap <> ();
+
+  private IALTrafficRecorder ()
+  {}
+
+  /**
+   * @return <code>true</code> if the traffic is currently recorded.
+   */
+  public static boolean isRecording ()
+  {
+    return s_bRecording;
+  }
+
+  /**
+   * @return The number of records accepted since the start.
+   */
+  @Nonnegative
+  public static int getRecordCount ()
+  {
+    return RECORD_COUNT.get ();
+  }
+
+  /**
+   * @return The number of records dropped since the start, because the writer
+   *         could not keep up.
+   */
+  @Nonnegative
+  public static int getDroppedCount ()
+  {
+    return DROPPED_COUNT.get ();
+  }
+
+  /**
+   * Start recording into a new file, if enabled in the configuration.
+   */
+  public static void start ()
+  {
+    if (!IALConfig.Recorder.isEnabled ())
+      return;
+
+    final String sFilename = TRAFFIC_FOLDER +
+                             "/ial-traffic-" +
+                             DateTimeFormatter.ofPattern ("yyyyMMdd-HHmmss").format (LocalDateTime.now ()) +
+                             ".ndjson.gz";
+    final File aFile = WebFileIO.getDataIO ().getFile (sFilename);
+    FileOperationManager.INSTANCE.createDirRecursiveIfNotExisting (aFile.getParentFile ());
+
+    LOCK.lock ();
+    try
+    {
+      if (s_aWriter == null && s_aExecutor == null)
+      {
+        // Sync flush, so that the file can be read while recording
+        s_aWriter = new OutputStreamWriter (new GZIPOutputStream (FileHelper.getBufferedOutputStream (aFile), true),
+                                            StandardCharsets.UTF_8);
+        QUEUE.clear ();
+        RECORD_COUNT.set (0);
+        DROPPED_COUNT.set (0);
+        DIRECTORY_DIGESTS.clear ();
+        SMP_STATES.clear ();
+        s_aExecutor = Executors.newSingleThreadScheduledExecutor (BasicThreadFactory.builder ()
+                                                                                    .namingPattern ("IAL-Recorder-%d")
+                                                                                    .daemon (true)
+                                                                                    .build ());
+        s_aExecutor.scheduleWithFixedDelay (IALTrafficRecorder::_writeQueued,
+                                            FLUSH_INTERVAL_MILLIS,
+                                            FLUSH_INTERVAL_MILLIS,
+                                            TimeUnit.MILLISECONDS);
+        s_bRecording = true;
+        LOGGER.info ("Recording the IAL traffic to '" + aFile.getAbsolutePath () + "'");
+      }
+    }
+    catch (final IOException ex)
+    {
+      LOGGER.error ("Failed to start recording the IAL traffic to '" + aFile.getAbsolutePath () + "'", ex);
+    }
+    finally
+    {
+      LOCK.unlock ();
+    }
+  }
+
+  /**
+   * Stop recording, write all queued records and close the file.
+   */
+  public static void stop ()
+  {
+    s_bRecording = false;
+    final ScheduledExecutorService aExecutor;
+    LOCK.lock ();
+    try
+    {
+      aExecutor = s_aExecutor;
+      s_aExecutor = null;
+    }
+    finally
+    {
+      LOCK.unlock ();
+    }
+    if (aExecutor != null)
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aExecutor);
+
+    // Closes the file
+    _writeQueued ();
+  }
+
+  /**
+   * Write all queued records and flush them. Called regularly by the
+   * background thread. Closes the file, if the recording was stopped.
+   */
+  private static void _writeQueued ()
+  {
+    final List <IJsonObject> aRecords = new ArrayList <> ();
+    QUEUE.drainTo (aRecords);
+
+    LOCK.lock ();
+    try
+    {
+      if (s_aWriter != null)
+      {
+        if (!aRecords.isEmpty ())
+        {
+          for (final IJsonObject aRecord : aRecords)
+          {
+            s_aWriter.write (aRecord.getAsJsonString ());
+            s_aWriter.write ('\n');
+          }
+          // One sync flush per batch
+          s_aWriter.flush ();
+        }
+
+        if (!s_bRecording)
+        {
+          StreamHelper.close (s_aWriter);
+          s_aWriter = null;
+          LOGGER.info ("Stopped recording the IAL traffic after " +
+                       RECORD_COUNT.get () +
+                       " records" +
+                       (DROPPED_COUNT.get () > 0 ? " - " + DROPPED_COUNT.get () + " records were dropped" : ""));
+        }
+      }
+    }
+    catch (final IOException ex)
+    {
+      LOGGER.error ("Failed to write IAL traffic records", ex);
+    }
+    finally
+    {
+      LOCK.unlock ();
+    }
+  }
+
+  /**
+   * Queue a single record for writing.
+   *
+   * @param aRecord
+   *        The record to write. May not be <code>null</code>.
+   * @return <code>true</code> if the record was queued, <code>false</code> if
+   *         it was dropped because the queue is full.
+   */
+  private static boolean _write (@Nonnull final IJsonObject aRecord)
+  {
+    aRecord.add (FIELD_TIME, System.currentTimeMillis ());
+    if (!QUEUE.offer (aRecord))
+    {
+      DROPPED_COUNT.incrementAndGet ();
+      return false;
+    }
+
+    if (RECORD_COUNT.incrementAndGet () >= IALConfig.Recorder.getMaxRecords () && s_bRecording)
+    {
+      // The background thread writes the remaining records and closes the file
+      s_bRecording = false;
+      LOGGER.info ("The maximum number of IAL traffic records was reached");
+    }
+    return true;
+  }
+
+  @Nonnull
+  private static String _getDigest (final int nStatusCode, @Nullable final String sXML)
+  {
+    try
+    {
+      final MessageDigest aMD = MessageDigest.getInstance ("SHA-256");
+      aMD.update (Integer.toString (nStatusCode).getBytes (StandardCharsets.UTF_8));
+      if (sXML != null)
+      {
+        aMD.update ((byte) '\n');
+        aMD.update (sXML.getBytes (StandardCharsets.UTF_8));
+      }
+      return StringHelper.getHexEncoded (aMD.digest ());
+    }
+    catch (final NoSuchAlgorithmException ex)
+    {
+      throw new IllegalStateException ("SHA-256 is not supported", ex);
+    }
+  }
+
+  /**
+   * Record a single <code>/provision</code> request.
+   *
+   * @param sPath
+   *        The normalized path, without the API prefix. May not be
+   *        <code>null</code>.
+   * @param sQueryString
+   *        The query string of the request. May be <code>null</code>.
+   * @param sAccept
+   *        The Accept HTTP header. May be <code>null</code>.
+   * @param nDurationMillis
+   *        The duration of the request in milliseconds.
+   */
+  public static void recordRequest (@Nonnull final String sPath,
+                                    @Nullable final String sQueryString,
+                                    @Nullable final String sAccept,
+                                    final long nDurationMillis)
+  {
+    if (s_bRecording)
+      _write (new JsonObject ().add (FIELD_TYPE, TYPE_REQUEST)
+                               .add (FIELD_PATH, sPath)
+                               .addIfNotNull (FIELD_QUERY, sQueryString)
+                               .addIfNotNull (FIELD_ACCEPT, sAccept)
+                               .add (FIELD_DURATION_MILLIS, nDurationMillis));
+  }
+
+  /**
+   * Record a Directory response, if it differs from the last recorded one.
+   *
+   * @param sCOTID
+   *        The queried Canonical Object Type ID. May not be <code>null</code>.
+   * @param sQuery
+   *        The full Directory query URL. May not be <code>null</code>.
+   * @param nStatusCode
+   *        The HTTP status code of the Directory.
+   * @param sXML
+   *        The response XML. May be <code>null</code> in case of an error.
+   */
+  public static void recordDirectoryResponse (@Nonnull final String sCOTID,
+                                              @Nonnull final String sQuery,
+                                              final int nStatusCode,
+                                              @Nullable final String sXML)
+  {
+    if (!s_bRecording)
+      return;
+
+    final String sDigest = _getDigest (nStatusCode, sXML);
+    if (!sDigest.equals (DIRECTORY_DIGESTS.put (sQuery, sDigest)) &&
+        !_write (new JsonObject ().add (FIELD_TYPE, TYPE_DIRECTORY)
+                                  .add (FIELD_COTID, sCOTID)
+                                  .add (FIELD_QUERY, sQuery)
+                                  .add (FIELD_STATUS_CODE, nStatusCode)
+                                  .addIfNotNull (FIELD_XML, sXML)))
+    {
+      // Dropped - make sure the next identical response is recorded again
+      DIRECTORY_DIGESTS.remove (sQuery, sDigest);
+    }
+  }
+
+  /**
+   * Record the result of an SMP query, if it differs from the last recorded
+   * one.
+   *
+   * @param aParticipantID
+   *        The queried participant ID. May not be <code>null</code>.
+   * @param aDocTypeID
+   *        The queried document type ID. May not be <code>null</code>.
+   * @param eState
+   *        {@link ETriState#TRUE} if the process was found,
+   *        {@link ETriState#FALSE} if not, {@link ETriState#UNDEFINED} if the
+   *        service metadata was not found or the query failed.
+   */
+  public static void recordSMPState (@Nonnull final IParticipantIdentifier aParticipantID,
+                                     @Nonnull final IDocumentTypeIdentifier aDocTypeID,
+                                     @Nonnull final ETriState eState)
+  {
+    if (!s_bRecording)
+      return;
+
+    final String sParticipantID = aParticipantID.getURIEncoded ();
+    final String sDocTypeID = aDocTypeID.getURIEncoded ();
+    final String sKey = sParticipantID + ' ' + sDocTypeID;
+    if (SMP_STATES.put (sKey, eState) != eState &&
+        !_write (new JsonObject ().add (FIELD_TYPE, TYPE_SMP)
+                                  .add (FIELD_PARTICIPANT_ID, sParticipantID)
+                                  .add (FIELD_DOCTYPE_ID, sDocTypeID)
+                                  .add (FIELD_STATE,
+                                        eState.isDefined () ? Boolean.toString (eState.isTrue ()) : "undefined")))
+    {
+      // Dropped - make sure the next identical state is recorded again
+      SMP_STATES.remove (sKey, eState);
+    }
+  }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsOrderedSet;
+import com.helger.commons.concurrent.BasicThreadFactory;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.masterdata.nuts.LauManager;
+import com.helger.masterdata.nuts.NutsManager;
+
+import eu.de4a.ial.api.IALCBORCodec;
+import eu.de4a.ial.api.IALJsonCodec;
+import eu.de4a.ial.api.IALMarshaller;
+import eu.de4a.ial.api.jaxb.AtuLevelType;
+import eu.de4a.ial.api.jaxb.ProvisionType;
+import eu.de4a.ial.api.jaxb.ResponseLookupRoutingInformationType;
+import eu.de4a.ial.webapp.config.IALConfig;
+
+/**
+ * Initializes the expensive components of the IAL in the background directly
+ * after startup, so that the first requests don't pay for it: the NUTS and LAU
+ * data, the SMP truststore, the JAXB contexts and the response renderers. The
+ * rendering is executed repeatedly to give the JIT compiler a chance, and
+ * optionally the Directory and SMPs are queried for configured Canonical
+ * Object Type IDs to fill the {@link IALCache}. Until the warm-up is finished,
+ * the node is not ready. If one of the components cannot be initialized, the
+ * node stays not ready and the error is part of the status.
+ *
+ * @author Philip Helger
+ */
+@ThreadSafe
+public final class IALWarmUp
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (IALWarmUp.class);
+  private static final String LOG_PREFIX = "[IAL-warmup] ";
+  private static final String SAMPLE_COTID = "urn:de4a-eu:CanonicalEvidenceType::CompanyRegistration:1.0";
+
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  @GuardedBy ("RW_LOCK")
+  private static ExecutorService s_aExecutor;
+  @GuardedBy ("RW_LOCK")
+  private static boolean s_bReady = false;
+  @GuardedBy ("RW_LOCK")
+  private static long s_nDurationMillis = -1;
+  @GuardedBy ("RW_LOCK")
+  private static String s_sErrorMessage;
+
+  private IALWarmUp ()
+  {}
+
+  @Nonnull
+  private static ResponseLookupRoutingInformationType _createSampleResponse ()
+  {
+    final ProvisionType aProvision = new ProvisionType ();
+    aProvision.setAtuLevel (AtuLevelType.NUTS_0);
+    aProvision.setAtuCode ("AT");
+    aProvision.setAtuLatinName ("Österreich");
+    aProvision.setDataOwnerId ("iso6523-actorid-upis::9999:at000000271");
+    aProvision.setDataOwnerPrefLabel ("Warm-up");
+
+    final ICommonsList <ProvisionType> aProvisions = new CommonsArrayList <> (aProvision);
+    final ICommonsMap <String, ICommonsList <ProvisionType>> aPerCountry = new CommonsHashMap <> ();
+    aPerCountry.put ("AT", aProvisions);
+    final ICommonsMap <String, ICommonsMap <String, ICommonsList <ProvisionType>>> aGrouped = new CommonsHashMap <> ();
+    aGrouped.put (SAMPLE_COTID, aPerCountry);
+    return ProvisionFactory.createResponse (aGrouped);
+  }
+
+  private static void _warmUpRendering (@Nonnegative final int nIterations)
+  {
+    for (int i = 0; i < nIterations; ++i)
+    {
+      final ResponseLookupRoutingInformationType aResponse = _createSampleResponse ();
+      if (ProvisionFragmentRenderer.isEnabled ())
+      {
+        // The regular rendering of XML and JSON responses
+        ProvisionFragmentRenderer.getAsXML (aResponse, true);
+        ProvisionFragmentRenderer.getAsJson (aResponse, EProvisionField.getAll (), null);
+      }
+      // Used if fragments cannot be used
+      IALMarshaller.responseLookupRoutingInformationMarshaller ().formatted ().getAsBytes (aResponse);
+      IALJsonCodec.getAsBytes (aResponse);
+      IALCBORCodec.getAsBytes (aResponse);
+
+      // The "no match" response is also rendered regularly
+      final ResponseLookupRoutingInformationType aErrorResponse = new ResponseLookupRoutingInformationType ();
+      ApiGetGetAllDOs.addErrorIfNoMatch (aErrorResponse, SAMPLE_COTID, null);
+      IALMarshaller.responseLookupRoutingInformationMarshallerNoValidation ().getAsBytes (aErrorResponse);
+      IALJsonCodec.getAsBytes (aErrorResponse);
+    }
+    // The fragments of the sample provision stay in the bounded LRU cache and
+    // are evicted once real provisions need the space
+  }
+
+  private static void _fillCache (@Nonnull final ICommonsOrderedSet <String> aCOTIDs)
+  {
+    final DirectoryResults aDirectoryResults = DirectoryResults.createQueryingDirectory (LOG_PREFIX, aCOTIDs);
+    final SMPVerifier aSMPVerifier = new SMPVerifier (LOG_PREFIX);
+    aSMPVerifier.verify (aDirectoryResults.getAllMatches ());
+    LOGGER.info (LOG_PREFIX +
+                 "Filled the SMP cache with " +
+                 aSMPVerifier.getSMPCallCount () +
+                 " SMP queries for " +
+                 aDirectoryResults.getMatchCount () +
+                 " Directory matches");
+  }
+
+  /**
+   * Run the warm-up once on the calling thread. The IAL is ready afterwards,
+   * unless one of the components could not be initialized. A failure to fill
+   * the cache doesn't prevent the readiness.
+   */
+  public static void warmUp ()
+  {
+    final long nStart = System.nanoTime ();
+    String sErrorMessage = null;
+    try
+    {
+      // NUTS and LAU data
+      NutsManager.INSTANCE_2021.isIDValid ("AT");
+      LauManager.INSTANCE_2021.isIDValid ("AT");
+
+      // Loads the SMP truststore
+      new SMPVerifier (LOG_PREFIX);
+
+      // JAXB contexts and renderers
+      _warmUpRendering (Math.max (IALConfig.WarmUp.getRenderIterations (), 1));
+    }
+    catch (final Throwable t)
+    {
+      // E.g. an ExceptionInInitializerError if the truststore cannot be loaded
+      LOGGER.error (LOG_PREFIX + "Failed to initialize the IAL - the IAL is not ready", t);
+      sErrorMessage = t.getClass ().getName () + ": " + t.getMessage ();
+    }
+
+    if (sErrorMessage == null)
+    {
+      final ICommonsOrderedSet <String> aCOTIDs = IALConfig.WarmUp.getAllCOTIDs ();
+      if (aCOTIDs.isNotEmpty ())
+        try
+        {
+          _fillCache (aCOTIDs);
+        }
+        catch (final Exception ex)
+        {
+          LOGGER.warn (LOG_PREFIX + "Failed to fill the SMP cache", ex);
+        }
+    }
+
+    final long nMillis = TimeUnit.NANOSECONDS.toMillis (System.nanoTime () - nStart);
+    final String sFinalErrorMessage = sErrorMessage;
+    RW_LOCK.writeLocked ( () -> {
+      s_bReady = sFinalErrorMessage == null;
+      s_nDurationMillis = nMillis;
+      s_sErrorMessage = sFinalErrorMessage;
+    });
+    LOGGER.info (LOG_PREFIX + "Finished warm-up after " + nMillis + " milliseconds");
+  }
+
+  /**
+   * Start the background warm-up. If it is disabled, the IAL is ready
+   * immediately.
+   */
+  public static void start ()
+  {
+    if (!IALConfig.WarmUp.isEnabled ())
+    {
+      RW_LOCK.writeLocked ( () -> s_bReady = true);
+      return;
+    }
+
+    LOGGER.info ("Starting the warm-up in the background");
+    RW_LOCK.writeLocked ( () -> {
+      if (s_aExecutor == null)
+      {
+        s_aExecutor = Executors.newSingleThreadExecutor (BasicThreadFactory.builder ()
+                                                                           .namingPattern ("IAL-WarmUp-%d")
+                                                                           .daemon (true)
+                                                                           .build ());
+        s_aExecutor.submit (IALWarmUp::warmUp);
+      }
+    });
+  }
+
+  /**
+   * Stop a running warm-up and reset the readiness.
+   */
+  public static void stop ()
+  {
+    final ExecutorService aExecutor = RW_LOCK.writeLockedGet ( () -> {
+      final ExecutorService ret = s_aExecutor;
+      s_aExecutor = null;
+      s_bReady = false;
+      s_nDurationMillis = -1;
+      s_sErrorMessage = null;
+      return ret;
+    });
+    if (aExecutor != null)
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aExecutor);
+  }
+
+  /**
+   * @return <code>true</code> if the warm-up is finished or disabled and the
+   *         IAL can serve requests with full speed.
+   */
+  public static boolean isReady ()
+  {
+    return RW_LOCK.readLockedBoolean ( () -> s_bReady);
+  }
+
+  /**
+   * @return The duration of the warm-up in milliseconds or -1 if it is not
+   *         finished or was not executed.
+   */
+  public static long getDurationMillis ()
+  {
+    return RW_LOCK.readLockedLong ( () -> s_nDurationMillis);
+  }
+
+  /**
+   * @return The error that prevents the readiness or <code>null</code> if the
+   *         warm-up succeeded or is not finished.
+   */
+  @Nullable
+  public static String getErrorMessage ()
+  {
+    return RW_LOCK.readLockedGet ( () -> s_sErrorMessage);
+  }
+}
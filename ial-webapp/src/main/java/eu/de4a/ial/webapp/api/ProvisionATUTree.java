@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsTreeMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+
+import eu.de4a.ial.api.jaxb.ProvisionType;
+
+/**
+ * Hierarchical index of provisions by ATU code. The first level contains the
+ * two character country code (NUTS 0), and every further character of the ATU
+ * code is a separate level. As every NUTS level adds exactly one character,
+ * the levels are NUTS 0 &rarr; NUTS 1 &rarr; NUTS 2 &rarr; NUTS 3 and LAU
+ * codes continue below that. A query for an ATU code therefore descends
+ * directly to the respective sub tree and only visits the matching
+ * provisions.<br>
+ * The tree is filled once and is only read afterwards.
+ *
+ * @author Philip Helger
+ */
+@NotThreadSafe
+final class ProvisionATUTree
+{
+  private static final Comparator <ProvisionType> PROVISION_ORDER = Comparator.comparing (ProvisionType::getDataOwnerId);
+  private static final int NUTS0_LENGTH = 2;
+
+  private static final class Node
+  {
+    // Sorted, so that a depth-first traversal returns the ATU codes in order
+    private final ICommonsMap <String, Node> m_aChildren = new CommonsTreeMap <> ();
+    // Country code to provisions with exactly the ATU code of this node
+    private ICommonsMap <String, ICommonsList <ProvisionType>> m_aPerCountry;
+
+    void collect (@Nonnull final Map <String, ICommonsList <ProvisionType>> aTarget)
+    {
+      if (m_aPerCountry != null)
+        for (final Map.Entry <String, ICommonsList <ProvisionType>> aEntry : m_aPerCountry.entrySet ())
+          aTarget.computeIfAbsent (aEntry.getKey (), k -> new CommonsArrayList <> ()).addAll (aEntry.getValue ());
+      for (final Node aChild : m_aChildren.values ())
+        aChild.collect (aTarget);
+    }
+
+    void forEach (@Nonnull final BiConsumer <String, ProvisionType> aConsumer)
+    {
+      if (m_aPerCountry != null)
+        for (final Map.Entry <String, ICommonsList <ProvisionType>> aEntry : m_aPerCountry.entrySet ())
+          for (final ProvisionType aProvision : aEntry.getValue ())
+            aConsumer.accept (aEntry.getKey (), aProvision);
+      for (final Node aChild : m_aChildren.values ())
+        aChild.forEach (aConsumer);
+    }
+
+    void sort ()
+    {
+      if (m_aPerCountry != null)
+        for (final ICommonsList <ProvisionType> aProvisions : m_aPerCountry.values ())
+          aProvisions.getSortedInline (PROVISION_ORDER);
+      for (final Node aChild : m_aChildren.values ())
+        aChild.sort ();
+    }
+  }
+
+  private final Node m_aRoot = new Node ();
+  private int m_nCount = 0;
+
+  @Nonnegative
+  private static int _getNextLevelEnd (@Nonnull final String sAtuCode, @Nonnegative final int nLevelStart)
+  {
+    // The first level is the country code
+    return nLevelStart == 0 ? Math.min (NUTS0_LENGTH, sAtuCode.length ()) : nLevelStart + 1;
+  }
+
+  /**
+   * Add a single provision. The ATU code of the provision is used as the key.
+   *
+   * @param sCountryCode
+   *        The country code to group the provision in the response. May not be
+   *        <code>null</code>.
+   * @param aProvision
+   *        The provision to add. May not be <code>null</code>.
+   */
+  void add (@Nonnull final String sCountryCode, @Nonnull final ProvisionType aProvision)
+  {
+    final String sAtuCode = aProvision.getAtuCode ();
+    Node aNode = m_aRoot;
+    int nStart = 0;
+    while (nStart < sAtuCode.length ())
+    {
+      final int nEnd = _getNextLevelEnd (sAtuCode, nStart);
+      aNode = aNode.m_aChildren.computeIfAbsent (sAtuCode.substring (nStart, nEnd), k -> new Node ());
+      nStart = nEnd;
+    }
+    if (aNode.m_aPerCountry == null)
+      aNode.m_aPerCountry = new CommonsTreeMap <> ();
+    aNode.m_aPerCountry.computeIfAbsent (sCountryCode, k -> new CommonsArrayList <> ()).add (aProvision);
+    m_nCount++;
+  }
+
+  /**
+   * Sort the provisions of each ATU code by Data Owner ID. Must be called after
+   * all provisions were added.
+   */
+  void sortProvisions ()
+  {
+    m_aRoot.sort ();
+  }
+
+  /**
+   * @return The number of contained provisions. Always &ge; 0.
+   */
+  @Nonnegative
+  int getCount ()
+  {
+    return m_nCount;
+  }
+
+  /**
+   * Iterate all provisions ordered by ATU code and Data Owner ID, without
+   * creating any intermediate collection.
+   *
+   * @param aConsumer
+   *        The consumer that is invoked with the country code and the
+   *        provision. May not be <code>null</code>.
+   */
+  void forEachProvision (@Nonnull final BiConsumer <String, ProvisionType> aConsumer)
+  {
+    m_aRoot.forEach (aConsumer);
+  }
+
+  /**
+   * Get all provisions with an ATU code that starts with the provided ATU
+   * code.
+   *
+   * @param sAtuCode
+   *        The unified ATU code to search. May be <code>null</code> to get all
+   *        provisions.
+   * @return A sorted map from country code to the matching provisions, ordered
+   *         by ATU code and Data Owner ID. Never <code>null</code> but maybe
+   *         empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  ICommonsMap <String, ICommonsList <ProvisionType>> getAllProvisions (@Nullable final String sAtuCode)
+  {
+    final ICommonsMap <String, ICommonsList <ProvisionType>> ret = new CommonsTreeMap <> ();
+    Node aNode = m_aRoot;
+    if (sAtuCode != null)
+    {
+      int nStart = 0;
+      while (aNode != null && nStart < sAtuCode.length ())
+      {
+        final int nEnd = _getNextLevelEnd (sAtuCode, nStart);
+        aNode = aNode.m_aChildren.get (sAtuCode.substring (nStart, nEnd));
+        nStart = nEnd;
+      }
+    }
+    if (aNode != null)
+      aNode.collect (ret);
+    return ret;
+  }
+}
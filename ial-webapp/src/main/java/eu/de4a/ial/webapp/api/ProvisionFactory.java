@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.collection.CollectionHelper;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsTreeMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.string.StringHelper;
+import com.helger.json.IJsonArray;
+import com.helger.json.IJsonObject;
+import com.helger.json.serialize.JsonReader;
+import com.helger.masterdata.nuts.ENutsLevel;
+import com.helger.masterdata.nuts.ILauManager;
+import com.helger.masterdata.nuts.INutsManager;
+import com.helger.masterdata.nuts.LauItem;
+import com.helger.masterdata.nuts.LauManager;
+import com.helger.masterdata.nuts.NutsItem;
+import com.helger.masterdata.nuts.NutsManager;
+import com.helger.pd.searchapi.v1.EntityType;
+import com.helger.pd.searchapi.v1.IDType;
+import com.helger.peppolid.IParticipantIdentifier;
+
+import eu.de4a.ial.api.jaxb.AtuLevelType;
+import eu.de4a.ial.api.jaxb.ParameterSetType;
+import eu.de4a.ial.api.jaxb.ParameterType;
+import eu.de4a.ial.api.jaxb.ProvisionType;
+import eu.de4a.ial.api.jaxb.ResponseItemType;
+import eu.de4a.ial.api.jaxb.ResponseLookupRoutingInformationType;
+import eu.de4a.ial.api.jaxb.ResponsePerCountryType;
+
+/**
+ * Create the IAL response data types from verified Directory matches.
+ *
+ * @author Philip Helger
+ */
+@Immutable
+final class ProvisionFactory
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (ProvisionFactory.class);
+
+  private ProvisionFactory ()
+  {}
+
+  /**
+   * Ensure the ATU code is upper case for consistent comparison
+   *
+   * @param s
+   *        ATU code to unify. May not be <code>null</code>.
+   * @return The unified ATU code
+   */
+  @Nonnull
+  static String unifyATU (@Nonnull final String s)
+  {
+    return s.toUpperCase (Locale.ROOT);
+  }
+
+  /**
+   * Get the unified ATU code of the provided entity.
+   *
+   * @param aEntity
+   *        The Directory entity. May not be <code>null</code>.
+   * @return The "atuCode" identifier of the entity or the country code as a
+   *         fallback.
+   */
+  @Nonnull
+  static String getAtuCode (@Nonnull final EntityType aEntity)
+  {
+    // Check if this Entity has a specific "atuCode" defined
+    String sMatchAtuCode = CollectionHelper.findFirstMapped (aEntity.getIdentifier (),
+                                                             x -> "atuCode".equals (x.getScheme ()),
+                                                             IDType::getValue);
+    if (StringHelper.hasNoText (sMatchAtuCode))
+    {
+      // Fallback on country code
+      sMatchAtuCode = aEntity.getCountryCode ();
+    }
+    return unifyATU (sMatchAtuCode);
+  }
+
+  /**
+   * Create a single provision, including the ATU metadata and the parameter
+   * sets.
+   *
+   * @param sLogPrefix
+   *        Log prefix. May not be <code>null</code>.
+   * @param aParticipantID
+   *        The participant ID of the Data Owner. May not be <code>null</code>.
+   * @param aEntity
+   *        The Directory entity. May not be <code>null</code>.
+   * @param sMatchAtuCode
+   *        The unified ATU code of the entity as returned by
+   *        {@link #getAtuCode(EntityType)}. May not be <code>null</code>.
+   * @return The new provision and never <code>null</code>.
+   */
+  @Nonnull
+  static ProvisionType createProvision (@Nonnull final String sLogPrefix,
+                                        @Nonnull final IParticipantIdentifier aParticipantID,
+                                        @Nonnull final EntityType aEntity,
+                                        @Nonnull final String sMatchAtuCode)
+  {
+    final INutsManager aNutsMgr = NutsManager.INSTANCE_2021;
+    final ILauManager aLauMgr = LauManager.INSTANCE_2021;
+    final ENutsLevel eNutsLevel = ENutsLevel.getFromLengthOrNull (sMatchAtuCode.length ());
+
+    final ProvisionType aProvision = new ProvisionType ();
+    final AtuLevelType eMatchAtuLevel;
+    final String sMatchAtuName;
+    if (eNutsLevel == null)
+    {
+      // Assume "LAU" code if nuts level is null
+      // Check if it is a LAU
+      final LauItem aLauItem = aLauMgr.getItemOfID (sMatchAtuCode);
+      if (aLauItem != null)
+      {
+        eMatchAtuLevel = AtuLevelType.LAU;
+        sMatchAtuName = aLauItem.getLatinDisplayName ();
+      }
+      else
+      {
+        // Fallback: assume EDU
+        eMatchAtuLevel = AtuLevelType.EDU;
+        // TODO
+        sMatchAtuName = "EDU - dunno";
+      }
+    }
+    else
+    {
+      final NutsItem aNutsItem = aNutsMgr.getItemOfID (sMatchAtuCode);
+      if (aNutsItem != null)
+        sMatchAtuName = aNutsItem.getLatinDisplayName ();
+      else
+        sMatchAtuName = "Unknown NUTS code '" + sMatchAtuCode + "'";
+
+      switch (eNutsLevel)
+      {
+        case COUNTRY:
+          eMatchAtuLevel = AtuLevelType.NUTS_0;
+          break;
+        case NUTS1:
+          eMatchAtuLevel = AtuLevelType.NUTS_1;
+          break;
+        case NUTS2:
+          eMatchAtuLevel = AtuLevelType.NUTS_2;
+          break;
+        case NUTS3:
+          eMatchAtuLevel = AtuLevelType.NUTS_3;
+          break;
+        default:
+          throw new IllegalStateException (sLogPrefix + "Dunno level " + eNutsLevel);
+      }
+    }
+
+    aProvision.setAtuLevel (eMatchAtuLevel);
+    aProvision.setAtuCode (sMatchAtuCode);
+    aProvision.setAtuLatinName (sMatchAtuName);
+    aProvision.setDataOwnerId (aParticipantID.getScheme () + "::" + aParticipantID.getValue ());
+    aProvision.setDataOwnerPrefLabel (aEntity.getNameAtIndex (0).getValue ());
+
+    if (StringHelper.hasText (aEntity.getAdditionalInfo ()))
+    {
+      // Parse additional, optional, JSON - unlikely to ever be used
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug (sLogPrefix + "Trying to parse additional information as JSON");
+
+      /**
+       * [ { "title": "ES/BirthEvidence/BirthRegister", "parameterList": [ {
+       * "name": "ES/Register/Volume", "optional": false } ] } ]
+       */
+      final IJsonArray aJsonParamSets = JsonReader.builder ().source (aEntity.getAdditionalInfo ()).readAsArray ();
+      if (aJsonParamSets != null && aJsonParamSets.isNotEmpty ())
+      {
+        for (final IJsonObject aJsonParamSet : aJsonParamSets.iteratorObjects ())
+        {
+          if (aJsonParamSet.containsKey ("title") && aJsonParamSet.containsKey ("parameterList"))
+          {
+            final ParameterSetType aParamSet = new ParameterSetType ();
+            aParamSet.setTitle (aJsonParamSet.getAsString ("title"));
+            final IJsonArray aJsonParamList = aJsonParamSet.getAsArray ("parameterList");
+            if (aJsonParamList != null)
+              for (final IJsonObject aJsonParam : aJsonParamList.iteratorObjects ())
+              {
+                final ParameterType aParam = new ParameterType ();
+                aParam.setName (aJsonParam.getAsString ("name"));
+                aParam.setOptional (aJsonParam.getAsBoolean ("optional", false));
+                aParamSet.addParameter (aParam);
+              }
+
+            if (StringHelper.hasNoText (aParamSet.getTitle ()))
+              LOGGER.warn (sLogPrefix + "JSON parameter set object has an empty title");
+            else
+              if (aParamSet.hasNoParameterEntries ())
+                LOGGER.warn (sLogPrefix + "JSON parameter set object has no parameter set entry");
+              else
+                aProvision.addParameterSet (aParamSet);
+          }
+          else
+          {
+            LOGGER.warn (sLogPrefix + "JSON parameter set object is missing title and/or parameterList");
+          }
+        }
+      }
+      else
+      {
+        LOGGER.warn (sLogPrefix + "Failed to read additional information as JSON array");
+      }
+    }
+    return aProvision;
+  }
+
+  /**
+   * Create the provisions of all verified matches, grouped by Canonical Object
+   * Type ID and country code.
+   *
+   * @param sLogPrefix
+   *        Log prefix. May not be <code>null</code>.
+   * @param aDirectoryResults
+   *        The Directory results with the SMP state already verified. May not
+   *        be <code>null</code>.
+   * @param sAtuCode
+   *        The unified ATU code to filter for. May be <code>null</code> to not
+   *        filter.
+   * @return A sorted map from COT ID to a sorted map from country code to the
+   *         list of provisions. Never <code>null</code>.
+   */
+  @Nonnull
+  static ICommonsMap <String, ICommonsMap <String, ICommonsList <ProvisionType>>> createGroupedProvisions (@Nonnull final String sLogPrefix,
+                                                                                                            @Nonnull final DirectoryResults aDirectoryResults,
+                                                                                                            @Nullable final String sAtuCode)
+  {
+    // Group by COT, then Country Code
+    final ICommonsMap <String, ICommonsMap <String, ICommonsList <ProvisionType>>> ret = new CommonsTreeMap <> ();
+    for (final Map.Entry <String, List <DirectoryMatch>> aEntry : aDirectoryResults.entrySet ())
+    {
+      final String sDocTypeID = aEntry.getKey ();
+      final String sLogPrefix2 = sLogPrefix + "[" + sDocTypeID + "] ";
+
+      // Map from Country Code to list of Provisions
+      final ICommonsMap <String, ICommonsList <ProvisionType>> aMapByCountry = ret.computeIfAbsent (sDocTypeID,
+                                                                                                      k -> new CommonsTreeMap <> ());
+      for (final DirectoryMatch aMatch : aEntry.getValue ())
+      {
+        if (aMatch.smpState.isUndefined ())
+        {
+          // Continue with next Match for the current COT
+          if (LOGGER.isDebugEnabled ())
+            LOGGER.debug (sLogPrefix2 +
+                          "Skipping result for '" +
+                          aMatch.participantID.getURIEncoded () +
+                          "' because no matching process ID was found.");
+          continue;
+        }
+
+        forEachProvision (sLogPrefix,
+                          aMatch,
+                          sAtuCode,
+                          (sCountryCode, aProvision) -> aMapByCountry.computeIfAbsent (sCountryCode,
+                                                                                       k -> new CommonsArrayList <> ())
+                                                                     .add (aProvision));
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Create the provisions of a single match, one per Entity. The SMP state of
+   * the match is not checked.
+   *
+   * @param sLogPrefix
+   *        Log prefix. May not be <code>null</code>.
+   * @param aMatch
+   *        The Directory match. May not be <code>null</code>.
+   * @param sAtuCode
+   *        The unified ATU code to filter for. May be <code>null</code> to not
+   *        filter.
+   * @param aConsumer
+   *        The consumer that is invoked with the country code and the
+   *        provision of each matching Entity. May not be <code>null</code>.
+   */
+  static void forEachProvision (@Nonnull final String sLogPrefix,
+                                @Nonnull final DirectoryMatch aMatch,
+                                @Nullable final String sAtuCode,
+                                @Nonnull final BiConsumer <String, ProvisionType> aConsumer)
+  {
+    // One provision per Entity
+    for (final EntityType aEntity : aMatch.entity)
+    {
+      final String sMatchAtuCode = getAtuCode (aEntity);
+      if (sAtuCode != null)
+      {
+        // Only take results that are on the same ATU level as the
+        // requested on
+        if (!sMatchAtuCode.startsWith (sAtuCode))
+        {
+          if (LOGGER.isDebugEnabled ())
+            LOGGER.debug (sLogPrefix +
+                          "Igoring result with ATU code '" +
+                          sMatchAtuCode +
+                          "' because it does not match the requested ATU code '" +
+                          sAtuCode +
+                          "'");
+          continue;
+        }
+      }
+
+      aConsumer.accept (aEntity.getCountryCode (),
+                        createProvision (sLogPrefix, aMatch.participantID, aEntity, sMatchAtuCode));
+    }
+  }
+
+  /**
+   * Fill the IAL response data types from grouped provisions. Empty groups are
+   * skipped. The provided provisions are referenced and not copied.
+   *
+   * @param aGroupedProvisions
+   *        Map from COT ID to a map from country code to the list of
+   *        provisions. May not be <code>null</code>.
+   * @return The response with all non-empty groups. Never <code>null</code>.
+   */
+  @Nonnull
+  static ResponseLookupRoutingInformationType createResponse (@Nonnull final Map <String, ? extends Map <String, ? extends List <ProvisionType>>> aGroupedProvisions)
+  {
+    final ResponseLookupRoutingInformationType ret = new ResponseLookupRoutingInformationType ();
+    for (final Map.Entry <String, ? extends Map <String, ? extends List <ProvisionType>>> aEntry : aGroupedProvisions.entrySet ())
+    {
+      // One result item per COT
+      final ResponseItemType aItem = new ResponseItemType ();
+      aItem.setCanonicalObjectTypeId (aEntry.getKey ());
+
+      // Iterate per Country
+      for (final Map.Entry <String, ? extends List <ProvisionType>> aEntry2 : aEntry.getValue ().entrySet ())
+      {
+        // One result per Country
+        final ResponsePerCountryType aPerCountry = new ResponsePerCountryType ();
+        aPerCountry.setCountryCode (aEntry2.getKey ());
+        for (final ProvisionType aProvision : aEntry2.getValue ())
+          aPerCountry.addProvision (aProvision);
+        if (aPerCountry.hasProvisionEntries ())
+          aItem.addResponsePerCountry (aPerCountry);
+      }
+      if (aItem.hasResponsePerCountryEntries ())
+        ret.addResponseItem (aItem);
+    }
+    return ret;
+  }
+}
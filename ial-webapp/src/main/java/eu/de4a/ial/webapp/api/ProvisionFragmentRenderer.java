@@ -0,0 +1,423 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.string.StringHelper;
+import com.helger.json.JsonValue;
+import com.helger.json.serialize.JsonWriterSettings;
+import com.helger.xml.serialize.write.EXMLCharMode;
+import com.helger.xml.serialize.write.EXMLIncorrectCharacterHandling;
+import com.helger.xml.serialize.write.EXMLSerializeVersion;
+import com.helger.xml.serialize.write.XMLMaskHelper;
+import com.helger.xml.serialize.write.XMLWriterSettings;
+
+import eu.de4a.ial.api.CIALJAXB;
+import eu.de4a.ial.api.IALJsonCodec;
+import eu.de4a.ial.api.IALMarshaller;
+import eu.de4a.ial.api.IALNamespaceContext;
+import eu.de4a.ial.api.jaxb.ParameterSetType;
+import eu.de4a.ial.api.jaxb.ParameterType;
+import eu.de4a.ial.api.jaxb.ProvisionType;
+import eu.de4a.ial.api.jaxb.ResponseItemType;
+import eu.de4a.ial.api.jaxb.ResponseLookupRoutingInformationType;
+import eu.de4a.ial.api.jaxb.ResponsePerCountryType;
+import eu.de4a.ial.webapp.config.IALConfig;
+
+/**
+ * Renders responses by splicing pre-serialized provisions into the
+ * <code>ResponseItem</code> and <code>ResponsePerCountry</code> envelope. The
+ * serialized XML and JSON fragments of each provision are cached by a content
+ * fingerprint, so that unchanged provisions are only serialized once. The
+ * least recently used fragments are evicted first. The output is identical to
+ * the one of {@link IALMarshaller} and {@link IALJsonCodec}.
+ *
+ * @author Philip Helger
+ */
+@ThreadSafe
+final class ProvisionFragmentRenderer
+{
+  private static final Charset XML_CHARSET = XMLWriterSettings.DEFAULT_XML_CHARSET_OBJ;
+  private static final String XML_NEWLINE = "\n";
+  private static final String XML_INDENT = "  ";
+  private static final JsonWriterSettings JSON_SETTINGS = new JsonWriterSettings ().setIndentEnabled (true);
+  // Nesting level of a provision object in the JSON output
+  private static final int JSON_PROVISION_LEVEL = 6;
+  // Same as the XSD type "IdType"
+  private static final Pattern XSD_ID_PATTERN = Pattern.compile ("[^\\s+][^\\s]+[^\\s+]");
+  private static final char FINGERPRINT_SEPARATOR = '\u0000';
+
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  @GuardedBy ("RW_LOCK")
+  private static final Map <String, byte []> XML_FRAGMENTS = new LinkedHashMap <> (16, 0.75f, true);
+  @GuardedBy ("RW_LOCK")
+  private static final Map <String, byte []> JSON_FRAGMENTS = new LinkedHashMap <> (16, 0.75f, true);
+
+  private ProvisionFragmentRenderer ()
+  {}
+
+  /**
+   * @return <code>true</code> if the fragment cache is enabled.
+   */
+  public static boolean isEnabled ()
+  {
+    return IALConfig.REST.getFragmentCacheMaxEntries () > 0;
+  }
+
+  /**
+   * Create the content fingerprint of a provision. Two provisions with the
+   * same fingerprint have the same serialization.
+   *
+   * @param aProvision
+   *        The provision to use. May not be <code>null</code>.
+   * @return The fingerprint. Never <code>null</code>.
+   */
+  @Nonnull
+  static String getFingerprint (@Nonnull final ProvisionType aProvision)
+  {
+    // Nul characters are not allowed in XML, so they are unambiguous
+    final StringBuilder aSB = new StringBuilder (128);
+    aSB.append (aProvision.getAtuLevel () == null ? null : aProvision.getAtuLevel ().value ())
+       .append (FINGERPRINT_SEPARATOR)
+       .append (aProvision.getAtuCode ())
+       .append (FINGERPRINT_SEPARATOR)
+       .append (aProvision.getAtuLatinName ())
+       .append (FINGERPRINT_SEPARATOR)
+       .append (aProvision.getDataOwnerId ())
+       .append (FINGERPRINT_SEPARATOR)
+       .append (aProvision.getDataOwnerPrefLabel ());
+    for (final ParameterSetType aParamSet : aProvision.getParameterSet ())
+    {
+      aSB.append (FINGERPRINT_SEPARATOR).append ('S').append (aParamSet.getTitle ());
+      for (final ParameterType aParam : aParamSet.getParameter ())
+        aSB.append (FINGERPRINT_SEPARATOR)
+           .append ('P')
+           .append (aParam.getName ())
+           .append (FINGERPRINT_SEPARATOR)
+           .append (aParam.isOptional ());
+    }
+    return aSB.toString ();
+  }
+
+  @Nullable
+  private static byte [] _getFragment (@Nonnull final Map <String, byte []> aMap,
+                                       @Nonnull final String sKey,
+                                       @Nonnull final Supplier <byte []> aFactory)
+  {
+    // Write lock, because the access order is updated
+    byte [] ret = RW_LOCK.writeLockedGet ( () -> aMap.get (sKey));
+    if (ret == null)
+    {
+      // Serialize outside of the lock
+      ret = aFactory.get ();
+      if (ret != null)
+      {
+        final byte [] aFragment = ret;
+        final int nMaxEntries = IALConfig.REST.getFragmentCacheMaxEntries ();
+        RW_LOCK.writeLocked ( () -> {
+          aMap.put (sKey, aFragment);
+          while (aMap.size () > nMaxEntries)
+            aMap.remove (aMap.keySet ().iterator ().next ());
+        });
+      }
+    }
+    return ret;
+  }
+
+  @Nullable
+  private static byte [] _createXMLFragment (@Nonnull final ProvisionType aProvision, final boolean bValidate)
+  {
+    // Serialize the provision within a minimal response to get exactly the
+    // same (validated) output as for the complete response
+    final ResponsePerCountryType aPerCountry = new ResponsePerCountryType ();
+    aPerCountry.setCountryCode ("XX");
+    aPerCountry.addProvision (aProvision);
+    final ResponseItemType aItem = new ResponseItemType ();
+    aItem.setCanonicalObjectTypeId ("fragment");
+    aItem.addResponsePerCountry (aPerCountry);
+    final ResponseLookupRoutingInformationType aResponse = new ResponseLookupRoutingInformationType ();
+    aResponse.addResponseItem (aItem);
+
+    final IALMarshaller <ResponseLookupRoutingInformationType> aMarshaller = bValidate ? IALMarshaller.responseLookupRoutingInformationMarshaller ()
+                                                                                       : IALMarshaller.responseLookupRoutingInformationMarshallerNoValidation ();
+    final String sXML = aMarshaller.formatted ().getAsString (aResponse);
+    if (sXML == null)
+      return null;
+
+    // Extract all lines between the ResponsePerCountry start and end tag
+    final int nStartTag = sXML.indexOf ("ResponsePerCountry ");
+    final int nEndTag = sXML.indexOf ("ResponsePerCountry>", nStartTag);
+    if (nStartTag < 0 || nEndTag < 0)
+      return null;
+    final int nStart = sXML.indexOf (XML_NEWLINE, nStartTag) + XML_NEWLINE.length ();
+    final int nEnd = sXML.lastIndexOf (XML_NEWLINE, nEndTag) + XML_NEWLINE.length ();
+    return sXML.substring (nStart, nEnd).getBytes (XML_CHARSET);
+  }
+
+  @Nonnull
+  private static byte [] _createJsonFragment (@Nonnull final ProvisionType aProvision,
+                                              @Nonnull final Set <EProvisionField> aFields)
+  {
+    final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream (1024);
+    _write (aBAOS,
+            StringHelper.getRepeated (JSON_SETTINGS.getIndentString (), JSON_PROVISION_LEVEL),
+            StandardCharsets.UTF_8);
+    try
+    {
+      IALJsonCodec.writeProvision (aProvision, EProvisionField.getAllIDs (aFields), JSON_PROVISION_LEVEL, aBAOS);
+    }
+    catch (final IOException ex)
+    {
+      // Cannot happen with a byte array
+      throw new UncheckedIOException (ex);
+    }
+    return aBAOS.getBufferOrCopy ();
+  }
+
+  private static void _write (@Nonnull final NonBlockingByteArrayOutputStream aBAOS,
+                              @Nonnull final String s,
+                              @Nonnull final Charset aCharset)
+  {
+    aBAOS.write (s.getBytes (aCharset));
+  }
+
+  @Nonnull
+  private static String _getXMLAttrValue (@Nonnull final String s)
+  {
+    return new String (XMLMaskHelper.getMaskedXMLText (EXMLSerializeVersion.XML_10,
+                                                       EXMLCharMode.ATTRIBUTE_VALUE_DOUBLE_QUOTES,
+                                                       EXMLIncorrectCharacterHandling.DEFAULT,
+                                                       s));
+  }
+
+  /**
+   * Check if the response can be rendered from fragments. Responses with
+   * errors or without items are rare and are rendered as a whole.
+   */
+  private static boolean _isSpliceable (@Nonnull final ResponseLookupRoutingInformationType aResponse)
+  {
+    return aResponse.hasNoErrorEntries () && aResponse.hasResponseItemEntries ();
+  }
+
+  /**
+   * Render the response as formatted XML.
+   *
+   * @param aResponse
+   *        The response to render. May not be <code>null</code>.
+   * @param bValidate
+   *        <code>true</code> to validate the provisions against the XML Schema.
+   * @return <code>null</code> if the response cannot be rendered from fragments
+   *         or if the validation failed. In that case the whole response must
+   *         be marshalled.
+   */
+  @Nullable
+  public static byte [] getAsXML (@Nonnull final ResponseLookupRoutingInformationType aResponse,
+                                  final boolean bValidate)
+  {
+    if (!_isSpliceable (aResponse))
+      return null;
+
+    final String sPrefix = IALNamespaceContext.getInstance ().getPrefix (CIALJAXB.NAMESPACE_URI_IAL) + ':';
+    final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream (16 * 1024);
+    _write (aBAOS,
+            "<?xml version=\"1.0\" encoding=\"" +
+                   XML_CHARSET.name () +
+                   "\"?>" +
+                   XML_NEWLINE +
+                   "<" +
+                   sPrefix +
+                   "ResponseLookupRoutingInformation xmlns:" +
+                   sPrefix.substring (0, sPrefix.length () - 1) +
+                   "=\"" +
+                   CIALJAXB.NAMESPACE_URI_IAL +
+                   "\">" +
+                   XML_NEWLINE,
+            XML_CHARSET);
+    for (final ResponseItemType aItem : aResponse.getResponseItem ())
+    {
+      // The envelope is not validated by the marshaller
+      if (aItem.getCanonicalObjectTypeId () == null ||
+          !XSD_ID_PATTERN.matcher (aItem.getCanonicalObjectTypeId ()).matches () ||
+          aItem.hasNoResponsePerCountryEntries ())
+        return null;
+
+      _write (aBAOS,
+              XML_INDENT +
+                     "<" +
+                     sPrefix +
+                     "ResponseItem CanonicalObjectTypeId=\"" +
+                     _getXMLAttrValue (aItem.getCanonicalObjectTypeId ()) +
+                     "\">" +
+                     XML_NEWLINE,
+              XML_CHARSET);
+      for (final ResponsePerCountryType aPerCountry : aItem.getResponsePerCountry ())
+      {
+        if (aPerCountry.getCountryCode () == null ||
+            aPerCountry.getCountryCode ().length () != 2 ||
+            aPerCountry.hasNoProvisionEntries ())
+          return null;
+
+        _write (aBAOS,
+                XML_INDENT +
+                       XML_INDENT +
+                       "<" +
+                       sPrefix +
+                       "ResponsePerCountry CountryCode=\"" +
+                       _getXMLAttrValue (aPerCountry.getCountryCode ()) +
+                       "\">" +
+                       XML_NEWLINE,
+                XML_CHARSET);
+        for (final ProvisionType aProvision : aPerCountry.getProvision ())
+        {
+          final byte [] aFragment = _getFragment (XML_FRAGMENTS,
+                                                  (bValidate ? "v" : "n") + getFingerprint (aProvision),
+                                                  () -> _createXMLFragment (aProvision, bValidate));
+          if (aFragment == null)
+            return null;
+          aBAOS.write (aFragment);
+        }
+        _write (aBAOS, XML_INDENT + XML_INDENT + "</" + sPrefix + "ResponsePerCountry>" + XML_NEWLINE, XML_CHARSET);
+      }
+      _write (aBAOS, XML_INDENT + "</" + sPrefix + "ResponseItem>" + XML_NEWLINE, XML_CHARSET);
+    }
+    _write (aBAOS, "</" + sPrefix + "ResponseLookupRoutingInformation>", XML_CHARSET);
+    return aBAOS.getBufferOrCopy ();
+  }
+
+  /**
+   * Render the response as indented JSON.
+   *
+   * @param aResponse
+   *        The response to render. May not be <code>null</code>.
+   * @param aFields
+   *        The provision fields to render. May not be <code>null</code>.
+   * @param sNextCursor
+   *        The optional pagination cursor to add. May be <code>null</code>.
+   * @return <code>null</code> if the response cannot be rendered from
+   *         fragments. In that case the whole response must be rendered.
+   */
+  @Nullable
+  public static byte [] getAsJson (@Nonnull final ResponseLookupRoutingInformationType aResponse,
+                                   @Nonnull final Set <EProvisionField> aFields,
+                                   @Nullable final String sNextCursor)
+  {
+    if (!_isSpliceable (aResponse))
+      return null;
+
+    final StringBuilder aFieldKey = new StringBuilder ();
+    for (final EProvisionField eField : aFields)
+      aFieldKey.append (eField.getID ()).append (',');
+    final String sFieldKey = aFieldKey.toString ();
+
+    final Charset aCS = StandardCharsets.UTF_8;
+    final String sNL = JSON_SETTINGS.getNewlineString ();
+    final String [] aIndents = new String [JSON_PROVISION_LEVEL];
+    for (int i = 0; i < aIndents.length; ++i)
+      aIndents[i] = StringHelper.getRepeated (JSON_SETTINGS.getIndentString (), i);
+
+    final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream (16 * 1024);
+    _write (aBAOS, "{" + sNL + aIndents[1] + "\"items\":[" + sNL, aCS);
+    boolean bFirstItem = true;
+    for (final ResponseItemType aItem : aResponse.getResponseItem ())
+    {
+      _write (aBAOS,
+              (bFirstItem ? "" : "," + sNL) +
+                     aIndents[2] +
+                     "{" +
+                     sNL +
+                     aIndents[3] +
+                     "\"canonicalObjectTypeId\":" +
+                     JsonValue.create (aItem.getCanonicalObjectTypeId ()).getAsJsonString () +
+                     "," +
+                     sNL +
+                     aIndents[3] +
+                     "\"countries\":[",
+              aCS);
+      bFirstItem = false;
+
+      boolean bFirstCountry = true;
+      for (final ResponsePerCountryType aPerCountry : aItem.getResponsePerCountry ())
+      {
+        _write (aBAOS,
+                (bFirstCountry ? "" : ",") +
+                       sNL +
+                       aIndents[4] +
+                       "{" +
+                       sNL +
+                       aIndents[5] +
+                       "\"countryCode\":" +
+                       JsonValue.create (aPerCountry.getCountryCode ()).getAsJsonString () +
+                       "," +
+                       sNL +
+                       aIndents[5] +
+                       "\"provisions\":[",
+                aCS);
+        bFirstCountry = false;
+
+        boolean bFirstProvision = true;
+        for (final ProvisionType aProvision : aPerCountry.getProvision ())
+        {
+          _write (aBAOS, (bFirstProvision ? "" : ",") + sNL, aCS);
+          bFirstProvision = false;
+          aBAOS.write (_getFragment (JSON_FRAGMENTS,
+                                     sFieldKey + getFingerprint (aProvision),
+                                     () -> _createJsonFragment (aProvision, aFields)));
+        }
+        _write (aBAOS, (bFirstProvision ? "" : sNL + aIndents[5]) + "]" + sNL + aIndents[4] + "}", aCS);
+      }
+      _write (aBAOS, (bFirstCountry ? "" : sNL + aIndents[3]) + "]" + sNL + aIndents[2] + "}", aCS);
+    }
+    _write (aBAOS, sNL + aIndents[1] + "]", aCS);
+    if (sNextCursor != null)
+      _write (aBAOS, "," + sNL + aIndents[1] + "\"nextCursor\":" + JsonValue.create (sNextCursor).getAsJsonString (), aCS);
+    _write (aBAOS, sNL + "}", aCS);
+    return aBAOS.getBufferOrCopy ();
+  }
+
+  /**
+   * @return The number of cached XML and JSON fragments.
+   */
+  public static int getCachedFragmentCount ()
+  {
+    return RW_LOCK.readLockedInt ( () -> XML_FRAGMENTS.size () + JSON_FRAGMENTS.size ());
+  }
+
+  public static void clearCache ()
+  {
+    RW_LOCK.writeLocked ( () -> {
+      XML_FRAGMENTS.clear ();
+      JSON_FRAGMENTS.clear ();
+    });
+  }
+}
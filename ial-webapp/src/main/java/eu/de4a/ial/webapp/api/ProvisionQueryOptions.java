@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.StringParser;
+import com.helger.web.scope.IRequestWebScopeWithoutResponse;
+
+import eu.de4a.ial.api.jaxb.ProvisionType;
+import eu.de4a.ial.api.jaxb.ResponseItemType;
+import eu.de4a.ial.api.jaxb.ResponseLookupRoutingInformationType;
+import eu.de4a.ial.api.jaxb.ResponsePerCountryType;
+
+/**
+ * The optional pagination and field projection parameters of a query.
+ * Provisions are paged in the order COT ID, country code, ATU code and Data
+ * Owner ID. The cursor is opaque for clients and only valid for the query,
+ * page size and field selection it was created for.
+ *
+ * @author Philip Helger
+ */
+@Immutable
+final class ProvisionQueryOptions
+{
+  public static final String PARAM_PAGE_SIZE = "pageSize";
+  public static final String PARAM_CURSOR = "cursor";
+  public static final String PARAM_FIELDS = "fields";
+  public static final int MAX_PAGE_SIZE = 1000;
+
+  private static final Comparator <ProvisionType> PROVISION_ORDER = Comparator.comparing (ProvisionType::getAtuCode)
+                                                                              .thenComparing (ProvisionType::getDataOwnerId);
+
+  private final String m_sQueryHash;
+  private final int m_nPageSize;
+  private final int m_nOffset;
+  private final Set <EProvisionField> m_aFields;
+
+  private ProvisionQueryOptions (@Nonnull final String sQueryHash,
+                                 @Nonnegative final int nPageSize,
+                                 @Nonnegative final int nOffset,
+                                 @Nonnull final Set <EProvisionField> aFields)
+  {
+    m_sQueryHash = sQueryHash;
+    m_nPageSize = nPageSize;
+    m_nOffset = nOffset;
+    m_aFields = aFields;
+  }
+
+  /**
+   * @return The selected fields. Never <code>null</code>.
+   */
+  @Nonnull
+  public Set <EProvisionField> getFields ()
+  {
+    return m_aFields;
+  }
+
+  /**
+   * @return <code>true</code> if not all fields are selected.
+   */
+  public boolean isProjected ()
+  {
+    return m_aFields.size () < EProvisionField.values ().length;
+  }
+
+  /**
+   * @return <code>true</code> if at least one field that is mandatory in the
+   *         XML Schema was deselected.
+   */
+  public boolean isMandatoryXMLFieldMissing ()
+  {
+    for (final EProvisionField e : EProvisionField.values ())
+      if (e.isMandatoryInXML () && !m_aFields.contains (e))
+        return true;
+    return false;
+  }
+
+  /**
+   * @return A string that uniquely identifies the paging and field selection
+   *         of these options, e.g. for caching. Never <code>null</code>.
+   */
+  @Nonnull
+  public String getCacheKey ()
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    aSB.append (m_nPageSize).append (':').append (m_nOffset);
+    for (final EProvisionField e : m_aFields)
+      aSB.append (':').append (e.getID ());
+    return aSB.toString ();
+  }
+
+  @Nonnull
+  private String _createCursor (@Nonnegative final int nOffset)
+  {
+    return Base64.getUrlEncoder ()
+                 .withoutPadding ()
+                 .encodeToString ((nOffset + ":" + m_sQueryHash).getBytes (StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Remove all provisions outside of the requested page from the response.
+   * The provisions of each country are sorted for a stable order.
+   *
+   * @param aResponse
+   *        The response to modify. Only the lists are modified, not the
+   *        contained provisions. May not be <code>null</code>.
+   * @return The cursor of the next page or <code>null</code> if this is the
+   *         last page or no paging was requested.
+   */
+  @Nullable
+  public String applyPaging (@Nonnull final ResponseLookupRoutingInformationType aResponse)
+  {
+    if (m_nPageSize == 0)
+      return null;
+
+    final int nEnd = m_nOffset + m_nPageSize;
+    int nIndex = 0;
+    final Iterator <ResponseItemType> itItem = aResponse.getResponseItem ().iterator ();
+    while (itItem.hasNext ())
+    {
+      final ResponseItemType aItem = itItem.next ();
+      final Iterator <ResponsePerCountryType> itPerCountry = aItem.getResponsePerCountry ().iterator ();
+      while (itPerCountry.hasNext ())
+      {
+        final List <ProvisionType> aProvisions = itPerCountry.next ().getProvision ();
+        final int nSize = aProvisions.size ();
+        aProvisions.sort (PROVISION_ORDER);
+        // Keep only the overlap of [nIndex, nIndex + nSize) with the page
+        final int nFrom = Math.min (nSize, Math.max (0, m_nOffset - nIndex));
+        final int nTo = Math.max (nFrom, Math.min (nSize, nEnd - nIndex));
+        aProvisions.subList (nTo, nSize).clear ();
+        aProvisions.subList (0, nFrom).clear ();
+        nIndex += nSize;
+        if (aProvisions.isEmpty ())
+          itPerCountry.remove ();
+      }
+      if (aItem.hasNoResponsePerCountryEntries ())
+        itItem.remove ();
+    }
+    return nIndex > nEnd ? _createCursor (nEnd) : null;
+  }
+
+  /**
+   * Replace all provisions with copies that only contain the selected fields.
+   * This is only needed for XML output, as the JSON output is directly created
+   * with the selected fields only.
+   *
+   * @param aResponse
+   *        The response to modify. May not be <code>null</code>.
+   */
+  public void applyProjection (@Nonnull final ResponseLookupRoutingInformationType aResponse)
+  {
+    if (isProjected ())
+      for (final ResponseItemType aItem : aResponse.getResponseItem ())
+        for (final ResponsePerCountryType aPerCountry : aItem.getResponsePerCountry ())
+          aPerCountry.getProvision ().replaceAll (x -> EProvisionField.getProjected (x, m_aFields));
+  }
+
+  @Nonnull
+  private static String _getQueryHash (@Nonnull final String sQueryKey,
+                                       @Nonnegative final int nPageSize,
+                                       @Nonnull final Set <EProvisionField> aFields)
+  {
+    final StringBuilder aSB = new StringBuilder (sQueryKey).append ('\n').append (nPageSize);
+    // Use the enum order, independent of the parameter order
+    for (final EProvisionField e : EProvisionField.values ())
+      if (aFields.contains (e))
+        aSB.append ('\n').append (e.getID ());
+    try
+    {
+      final byte [] aDigest = MessageDigest.getInstance ("SHA-256")
+                                           .digest (aSB.toString ().getBytes (StandardCharsets.UTF_8));
+      return StringHelper.getHexEncoded (aDigest, 0, 16);
+    }
+    catch (final NoSuchAlgorithmException ex)
+    {
+      throw new IllegalStateException ("SHA-256 is not supported", ex);
+    }
+  }
+
+  /**
+   * Parse the options from the request parameters.
+   *
+   * @param aRequestScope
+   *        The current request. May not be <code>null</code>.
+   * @param sQueryKey
+   *        A string that uniquely identifies the query, e.g. the COT IDs and
+   *        the ATU code. May not be <code>null</code>.
+   * @return The parsed options. Never <code>null</code>.
+   * @throws IALBadRequestException
+   *         if a parameter is invalid
+   */
+  @Nonnull
+  public static ProvisionQueryOptions createFromRequest (@Nonnull final IRequestWebScopeWithoutResponse aRequestScope,
+                                                         @Nonnull final String sQueryKey) throws IALBadRequestException
+  {
+    return createFromParams (aRequestScope.params ().getAsString (PARAM_PAGE_SIZE),
+                             aRequestScope.params ().getAsString (PARAM_FIELDS),
+                             aRequestScope.params ().getAsString (PARAM_CURSOR),
+                             sQueryKey,
+                             aRequestScope);
+  }
+
+  /**
+   * Parse the options from the provided parameter values.
+   *
+   * @param sPageSize
+   *        The value of the page size parameter. May be <code>null</code>.
+   * @param sFields
+   *        The value of the fields parameter. May be <code>null</code>.
+   * @param sCursor
+   *        The value of the cursor parameter. May be <code>null</code>.
+   * @param sQueryKey
+   *        A string that uniquely identifies the query, e.g. the COT IDs and
+   *        the ATU code. May not be <code>null</code>.
+   * @param aRequestScope
+   *        The current request for the error messages. May be
+   *        <code>null</code>.
+   * @return The parsed options. Never <code>null</code>.
+   * @throws IALBadRequestException
+   *         if a parameter is invalid
+   */
+  @Nonnull
+  static ProvisionQueryOptions createFromParams (@Nullable final String sPageSize,
+                                                 @Nullable final String sFields,
+                                                 @Nullable final String sCursor,
+                                                 @Nonnull final String sQueryKey,
+                                                 @Nullable final IRequestWebScopeWithoutResponse aRequestScope) throws IALBadRequestException
+  {
+    int nPageSize = 0;
+    if (StringHelper.hasText (sPageSize))
+    {
+      nPageSize = StringParser.parseInt (sPageSize, -1);
+      if (nPageSize < 1 || nPageSize > MAX_PAGE_SIZE)
+        throw new IALBadRequestException ("The parameter '" +
+                                          PARAM_PAGE_SIZE +
+                                          "' must be between 1 and " +
+                                          MAX_PAGE_SIZE,
+                                          aRequestScope);
+    }
+
+    final Set <EProvisionField> aFields;
+    if (StringHelper.hasText (sFields))
+    {
+      aFields = EnumSet.noneOf (EProvisionField.class);
+      for (final String sField : StringHelper.getExploded (',', sFields))
+      {
+        final EProvisionField eField = EProvisionField.getFromIDOrNull (sField.trim ());
+        if (eField == null)
+          throw new IALBadRequestException ("The field '" + sField.trim () + "' is unknown", aRequestScope);
+        aFields.add (eField);
+      }
+    }
+    else
+      aFields = EProvisionField.getAll ();
+
+    // The cursor is only valid for the same query, page size and fields
+    final String sQueryHash = _getQueryHash (sQueryKey, nPageSize, aFields);
+
+    int nOffset = 0;
+    if (StringHelper.hasText (sCursor))
+    {
+      if (nPageSize == 0)
+        throw new IALBadRequestException ("The parameter '" +
+                                          PARAM_CURSOR +
+                                          "' requires the parameter '" +
+                                          PARAM_PAGE_SIZE +
+                                          "'",
+                                          aRequestScope);
+      String sDecoded;
+      try
+      {
+        sDecoded = new String (Base64.getUrlDecoder ().decode (sCursor), StandardCharsets.UTF_8);
+      }
+      catch (final IllegalArgumentException ex)
+      {
+        sDecoded = "";
+      }
+      final int nSep = sDecoded.indexOf (':');
+      nOffset = nSep < 0 ? -1 : StringParser.parseInt (sDecoded.substring (0, nSep), -1);
+      if (nOffset < 0 || !sDecoded.substring (nSep + 1).equals (sQueryHash))
+        throw new IALBadRequestException ("The provided cursor is invalid for this query", aRequestScope);
+    }
+
+    return new ProvisionQueryOptions (sQueryHash, nPageSize, nOffset, aFields);
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsOrderedSet;
+import com.helger.commons.timing.StopWatch;
+import com.helger.json.IJsonObject;
+import com.helger.json.JsonObject;
+
+import eu.de4a.ial.api.jaxb.ProvisionType;
+import eu.de4a.ial.api.jaxb.ResponseItemType;
+import eu.de4a.ial.api.jaxb.ResponseLookupRoutingInformationType;
+import eu.de4a.ial.api.jaxb.ResponsePerCountryType;
+
+/**
+ * Determine the provisions of a query and pass each one to a consumer as soon
+ * as its SMP check is finished, instead of waiting for all SMP checks.
+ *
+ * @author Philip Helger
+ */
+@Immutable
+public final class ProvisionStreamer
+{
+  /**
+   * Consumer for a single verified provision.
+   */
+  @FunctionalInterface
+  public interface IProvisionConsumer
+  {
+    /**
+     * @param sCOTID
+     *        The Canonical Object Type ID of the provision. Never
+     *        <code>null</code>.
+     * @param sCountryCode
+     *        The country code of the provision. Never <code>null</code>.
+     * @param aProvision
+     *        The provision itself. Never <code>null</code>.
+     */
+    void onProvision (@Nonnull String sCOTID, @Nonnull String sCountryCode, @Nonnull ProvisionType aProvision);
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (ProvisionStreamer.class);
+
+  private ProvisionStreamer ()
+  {}
+
+  /**
+   * @return A new unique log prefix for a single request. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public static String createLogPrefix ()
+  {
+    return "[IAL-" + ApiGetGetAllDOs.COUNTER.incrementAndGet () + "] ";
+  }
+
+  /**
+   * Perform the query and pass each verified provision to the consumer. The
+   * consumer is invoked on the calling thread.
+   *
+   * @param sLogPrefix
+   *        Log prefix. May not be <code>null</code>.
+   * @param aCOTIDs
+   *        The Canonical Object Type IDs to query. May not be
+   *        <code>null</code>.
+   * @param sAtuCode
+   *        The unified and checked ATU code to filter for. May be
+   *        <code>null</code>.
+   * @param aConsumer
+   *        The consumer for the provisions. May not be <code>null</code>.
+   * @return The JSON summary of the query. Never <code>null</code>.
+   */
+  @Nonnull
+  public static IJsonObject streamProvisions (@Nonnull final String sLogPrefix,
+                                              @Nonnull final ICommonsOrderedSet <String> aCOTIDs,
+                                              @Nullable final String sAtuCode,
+                                              @Nonnull final IProvisionConsumer aConsumer)
+  {
+    final StopWatch aSW = StopWatch.createdStarted ();
+    final IJsonObject ret = new JsonObject ();
+    final int [] aProvisionCount = { 0 };
+
+    if (IALProvisionIndex.isEnabled ())
+    {
+      // Try to answer from the materialized index first
+      final ResponseLookupRoutingInformationType aResponse = IALProvisionIndex.createResponseOrNull (aCOTIDs, sAtuCode);
+      if (aResponse != null)
+      {
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug (sLogPrefix + "Streaming the provisions from the provision index");
+        for (final ResponseItemType aItem : aResponse.getResponseItem ())
+          for (final ResponsePerCountryType aPerCountry : aItem.getResponsePerCountry ())
+            for (final ProvisionType aProvision : aPerCountry.getProvision ())
+            {
+              aConsumer.onProvision (aItem.getCanonicalObjectTypeId (), aPerCountry.getCountryCode (), aProvision);
+              aProvisionCount[0]++;
+            }
+
+        aSW.stop ();
+        return ret.add ("provisionCount", aProvisionCount[0])
+                  .add ("fromIndex", true)
+                  .add ("durationMillis", aSW.getMillis ());
+      }
+    }
+
+    final DirectoryResults aDirectoryResults = DirectoryResults.createQueryingDirectory (sLogPrefix, aCOTIDs);
+    if (sAtuCode != null)
+    {
+      // Remove all entities with the wrong country code
+      aDirectoryResults.keepOnlyMatchesForCountryCode (sLogPrefix, sAtuCode.substring (0, 2));
+    }
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug (sLogPrefix + "Streaming the provisions of " + aDirectoryResults.getMatchCount () + " matches");
+
+    // Remember the COT ID of each match
+    final ICommonsMap <DirectoryMatch, String> aCOTIDPerMatch = new CommonsHashMap <> ();
+    for (final Map.Entry <String, List <DirectoryMatch>> aEntry : aDirectoryResults.entrySet ())
+      for (final DirectoryMatch aMatch : aEntry.getValue ())
+        aCOTIDPerMatch.put (aMatch, aEntry.getKey ());
+
+    final SMPVerifier aSMPVerifier = new SMPVerifier (sLogPrefix).setVerifiedHandler (aMatch -> {
+      if (aMatch.smpState.isUndefined ())
+      {
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug (sLogPrefix +
+                        "Skipping result for '" +
+                        aMatch.participantID.getURIEncoded () +
+                        "' because no matching process ID was found.");
+      }
+      else
+      {
+        final String sCOTID = aCOTIDPerMatch.get (aMatch);
+        ProvisionFactory.forEachProvision (sLogPrefix, aMatch, sAtuCode, (sCountryCode, aProvision) -> {
+          aConsumer.onProvision (sCOTID, sCountryCode, aProvision);
+          aProvisionCount[0]++;
+        });
+      }
+    });
+    aSMPVerifier.verify (aDirectoryResults.getAllMatches ());
+
+    aSW.stop ();
+    return ret.add ("provisionCount", aProvisionCount[0])
+              .add ("fromIndex", false)
+              .add ("cacheHits", aSMPVerifier.getCacheHitCount ())
+              .add ("smpQueries", aSMPVerifier.getSMPCallCount ())
+              .add ("participants", aSMPVerifier.getParticipantCount ())
+              .add ("durationMillis", aSW.getMillis ());
+  }
+}
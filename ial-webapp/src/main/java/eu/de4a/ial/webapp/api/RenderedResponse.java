@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.http.CHttpHeader;
+import com.helger.commons.mime.CMimeType;
+import com.helger.commons.mime.IMimeType;
+import com.helger.commons.string.StringHelper;
+import com.helger.json.IJson;
+import com.helger.json.serialize.JsonWriterSettings;
+import com.helger.servlet.response.UnifiedResponse;
+import com.helger.web.scope.IRequestWebScopeWithoutResponse;
+
+import eu.de4a.ial.webapp.config.IALConfig;
+
+/**
+ * A fully rendered API response body. The compressed variants are created on
+ * first use and kept, so that a cached response is only compressed once per
+ * content encoding.
+ *
+ * @author Philip Helger
+ */
+@ThreadSafe
+public final class RenderedResponse
+{
+  /** Smaller bodies are not worth compressing */
+  public static final int MIN_COMPRESSION_BYTES = 1024;
+  /**
+   * The request attribute with the original <code>Accept-Encoding</code>
+   * header, if it is hidden from the generic response compression.
+   */
+  public static final String REQUEST_ATTR_ACCEPT_ENCODING = "ial.accept-encoding";
+
+  private final byte [] m_aBytes;
+  private final IMimeType m_aMimeType;
+  private final Charset m_aCharset;
+  private final String m_sNextCursor;
+  @GuardedBy ("m_aEncoded")
+  private final Map <EContentEncoding, byte []> m_aEncoded = new EnumMap <> (EContentEncoding.class);
+  private volatile String m_sETag;
+
+  /**
+   * Constructor
+   *
+   * @param aBytes
+   *        The uncompressed response body. May not be <code>null</code>.
+   * @param aMimeType
+   *        The MIME type of the body. May not be <code>null</code>.
+   * @param aCharset
+   *        The charset of the body. May be <code>null</code> for binary
+   *        content.
+   * @param sNextCursor
+   *        The pagination cursor of the next page. May be <code>null</code>.
+   */
+  public RenderedResponse (@Nonnull final byte [] aBytes,
+                           @Nonnull final IMimeType aMimeType,
+                           @Nullable final Charset aCharset,
+                           @Nullable final String sNextCursor)
+  {
+    m_aBytes = aBytes;
+    m_aMimeType = aMimeType;
+    m_aCharset = aCharset;
+    m_sNextCursor = sNextCursor;
+  }
+
+  /**
+   * Create an indented JSON response.
+   *
+   * @param aJson
+   *        The JSON to render. May not be <code>null</code>.
+   * @param sNextCursor
+   *        The pagination cursor of the next page. May be <code>null</code>.
+   * @return The new response. Never <code>null</code>.
+   */
+  @Nonnull
+  public static RenderedResponse createJson (@Nonnull final IJson aJson, @Nullable final String sNextCursor)
+  {
+    final String sJson = aJson.getAsJsonString (new JsonWriterSettings ().setIndentEnabled (true));
+    return new RenderedResponse (sJson.getBytes (StandardCharsets.UTF_8),
+                                 CMimeType.APPLICATION_JSON,
+                                 StandardCharsets.UTF_8,
+                                 sNextCursor);
+  }
+
+  /**
+   * @return The number of uncompressed bytes.
+   */
+  public int getUncompressedLength ()
+  {
+    return m_aBytes.length;
+  }
+
+  /**
+   * @return The weak entity tag of this response, based on a hash of the
+   *         uncompressed body. It is weak, because it is the same for all
+   *         content encodings. Never <code>null</code>.
+   */
+  @Nonnull
+  public String getETag ()
+  {
+    String ret = m_sETag;
+    if (ret == null)
+    {
+      try
+      {
+        final byte [] aDigest = MessageDigest.getInstance ("SHA-256").digest (m_aBytes);
+        ret = "W/\"" + StringHelper.getHexEncoded (aDigest, 0, 16) + "\"";
+      }
+      catch (final NoSuchAlgorithmException ex)
+      {
+        throw new IllegalStateException ("SHA-256 is not supported", ex);
+      }
+      m_sETag = ret;
+    }
+    return ret;
+  }
+
+  /**
+   * Check if the provided entity tag matches the value of an
+   * <code>If-None-Match</code> HTTP request header, using the weak comparison.
+   *
+   * @param sIfNoneMatch
+   *        The request header value. May be <code>null</code>.
+   * @param sETag
+   *        The entity tag of the response. May not be <code>null</code>.
+   * @return <code>true</code> if the client already has this response.
+   */
+  public static boolean isETagMatching (@Nullable final String sIfNoneMatch, @Nonnull final String sETag)
+  {
+    if (StringHelper.hasNoText (sIfNoneMatch))
+      return false;
+    final String sOpaqueTag = StringHelper.trimStart (sETag, "W/");
+    for (final String sPart : StringHelper.getExploded (',', sIfNoneMatch))
+    {
+      final String sTag = sPart.trim ();
+      if ("*".equals (sTag) || StringHelper.trimStart (sTag, "W/").equals (sOpaqueTag))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Get the body in the provided encoding. Compressed variants are created
+   * once and then reused.
+   *
+   * @param eEncoding
+   *        The content encoding to use. May not be <code>null</code>.
+   * @return The encoded body. Never <code>null</code>.
+   */
+  @Nonnull
+  public byte [] getEncodedBytes (@Nonnull final EContentEncoding eEncoding)
+  {
+    if (!eEncoding.isCompressed ())
+      return m_aBytes;
+
+    synchronized (m_aEncoded)
+    {
+      return m_aEncoded.computeIfAbsent (eEncoding, e -> e.encode (m_aBytes));
+    }
+  }
+
+  /**
+   * @param aRequestScope
+   *        The current request. May not be <code>null</code>.
+   * @return The <code>Accept-Encoding</code> header of the client, even if it
+   *         is hidden from the generic response compression. May be
+   *         <code>null</code>.
+   */
+  @Nullable
+  public static String getAcceptEncoding (@Nonnull final IRequestWebScopeWithoutResponse aRequestScope)
+  {
+    final Object aHidden = aRequestScope.getRequest ().getAttribute (REQUEST_ATTR_ACCEPT_ENCODING);
+    if (aHidden instanceof String)
+      return (String) aHidden;
+    return aRequestScope.getRequest ().getHeader (CHttpHeader.ACCEPT_ENCODING);
+  }
+
+  /**
+   * Set this response as the content of the provided HTTP response, using the
+   * best content encoding accepted by the client.
+   *
+   * @param aRequestScope
+   *        The current request. May not be <code>null</code>.
+   * @param aUnifiedResponse
+   *        The response to fill. May not be <code>null</code>.
+   */
+  public void applyTo (@Nonnull final IRequestWebScopeWithoutResponse aRequestScope,
+                       @Nonnull final UnifiedResponse aUnifiedResponse)
+  {
+    EContentEncoding eEncoding = EContentEncoding.IDENTITY;
+    if (IALConfig.REST.isCompressionEnabled () && m_aBytes.length >= MIN_COMPRESSION_BYTES)
+      eEncoding = EContentEncoding.getBestEncoding (getAcceptEncoding (aRequestScope));
+
+    aUnifiedResponse.setContent (getEncodedBytes (eEncoding));
+    aUnifiedResponse.setMimeType (m_aMimeType);
+    if (m_aCharset != null)
+      aUnifiedResponse.setCharset (m_aCharset);
+    if (eEncoding.isCompressed ())
+      aUnifiedResponse.addCustomResponseHeader (CHttpHeader.CONTENT_ENCODING, eEncoding.getID ());
+    applyHeadersTo (aUnifiedResponse);
+  }
+
+  /**
+   * Set the response headers that don't describe the body, in the same way as
+   * {@link #applyTo(IRequestWebScopeWithoutResponse, UnifiedResponse)}. This is
+   * meant for HTTP 304 responses, which must carry the same <code>Vary</code>
+   * header as the full response.
+   *
+   * @param aUnifiedResponse
+   *        The response to fill. May not be <code>null</code>.
+   */
+  public void applyHeadersTo (@Nonnull final UnifiedResponse aUnifiedResponse)
+  {
+    aUnifiedResponse.addCustomResponseHeader (CHttpHeader.VARY, CHttpHeader.ACCEPT + ", " + CHttpHeader.ACCEPT_ENCODING);
+
+    if (StringHelper.hasText (m_sNextCursor))
+    {
+      aUnifiedResponse.addCustomResponseHeader (ApiGetGetAllDOs.HEADER_NEXT_CURSOR, m_sNextCursor);
+      aUnifiedResponse.addCustomResponseHeader (CHttpHeader.ACCESS_CONTROL_EXPOSE_HEADERS,
+                                                ApiGetGetAllDOs.HEADER_NEXT_CURSOR);
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.io.InputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.helger.commons.state.ETriState;
+
+/**
+ * Streaming check of an OASIS BDXR SMP v1 ServiceMetadata response. Instead of
+ * unmarshalling the whole (signed) document, only the process identifiers are
+ * read and parsing stops as soon as the result is known.
+ *
+ * @author Philip Helger
+ */
+@Immutable
+final class SMPProcessIDChecker
+{
+  /** The OASIS BDXR SMP v1 namespace URI */
+  static final String NAMESPACE_URI_BDXR1 = "http://docs.oasis-open.org/bdxr/ns/SMP/2016/05";
+
+  private static final XMLInputFactory XIF;
+  static
+  {
+    XIF = XMLInputFactory.newInstance ();
+    // No DTDs and no external entities
+    XIF.setProperty (XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    XIF.setProperty (XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    XIF.setProperty (XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+  }
+
+  private SMPProcessIDChecker ()
+  {}
+
+  /**
+   * Check if the provided ServiceMetadata contains the provided process
+   * identifier.
+   *
+   * @param aIS
+   *        The input stream with the SMP response. May not be
+   *        <code>null</code>. Is not closed by this method.
+   * @param sProcIDScheme
+   *        The process identifier scheme to search. May not be
+   *        <code>null</code>.
+   * @param sProcIDValue
+   *        The process identifier value to search. May not be
+   *        <code>null</code>.
+   * @return {@link ETriState#TRUE} if the process identifier was found,
+   *         {@link ETriState#FALSE} if the process list ended without a match,
+   *         {@link ETriState#UNDEFINED} if the document contains no service
+   *         information and <code>null</code> if the document is a redirect
+   *         that can not be handled here.
+   * @throws XMLStreamException
+   *         In case the XML is not well-formed
+   */
+  @Nullable
+  public static ETriState containsProcessID (@Nonnull final InputStream aIS,
+                                             @Nonnull final String sProcIDScheme,
+                                             @Nonnull final String sProcIDValue) throws XMLStreamException
+  {
+    final XMLStreamReader aReader = XIF.createXMLStreamReader (aIS);
+    try
+    {
+      boolean bInProcessList = false;
+      while (aReader.hasNext ())
+      {
+        final int nEventType = aReader.next ();
+        if (nEventType == XMLStreamConstants.START_ELEMENT && NAMESPACE_URI_BDXR1.equals (aReader.getNamespaceURI ()))
+        {
+          final String sLocalName = aReader.getLocalName ();
+          if ("Redirect".equals (sLocalName))
+            return null;
+          if ("ProcessList".equals (sLocalName))
+            bInProcessList = true;
+          else
+            if (bInProcessList && "ProcessIdentifier".equals (sLocalName))
+            {
+              final String sScheme = aReader.getAttributeValue (null, "scheme");
+              final String sValue = aReader.getElementText ().trim ();
+              if (sProcIDScheme.equals (sScheme) && sProcIDValue.equals (sValue))
+              {
+                // First match is enough
+                return ETriState.TRUE;
+              }
+            }
+        }
+        else
+          if (nEventType == XMLStreamConstants.END_ELEMENT &&
+              NAMESPACE_URI_BDXR1.equals (aReader.getNamespaceURI ()) &&
+              "ProcessList".equals (aReader.getLocalName ()))
+          {
+            // No need to look at the endpoints and the signature
+            return ETriState.FALSE;
+          }
+      }
+      return ETriState.UNDEFINED;
+    }
+    finally
+    {
+      aReader.close ();
+    }
+  }
+}
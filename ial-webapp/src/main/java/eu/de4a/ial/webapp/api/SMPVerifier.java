@@ -0,0 +1,476 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.hc.client5.http.HttpResponseException;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.exception.InitializationException;
+import com.helger.commons.http.CHttp;
+import com.helger.commons.state.ETriState;
+import com.helger.commons.url.URLHelper;
+import com.helger.httpclient.HttpClientManager;
+import com.helger.peppol.sml.ISMLInfo;
+import com.helger.peppol.sml.SMLInfo;
+import com.helger.peppolid.CIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.security.keystore.EKeyStoreType;
+import com.helger.security.keystore.KeyStoreHelper;
+import com.helger.security.keystore.LoadedKeyStore;
+import com.helger.smpclient.bdxr1.BDXRClientReadOnly;
+import com.helger.smpclient.exception.SMPDNSResolutionException;
+import com.helger.smpclient.url.BDXLURLProvider;
+import com.helger.xsds.bdxr.smp1.ProcessType;
+import com.helger.xsds.bdxr.smp1.SignedServiceMetadataType;
+
+import eu.de4a.ial.webapp.config.IALConfig;
+import eu.de4a.ial.webapp.config.IALHttpClientSettings;
+
+/**
+ * Verifies Directory matches against the SMPs. Cache hits are resolved first.
+ * All remaining (participant, document type) lookups are grouped by
+ * participant and SMP host, so that each participant is resolved only once via
+ * BDXL and all SMP queries of one verification share the same pooled HTTP
+ * connections. Unless disabled in the configuration, the service metadata is
+ * only streamed to find the required process identifier.
+ *
+ * @author Philip Helger
+ */
+final class SMPVerifier
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPVerifier.class);
+  // As we only want to find Data Providers, they need to have registered the
+  // "request" process ID
+  private static final String PROCESS_ID_SCHEME = "urn:de4a-eu:MessageType";
+  private static final String PROCESS_ID_VALUE = "request";
+  private static final ISMLInfo SML_INFO = new SMLInfo ("sml-de4a",
+                                                        "SML DE4A",
+                                                        "de4a.edelivery.tech.ec.europa.eu.",
+                                                        "https://edelivery.tech.ec.europa.eu/edelivery-sml",
+                                                        true);
+  private static final KeyStore SMP_TRUSTSTORE;
+  static
+  {
+    final LoadedKeyStore aLTS = KeyStoreHelper.loadKeyStore (EKeyStoreType.JKS,
+                                                             IALConfig.SMP.getTruststorePath (),
+                                                             IALConfig.SMP.getTruststorePassword ());
+    if (aLTS.isFailure ())
+      throw new InitializationException ("Failed to load SMP truststore '" + IALConfig.SMP.getTruststorePath () + "'");
+    SMP_TRUSTSTORE = aLTS.getKeyStore ();
+  }
+
+  /**
+   * SMP client that executes all requests on a shared connection manager
+   * instead of creating a new HTTP client per request.
+   */
+  private static final class SharedConnectionBDXRClient extends BDXRClientReadOnly
+  {
+    private final HttpClientManager m_aHCM;
+
+    SharedConnectionBDXRClient (@Nonnull final HttpClientManager aHCM,
+                                @Nonnull final IParticipantIdentifier aParticipantID) throws SMPDNSResolutionException
+    {
+      super (BDXLURLProvider.INSTANCE, aParticipantID, SML_INFO);
+      m_aHCM = aHCM;
+    }
+
+    SharedConnectionBDXRClient (@Nonnull final HttpClientManager aHCM, @Nonnull final URI aSMPHostURI)
+    {
+      super (aSMPHostURI);
+      m_aHCM = aHCM;
+    }
+
+    @Override
+    public <T> T executeRequest (@Nonnull final HttpUriRequestBase aRequest,
+                                 @Nonnull final HttpClientResponseHandler <T> aResponseHandler) throws IOException
+    {
+      return m_aHCM.execute (aRequest, aResponseHandler);
+    }
+  }
+
+  /**
+   * A participant with its resolved SMP client and all pending matches.
+   */
+  private static final class PendingParticipant
+  {
+    private final BDXRClientReadOnly m_aSMPClient;
+    private final ICommonsList <DirectoryMatch> m_aMatches;
+
+    PendingParticipant (@Nonnull final BDXRClientReadOnly aSMPClient,
+                        @Nonnull final ICommonsList <DirectoryMatch> aMatches)
+    {
+      m_aSMPClient = aSMPClient;
+      m_aMatches = aMatches;
+    }
+  }
+
+  private final String m_sLogPrefix;
+  private int m_nCacheHitCount = 0;
+  private int m_nParticipantCount = 0;
+  private int m_nSMPCallCount = 0;
+  private Consumer <? super DirectoryMatch> m_aVerifiedHandler;
+
+  public SMPVerifier (@Nonnull final String sLogPrefix)
+  {
+    m_sLogPrefix = sLogPrefix;
+  }
+
+  /**
+   * Set a handler that is invoked directly after the SMP state of a match was
+   * set, so that verified matches can be processed before all other SMP
+   * queries are finished. It is invoked on the calling thread.
+   *
+   * @param aVerifiedHandler
+   *        The handler to use. May be <code>null</code>.
+   * @return this for chaining
+   */
+  @Nonnull
+  public SMPVerifier setVerifiedHandler (@Nullable final Consumer <? super DirectoryMatch> aVerifiedHandler)
+  {
+    m_aVerifiedHandler = aVerifiedHandler;
+    return this;
+  }
+
+  private void _onVerified (@Nonnull final DirectoryMatch aMatch)
+  {
+    if (m_aVerifiedHandler != null)
+      m_aVerifiedHandler.accept (aMatch);
+  }
+
+  /**
+   * @return The number of matches that were resolved from the {@link IALCache}.
+   */
+  @Nonnegative
+  public int getCacheHitCount ()
+  {
+    return m_nCacheHitCount;
+  }
+
+  /**
+   * @return The number of distinct participants that needed an SMP lookup.
+   */
+  @Nonnegative
+  public int getParticipantCount ()
+  {
+    return m_nParticipantCount;
+  }
+
+  /**
+   * @return The number of SMP service metadata queries performed.
+   */
+  @Nonnegative
+  public int getSMPCallCount ()
+  {
+    return m_nSMPCallCount;
+  }
+
+  @Nonnull
+  private ETriState _getMatchState (@Nonnull final String sLogPrefix, @Nullable final SignedServiceMetadataType aSM)
+  {
+    if (aSM == null ||
+        aSM.getServiceMetadata () == null ||
+        aSM.getServiceMetadata ().getServiceInformation () == null)
+      return ETriState.UNDEFINED;
+
+    // Only allow SMP entries that have a certain process identifier
+    for (final ProcessType aProc : aSM.getServiceMetadata ().getServiceInformation ().getProcessList ().getProcess ())
+    {
+      final String sProcIDScheme = aProc.getProcessIdentifier ().getScheme ();
+      final String sProcIDValue = aProc.getProcessIdentifier ().getValue ();
+
+      if (PROCESS_ID_SCHEME.equals (sProcIDScheme) && PROCESS_ID_VALUE.equals (sProcIDValue))
+      {
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug (sLogPrefix +
+                        "Found matching process ID '" +
+                        CIdentifier.getURIEncoded (sProcIDScheme, sProcIDValue) +
+                        "'");
+
+        // First match is enough for us, to continue with the participant
+        return ETriState.TRUE;
+      }
+
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug (sLogPrefix +
+                      "Skipping process ID '" +
+                      CIdentifier.getURIEncoded (sProcIDScheme, sProcIDValue) +
+                      "' because it is not relevant");
+    }
+    return ETriState.FALSE;
+  }
+
+  /**
+   * Fast path: stream the SMP response and only look at the process
+   * identifiers. The signature of the response is not verified.
+   *
+   * @return <code>null</code> if the response could not be handled and the
+   *         full SMP client should be used instead.
+   */
+  @Nullable
+  private static ETriState _getMatchStateStreaming (@Nonnull final String sLogPrefix,
+                                                    @Nonnull final HttpClientManager aHCM,
+                                                    @Nonnull final BDXRClientReadOnly aSMPClient,
+                                                    @Nonnull final DirectoryMatch aMatch) throws IOException
+  {
+    final String sURL = aSMPClient.getSMPHostURI () +
+                        aMatch.participantID.getURIPercentEncoded () +
+                        "/services/" +
+                        aMatch.docTypeID.getURIPercentEncoded ();
+    final HttpGet aGet = new HttpGet (sURL);
+    return aHCM.execute (aGet, aHttpResponse -> {
+      final int nStatusCode = aHttpResponse.getCode ();
+      if (nStatusCode == CHttp.HTTP_NOT_FOUND)
+      {
+        // Same as "getServiceMetadataOrNull"
+        return ETriState.UNDEFINED;
+      }
+      if (nStatusCode != CHttp.HTTP_OK)
+        throw new HttpResponseException (nStatusCode, aHttpResponse.getReasonPhrase ());
+
+      final HttpEntity aEntity = aHttpResponse.getEntity ();
+      if (aEntity == null)
+        return ETriState.UNDEFINED;
+
+      try (final InputStream aIS = aEntity.getContent ())
+      {
+        final ETriState ret = SMPProcessIDChecker.containsProcessID (aIS, PROCESS_ID_SCHEME, PROCESS_ID_VALUE);
+        if (LOGGER.isDebugEnabled ())
+        {
+          if (ret == null)
+            LOGGER.debug (sLogPrefix + "SMP response is a redirect - falling back to the full SMP client");
+          else
+            if (ret.isTrue ())
+              LOGGER.debug (sLogPrefix +
+                            "Found matching process ID '" +
+                            CIdentifier.getURIEncoded (PROCESS_ID_SCHEME, PROCESS_ID_VALUE) +
+                            "'");
+        }
+        return ret;
+      }
+      catch (final XMLStreamException ex)
+      {
+        throw new IOException ("Failed to parse SMP response of '" + sURL + "'", ex);
+      }
+    });
+  }
+
+  private void _verifyParticipant (@Nonnull final HttpClientManager aHCM,
+                                   @Nonnull final BDXRClientReadOnly aSMPClient,
+                                   @Nonnull final ICommonsList <DirectoryMatch> aMatches)
+  {
+    // The same document type may be contained more than once
+    final ICommonsOrderedMap <String, ICommonsList <DirectoryMatch>> aPerDocType = new CommonsLinkedHashMap <> ();
+    for (final DirectoryMatch aMatch : aMatches)
+      aPerDocType.computeIfAbsent (aMatch.docTypeID.getURIEncoded (), k -> new CommonsArrayList <> ()).add (aMatch);
+
+    for (final Map.Entry <String, ICommonsList <DirectoryMatch>> aEntry : aPerDocType.entrySet ())
+    {
+      final String sLogPrefix = m_sLogPrefix + "[" + aEntry.getKey () + "] ";
+      final DirectoryMatch aMatch = aEntry.getValue ().getFirst ();
+
+      ETriState eMatchState;
+      try
+      {
+        m_nSMPCallCount++;
+
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug (sLogPrefix +
+                        "Now performing SMP query '" +
+                        aMatch.participantID.getURIEncoded () +
+                        "' / '" +
+                        aMatch.docTypeID.getURIEncoded () +
+                        "' on '" +
+                        aSMPClient.getSMPHostURI () +
+                        "'");
+
+        final long nStart = IALMetrics.onUpstreamCallStart (EIALUpstream.SMP);
+        final IALSMPQueryEvent aEvent = new IALSMPQueryEvent ();
+        aEvent.begin ();
+        // Stays null if the query fails
+        ETriState eQueryState = null;
+        try
+        {
+          if (IALConfig.SMP.isStreamingCheckEnabled ())
+            eQueryState = _getMatchStateStreaming (sLogPrefix, aHCM, aSMPClient, aMatch);
+          if (eQueryState == null)
+          {
+            // SMP query with the full SMP client
+            final SignedServiceMetadataType aSM = aSMPClient.getServiceMetadataOrNull (aMatch.participantID,
+                                                                                       aMatch.docTypeID);
+            eQueryState = _getMatchState (sLogPrefix, aSM);
+          }
+        }
+        finally
+        {
+          IALMetrics.onUpstreamCallEnd (EIALUpstream.SMP, aSMPClient.getSMPHostURI (), nStart, eQueryState != null);
+          aEvent.endAndCommit (aMatch.participantID, aMatch.docTypeID, aSMPClient.getSMPHostURI (), eQueryState);
+        }
+        eMatchState = eQueryState;
+      }
+      catch (final Exception ex)
+      {
+        LOGGER.error (sLogPrefix + "Failed to query SMP: " + ex.getClass ().getName () + " - " + ex.getMessage ());
+
+        // Don't cache in case of exception
+        eMatchState = ETriState.UNDEFINED;
+      }
+
+      IALTrafficRecorder.recordSMPState (aMatch.participantID, aMatch.docTypeID, eMatchState);
+
+      // Remember SMP query result in Cache
+      if (eMatchState.isDefined ())
+        IALCache.cacheState (aMatch.participantID, aMatch.docTypeID, eMatchState.isTrue ());
+
+      for (final DirectoryMatch aSameMatch : aEntry.getValue ())
+      {
+        aSameMatch.smpState = eMatchState;
+        _onVerified (aSameMatch);
+      }
+    }
+  }
+
+  /**
+   * Create the SMP client of a single participant, that executes all requests
+   * on the provided HTTP client manager.
+   *
+   * @param aHCM
+   *        The HTTP client manager to use. May not be <code>null</code>.
+   * @param aFixedSMPURI
+   *        The fixed SMP URL to use. If <code>null</code> the SMP is resolved
+   *        via BDXL.
+   * @param aParticipantID
+   *        The participant ID to resolve. May not be <code>null</code>.
+   * @return The SMP client. Never <code>null</code>.
+   * @throws SMPDNSResolutionException
+   *         If the BDXL resolution failed
+   */
+  @Nonnull
+  static BDXRClientReadOnly createSMPClient (@Nonnull final HttpClientManager aHCM,
+                                             @Nullable final URI aFixedSMPURI,
+                                             @Nonnull final IParticipantIdentifier aParticipantID) throws SMPDNSResolutionException
+  {
+    // No own HTTP client settings - all requests are executed on aHCM, which
+    // was created with the IAL HTTP client settings
+    final BDXRClientReadOnly ret = aFixedSMPURI != null ? new SharedConnectionBDXRClient (aHCM, aFixedSMPURI)
+                                                        : new SharedConnectionBDXRClient (aHCM, aParticipantID);
+    ret.setTrustStore (SMP_TRUSTSTORE);
+    return ret;
+  }
+
+  /**
+   * Verify all provided matches and set the SMP state on each of them.
+   *
+   * @param aMatches
+   *        The matches to verify. May not be <code>null</code>.
+   */
+  public void verify (@Nonnull final Iterable <DirectoryMatch> aMatches)
+  {
+    // Query in cache first and group the rest by participant
+    final ICommonsOrderedMap <String, ICommonsList <DirectoryMatch>> aPendingPerParticipant = new CommonsLinkedHashMap <> ();
+    for (final DirectoryMatch aMatch : aMatches)
+    {
+      final ETriState eCacheState = IALCache.getState (aMatch.participantID, aMatch.docTypeID);
+      if (eCacheState.isDefined ())
+      {
+        // Use from cache
+        aMatch.smpState = eCacheState;
+        m_nCacheHitCount++;
+        _onVerified (aMatch);
+      }
+      else
+        aPendingPerParticipant.computeIfAbsent (aMatch.participantID.getURIEncoded (), k -> new CommonsArrayList <> ())
+                              .add (aMatch);
+    }
+
+    if (aPendingPerParticipant.isEmpty ())
+      return;
+
+    try (final HttpClientManager aHCM = HttpClientManager.create (new IALHttpClientSettings ()))
+    {
+      // Resolve every participant only once and group by SMP host
+      final URI aFixedSMPURI = URLHelper.getAsURI (IALConfig.SMP.getFixedURL ());
+      final ICommonsOrderedMap <String, ICommonsList <PendingParticipant>> aPerHost = new CommonsLinkedHashMap <> ();
+      for (final Map.Entry <String, ICommonsList <DirectoryMatch>> aEntry : aPendingPerParticipant.entrySet ())
+      {
+        m_nParticipantCount++;
+        final IParticipantIdentifier aParticipantID = aEntry.getValue ().getFirst ().participantID;
+        try
+        {
+          final BDXRClientReadOnly aSMPClient = createSMPClient (aHCM, aFixedSMPURI, aParticipantID);
+          aPerHost.computeIfAbsent (aSMPClient.getSMPHostURI (), k -> new CommonsArrayList <> ())
+                  .add (new PendingParticipant (aSMPClient, aEntry.getValue ()));
+        }
+        catch (final Exception ex)
+        {
+          // The SMP state of the matches stays undefined
+          LOGGER.error (m_sLogPrefix +
+                        "Failed to resolve SMP of '" +
+                        aEntry.getKey () +
+                        "': " +
+                        ex.getClass ().getName () +
+                        " - " +
+                        ex.getMessage ());
+        }
+      }
+
+      for (final Map.Entry <String, ICommonsList <PendingParticipant>> aEntry : aPerHost.entrySet ())
+      {
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug (m_sLogPrefix +
+                        "Querying " +
+                        aEntry.getValue ().size () +
+                        " participant(s) on SMP '" +
+                        aEntry.getKey () +
+                        "'");
+        for (final PendingParticipant aPending : aEntry.getValue ())
+          _verifyParticipant (aHCM, aPending.m_aSMPClient, aPending.m_aMatches);
+      }
+    }
+    catch (final IOException ex)
+    {
+      throw new UncheckedIOException (ex);
+    }
+    catch (final GeneralSecurityException ex)
+    {
+      throw new IllegalStateException (ex);
+    }
+  }
+}
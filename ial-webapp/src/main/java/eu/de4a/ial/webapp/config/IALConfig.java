@@ -24,8 +24,12 @@ import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
 import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsLinkedHashSet;
+import com.helger.commons.collection.impl.ICommonsOrderedSet;
 import com.helger.commons.concurrent.SimpleReadWriteLock;
 import com.helger.commons.debug.GlobalDebug;
+import com.helger.commons.string.StringHelper;
 import com.helger.config.Config;
 import com.helger.config.ConfigFactory;
 import com.helger.config.IConfig;
@@ -196,6 +200,63 @@ public final class IALConfig
     {
       return getConfig ().getAsBoolean ("ial.rest.log-exceptions", true);
     }
+
+    /**
+     * @return The maximum number of queries in a single batch request. Defaults
+     *         to 100.
+     */
+    public static int getBatchMaxQueries ()
+    {
+      return getConfig ().getAsInt ("ial.rest.batch.max-queries", 100);
+    }
+
+    /**
+     * @return <code>true</code> if provision responses should be compressed
+     *         according to the <code>Accept-Encoding</code> request header.
+     *         Defaults to <code>true</code>.
+     */
+    public static boolean isCompressionEnabled ()
+    {
+      return getConfig ().getAsBoolean ("ial.rest.compression.enabled", true);
+    }
+
+    /**
+     * @return The maximum number of rendered responses to cache. Values &le; 0
+     *         disable the response cache. Defaults to 500.
+     */
+    public static int getResponseCacheMaxEntries ()
+    {
+      return getConfig ().getAsInt ("ial.rest.response-cache.max-entries", 500);
+    }
+
+    /**
+     * @return The number of seconds clients may cache provision responses that
+     *         were created from the provision index. Defaults to 60.
+     */
+    public static int getMaxAgeSeconds ()
+    {
+      return getConfig ().getAsInt ("ial.rest.max-age-seconds", 60);
+    }
+
+    /**
+     * @return The maximum number of serialized provision fragments to cache.
+     *         Values &le; 0 disable the fragment cache. Defaults to 10000.
+     */
+    public static int getFragmentCacheMaxEntries ()
+    {
+      return getConfig ().getAsInt ("ial.rest.fragment-cache.max-entries", 10_000);
+    }
+
+    /**
+     * @return <code>true</code> if the durations of the query phases should be
+     *         returned in the <code>Server-Timing</code> HTTP response header.
+     *         Defaults to <code>false</code>, because the header is readable
+     *         by every origin.
+     */
+    public static boolean isServerTimingEnabled ()
+    {
+      return getConfig ().getAsBoolean ("ial.rest.server-timing.enabled", false);
+    }
   }
 
   /**
@@ -218,6 +279,16 @@ public final class IALConfig
       return getConfig ().getAsBoolean ("ial.webapp.status.enabled", true);
     }
 
+    /**
+     * @return <code>true</code> if the <code>/metrics</code> endpoint is
+     *         enabled, <code>false</code> if not. Defaults to
+     *         <code>true</code>.
+     */
+    public static boolean isMetricsEnabled ()
+    {
+      return getConfig ().getAsBoolean ("ial.webapp.metrics.enabled", true);
+    }
+
     /**
      * @return The storage path for files etc. inside the IAL.
      */
@@ -244,5 +315,209 @@ public final class IALConfig
     {
       return getConfig ().getAsString ("ial.smp.truststore.password");
     }
+
+    /**
+     * @return <code>true</code> if the SMP responses should only be streamed
+     *         to check for the required process ID, <code>false</code> if the
+     *         full SMP client incl. signature verification should be used.
+     *         Defaults to <code>false</code>.
+     */
+    public static boolean isStreamingCheckEnabled ()
+    {
+      return getConfig ().getAsBoolean ("ial.smp.streaming-check.enabled", false);
+    }
+
+    /**
+     * @return The fixed SMP URL to be used for all participants instead of the
+     *         BDXL lookup. Only meant for testing, e.g. with a local SMP stub.
+     *         May be <code>null</code>.
+     */
+    @Nullable
+    public static String getFixedURL ()
+    {
+      return getConfig ().getAsString ("ial.smp.fixed-url");
+    }
+  }
+
+  /**
+   * Settings for the materialized provision index
+   *
+   * @author Philip Helger
+   */
+  public static final class Index
+  {
+    private Index ()
+    {}
+
+    /**
+     * @return <code>true</code> if the provision index should be built in the
+     *         background and used to answer queries. Defaults to
+     *         <code>false</code>.
+     */
+    public static boolean isEnabled ()
+    {
+      return getConfig ().getAsBoolean ("ial.index.enabled", false);
+    }
+
+    /**
+     * @return All Canonical Object Type IDs that should be contained in the
+     *         index. Never <code>null</code> but maybe empty.
+     */
+    @Nonnull
+    @ReturnsMutableCopy
+    public static ICommonsOrderedSet <String> getAllCOTIDs ()
+    {
+      final ICommonsOrderedSet <String> ret = new CommonsLinkedHashSet <> ();
+      StringHelper.explode (',', getConfig ().getAsString ("ial.index.cotids"), x -> {
+        final String sCOTID = x.trim ();
+        if (sCOTID.length () > 0)
+          ret.add (sCOTID);
+      });
+      return ret;
+    }
+
+    /**
+     * @return The interval in minutes in which the index is rebuilt. Defaults
+     *         to 30 minutes.
+     */
+    public static int getRefreshIntervalMinutes ()
+    {
+      return getConfig ().getAsInt ("ial.index.refresh-minutes", 30);
+    }
+
+    /**
+     * @return The maximum number of provision changes to keep for the change
+     *         feed. Defaults to 10000.
+     */
+    public static int getChangeLogMaxEntries ()
+    {
+      return getConfig ().getAsInt ("ial.index.changelog.max-entries", 10_000);
+    }
+  }
+
+  /**
+   * Settings for the traffic recorder
+   *
+   * @author Philip Helger
+   */
+  public static final class Recorder
+  {
+    private Recorder ()
+    {}
+
+    /**
+     * @return <code>true</code> if the traffic should be recorded for later
+     *         replay. Defaults to <code>false</code>.
+     */
+    public static boolean isEnabled ()
+    {
+      return getConfig ().getAsBoolean ("ial.recorder.enabled", false);
+    }
+
+    /**
+     * @return The maximum number of records after which the recording stops.
+     *         Defaults to 100000.
+     */
+    public static int getMaxRecords ()
+    {
+      return getConfig ().getAsInt ("ial.recorder.max-records", 100_000);
+    }
+  }
+
+  /**
+   * Health prober related configuration
+   *
+   * @author Philip Helger
+   */
+  public static final class Health
+  {
+    private Health ()
+    {}
+
+    /**
+     * @return <code>true</code> if the Directory and SMP should be probed
+     *         regularly in the background. Defaults to <code>true</code>.
+     */
+    public static boolean isEnabled ()
+    {
+      return getConfig ().getAsBoolean ("ial.health.enabled", true);
+    }
+
+    /**
+     * @return The interval in seconds between two probes. Defaults to 60.
+     */
+    public static int getIntervalSeconds ()
+    {
+      return getConfig ().getAsInt ("ial.health.interval-seconds", 60);
+    }
+
+    /**
+     * @return The Canonical Object Type ID to search in the Directory. If
+     *         <code>null</code> only the Directory start page is requested.
+     */
+    @Nullable
+    public static String getDirectoryCOTID ()
+    {
+      return getConfig ().getAsString ("ial.health.directory-cotid");
+    }
+
+    /**
+     * @return The URI encoded participant ID to resolve via BDXL and to query
+     *         from its SMP. If <code>null</code> BDXL and SMP are not probed.
+     */
+    @Nullable
+    public static String getParticipantID ()
+    {
+      return getConfig ().getAsString ("ial.health.participant-id");
+    }
+  }
+
+  /**
+   * Startup warm-up related configuration
+   *
+   * @author Philip Helger
+   */
+  public static final class WarmUp
+  {
+    private WarmUp ()
+    {}
+
+    /**
+     * @return <code>true</code> if the expensive components should be
+     *         initialized in the background directly after startup. Defaults
+     *         to <code>true</code>.
+     */
+    public static boolean isEnabled ()
+    {
+      return getConfig ().getAsBoolean ("ial.warmup.enabled", true);
+    }
+
+    /**
+     * @return All Canonical Object Type IDs for which the Directory and SMP
+     *         should be queried during warm-up, so that the SMP cache is
+     *         already filled. Never <code>null</code> but maybe empty.
+     */
+    @Nonnull
+    @ReturnsMutableCopy
+    public static ICommonsOrderedSet <String> getAllCOTIDs ()
+    {
+      final ICommonsOrderedSet <String> ret = new CommonsLinkedHashSet <> ();
+      StringHelper.explode (',', getConfig ().getAsString ("ial.warmup.cotids"), x -> {
+        final String sCOTID = x.trim ();
+        if (sCOTID.length () > 0)
+          ret.add (sCOTID);
+      });
+      return ret;
+    }
+
+    /**
+     * @return How often the response rendering should be executed during
+     *         warm-up, so that the JIT compiler already optimized it. Defaults
+     *         to 200.
+     */
+    public static int getRenderIterations ()
+    {
+      return getConfig ().getAsInt ("ial.warmup.render-iterations", 200);
+    }
   }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.servlet;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+
+import javax.annotation.Nonnull;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.http.CHttpHeader;
+
+import eu.de4a.ial.webapp.api.RenderedResponse;
+
+/**
+ * The provision APIs write bodies that are already compressed by
+ * {@link RenderedResponse}. This filter hides the <code>Accept-Encoding</code>
+ * request header from the on-the-fly compression of ph-web for these APIs
+ * only, so that the bodies are never compressed twice. The original header
+ * value is available in the request attribute
+ * {@link RenderedResponse#REQUEST_ATTR_ACCEPT_ENCODING}.
+ *
+ * @author Philip Helger
+ */
+@WebFilter (urlPatterns = { "/api/provision/*", "/api/provision-batch", "/api/provision-changes" })
+public class IALPreEncodedResponseFilter implements Filter
+{
+  private static final class HiddenAcceptEncodingRequest extends HttpServletRequestWrapper
+  {
+    HiddenAcceptEncodingRequest (@Nonnull final HttpServletRequest aRequest)
+    {
+      super (aRequest);
+    }
+
+    private static boolean _isHidden (final String sName)
+    {
+      return CHttpHeader.ACCEPT_ENCODING.equalsIgnoreCase (sName);
+    }
+
+    @Override
+    public String getHeader (final String sName)
+    {
+      return _isHidden (sName) ? null : super.getHeader (sName);
+    }
+
+    @Override
+    public Enumeration <String> getHeaders (final String sName)
+    {
+      return _isHidden (sName) ? Collections.emptyEnumeration () : super.getHeaders (sName);
+    }
+
+    @Override
+    public Enumeration <String> getHeaderNames ()
+    {
+      final ICommonsList <String> ret = new CommonsArrayList <> ();
+      final Enumeration <String> aNames = super.getHeaderNames ();
+      if (aNames != null)
+        while (aNames.hasMoreElements ())
+        {
+          final String sName = aNames.nextElement ();
+          if (!_isHidden (sName))
+            ret.add (sName);
+        }
+      return Collections.enumeration (ret);
+    }
+  }
+
+  public void init (final FilterConfig aFilterConfig) throws ServletException
+  {}
+
+  public void doFilter (@Nonnull final ServletRequest aRequest,
+                        @Nonnull final ServletResponse aResponse,
+                        @Nonnull final FilterChain aChain) throws IOException, ServletException
+  {
+    if (aRequest instanceof HttpServletRequest)
+    {
+      final HttpServletRequest aHttpRequest = (HttpServletRequest) aRequest;
+      final String sAcceptEncoding = aHttpRequest.getHeader (CHttpHeader.ACCEPT_ENCODING);
+      if (sAcceptEncoding != null)
+        aHttpRequest.setAttribute (RenderedResponse.REQUEST_ATTR_ACCEPT_ENCODING, sAcceptEncoding);
+      aChain.doFilter (new HiddenAcceptEncodingRequest (aHttpRequest), aResponse);
+    }
+    else
+      aChain.doFilter (aRequest, aResponse);
+  }
+
+  public void destroy ()
+  {}
+}
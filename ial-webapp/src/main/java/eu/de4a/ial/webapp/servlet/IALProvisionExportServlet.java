@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.servlet;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import javax.annotation.Nonnull;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.http.CHttpHeader;
+import com.helger.commons.timing.StopWatch;
+import com.helger.json.JsonObject;
+import com.helger.json.serialize.JsonWriter;
+import com.helger.json.serialize.JsonWriterSettings;
+
+import eu.de4a.ial.webapp.api.ApiGetGetAllDOs;
+import eu.de4a.ial.webapp.api.IALProvisionIndex;
+import eu.de4a.ial.webapp.api.ProvisionStreamer;
+import eu.de4a.ial.webapp.api.ProvisionStreamer.IProvisionConsumer;
+
+/**
+ * Export all provisions of the provision index as newline delimited JSON
+ * (NDJSON). Each line is a JSON object
+ * <code>{ "canonicalObjectTypeId", "countryCode", "provision" }</code>.<br>
+ * The lines are written directly from the current index snapshot, so no Directory
+ * or SMP query is performed and the memory consumption does not depend on the
+ * number of provisions.
+ *
+ * @author Philip Helger
+ */
+@WebServlet ("/export/provision")
+public class IALProvisionExportServlet extends HttpServlet
+{
+  public static final String MIME_TYPE_NDJSON = "application/x-ndjson";
+  public static final String HEADER_CHANGE_TOKEN = "X-IAL-Change-Token";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (IALProvisionExportServlet.class);
+
+  @Override
+  protected void doGet (@Nonnull final HttpServletRequest req,
+                        @Nonnull final HttpServletResponse resp) throws ServletException, IOException
+  {
+    final String sLogPrefix = ProvisionStreamer.createLogPrefix ();
+
+    if (!IALProvisionIndex.isEnabled ())
+    {
+      resp.sendError (HttpServletResponse.SC_NOT_FOUND, "The provision index is not enabled");
+      return;
+    }
+
+    LOGGER.info (sLogPrefix + "Exporting the " + IALProvisionIndex.getIndexedCOTIDCount () + " indexed COT IDs");
+    final StopWatch aSW = StopWatch.createdStarted ();
+
+    resp.setContentType (MIME_TYPE_NDJSON);
+    resp.setCharacterEncoding (StandardCharsets.UTF_8.name ());
+    resp.setHeader (CHttpHeader.CACHE_CONTROL, "no-cache");
+    // Allow CORS safe calls
+    resp.setHeader (CHttpHeader.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+
+    // One object per line
+    final JsonWriter aJsonWriter = new JsonWriter (new JsonWriterSettings ().setIndentEnabled (false));
+    final int [] aCount = { 0 };
+    try (final Writer aWriter = new BufferedWriter (new OutputStreamWriter (resp.getOutputStream (),
+                                                                            StandardCharsets.UTF_8)))
+    {
+      final IProvisionConsumer aConsumer = (sCOTID, sCountryCode, aProvision) -> {
+        try
+        {
+          aJsonWriter.writeToWriter (new JsonObject ().add ("canonicalObjectTypeId", sCOTID)
+                                                      .add ("countryCode", sCountryCode)
+                                                      .addJson ("provision",
+                                                                ApiGetGetAllDOs.getProvisionAsJson (aProvision)),
+                                     aWriter);
+          aWriter.write ('\n');
+          aCount[0]++;
+        }
+        catch (final IOException ex)
+        {
+          throw new UncheckedIOException (ex);
+        }
+      };
+      // Clients can continue with the change feed from this token
+      IALProvisionIndex.forEachProvision (sToken -> resp.setHeader (HEADER_CHANGE_TOKEN, sToken), aConsumer);
+    }
+    catch (final UncheckedIOException ex)
+    {
+      LOGGER.warn (sLogPrefix + "Stopped exporting: " + ex.getCause ().getMessage ());
+      return;
+    }
+
+    aSW.stop ();
+    LOGGER.info (sLogPrefix + "Exported " + aCount[0] + " provisions in " + aSW.getMillis () + " milliseconds");
+  }
+}
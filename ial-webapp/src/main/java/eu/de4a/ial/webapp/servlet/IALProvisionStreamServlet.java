@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.servlet;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import javax.annotation.Nonnull;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.collection.impl.CommonsLinkedHashSet;
+import com.helger.commons.collection.impl.ICommonsOrderedSet;
+import com.helger.commons.http.CHttpHeader;
+import com.helger.commons.string.StringHelper;
+import com.helger.json.IJsonObject;
+import com.helger.json.JsonObject;
+
+import eu.de4a.ial.webapp.api.ApiGetGetAllDOs;
+import eu.de4a.ial.webapp.api.IALBadRequestException;
+import eu.de4a.ial.webapp.api.ProvisionStreamer;
+import eu.de4a.ial.webapp.api.ProvisionStreamer.IProvisionConsumer;
+
+/**
+ * Server-Sent Events variant of the <code>/api/provision</code> API. Each
+ * verified provision is sent as a separate <code>provision</code> event as
+ * soon as its SMP check finished. The stream ends with a <code>summary</code>
+ * event.<br>
+ * Usage: <code>/stream/provision/{canonicalObjectTypeIDs}</code> or
+ * <code>/stream/provision/{canonicalObjectTypeIDs}/{atuCode}</code>
+ *
+ * @author Philip Helger
+ */
+@WebServlet ("/stream/provision/*")
+public class IALProvisionStreamServlet extends HttpServlet
+{
+  public static final String MIME_TYPE_EVENT_STREAM = "text/event-stream";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (IALProvisionStreamServlet.class);
+
+  /**
+   * Thrown if an event could not be sent because the client closed the
+   * connection. Distinguishes this case from IO errors of the upstream calls.
+   */
+  private static final class ClientGoneException extends UncheckedIOException
+  {
+    ClientGoneException ()
+    {
+      super (new EOFException ("The client closed the connection"));
+    }
+  }
+
+  private static void _sendEvent (@Nonnull final PrintWriter aPW,
+                                  @Nonnull final String sEventName,
+                                  @Nonnull final IJsonObject aData)
+  {
+    aPW.write ("event: " + sEventName + "\n");
+    aPW.write ("data: " + aData.getAsJsonString () + "\n\n");
+    aPW.flush ();
+
+    // The PrintWriter swallows all exceptions
+    if (aPW.checkError ())
+      throw new ClientGoneException ();
+  }
+
+  @Override
+  protected void doGet (@Nonnull final HttpServletRequest req,
+                        @Nonnull final HttpServletResponse resp) throws ServletException, IOException
+  {
+    final String sLogPrefix = ProvisionStreamer.createLogPrefix ();
+
+    // Path is "/{canonicalObjectTypeIDs}[/{atuCode}]"
+    final String sPathInfo = StringHelper.trimStart (StringHelper.getNotNull (req.getPathInfo ()), '/');
+    final int nSlash = sPathInfo.indexOf ('/');
+    final String sCOTIDs = nSlash < 0 ? sPathInfo : sPathInfo.substring (0, nSlash);
+    final String sRawAtuCode = nSlash < 0 ? null : sPathInfo.substring (nSlash + 1);
+
+    // Split into 1-n pieces
+    final ICommonsOrderedSet <String> aCOTIDs = new CommonsLinkedHashSet <> ();
+    StringHelper.explode (',', sCOTIDs, x -> {
+      final String sCOTID = x.trim ();
+      if (sCOTID.length () > 0)
+        aCOTIDs.add (sCOTID);
+    });
+    if (aCOTIDs.isEmpty ())
+    {
+      resp.sendError (HttpServletResponse.SC_BAD_REQUEST, "No Canonical Object Type ID was passed");
+      return;
+    }
+
+    final String sAtuCode = StringHelper.hasText (sRawAtuCode) ? sRawAtuCode.toUpperCase (Locale.ROOT) : null;
+    if (sAtuCode != null)
+    {
+      try
+      {
+        ApiGetGetAllDOs.checkAtuCode (sLogPrefix, sAtuCode, null);
+      }
+      catch (final IALBadRequestException ex)
+      {
+        resp.sendError (HttpServletResponse.SC_BAD_REQUEST, ex.getMessage ());
+        return;
+      }
+    }
+
+    LOGGER.info (sLogPrefix +
+                 "Streaming query for " +
+                 aCOTIDs +
+                 (sAtuCode != null ? " in ATU code '" + sAtuCode + "'" : ""));
+
+    resp.setContentType (MIME_TYPE_EVENT_STREAM);
+    resp.setCharacterEncoding (StandardCharsets.UTF_8.name ());
+    resp.setHeader (CHttpHeader.CACHE_CONTROL, "no-cache");
+    // Allow CORS safe calls
+    resp.setHeader (CHttpHeader.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+
+    final PrintWriter aPW = resp.getWriter ();
+    final IProvisionConsumer aConsumer = (sCOTID, sCountryCode, aProvision) -> {
+      final IJsonObject aJson = new JsonObject ().add ("canonicalObjectTypeId", sCOTID)
+                                                 .add ("countryCode", sCountryCode)
+                                                 .addJson ("provision", ApiGetGetAllDOs.getProvisionAsJson (aProvision));
+      _sendEvent (aPW, "provision", aJson);
+    };
+    try
+    {
+      final IJsonObject aSummary = ProvisionStreamer.streamProvisions (sLogPrefix, aCOTIDs, sAtuCode, aConsumer);
+      _sendEvent (aPW, "summary", aSummary);
+      LOGGER.info (sLogPrefix + "Successfully finalized IAL streaming query: " + aSummary.getAsJsonString ());
+    }
+    catch (final ClientGoneException ex)
+    {
+      LOGGER.warn (sLogPrefix + "Stopped streaming: " + ex.getCause ().getMessage ());
+    }
+    catch (final RuntimeException ex)
+    {
+      LOGGER.error (sLogPrefix + "Error streaming the provisions", ex);
+      // The response is already committed, so an error event is the only way
+      try
+      {
+        _sendEvent (aPW,
+                    "error",
+                    new JsonObject ().add ("code", "internal-error").add ("text", "Failed to determine the provisions"));
+      }
+      catch (final ClientGoneException ex2)
+      {
+        // The client is gone anyway
+      }
+    }
+  }
+}
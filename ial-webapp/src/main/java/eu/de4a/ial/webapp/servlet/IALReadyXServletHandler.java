@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.servlet;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.http.CHttp;
+import com.helger.commons.mime.CMimeType;
+import com.helger.commons.mime.MimeType;
+import com.helger.json.IJsonObject;
+import com.helger.json.JsonObject;
+import com.helger.servlet.response.UnifiedResponse;
+import com.helger.web.scope.IRequestWebScopeWithoutResponse;
+import com.helger.xservlet.handler.simple.IXServletSimpleHandler;
+
+import eu.de4a.ial.webapp.api.IALWarmUp;
+
+/**
+ * Main handler for the /ready servlet. Returns HTTP 200 once the warm-up is
+ * finished and HTTP 503 before or if the warm-up failed.
+ *
+ * @author Philip Helger
+ */
+final class IALReadyXServletHandler implements IXServletSimpleHandler
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (IALReadyXServletHandler.class);
+  private static final Charset CHARSET = StandardCharsets.UTF_8;
+
+  public void handleRequest (@Nonnull final IRequestWebScopeWithoutResponse aRequestScope,
+                             @Nonnull final UnifiedResponse aUnifiedResponse) throws Exception
+  {
+    final boolean bReady = IALWarmUp.isReady ();
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Readiness requested - " + (bReady ? "ready" : "not ready"));
+
+    final IJsonObject aData = new JsonObject ();
+    aData.add ("ready", bReady);
+    if (bReady)
+      aData.add ("warmup.duration-ms", IALWarmUp.getDurationMillis ());
+    else
+      aData.addIfNotNull ("warmup.error", IALWarmUp.getErrorMessage ());
+
+    // Put JSON on response
+    aUnifiedResponse.disableCaching ();
+    if (!bReady)
+      aUnifiedResponse.setStatus (CHttp.HTTP_SERVICE_UNAVAILABLE);
+    aUnifiedResponse.setMimeType (new MimeType (CMimeType.APPLICATION_JSON).addParameter (CMimeType.PARAMETER_NAME_CHARSET,
+                                                                                          CHARSET.name ()));
+    aUnifiedResponse.setContentAndCharset (aData.getAsJsonString (), CHARSET);
+  }
+}
@@ -66,6 +66,8 @@ public class IALRootServlet extends HttpServlet
     aSB.append ("<div>Build timestamp: ").append (IALVersion.BUILD_TIMESTAMP).append ("</div>");
     aSB.append ("<div>Current time: ").append (PDTFactory.getCurrentZonedDateTimeUTC ().toString ()).append ("</div>");
     aSB.append ("<div><a href='status'>Check /status</a></div>");
+    aSB.append ("<div><a href='metrics'>Check /metrics</a></div>");
+    aSB.append ("<div><a href='ready'>Check /ready</a></div>");
     aSB.append ("<div><a href='https://github.com/de4a-wp5/ial-service' target='_blank'>Source code on GitHub</a></div>");
 
     if (GlobalDebug.isDebugMode ())
@@ -94,6 +96,16 @@ public class IALRootServlet extends HttpServlet
       aSB.append ("<div>GET /provision/{canonicalObjectTypeIDs}/{atuCode} - <a href='" +
                   sContextPath +
                   "/api/provision/urn:de4a-eu:CanonicalEvidenceType::CompanyRegistration/AT' target='_blank'>test me</a></div>");
+      aSB.append ("<div>POST /provision-batch</div>");
+      aSB.append ("<div>GET /provision-changes?since={token} - <a href='" +
+                  sContextPath +
+                  "/api/provision-changes' target='_blank'>test me</a></div>");
+      aSB.append ("<div>GET /export/provision (application/x-ndjson) - <a href='" +
+                  sContextPath +
+                  "/export/provision' target='_blank'>test me</a></div>");
+      aSB.append ("<div>GET /stream/provision/{canonicalObjectTypeIDs}[/{atuCode}] (text/event-stream) - <a href='" +
+                  sContextPath +
+                  "/stream/provision/urn:de4a-eu:CanonicalEvidenceType::CompanyRegistration/AT' target='_blank'>test me</a></div>");
     }
 
     aSB.append ("</body></html>");
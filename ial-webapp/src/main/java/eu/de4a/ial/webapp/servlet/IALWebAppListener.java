@@ -38,7 +38,14 @@ import com.helger.xservlet.requesttrack.RequestTrackerSettings;
 
 import eu.de4a.ial.webapp.api.ApiClearSmpClientCache;
 import eu.de4a.ial.webapp.api.ApiGetGetAllDOs;
+import eu.de4a.ial.webapp.api.ApiGetProvisionChanges;
+import eu.de4a.ial.webapp.api.ApiPostBatchLookup;
+import eu.de4a.ial.webapp.api.IALHealthProber;
+import eu.de4a.ial.webapp.api.IALMeteredAPIExecutor;
+import eu.de4a.ial.webapp.api.IALProvisionIndex;
 import eu.de4a.ial.webapp.api.IALRestExceptionMapper;
+import eu.de4a.ial.webapp.api.IALTrafficRecorder;
+import eu.de4a.ial.webapp.api.IALWarmUp;
 import eu.de4a.ial.webapp.config.IALConfig;
 
 /**
@@ -101,6 +108,18 @@ public class IALWebAppListener extends WebAppListener
   {
     // Don't write audit logs
     AuditHelper.setAuditor (new LoggingAuditor (LoggedInUserManager.getInstance ()));
+
+    // Start building the provision index in the background (if enabled)
+    IALProvisionIndex.start ();
+
+    // Start recording the traffic (if enabled)
+    IALTrafficRecorder.start ();
+
+    // Start probing the Directory and SMP in the background (if enabled)
+    IALHealthProber.start ();
+
+    // Initialize the expensive components in the background (if enabled)
+    IALWarmUp.start ();
   }
 
   @Override
@@ -108,14 +127,27 @@ public class IALWebAppListener extends WebAppListener
   {
     final IAPIExceptionMapper aExceptionMapper = new IALRestExceptionMapper ();
     aAPIRegistry.registerAPI (new APIDescriptor (APIPath.get ("/provision/{canonicalObjectTypeIDs}"),
-                                                 new ApiGetGetAllDOs (false)).setExceptionMapper (aExceptionMapper));
+                                                 new IALMeteredAPIExecutor ("provision",
+                                                                            new ApiGetGetAllDOs (false))).setExceptionMapper (aExceptionMapper));
     aAPIRegistry.registerAPI (new APIDescriptor (APIPath.get ("/provision/{canonicalObjectTypeIDs}/{atuCode}"),
-                                                 new ApiGetGetAllDOs (true)).setExceptionMapper (aExceptionMapper));
+                                                 new IALMeteredAPIExecutor ("provision-atu",
+                                                                            new ApiGetGetAllDOs (true))).setExceptionMapper (aExceptionMapper));
+    aAPIRegistry.registerAPI (new APIDescriptor (APIPath.post ("/provision-batch"),
+                                                 new IALMeteredAPIExecutor ("provision-batch",
+                                                                            new ApiPostBatchLookup ())).setExceptionMapper (aExceptionMapper));
+    aAPIRegistry.registerAPI (new APIDescriptor (APIPath.get ("/provision-changes"),
+                                                 new IALMeteredAPIExecutor ("provision-changes",
+                                                                            new ApiGetProvisionChanges ())).setExceptionMapper (aExceptionMapper));
     aAPIRegistry.registerAPI (new APIDescriptor (APIPath.get ("/internal/clear-smpclient-cache"),
                                                  new ApiClearSmpClientCache ()).setExceptionMapper (aExceptionMapper));
   }
 
   @Override
   protected void beforeContextDestroyed (final ServletContext aSC)
-  {}
+  {
+    IALWarmUp.stop ();
+    IALHealthProber.stop ();
+    IALTrafficRecorder.stop ();
+    IALProvisionIndex.stop ();
+  }
 }
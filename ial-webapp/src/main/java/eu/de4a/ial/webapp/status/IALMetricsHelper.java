@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.status;
+
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.string.StringHelper;
+
+import eu.de4a.ial.webapp.api.EIALPhase;
+import eu.de4a.ial.webapp.api.EIALUpstream;
+import eu.de4a.ial.webapp.api.IALCache;
+import eu.de4a.ial.webapp.api.IALLatencyHistogram;
+import eu.de4a.ial.webapp.api.IALMetrics;
+import eu.de4a.ial.webapp.api.IALMetrics.CallStats;
+import eu.de4a.ial.webapp.api.IALRequestTimings;
+
+/**
+ * Helper to create the metrics in the Prometheus text format reachable via
+ * the "/metrics/" servlet.
+ *
+ * @author Philip Helger
+ */
+@Immutable
+public final class IALMetricsHelper
+{
+  private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+  private IALMetricsHelper ()
+  {}
+
+  @Nonnull
+  private static String _escape (@Nonnull final String sLabelValue)
+  {
+    return StringHelper.replaceMultiple (sLabelValue,
+                                         new String [] { "\\", "\"", "\n" },
+                                         new String [] { "\\\\", "\\\"", "\\n" });
+  }
+
+  private static void _header (@Nonnull final StringBuilder aSB,
+                               @Nonnull final String sName,
+                               @Nonnull final String sType,
+                               @Nonnull final String sHelp)
+  {
+    aSB.append ("# HELP ").append (sName).append (' ').append (sHelp).append ('\n');
+    aSB.append ("# TYPE ").append (sName).append (' ').append (sType).append ('\n');
+  }
+
+  private static void _sample (@Nonnull final StringBuilder aSB,
+                               @Nonnull final String sName,
+                               @Nullable final String sLabels,
+                               @Nonnull final Object aValue)
+  {
+    aSB.append (sName);
+    if (StringHelper.hasText (sLabels))
+      aSB.append ('{').append (sLabels).append ('}');
+    aSB.append (' ').append (aValue).append ('\n');
+  }
+
+  private static void _histogram (@Nonnull final StringBuilder aSB,
+                                  @Nonnull final String sName,
+                                  @Nonnull final String sLabels,
+                                  @Nonnull final IALLatencyHistogram aHistogram)
+  {
+    final long [] aUpperBounds = IALLatencyHistogram.getAllBucketUpperBoundsNanos ();
+    final long [] aCounts = aHistogram.getAllBucketCounts ();
+    final String sLabelPrefix = sLabels.isEmpty () ? "" : sLabels + ",";
+
+    // Prometheus buckets are cumulative
+    long nCumulated = 0;
+    for (int i = 0; i < aUpperBounds.length; ++i)
+    {
+      nCumulated += aCounts[i];
+      _sample (aSB, sName + "_bucket", sLabelPrefix + "le=\"" + aUpperBounds[i] / NANOS_PER_SECOND + "\"", nCumulated);
+    }
+    nCumulated += aCounts[aUpperBounds.length];
+    _sample (aSB, sName + "_bucket", sLabelPrefix + "le=\"+Inf\"", nCumulated);
+    _sample (aSB, sName + "_sum", sLabels, aHistogram.getSumNanos () / NANOS_PER_SECOND);
+    // Use the bucket total so that the count always matches "+Inf"
+    _sample (aSB, sName + "_count", sLabels, nCumulated);
+  }
+
+  /**
+   * @return All metrics in the Prometheus text exposition format version
+   *         0.0.4. Never <code>null</code>.
+   */
+  @Nonnull
+  public static String getMetricsAsString ()
+  {
+    final StringBuilder aSB = new StringBuilder (16 * 1024);
+
+    // API calls
+    final Map <String, CallStats> aAPIStats = IALMetrics.getAllAPIStats ();
+    _header (aSB, "ial_api_requests_total", "counter", "Number of API calls by API and outcome");
+    for (final Map.Entry <String, CallStats> aEntry : aAPIStats.entrySet ())
+    {
+      final String sLabels = "api=\"" + _escape (aEntry.getKey ()) + "\"";
+      _sample (aSB, "ial_api_requests_total", sLabels + ",outcome=\"success\"", aEntry.getValue ().getSuccessCount ());
+      _sample (aSB, "ial_api_requests_total", sLabels + ",outcome=\"error\"", aEntry.getValue ().getErrorCount ());
+    }
+    _header (aSB, "ial_api_request_duration_seconds", "histogram", "Duration of API calls by API");
+    for (final Map.Entry <String, CallStats> aEntry : aAPIStats.entrySet ())
+      _histogram (aSB,
+                  "ial_api_request_duration_seconds",
+                  "api=\"" + _escape (aEntry.getKey ()) + "\"",
+                  aEntry.getValue ().getHistogram ());
+
+    // Phases of the provision queries per API
+    _header (aSB, "ial_phase_duration_seconds", "histogram", "Duration of the phases of provision queries");
+    for (final String sAPI : IALRequestTimings.getAllAPIs ())
+      for (final EIALPhase ePhase : EIALPhase.values ())
+        _histogram (aSB,
+                    "ial_phase_duration_seconds",
+                    "api=\"" + _escape (sAPI) + "\",phase=\"" + ePhase.getID () + "\"",
+                    IALRequestTimings.getHistogram (sAPI, ePhase));
+
+    // SMP cache
+    _header (aSB, "ial_smp_cache_entries", "gauge", "Number of entries in the SMP lookup cache");
+    _sample (aSB, "ial_smp_cache_entries", null, IALCache.getSize ());
+    _header (aSB, "ial_smp_cache_hits_total", "counter", "Number of SMP lookup cache hits");
+    _sample (aSB, "ial_smp_cache_hits_total", null, IALCache.getHitCount ());
+    _header (aSB, "ial_smp_cache_misses_total", "counter", "Number of SMP lookup cache misses");
+    _sample (aSB, "ial_smp_cache_misses_total", null, IALCache.getMissCount ());
+    _header (aSB, "ial_smp_cache_evictions_total", "counter", "Number of expired or cleared SMP lookup cache entries");
+    _sample (aSB, "ial_smp_cache_evictions_total", null, IALCache.getEvictionCount ());
+
+    // Upstream calls
+    _header (aSB, "ial_upstream_requests_total", "counter", "Number of upstream HTTP calls by upstream, host and outcome");
+    for (final EIALUpstream eUpstream : EIALUpstream.values ())
+      for (final Map.Entry <String, CallStats> aEntry : IALMetrics.getAllUpstreamStats (eUpstream).entrySet ())
+      {
+        final String sLabels = "upstream=\"" + eUpstream.getID () + "\",host=\"" + _escape (aEntry.getKey ()) + "\"";
+        _sample (aSB,
+                 "ial_upstream_requests_total",
+                 sLabels + ",outcome=\"success\"",
+                 aEntry.getValue ().getSuccessCount ());
+        _sample (aSB, "ial_upstream_requests_total", sLabels + ",outcome=\"error\"", aEntry.getValue ().getErrorCount ());
+      }
+    _header (aSB,
+             "ial_upstream_request_duration_seconds",
+             "histogram",
+             "Duration of upstream HTTP calls by upstream and host");
+    for (final EIALUpstream eUpstream : EIALUpstream.values ())
+      for (final Map.Entry <String, CallStats> aEntry : IALMetrics.getAllUpstreamStats (eUpstream).entrySet ())
+        _histogram (aSB,
+                    "ial_upstream_request_duration_seconds",
+                    "upstream=\"" + eUpstream.getID () + "\",host=\"" + _escape (aEntry.getKey ()) + "\"",
+                    aEntry.getValue ().getHistogram ());
+    _header (aSB, "ial_upstream_requests_in_flight", "gauge", "Number of currently open upstream HTTP calls");
+    for (final EIALUpstream eUpstream : EIALUpstream.values ())
+      _sample (aSB,
+               "ial_upstream_requests_in_flight",
+               "upstream=\"" + eUpstream.getID () + "\"",
+               IALMetrics.getUpstreamInFlightCount (eUpstream));
+
+    return aSB.toString ();
+  }
+}
@@ -20,11 +20,13 @@ package eu.de4a.ial.webapp.status;
 import java.util.Map;
 
 import javax.annotation.Nonnull;
-import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
 
 import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.collection.impl.CommonsLinkedHashMap;
 import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
 import com.helger.commons.datetime.PDTFactory;
 import com.helger.commons.datetime.PDTWebDateHelper;
 import com.helger.commons.debug.GlobalDebug;
@@ -34,6 +36,12 @@ import com.helger.json.IJsonObject;
 import com.helger.json.JsonObject;
 
 import eu.de4a.ial.api.IALVersion;
+import eu.de4a.ial.webapp.api.EIALPhase;
+import eu.de4a.ial.webapp.api.IALHealthProber;
+import eu.de4a.ial.webapp.api.IALHealthProber.ProbeResult;
+import eu.de4a.ial.webapp.api.IALLatencyHistogram;
+import eu.de4a.ial.webapp.api.IALRequestTimings;
+import eu.de4a.ial.webapp.api.IALWarmUp;
 import eu.de4a.ial.webapp.config.IALConfig;
 
 /**
@@ -41,20 +49,38 @@ import eu.de4a.ial.webapp.config.IALConfig;
  *
  * @author Philip Helger
  */
-@Immutable
+@ThreadSafe
 public final class IALStatusHelper
 {
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  @GuardedBy ("RW_LOCK")
+  private static IJsonObject s_aStaticStatusData;
+
   private IALStatusHelper ()
   {}
 
+  private static void _addPercentile (@Nonnull final IJsonObject aStatusData,
+                                      @Nonnull final String sKey,
+                                      final long nNanos)
+  {
+    // Above the last bucket there is no upper bound
+    if (nNanos == Long.MAX_VALUE)
+      aStatusData.add (sKey, "overflow");
+    else
+      aStatusData.add (sKey, nNanos / 1_000_000d);
+  }
+
+  /**
+   * @return The part of the status data that does not change at runtime. Never
+   *         <code>null</code>.
+   */
   @Nonnull
   @ReturnsMutableCopy
-  public static IJsonObject getDefaultStatusData ()
+  private static IJsonObject _createStaticStatusData ()
   {
     final IJsonObject aStatusData = new JsonObject ();
     aStatusData.add ("build.version", IALVersion.BUILD_VERSION);
     aStatusData.add ("build.datetime", IALVersion.BUILD_TIMESTAMP);
-    aStatusData.add ("status.datetime", PDTWebDateHelper.getAsStringXSD (PDTFactory.getCurrentZonedDateTimeUTC ()));
     aStatusData.add ("java.version", SystemProperties.getJavaVersion ());
     aStatusData.add ("global.debug", GlobalDebug.isDebugMode ());
     aStatusData.add ("global.production", GlobalDebug.isProductionMode ());
@@ -83,7 +109,59 @@ public final class IALStatusHelper
       else
         aStatusData.add (aEntry.getKey (), aEntry.getValue ());
     }
+    return aStatusData;
+  }
 
+  @Nonnull
+  @ReturnsMutableCopy
+  public static IJsonObject getDefaultStatusData ()
+  {
+    // The configuration is only read once
+    IJsonObject aStaticData = RW_LOCK.readLockedGet ( () -> s_aStaticStatusData);
+    if (aStaticData == null)
+    {
+      aStaticData = _createStaticStatusData ();
+      final IJsonObject aFinalStaticData = aStaticData;
+      RW_LOCK.writeLocked ( () -> s_aStaticStatusData = aFinalStaticData);
+    }
+
+    final IJsonObject aStatusData = aStaticData.getClone ();
+    aStatusData.add ("status.datetime", PDTWebDateHelper.getAsStringXSD (PDTFactory.getCurrentZonedDateTimeUTC ()));
+
+    // Startup warm-up
+    aStatusData.add ("warmup.ready", IALWarmUp.isReady ());
+    aStatusData.add ("warmup.duration-ms", IALWarmUp.getDurationMillis ());
+    aStatusData.addIfNotNull ("warmup.error", IALWarmUp.getErrorMessage ());
+
+    // Results of the last background health probes
+    final ICommonsOrderedMap <String, ProbeResult> aProbeResults = IALHealthProber.getAllResults ();
+    aStatusData.add ("health.status", IALHealthProber.getOverallStatus (aProbeResults));
+    for (final Map.Entry <String, ProbeResult> aEntry : aProbeResults.entrySet ())
+    {
+      final String sPrefix = "health." + aEntry.getKey () + ".";
+      final ProbeResult aResult = aEntry.getValue ();
+      aStatusData.add (sPrefix + "status", aResult.isSuccess () ? "up" : "down");
+      aStatusData.add (sPrefix + "latency-ms", aResult.getDurationMillis ());
+      aStatusData.add (sPrefix + "datetime", PDTWebDateHelper.getAsStringXSD (aResult.getCheckDT ()));
+      if (aResult.getErrorMessage () != null)
+        aStatusData.add (sPrefix + "error", aResult.getErrorMessage ());
+    }
+
+    // Request timings per API and phase
+    for (final String sAPI : IALRequestTimings.getAllAPIs ())
+      for (final EIALPhase ePhase : EIALPhase.values ())
+      {
+        final IALLatencyHistogram aHistogram = IALRequestTimings.getHistogram (sAPI, ePhase);
+        final long nCount = aHistogram.getCount ();
+        final String sPrefix = "timing." + sAPI + "." + ePhase.getID () + ".";
+        aStatusData.add (sPrefix + "count", nCount);
+        if (nCount > 0)
+        {
+          aStatusData.add (sPrefix + "mean-ms", aHistogram.getSumNanos () / nCount / 1_000_000d);
+          _addPercentile (aStatusData, sPrefix + "p50-ms", aHistogram.getPercentileNanos (0.5));
+          _addPercentile (aStatusData, sPrefix + "p99-ms", aHistogram.getPercentileNanos (0.99));
+        }
+      }
     return aStatusData;
   }
 }
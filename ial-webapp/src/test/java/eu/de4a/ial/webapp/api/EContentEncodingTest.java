@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.Test;
+
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.string.StringHelper;
+
+/**
+ * Test class for class {@link EContentEncoding}.
+ *
+ * @author Philip Helger
+ */
+public final class EContentEncodingTest
+{
+  @Test
+  public void testGetBestEncoding ()
+  {
+    assertEquals (EContentEncoding.IDENTITY, EContentEncoding.getBestEncoding (null));
+    assertEquals (EContentEncoding.IDENTITY, EContentEncoding.getBestEncoding (""));
+    assertEquals (EContentEncoding.IDENTITY, EContentEncoding.getBestEncoding ("identity"));
+    assertEquals (EContentEncoding.IDENTITY, EContentEncoding.getBestEncoding ("br"));
+
+    assertEquals (EContentEncoding.GZIP, EContentEncoding.getBestEncoding ("gzip"));
+    assertEquals (EContentEncoding.DEFLATE, EContentEncoding.getBestEncoding ("deflate"));
+    assertEquals (EContentEncoding.GZIP, EContentEncoding.getBestEncoding (" GZIP "));
+    assertEquals (EContentEncoding.GZIP, EContentEncoding.getBestEncoding ("x-gzip"));
+    assertEquals (EContentEncoding.DEFLATE, EContentEncoding.getBestEncoding ("x-gzip;q=0.5, deflate"));
+
+    // Equal quality - the enum order is used
+    assertEquals (EContentEncoding.GZIP, EContentEncoding.getBestEncoding ("gzip, deflate"));
+    assertEquals (EContentEncoding.GZIP, EContentEncoding.getBestEncoding ("deflate, gzip"));
+    assertEquals (EContentEncoding.GZIP, EContentEncoding.getBestEncoding ("deflate;q=0.5, gzip;q=0.5"));
+    assertEquals (EContentEncoding.GZIP, EContentEncoding.getBestEncoding ("br, deflate, gzip"));
+
+    // Different quality
+    assertEquals (EContentEncoding.DEFLATE, EContentEncoding.getBestEncoding ("gzip;q=0.5, deflate"));
+    assertEquals (EContentEncoding.DEFLATE, EContentEncoding.getBestEncoding ("gzip;q=0.5, deflate; q=0.8"));
+
+    // Quality 0 means "not acceptable"
+    assertEquals (EContentEncoding.IDENTITY, EContentEncoding.getBestEncoding ("gzip;q=0"));
+    assertEquals (EContentEncoding.IDENTITY, EContentEncoding.getBestEncoding ("gzip;q=0, deflate;q=0.0"));
+
+    // The wildcard only applies to encodings that are not listed
+    assertEquals (EContentEncoding.GZIP, EContentEncoding.getBestEncoding ("*"));
+    assertEquals (EContentEncoding.IDENTITY, EContentEncoding.getBestEncoding ("*;q=0"));
+    assertEquals (EContentEncoding.DEFLATE, EContentEncoding.getBestEncoding ("gzip;q=0, *"));
+    assertEquals (EContentEncoding.DEFLATE, EContentEncoding.getBestEncoding ("*, gzip;q=0"));
+    assertEquals (EContentEncoding.IDENTITY, EContentEncoding.getBestEncoding ("gzip;q=0, deflate;q=0, *"));
+    assertEquals (EContentEncoding.DEFLATE, EContentEncoding.getBestEncoding ("gzip;q=0.5, *;q=0.8"));
+    assertEquals (EContentEncoding.GZIP, EContentEncoding.getBestEncoding ("gzip;q=0.8, *;q=0.5"));
+
+    // Malformed quality values are treated as "not acceptable"
+    assertEquals (EContentEncoding.IDENTITY, EContentEncoding.getBestEncoding ("gzip;q=abc"));
+    assertEquals (EContentEncoding.IDENTITY, EContentEncoding.getBestEncoding ("gzip;q="));
+    assertEquals (EContentEncoding.DEFLATE, EContentEncoding.getBestEncoding ("gzip;q=abc, deflate"));
+    // Unknown parameters are ignored
+    assertEquals (EContentEncoding.GZIP, EContentEncoding.getBestEncoding ("gzip;level=9"));
+  }
+
+  private static byte [] _decode (final EContentEncoding eEncoding, final byte [] aEncoded) throws IOException
+  {
+    final InputStream aBase = new ByteArrayInputStream (aEncoded);
+    try (final InputStream aIS = eEncoding == EContentEncoding.GZIP ? new GZIPInputStream (aBase)
+                                                                    : new InflaterInputStream (aBase))
+    {
+      return StreamHelper.getAllBytes (aIS);
+    }
+  }
+
+  @Test
+  public void testEncodeRoundTrip () throws IOException
+  {
+    final byte [] aEmpty = new byte [0];
+    final byte [] aSmall = "x".getBytes (StandardCharsets.UTF_8);
+    final byte [] aLarge = StringHelper.getRepeated ("<provision>Österreich</provision>\n", 10_000)
+                                       .getBytes (StandardCharsets.UTF_8);
+
+    for (final byte [] aBytes : new byte [] [] { aEmpty, aSmall, aLarge })
+    {
+      assertSame (aBytes, EContentEncoding.IDENTITY.encode (aBytes));
+      for (final EContentEncoding eEncoding : new EContentEncoding [] { EContentEncoding.GZIP,
+                                                                        EContentEncoding.DEFLATE })
+      {
+        assertTrue (eEncoding.isCompressed ());
+        final byte [] aEncoded = eEncoding.encode (aBytes);
+        assertArrayEquals (aBytes, _decode (eEncoding, aEncoded));
+      }
+    }
+    assertFalse (EContentEncoding.IDENTITY.isCompressed ());
+    assertTrue (EContentEncoding.GZIP.encode (aLarge).length < aLarge.length / 10);
+  }
+}
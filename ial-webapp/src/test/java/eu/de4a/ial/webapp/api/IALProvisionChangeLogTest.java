@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+
+import eu.de4a.ial.api.jaxb.AtuLevelType;
+import eu.de4a.ial.api.jaxb.ProvisionType;
+import eu.de4a.ial.webapp.api.IALProvisionChangeLog.ChangeSet;
+import eu.de4a.ial.webapp.api.IALProvisionChangeLog.EProvisionChangeType;
+import eu.de4a.ial.webapp.api.IALProvisionChangeLog.ProvisionChange;
+import eu.de4a.ial.webapp.config.IALConfig;
+
+/**
+ * Test class for class {@link IALProvisionChangeLog}. The log is global, so
+ * all tests only work relative to the current token.
+ *
+ * @author Philip Helger
+ */
+public final class IALProvisionChangeLogTest
+{
+  private static final String COTID = "urn:de4a-eu:CanonicalEvidenceType::CompanyRegistration:1.0";
+
+  @Nonnull
+  private static ICommonsList <ProvisionChange> _createChanges (@Nonnegative final int nCount)
+  {
+    final ICommonsList <ProvisionChange> ret = new CommonsArrayList <> ();
+    for (int i = 0; i < nCount; ++i)
+    {
+      final ProvisionType aProvision = new ProvisionType ();
+      aProvision.setAtuLevel (AtuLevelType.NUTS_0);
+      aProvision.setAtuCode ("AT");
+      aProvision.setDataOwnerId ("iso6523-actorid-upis::9999:at" + i);
+      aProvision.setDataOwnerPrefLabel ("Owner " + i);
+      ret.add (new ProvisionChange (EProvisionChangeType.values ()[i % EProvisionChangeType.values ().length],
+                                    COTID,
+                                    "AT",
+                                    aProvision));
+    }
+    return ret;
+  }
+
+  @Test
+  public void testInvalidToken ()
+  {
+    final String sToken = IALProvisionChangeLog.getCurrentToken ();
+    final int nSep = sToken.indexOf ('-');
+    assertTrue (nSep > 0);
+    final String sEpoch = sToken.substring (0, nSep);
+    final long nSequence = Long.parseLong (sToken.substring (nSep + 1), 36);
+
+    assertNotNull (IALProvisionChangeLog.getChangesSince (sToken, 10));
+    assertNull (IALProvisionChangeLog.getChangesSince (null, 10));
+    assertNull (IALProvisionChangeLog.getChangesSince ("", 10));
+    assertNull (IALProvisionChangeLog.getChangesSince ("abc", 10));
+    assertNull (IALProvisionChangeLog.getChangesSince ("-", 10));
+    assertNull (IALProvisionChangeLog.getChangesSince (sEpoch + "-", 10));
+    assertNull (IALProvisionChangeLog.getChangesSince (sEpoch + "-!", 10));
+    assertNull (IALProvisionChangeLog.getChangesSince (sEpoch + "--1", 10));
+    // From the future
+    assertNull (IALProvisionChangeLog.getChangesSince (sEpoch + "-" + Long.toString (nSequence + 1, 36), 10));
+
+    // From a previous run
+    final String sOtherEpoch = Long.toString (Long.parseLong (sEpoch, 36) - 1, 36);
+    assertNull (IALProvisionChangeLog.getChangesSince (sOtherEpoch + "-" + Long.toString (nSequence, 36), 10));
+    assertNull (IALProvisionChangeLog.getChangesSince (sOtherEpoch + "-0", 10));
+  }
+
+  @Test
+  public void testChangesSince ()
+  {
+    final String sToken0 = IALProvisionChangeLog.getCurrentToken ();
+
+    // Nothing changed
+    ChangeSet aChangeSet = IALProvisionChangeLog.getChangesSince (sToken0, 10);
+    assertNotNull (aChangeSet);
+    assertTrue (aChangeSet.getAllChanges ().isEmpty ());
+    assertEquals (sToken0, aChangeSet.getToken ());
+    assertFalse (aChangeSet.hasMore ());
+
+    final ICommonsList <ProvisionChange> aChanges = _createChanges (5);
+    IALProvisionChangeLog.addChanges (aChanges);
+    final String sToken1 = IALProvisionChangeLog.getCurrentToken ();
+
+    // All at once
+    aChangeSet = IALProvisionChangeLog.getChangesSince (sToken0, 10);
+    assertNotNull (aChangeSet);
+    assertEquals (5, aChangeSet.getAllChanges ().size ());
+    assertEquals (sToken1, aChangeSet.getToken ());
+    assertFalse (aChangeSet.hasMore ());
+    long nLastSequence = -1;
+    for (int i = 0; i < 5; ++i)
+    {
+      final ProvisionChange aChange = aChangeSet.getAllChanges ().get (i);
+      assertTrue (aChange.getSequence () > nLastSequence);
+      nLastSequence = aChange.getSequence ();
+      assertEquals (aChanges.get (i).getType (), aChange.getType ());
+      assertEquals (COTID, aChange.getCOTID ());
+      assertEquals ("AT", aChange.getCountryCode ());
+      assertEquals (aChanges.get (i).getProvision (), aChange.getProvision ());
+    }
+
+    // Exactly fitting
+    aChangeSet = IALProvisionChangeLog.getChangesSince (sToken0, 5);
+    assertNotNull (aChangeSet);
+    assertEquals (5, aChangeSet.getAllChanges ().size ());
+    assertFalse (aChangeSet.hasMore ());
+
+    // In chunks of 2
+    String sToken = sToken0;
+    final ICommonsList <ProvisionChange> aAll = new CommonsArrayList <> ();
+    int nCalls = 0;
+    do
+    {
+      aChangeSet = IALProvisionChangeLog.getChangesSince (sToken, 2);
+      assertNotNull (aChangeSet);
+      assertTrue (aChangeSet.getAllChanges ().size () <= 2);
+      aAll.addAll (aChangeSet.getAllChanges ());
+      sToken = aChangeSet.getToken ();
+      nCalls++;
+    } while (aChangeSet.hasMore ());
+    assertEquals (3, nCalls);
+    assertEquals (5, aAll.size ());
+    assertEquals (sToken1, sToken);
+    assertEquals (aAll.getLast ().getSequence (), nLastSequence);
+
+    // Up to date
+    aChangeSet = IALProvisionChangeLog.getChangesSince (sToken1, 10);
+    assertNotNull (aChangeSet);
+    assertTrue (aChangeSet.getAllChanges ().isEmpty ());
+    assertEquals (sToken1, aChangeSet.getToken ());
+  }
+
+  @Test
+  public void testTokenDroppedFromLog ()
+  {
+    final int nMaxEntries = IALConfig.Index.getChangeLogMaxEntries ();
+    final String sToken = IALProvisionChangeLog.getCurrentToken ();
+
+    // The log is full, but all changes after the token are still contained
+    IALProvisionChangeLog.addChanges (_createChanges (nMaxEntries));
+    ChangeSet aChangeSet = IALProvisionChangeLog.getChangesSince (sToken, 10);
+    assertNotNull (aChangeSet);
+    assertEquals (10, aChangeSet.getAllChanges ().size ());
+    assertTrue (aChangeSet.hasMore ());
+    final String sNextToken = aChangeSet.getToken ();
+
+    // The first change after the token was dropped - resync needed
+    IALProvisionChangeLog.addChanges (_createChanges (1));
+    assertNull (IALProvisionChangeLog.getChangesSince (sToken, 10));
+
+    // Later tokens are still valid
+    aChangeSet = IALProvisionChangeLog.getChangesSince (sNextToken, 10);
+    assertNotNull (aChangeSet);
+    assertEquals (10, aChangeSet.getAllChanges ().size ());
+    aChangeSet = IALProvisionChangeLog.getChangesSince (IALProvisionChangeLog.getCurrentToken (), 10);
+    assertNotNull (aChangeSet);
+    assertTrue (aChangeSet.getAllChanges ().isEmpty ());
+  }
+}
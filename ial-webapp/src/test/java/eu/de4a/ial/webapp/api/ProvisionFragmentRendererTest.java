@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.de4a.ial.api.IALJsonCodec;
+import eu.de4a.ial.api.IALMarshaller;
+import eu.de4a.ial.api.jaxb.AtuLevelType;
+import eu.de4a.ial.api.jaxb.ErrorType;
+import eu.de4a.ial.api.jaxb.ParameterSetType;
+import eu.de4a.ial.api.jaxb.ParameterType;
+import eu.de4a.ial.api.jaxb.ProvisionType;
+import eu.de4a.ial.api.jaxb.ResponseItemType;
+import eu.de4a.ial.api.jaxb.ResponseLookupRoutingInformationType;
+import eu.de4a.ial.api.jaxb.ResponsePerCountryType;
+import eu.de4a.ial.webapp.config.IALConfig;
+
+/**
+ * Test class for class {@link ProvisionFragmentRenderer}.
+ *
+ * @author Philip Helger
+ */
+public final class ProvisionFragmentRendererTest
+{
+  @Nonnull
+  private static ProvisionType _createProvision (@Nonnull final String sAtuCode,
+                                                 @Nonnull final String sLabel,
+                                                 final boolean bWithParams)
+  {
+    final ProvisionType ret = new ProvisionType ();
+    ret.setAtuLevel (sAtuCode.length () == 2 ? AtuLevelType.NUTS_0 : AtuLevelType.NUTS_1);
+    ret.setAtuCode (sAtuCode);
+    ret.setAtuLatinName ("Name of " + sAtuCode);
+    ret.setDataOwnerId ("iso6523-actorid-upis::9999:" + sAtuCode.toLowerCase () + "000000271");
+    ret.setDataOwnerPrefLabel (sLabel);
+    if (bWithParams)
+    {
+      final ParameterSetType aParamSet = new ParameterSetType ();
+      aParamSet.setTitle ("Set <1> & \"more\"");
+      for (int i = 0; i < 2; ++i)
+      {
+        final ParameterType aParam = new ParameterType ();
+        aParam.setName ("param" + i);
+        aParam.setOptional (i == 1);
+        aParamSet.addParameter (aParam);
+      }
+      ret.addParameterSet (aParamSet);
+    }
+    return ret;
+  }
+
+  @Nonnull
+  private static ResponsePerCountryType _createPerCountry (@Nonnull final String sCountryCode,
+                                                           @Nonnull final ProvisionType... aProvisions)
+  {
+    final ResponsePerCountryType ret = new ResponsePerCountryType ();
+    ret.setCountryCode (sCountryCode);
+    for (final ProvisionType aProvision : aProvisions)
+      ret.addProvision (aProvision);
+    return ret;
+  }
+
+  @Nonnull
+  private static ResponseLookupRoutingInformationType _createResponse ()
+  {
+    final ResponseItemType aItem1 = new ResponseItemType ();
+    aItem1.setCanonicalObjectTypeId ("urn:de4a-eu:CanonicalEvidenceType::CompanyRegistration:1.0");
+    aItem1.addResponsePerCountry (_createPerCountry ("AT",
+                                                     _createProvision ("AT", "Österreich & <Co>", true),
+                                                     _createProvision ("AT1", "Ost'österreich", false)));
+    aItem1.addResponsePerCountry (_createPerCountry ("SE", _createProvision ("SE", "Sverige \"AB\"", false)));
+
+    final ResponseItemType aItem2 = new ResponseItemType ();
+    aItem2.setCanonicalObjectTypeId ("urn:de4a-eu:CanonicalEvidenceType::BirthEvidence:1.0");
+    aItem2.addResponsePerCountry (_createPerCountry ("AT", _createProvision ("AT", "Österreich & <Co>", true)));
+    aItem2.addResponsePerCountry (_createPerCountry ("ES",
+                                                     _createProvision ("ES", "España", true),
+                                                     _createProvision ("ES1", "Noroeste", false)));
+
+    final ResponseLookupRoutingInformationType ret = new ResponseLookupRoutingInformationType ();
+    ret.addResponseItem (aItem1);
+    ret.addResponseItem (aItem2);
+    return ret;
+  }
+
+  @Before
+  public void before ()
+  {
+    ProvisionFragmentRenderer.clearCache ();
+  }
+
+  @Test
+  public void testXMLSameAsMarshaller ()
+  {
+    final ResponseLookupRoutingInformationType aResponse = _createResponse ();
+    final byte [] aExpected = IALMarshaller.responseLookupRoutingInformationMarshaller ()
+                                           .formatted ()
+                                           .getAsBytes (aResponse);
+    assertNotNull (aExpected);
+
+    // Twice, to test the cached fragments as well
+    for (int i = 0; i < 2; ++i)
+    {
+      assertArrayEquals (aExpected, ProvisionFragmentRenderer.getAsXML (aResponse, true));
+      assertArrayEquals (IALMarshaller.responseLookupRoutingInformationMarshallerNoValidation ()
+                                      .formatted ()
+                                      .getAsBytes (aResponse),
+                         ProvisionFragmentRenderer.getAsXML (aResponse, false));
+    }
+  }
+
+  @Test
+  public void testXMLInvalidProvision ()
+  {
+    final ResponseLookupRoutingInformationType aResponse = _createResponse ();
+    aResponse.getResponseItemAtIndex (1).getResponsePerCountryAtIndex (0).getProvisionAtIndex (0).setAtuLatinName (null);
+
+    // Must be rendered as a whole to get the validation error
+    assertNull (ProvisionFragmentRenderer.getAsXML (aResponse, true));
+    assertArrayEquals (IALMarshaller.responseLookupRoutingInformationMarshallerNoValidation ()
+                                    .formatted ()
+                                    .getAsBytes (aResponse),
+                       ProvisionFragmentRenderer.getAsXML (aResponse, false));
+  }
+
+  @Test
+  public void testJsonSameAsCodec ()
+  {
+    final ResponseLookupRoutingInformationType aResponse = _createResponse ();
+    final Set <EProvisionField> aProjected = EnumSet.of (EProvisionField.ATU_CODE,
+                                                         EProvisionField.DATA_OWNER_ID,
+                                                         EProvisionField.PARAMETER_SETS);
+
+    for (int i = 0; i < 2; ++i)
+    {
+      assertArrayEquals (IALJsonCodec.getAsBytes (aResponse, null, null),
+                         ProvisionFragmentRenderer.getAsJson (aResponse, EProvisionField.getAll (), null));
+      assertArrayEquals (IALJsonCodec.getAsBytes (aResponse, null, "cursor\"1"),
+                         ProvisionFragmentRenderer.getAsJson (aResponse, EProvisionField.getAll (), "cursor\"1"));
+      assertArrayEquals (IALJsonCodec.getAsBytes (aResponse, EProvisionField.getAllIDs (aProjected), null),
+                         ProvisionFragmentRenderer.getAsJson (aResponse, aProjected, null));
+    }
+  }
+
+  @Test
+  public void testNotSpliceable ()
+  {
+    final ResponseLookupRoutingInformationType aResponse = new ResponseLookupRoutingInformationType ();
+    assertNull (ProvisionFragmentRenderer.getAsXML (aResponse, true));
+    assertNull (ProvisionFragmentRenderer.getAsJson (aResponse, EProvisionField.getAll (), null));
+
+    final ErrorType aError = new ErrorType ();
+    aError.setCode ("no-match");
+    aError.setText ("Nothing found");
+    aResponse.addError (aError);
+    assertNull (ProvisionFragmentRenderer.getAsXML (aResponse, true));
+    assertNull (ProvisionFragmentRenderer.getAsJson (aResponse, EProvisionField.getAll (), null));
+  }
+
+  @Test
+  public void testCacheIsBounded ()
+  {
+    final int nMaxEntries = IALConfig.REST.getFragmentCacheMaxEntries ();
+    final ResponsePerCountryType aPerCountry = new ResponsePerCountryType ();
+    aPerCountry.setCountryCode ("AT");
+    for (int i = 0; i < nMaxEntries + 10; ++i)
+      aPerCountry.addProvision (_createProvision ("AT", "Label " + i, false));
+    final ResponseItemType aItem = new ResponseItemType ();
+    aItem.setCanonicalObjectTypeId ("urn:de4a-eu:CanonicalEvidenceType::CompanyRegistration:1.0");
+    aItem.addResponsePerCountry (aPerCountry);
+    final ResponseLookupRoutingInformationType aResponse = new ResponseLookupRoutingInformationType ();
+    aResponse.addResponseItem (aItem);
+
+    assertNotNull (ProvisionFragmentRenderer.getAsJson (aResponse, EProvisionField.getAll (), null));
+    assertEquals (nMaxEntries, ProvisionFragmentRenderer.getCachedFragmentCount ());
+  }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.Test;
+
+import eu.de4a.ial.api.jaxb.AtuLevelType;
+import eu.de4a.ial.api.jaxb.ProvisionType;
+import eu.de4a.ial.api.jaxb.ResponseItemType;
+import eu.de4a.ial.api.jaxb.ResponseLookupRoutingInformationType;
+import eu.de4a.ial.api.jaxb.ResponsePerCountryType;
+
+/**
+ * Test class for class {@link ProvisionQueryOptions}.
+ *
+ * @author Philip Helger
+ */
+public final class ProvisionQueryOptionsTest
+{
+  private static final String QUERY_KEY = "cot1,cot2|";
+
+  /**
+   * @return 2 COTs with the countries AT and BE with 3 provisions each. The
+   *         provisions are in reverse order to check the sorting.
+   */
+  @Nonnull
+  private static ResponseLookupRoutingInformationType _createResponse ()
+  {
+    final ResponseLookupRoutingInformationType ret = new ResponseLookupRoutingInformationType ();
+    for (final String sCOTID : new String [] { "cot1", "cot2" })
+    {
+      final ResponseItemType aItem = new ResponseItemType ();
+      aItem.setCanonicalObjectTypeId (sCOTID);
+      for (final String sCountryCode : new String [] { "AT", "BE" })
+      {
+        final ResponsePerCountryType aPerCountry = new ResponsePerCountryType ();
+        aPerCountry.setCountryCode (sCountryCode);
+        for (int i = 3; i >= 1; --i)
+        {
+          final ProvisionType aProvision = new ProvisionType ();
+          aProvision.setAtuLevel (AtuLevelType.NUTS_1);
+          aProvision.setAtuCode (sCountryCode + i);
+          aProvision.setDataOwnerId (sCOTID + "-" + sCountryCode + i);
+          aProvision.setDataOwnerPrefLabel ("Owner");
+          aPerCountry.addProvision (aProvision);
+        }
+        aItem.addResponsePerCountry (aPerCountry);
+      }
+      ret.addResponseItem (aItem);
+    }
+    return ret;
+  }
+
+  @Nonnull
+  private static List <String> _getAllDataOwnerIDs (@Nonnull final ResponseLookupRoutingInformationType aResponse)
+  {
+    final List <String> ret = new ArrayList <> ();
+    for (final ResponseItemType aItem : aResponse.getResponseItem ())
+    {
+      // Empty parts must be removed
+      assertTrue (aItem.hasResponsePerCountryEntries ());
+      for (final ResponsePerCountryType aPerCountry : aItem.getResponsePerCountry ())
+      {
+        assertTrue (aPerCountry.hasProvisionEntries ());
+        for (final ProvisionType aProvision : aPerCountry.getProvision ())
+          ret.add (aProvision.getDataOwnerId ());
+      }
+    }
+    return ret;
+  }
+
+  @Nonnull
+  private static ProvisionQueryOptions _create (@Nullable final String sPageSize,
+                                                @Nullable final String sFields,
+                                                @Nullable final String sCursor) throws IALBadRequestException
+  {
+    return ProvisionQueryOptions.createFromParams (sPageSize, sFields, sCursor, QUERY_KEY, null);
+  }
+
+  private static void _assertInvalid (@Nullable final String sPageSize,
+                                      @Nullable final String sFields,
+                                      @Nullable final String sCursor,
+                                      @Nonnull final String sQueryKey)
+  {
+    try
+    {
+      ProvisionQueryOptions.createFromParams (sPageSize, sFields, sCursor, sQueryKey, null);
+      fail ("The parameters pageSize=" + sPageSize + ", fields=" + sFields + ", cursor=" + sCursor + " were accepted");
+    }
+    catch (final IALBadRequestException ex)
+    {
+      // expected
+    }
+  }
+
+  @Nonnull
+  private static String _getCursor (@Nonnull final String sPageSize, @Nullable final String sFields) throws IALBadRequestException
+  {
+    final String ret = _create (sPageSize, sFields, null).applyPaging (_createResponse ());
+    assertNotNull (ret);
+    return ret;
+  }
+
+  @Nonnull
+  private static String _encode (@Nonnull final String s)
+  {
+    return Base64.getUrlEncoder ().withoutPadding ().encodeToString (s.getBytes (StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testNoPaging () throws Exception
+  {
+    final ResponseLookupRoutingInformationType aResponse = _createResponse ();
+    final List <String> aBefore = _getAllDataOwnerIDs (aResponse);
+    assertNull (_create (null, null, null).applyPaging (aResponse));
+    // Not even sorted
+    assertEquals (aBefore, _getAllDataOwnerIDs (aResponse));
+    assertEquals (12, aBefore.size ());
+  }
+
+  @Test
+  public void testAllPages () throws Exception
+  {
+    final List <String> aExpected = new ArrayList <> ();
+    for (final String sCOTID : new String [] { "cot1", "cot2" })
+      for (final String sCountryCode : new String [] { "AT", "BE" })
+        for (int i = 1; i <= 3; ++i)
+          aExpected.add (sCOTID + "-" + sCountryCode + i);
+
+    for (int nPageSize = 1; nPageSize <= 13; ++nPageSize)
+    {
+      final List <String> aAll = new ArrayList <> ();
+      String sCursor = null;
+      int nPages = 0;
+      do
+      {
+        final ResponseLookupRoutingInformationType aResponse = _createResponse ();
+        sCursor = _create (Integer.toString (nPageSize), null, sCursor).applyPaging (aResponse);
+        final List <String> aPage = _getAllDataOwnerIDs (aResponse);
+        if (sCursor != null)
+          assertEquals (nPageSize, aPage.size ());
+        else
+        {
+          // The last page is never empty
+          assertFalse (aPage.isEmpty ());
+          assertTrue (aPage.size () <= nPageSize);
+        }
+        aAll.addAll (aPage);
+        nPages++;
+      } while (sCursor != null);
+      assertEquals ("Page size " + nPageSize, aExpected, aAll);
+      assertEquals ((12 + nPageSize - 1) / nPageSize, nPages);
+    }
+  }
+
+  @Test
+  public void testMiddlePage () throws Exception
+  {
+    // The second page of 5 starts with the last provision of the first COT and
+    // ends in the second country of the second COT
+    final ResponseLookupRoutingInformationType aResponse = _createResponse ();
+    final String sNextCursor = _create ("5", null, _getCursor ("5", null)).applyPaging (aResponse);
+    assertNotNull (sNextCursor);
+    assertEquals (2, aResponse.getResponseItemCount ());
+    assertEquals (1, aResponse.getResponseItemAtIndex (0).getResponsePerCountryCount ());
+    assertEquals ("BE", aResponse.getResponseItemAtIndex (0).getResponsePerCountryAtIndex (0).getCountryCode ());
+    assertEquals (2, aResponse.getResponseItemAtIndex (1).getResponsePerCountryCount ());
+    final List <String> aPage = _getAllDataOwnerIDs (aResponse);
+    assertEquals ("cot1-BE3", aPage.get (0));
+    assertEquals ("cot2-AT1", aPage.get (1));
+    assertEquals ("cot2-AT3", aPage.get (3));
+    assertEquals ("cot2-BE1", aPage.get (4));
+
+    // The last page only contains the rest of the second COT
+    final ResponseLookupRoutingInformationType aLast = _createResponse ();
+    assertNull (_create ("5", null, sNextCursor).applyPaging (aLast));
+    assertEquals (1, aLast.getResponseItemCount ());
+    assertEquals ("cot2", aLast.getResponseItemAtIndex (0).getCanonicalObjectTypeId ());
+    assertEquals (1, aLast.getResponseItemAtIndex (0).getResponsePerCountryCount ());
+    assertEquals (2, _getAllDataOwnerIDs (aLast).size ());
+  }
+
+  @Test
+  public void testExactLastPage () throws Exception
+  {
+    final ResponseLookupRoutingInformationType aResponse = _createResponse ();
+    assertNull (_create ("6", null, _getCursor ("6", null)).applyPaging (aResponse));
+    assertEquals (6, _getAllDataOwnerIDs (aResponse).size ());
+  }
+
+  @Test
+  public void testCursorOfOtherQuery () throws Exception
+  {
+    final String sCursor = _getCursor ("5", null);
+    // Other query
+    _assertInvalid ("5", null, sCursor, "cot1|");
+    // Other page size
+    _assertInvalid ("4", null, sCursor, QUERY_KEY);
+    // Other fields
+    _assertInvalid ("5", EProvisionField.ATU_CODE.getID (), sCursor, QUERY_KEY);
+    // No page size
+    _assertInvalid (null, null, sCursor, QUERY_KEY);
+
+    // The order of the fields doesn't matter
+    final String sFields = EProvisionField.ATU_CODE.getID () + "," + EProvisionField.DATA_OWNER_ID.getID ();
+    final String sFieldsCursor = _getCursor ("5", sFields);
+    assertNotNull (_create ("5",
+                            EProvisionField.DATA_OWNER_ID.getID () + ", " + EProvisionField.ATU_CODE.getID (),
+                            sFieldsCursor));
+    _assertInvalid ("5", null, sFieldsCursor, QUERY_KEY);
+  }
+
+  @Test
+  public void testInvalidCursor () throws Exception
+  {
+    final String sDecoded = new String (Base64.getUrlDecoder ().decode (_getCursor ("5", null)), StandardCharsets.UTF_8);
+    final String sQueryHash = sDecoded.substring (sDecoded.indexOf (':') + 1);
+    // Sanity check
+    assertNotNull (_create ("5", null, _encode ("10:" + sQueryHash)));
+
+    _assertInvalid ("5", null, "not base64!", QUERY_KEY);
+    _assertInvalid ("5", null, _encode ("garbage"), QUERY_KEY);
+    _assertInvalid ("5", null, _encode (":" + sQueryHash), QUERY_KEY);
+    _assertInvalid ("5", null, _encode ("-5:" + sQueryHash), QUERY_KEY);
+    _assertInvalid ("5", null, _encode ("x:" + sQueryHash), QUERY_KEY);
+    _assertInvalid ("5", null, _encode ("10:" + sQueryHash + "0"), QUERY_KEY);
+  }
+
+  @Test
+  public void testOffsetBeyondEnd () throws Exception
+  {
+    final String sDecoded = new String (Base64.getUrlDecoder ().decode (_getCursor ("5", null)), StandardCharsets.UTF_8);
+    final String sQueryHash = sDecoded.substring (sDecoded.indexOf (':') + 1);
+    final ResponseLookupRoutingInformationType aResponse = _createResponse ();
+    assertNull (_create ("5", null, _encode ("100:" + sQueryHash)).applyPaging (aResponse));
+    assertEquals (0, aResponse.getResponseItemCount ());
+  }
+
+  @Test
+  public void testInvalidPageSizeAndFields () throws Exception
+  {
+    assertNotNull (_create ("1", null, null));
+    assertNotNull (_create (Integer.toString (ProvisionQueryOptions.MAX_PAGE_SIZE), null, null));
+
+    _assertInvalid ("0", null, null, QUERY_KEY);
+    _assertInvalid ("-1", null, null, QUERY_KEY);
+    _assertInvalid (Integer.toString (ProvisionQueryOptions.MAX_PAGE_SIZE + 1), null, null, QUERY_KEY);
+    _assertInvalid ("99999999999", null, null, QUERY_KEY);
+    _assertInvalid ("abc", null, null, QUERY_KEY);
+    _assertInvalid (null, "foo", null, QUERY_KEY);
+    _assertInvalid (null, EProvisionField.ATU_CODE.getID () + ",foo", null, QUERY_KEY);
+  }
+
+  @Test
+  public void testFields () throws Exception
+  {
+    assertFalse (_create (null, null, null).isProjected ());
+    assertFalse (_create (null, null, null).isMandatoryXMLFieldMissing ());
+
+    final ProvisionQueryOptions aOptions = _create (null, EProvisionField.ATU_CODE.getID (), null);
+    assertTrue (aOptions.isProjected ());
+    assertTrue (aOptions.isMandatoryXMLFieldMissing ());
+    assertEquals (1, aOptions.getFields ().size ());
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.helger.commons.mime.CMimeType;
+
+/**
+ * Test class for class {@link RenderedResponse}.
+ *
+ * @author Philip Helger
+ */
+public final class RenderedResponseTest
+{
+  @Test
+  public void testIsETagMatching ()
+  {
+    final String sWeak = "W/\"abc\"";
+    final String sStrong = "\"abc\"";
+
+    assertFalse (RenderedResponse.isETagMatching (null, sWeak));
+    assertFalse (RenderedResponse.isETagMatching ("", sWeak));
+    assertFalse (RenderedResponse.isETagMatching ("  ", sWeak));
+
+    // Weak comparison
+    assertTrue (RenderedResponse.isETagMatching (sWeak, sWeak));
+    assertTrue (RenderedResponse.isETagMatching (sStrong, sWeak));
+    assertTrue (RenderedResponse.isETagMatching (sWeak, sStrong));
+    assertTrue (RenderedResponse.isETagMatching (sStrong, sStrong));
+
+    // Lists
+    assertTrue (RenderedResponse.isETagMatching ("\"x\", W/\"abc\"", sWeak));
+    assertTrue (RenderedResponse.isETagMatching ("\"x\",\"abc\"", sWeak));
+    assertTrue (RenderedResponse.isETagMatching (" W/\"abc\" , \"x\" ", sWeak));
+    assertFalse (RenderedResponse.isETagMatching ("\"x\", W/\"y\"", sWeak));
+
+    // Wildcard
+    assertTrue (RenderedResponse.isETagMatching ("*", sWeak));
+
+    // No partial matches
+    assertFalse (RenderedResponse.isETagMatching ("\"abcd\"", sWeak));
+    assertFalse (RenderedResponse.isETagMatching ("\"ab\"", sWeak));
+    assertFalse (RenderedResponse.isETagMatching ("abc", sWeak));
+    assertFalse (RenderedResponse.isETagMatching ("W/abc", sWeak));
+  }
+
+  @Test
+  public void testETag ()
+  {
+    final byte [] aBytes = "{\"items\":[]}".getBytes (StandardCharsets.UTF_8);
+    final RenderedResponse aResponse = new RenderedResponse (aBytes,
+                                                             CMimeType.APPLICATION_JSON,
+                                                             StandardCharsets.UTF_8,
+                                                             null);
+    final String sETag = aResponse.getETag ();
+    assertTrue (sETag.startsWith ("W/\""));
+    assertTrue (RenderedResponse.isETagMatching (sETag, sETag));
+    assertEquals (sETag,
+                  new RenderedResponse (aBytes.clone (), CMimeType.APPLICATION_JSON, StandardCharsets.UTF_8, "c").getETag ());
+    assertNotEquals (sETag,
+                     new RenderedResponse ("{}".getBytes (StandardCharsets.UTF_8),
+                                           CMimeType.APPLICATION_JSON,
+                                           StandardCharsets.UTF_8,
+                                           null).getETag ());
+  }
+
+  @Test
+  public void testEncodedBytesAreReused ()
+  {
+    final byte [] aBytes = "{\"items\":[]}".getBytes (StandardCharsets.UTF_8);
+    final RenderedResponse aResponse = new RenderedResponse (aBytes,
+                                                             CMimeType.APPLICATION_JSON,
+                                                             StandardCharsets.UTF_8,
+                                                             null);
+    assertSame (aBytes, aResponse.getEncodedBytes (EContentEncoding.IDENTITY));
+    final byte [] aGZip = aResponse.getEncodedBytes (EContentEncoding.GZIP);
+    assertSame (aGZip, aResponse.getEncodedBytes (EContentEncoding.GZIP));
+    assertEquals (aBytes.length, aResponse.getUncompressedLength ());
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+
+import com.helger.commons.state.ETriState;
+
+/**
+ * Test class for class {@link SMPProcessIDChecker}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPProcessIDCheckerTest
+{
+  private static final String SCHEME = "urn:de4a-eu:MessageType";
+  private static final String VALUE = "request";
+
+  @Nonnull
+  private static String _createSignedServiceMetadata (@Nonnull final String sProcessIDs)
+  {
+    return _createSignedServiceMetadata ("", sProcessIDs);
+  }
+
+  @Nonnull
+  private static String _createSignedServiceMetadata (@Nonnull final String sDocType, @Nonnull final String sProcessIDs)
+  {
+    return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+           sDocType +
+           "<SignedServiceMetadata xmlns=\"" +
+           SMPProcessIDChecker.NAMESPACE_URI_BDXR1 +
+           "\">" +
+           "<ServiceMetadata>" +
+           "<ServiceInformation>" +
+           "<ParticipantIdentifier scheme=\"iso6523-actorid-upis\">9999:test</ParticipantIdentifier>" +
+           "<DocumentIdentifier scheme=\"urn:de4a-eu:CanonicalEvidenceType\">CompanyRegistration</DocumentIdentifier>" +
+           "<ProcessList>" +
+           "<Process>" +
+           sProcessIDs +
+           "<ServiceEndpointList>" +
+           "<Endpoint transportProfile=\"bdxr-transport-ebms3-as4-v1p0\">" +
+           "<EndpointURI>https://as4.example.org/as4</EndpointURI>" +
+           "<Certificate>MIIB</Certificate>" +
+           "<ServiceDescription>Test</ServiceDescription>" +
+           "<TechnicalContactUrl>https://example.org</TechnicalContactUrl>" +
+           "</Endpoint>" +
+           "</ServiceEndpointList>" +
+           "</Process>" +
+           "</ProcessList>" +
+           "</ServiceInformation>" +
+           "</ServiceMetadata>" +
+           "<ds:Signature xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\">" +
+           "<ds:SignedInfo/>" +
+           "<ds:SignatureValue>AAAA</ds:SignatureValue>" +
+           "</ds:Signature>" +
+           "</SignedServiceMetadata>";
+  }
+
+  @Nullable
+  private static ETriState _check (@Nonnull final String sXML) throws XMLStreamException
+  {
+    return SMPProcessIDChecker.containsProcessID (new ByteArrayInputStream (sXML.getBytes (StandardCharsets.UTF_8)),
+                                                  SCHEME,
+                                                  VALUE);
+  }
+
+  @Test
+  public void testContained () throws XMLStreamException
+  {
+    assertEquals (ETriState.TRUE,
+                  _check (_createSignedServiceMetadata ("<ProcessIdentifier scheme=\"" +
+                                                        SCHEME +
+                                                        "\">" +
+                                                        VALUE +
+                                                        "</ProcessIdentifier>")));
+    // Not the first one
+    assertEquals (ETriState.TRUE,
+                  _check (_createSignedServiceMetadata ("<ProcessIdentifier scheme=\"" +
+                                                        SCHEME +
+                                                        "\">response</ProcessIdentifier>" +
+                                                        "<ProcessIdentifier scheme=\"" +
+                                                        SCHEME +
+                                                        "\"> " +
+                                                        VALUE +
+                                                        " </ProcessIdentifier>")));
+  }
+
+  @Test
+  public void testNotContained () throws XMLStreamException
+  {
+    assertEquals (ETriState.FALSE,
+                  _check (_createSignedServiceMetadata ("<ProcessIdentifier scheme=\"" +
+                                                        SCHEME +
+                                                        "\">response</ProcessIdentifier>")));
+    // Other scheme
+    assertEquals (ETriState.FALSE,
+                  _check (_createSignedServiceMetadata ("<ProcessIdentifier scheme=\"other\">" +
+                                                        VALUE +
+                                                        "</ProcessIdentifier>")));
+    // Other namespace
+    assertEquals (ETriState.UNDEFINED,
+                  _check ("<ServiceMetadata xmlns=\"urn:other\"><ProcessList><ProcessIdentifier scheme=\"" +
+                          SCHEME +
+                          "\">" +
+                          VALUE +
+                          "</ProcessIdentifier></ProcessList></ServiceMetadata>"));
+  }
+
+  @Test
+  public void testRedirect () throws XMLStreamException
+  {
+    assertNull (_check ("<SignedServiceMetadata xmlns=\"" +
+                        SMPProcessIDChecker.NAMESPACE_URI_BDXR1 +
+                        "\"><ServiceMetadata><Redirect href=\"https://smp2.example.org/9999:test\">" +
+                        "<CertificateUID>CN=SMP2</CertificateUID>" +
+                        "</Redirect></ServiceMetadata></SignedServiceMetadata>"));
+  }
+
+  @Test
+  public void testExternalEntityIsNotResolved () throws IOException
+  {
+    final File aFile = File.createTempFile ("ial-xxe", ".txt");
+    try
+    {
+      Files.write (aFile.toPath (), VALUE.getBytes (StandardCharsets.UTF_8));
+      final String sXML = _createSignedServiceMetadata ("<!DOCTYPE SignedServiceMetadata [<!ENTITY xxe SYSTEM \"" +
+                                                        aFile.toURI () +
+                                                        "\">]>\n",
+                                                        "<ProcessIdentifier scheme=\"" +
+                                                        SCHEME +
+                                                        "\">&xxe;</ProcessIdentifier>");
+      try
+      {
+        final ETriState eRet = _check (sXML);
+        fail ("External entity was resolved: " + eRet);
+      }
+      catch (final XMLStreamException ex)
+      {
+        // expected - DTDs are not supported, so the entity is undeclared
+      }
+    }
+    finally
+    {
+      Files.delete (aFile.toPath ());
+    }
+  }
+}
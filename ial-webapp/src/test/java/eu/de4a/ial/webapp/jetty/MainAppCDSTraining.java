@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.jetty;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.Immutable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.concurrent.ThreadHelper;
+import com.helger.commons.mime.CMimeType;
+import com.helger.photon.jetty.JettyStopper;
+
+import eu.de4a.ial.api.IALCBORCodec;
+import eu.de4a.ial.webapp.load.MainIALLoadDriver;
+
+/**
+ * Training run for the AppCDS archive: starts the IAL with the stub Directory
+ * and SMP like {@link RunInJettyIALWithStubs}, waits until <code>/ready</code>
+ * reports the end of the warm-up, queries the API in all response formats and
+ * stops Jetty again. Run it with
+ * <code>-XX:ArchiveClassesAtExit=ial-appcds.jsa</code> (Java 13+) to dump all
+ * loaded classes into the archive - see the <code>appcds</code> profile of this
+ * module.
+ *
+ * @author Philip Helger
+ */
+@Immutable
+public final class MainAppCDSTraining
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (MainAppCDSTraining.class);
+  private static final String BASE_URL = "http://localhost:8080";
+  private static final String [] COTIDS = { "urn:de4a-eu:CanonicalEvidenceType::CompanyRegistration:1.0",
+                                            "urn:de4a-eu:CanonicalEvidenceType::BirthEvidence:1.0" };
+  private static final String [] ACCEPTS = { null,
+                                             CMimeType.APPLICATION_JSON.getAsString (),
+                                             IALCBORCodec.MIME_TYPE.getAsString () };
+  private static final long MAX_WAIT_MILLIS = TimeUnit.MINUTES.toMillis (5);
+
+  private static volatile boolean s_bTrained = false;
+
+  private MainAppCDSTraining ()
+  {}
+
+  private static boolean _train ()
+  {
+    // Wait until Jetty is up and the warm-up is finished
+    final long nEnd = System.currentTimeMillis () + MAX_WAIT_MILLIS;
+    while (!MainIALLoadDriver.get (BASE_URL + "/ready", null))
+    {
+      if (System.currentTimeMillis () > nEnd)
+      {
+        LOGGER.error ("The IAL did not get ready within " + MAX_WAIT_MILLIS + " milliseconds");
+        return false;
+      }
+      ThreadHelper.sleep (500);
+    }
+
+    LOGGER.info ("Running the AppCDS training requests");
+    for (final String sAccept : ACCEPTS)
+      for (final String sCOTID : COTIDS)
+      {
+        MainIALLoadDriver.get (BASE_URL + "/api/provision/" + sCOTID, sAccept);
+        MainIALLoadDriver.get (BASE_URL + "/api/provision/" + sCOTID + "/AT", sAccept);
+      }
+    MainIALLoadDriver.get (BASE_URL + "/", null);
+    MainIALLoadDriver.get (BASE_URL + "/status", null);
+    MainIALLoadDriver.get (BASE_URL + "/metrics", null);
+    return true;
+  }
+
+  private static void _trainAndStop ()
+  {
+    try
+    {
+      s_bTrained = _train ();
+    }
+    finally
+    {
+      try
+      {
+        new JettyStopper ().run ();
+      }
+      catch (final IOException ex)
+      {
+        LOGGER.error ("Failed to stop Jetty", ex);
+      }
+    }
+  }
+
+  public static void main (final String [] args) throws Exception
+  {
+    // Also train the SMP cache pre-filling of the warm-up
+    System.setProperty ("ial.warmup.cotids", String.join (",", COTIDS));
+
+    final Thread aTrainer = new Thread (MainAppCDSTraining::_trainAndStop, "IAL-AppCDS-Training");
+    aTrainer.setDaemon (true);
+    aTrainer.start ();
+
+    // Blocks until Jetty is stopped
+    RunInJettyIALWithStubs.main (args);
+
+    // The archive is written on exit - fail the build if the training did not
+    // run, as the archive would not contain the request handling classes
+    if (!s_bTrained)
+      LOGGER.error ("The AppCDS training failed");
+    System.exit (s_bTrained ? 0 : 1);
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.jetty;
+
+import java.io.File;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.http.CHttp;
+import com.helger.commons.string.StringHelper;
+import com.helger.photon.jetty.JettyStarter;
+
+import eu.de4a.ial.webapp.load.AbstractStubServer;
+import eu.de4a.ial.webapp.load.StubDirectoryServer;
+import eu.de4a.ial.webapp.load.StubSMPServer;
+import eu.de4a.ial.webapp.load.TrafficRecording;
+
+/**
+ * Run as a standalone web application in Jetty on port 8080, using a local
+ * stub Directory and a local stub SMP instead of the real DE4A
+ * infrastructure. Use together with
+ * {@link eu.de4a.ial.webapp.load.MainIALLoadDriver}.<br>
+ * The stubs can be configured with the following system properties, where
+ * <code>xxx</code> is either <code>directory</code> or <code>smp</code>:
+ * <ul>
+ * <li><code>ial.stub.xxx.port</code> - the port to use</li>
+ * <li><code>ial.stub.xxx.latency-min-ms</code> and
+ * <code>ial.stub.xxx.latency-max-ms</code> - the random latency per
+ * request</li>
+ * <li><code>ial.stub.xxx.error-rate</code> - the share of requests between 0
+ * and 1 that fail with HTTP 503</li>
+ * </ul>
+ * To replay recorded traffic with {@link eu.de4a.ial.webapp.load.MainIALTrafficReplay},
+ * set the system property <code>ial.stub.traffic-file</code> to the recording,
+ * so that the stubs answer with the recorded upstream responses.<br>
+ * Note: the stub SMP responses are not signed, so the streaming SMP check is
+ * used and the SMP signature verification is not measured.
+ *
+ * @author Philip Helger
+ */
+@Immutable
+public final class RunInJettyIALWithStubs
+{
+  private static void _configure (@Nonnull final AbstractStubServer aServer, @Nonnull final String sPrefix)
+  {
+    aServer.setLatency (Long.getLong (sPrefix + "latency-min-ms", 0).longValue (),
+                        Long.getLong (sPrefix + "latency-max-ms", 0).longValue ());
+    aServer.setErrorRate (Double.parseDouble (System.getProperty (sPrefix + "error-rate", "0")),
+                          CHttp.HTTP_SERVICE_UNAVAILABLE);
+  }
+
+  public static void main (final String [] args) throws Exception
+  {
+    try (final StubDirectoryServer aDirectory = new StubDirectoryServer (Integer.getInteger ("ial.stub.directory.port",
+                                                                                             8091)
+                                                                                 .intValue ());
+         final StubSMPServer aSMP = new StubSMPServer (Integer.getInteger ("ial.stub.smp.port", 8092).intValue ()))
+    {
+      _configure (aDirectory, "ial.stub.directory.");
+      _configure (aSMP, "ial.stub.smp.");
+
+      final String sTrafficFile = System.getProperty ("ial.stub.traffic-file");
+      if (StringHelper.hasText (sTrafficFile))
+        TrafficRecording.read (new File (sTrafficFile)).applyTo (aDirectory, aSMP);
+
+      // System properties take precedence over application.properties
+      System.setProperty ("ial.directory.url", StringHelper.trimEnd (aDirectory.getBaseURL (), "/"));
+      System.setProperty ("ial.directory.tls.trustall", "false");
+      // No BDXL lookup
+      System.setProperty ("ial.smp.fixed-url", aSMP.getBaseURL ());
+      // The stub responses are not signed - the signature verification is not
+      // measured
+      System.setProperty ("ial.smp.streaming-check.enabled", "true");
+      System.setProperty ("ial.index.enabled", "false");
+      // Health probes would distort the stub statistics
+      System.setProperty ("ial.health.enabled", "false");
+
+      final JettyStarter js = new JettyStarter (RunInJettyIALWithStubs.class).setSessionCookieName ("IAL_SESSION")
+                                                                             .setContainerIncludeJarPattern (JettyStarter.CONTAINER_INCLUDE_JAR_PATTERN_ALL);
+      js.run ();
+    }
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.load;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.concurrent.BasicThreadFactory;
+import com.helger.commons.http.CHttp;
+import com.helger.commons.http.CHttpHeader;
+import com.helger.commons.mime.CMimeType;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Base class for the embedded stub servers used in load tests. Every response
+ * can be delayed by a random latency and a share of all requests can be
+ * answered with an HTTP error.
+ *
+ * @author Philip Helger
+ */
+public abstract class AbstractStubServer implements AutoCloseable
+{
+  /**
+   * Exception to be thrown by {@link AbstractStubServer#getResponse(HttpExchange)}
+   * to answer with a specific HTTP status code.
+   */
+  protected static final class StubHttpStatusException extends RuntimeException
+  {
+    private final int m_nStatusCode;
+
+    public StubHttpStatusException (final int nStatusCode)
+    {
+      super ("HTTP " + nStatusCode);
+      m_nStatusCode = nStatusCode;
+    }
+
+    public int getStatusCode ()
+    {
+      return m_nStatusCode;
+    }
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AbstractStubServer.class);
+
+  private final String m_sName;
+  private final HttpServer m_aServer;
+  private final ExecutorService m_aExecutor;
+  private final AtomicInteger m_aRequestCount = new AtomicInteger (0);
+  private final AtomicInteger m_aErrorCount = new AtomicInteger (0);
+  private volatile long m_nMinLatencyMillis = 0;
+  private volatile long m_nMaxLatencyMillis = 0;
+  private volatile double m_dErrorRate = 0;
+  private volatile int m_nErrorStatusCode = CHttp.HTTP_SERVICE_UNAVAILABLE;
+
+  protected AbstractStubServer (@Nonnull final String sName, @Nonnegative final int nPort) throws IOException
+  {
+    m_sName = sName;
+    m_aExecutor = Executors.newCachedThreadPool (new BasicThreadFactory.Builder ().namingPattern (sName + "-%d")
+                                                                                  .daemon (true)
+                                                                                  .build ());
+    m_aServer = HttpServer.create (new InetSocketAddress ("localhost", nPort), 0);
+    m_aServer.createContext ("/", this::_handle);
+    m_aServer.setExecutor (m_aExecutor);
+    m_aServer.start ();
+    LOGGER.info ("Started " + sName + " on " + getBaseURL ());
+  }
+
+  /**
+   * @return The base URL of the server, ending with a slash. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public final String getBaseURL ()
+  {
+    return "http://localhost:" + m_aServer.getAddress ().getPort () + "/";
+  }
+
+  /**
+   * Set the random latency of each response.
+   *
+   * @param nMinMillis
+   *        Minimum latency in milliseconds. Must be &ge; 0.
+   * @param nMaxMillis
+   *        Maximum latency in milliseconds. Must be &ge; the minimum.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AbstractStubServer setLatency (@Nonnegative final long nMinMillis, @Nonnegative final long nMaxMillis)
+  {
+    ValueEnforcer.isGE0 (nMinMillis, "MinMillis");
+    ValueEnforcer.isTrue (nMaxMillis >= nMinMillis, "MaxMillis must be >= MinMillis");
+    m_nMinLatencyMillis = nMinMillis;
+    m_nMaxLatencyMillis = nMaxMillis;
+    return this;
+  }
+
+  /**
+   * Set the share of requests that are answered with an error.
+   *
+   * @param dErrorRate
+   *        The error rate between 0 (no errors) and 1 (only errors).
+   * @param nStatusCode
+   *        The HTTP status code to use for errors.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AbstractStubServer setErrorRate (final double dErrorRate, final int nStatusCode)
+  {
+    ValueEnforcer.isBetweenInclusive (dErrorRate, "ErrorRate", 0, 1);
+    m_dErrorRate = dErrorRate;
+    m_nErrorStatusCode = nStatusCode;
+    return this;
+  }
+
+  @Nonnegative
+  public final int getRequestCount ()
+  {
+    return m_aRequestCount.get ();
+  }
+
+  @Nonnegative
+  public final int getErrorCount ()
+  {
+    return m_aErrorCount.get ();
+  }
+
+  public final void resetCounters ()
+  {
+    m_aRequestCount.set (0);
+    m_aErrorCount.set (0);
+  }
+
+  private void _handle (@Nonnull final HttpExchange aExchange) throws IOException
+  {
+    try
+    {
+      m_aRequestCount.incrementAndGet ();
+      final ThreadLocalRandom aRandom = ThreadLocalRandom.current ();
+      final long nMin = m_nMinLatencyMillis;
+      final long nMax = m_nMaxLatencyMillis;
+      final long nLatency = nMax > nMin ? aRandom.nextLong (nMin, nMax + 1) : nMin;
+      if (nLatency > 0)
+        try
+        {
+          Thread.sleep (nLatency);
+        }
+        catch (final InterruptedException ex)
+        {
+          Thread.currentThread ().interrupt ();
+        }
+
+      if (m_dErrorRate > 0 && aRandom.nextDouble () < m_dErrorRate)
+      {
+        m_aErrorCount.incrementAndGet ();
+        aExchange.sendResponseHeaders (m_nErrorStatusCode, -1);
+        return;
+      }
+
+      final byte [] aBytes = getResponse (aExchange);
+      if (aBytes == null)
+      {
+        aExchange.sendResponseHeaders (CHttp.HTTP_NOT_FOUND, -1);
+        return;
+      }
+
+      aExchange.getResponseHeaders ().add (CHttpHeader.CONTENT_TYPE, CMimeType.APPLICATION_XML.getAsString ());
+      aExchange.sendResponseHeaders (CHttp.HTTP_OK, aBytes.length);
+      try (final OutputStream aOS = aExchange.getResponseBody ())
+      {
+        aOS.write (aBytes);
+      }
+    }
+    catch (final StubHttpStatusException ex)
+    {
+      aExchange.sendResponseHeaders (ex.getStatusCode (), -1);
+    }
+    catch (final RuntimeException ex)
+    {
+      LOGGER.error (m_sName + " failed to handle '" + aExchange.getRequestURI () + "'", ex);
+      aExchange.sendResponseHeaders (CHttp.HTTP_INTERNAL_SERVER_ERROR, -1);
+    }
+    finally
+    {
+      aExchange.close ();
+    }
+  }
+
+  /**
+   * Create the XML response for a single request.
+   *
+   * @param aExchange
+   *        The current HTTP exchange. Never <code>null</code>.
+   * @return The response bytes or <code>null</code> to answer with HTTP 404.
+   * @throws StubHttpStatusException
+   *         To answer with another HTTP status code
+   */
+  @Nullable
+  protected abstract byte [] getResponse (@Nonnull HttpExchange aExchange);
+
+  public void close ()
+  {
+    m_aServer.stop (0);
+    m_aExecutor.shutdownNow ();
+    try
+    {
+      m_aExecutor.awaitTermination (5, TimeUnit.SECONDS);
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+    }
+    LOGGER.info ("Stopped " + m_sName);
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.load;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The latencies of all requests of one load test scenario. All methods are
+ * synchronized, so that the recorder can be shared between threads.
+ *
+ * @author Philip Helger
+ */
+@ThreadSafe
+final class LatencyRecorder
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (LatencyRecorder.class);
+
+  private long [] m_aNanos = new long [1024];
+  private int m_nCount = 0;
+  private int m_nErrors = 0;
+
+  synchronized void add (final long nNanos, final boolean bSuccess)
+  {
+    if (m_nCount == m_aNanos.length)
+      m_aNanos = Arrays.copyOf (m_aNanos, m_nCount * 2);
+    m_aNanos[m_nCount++] = nNanos;
+    if (!bSuccess)
+      m_nErrors++;
+  }
+
+  synchronized void addAll (@Nonnull final LatencyRecorder aOther)
+  {
+    for (int i = 0; i < aOther.m_nCount; ++i)
+      add (aOther.m_aNanos[i], true);
+    m_nErrors += aOther.m_nErrors;
+  }
+
+  synchronized int getCount ()
+  {
+    return m_nCount;
+  }
+
+  private static double _getMillis (final long nNanos)
+  {
+    return nNanos / 1_000_000d;
+  }
+
+  synchronized void log (@Nonnull final String sScenario, final long nDurationNanos)
+  {
+    if (m_nCount == 0)
+    {
+      LOGGER.info (sScenario + ": no requests");
+      return;
+    }
+    final long [] aSorted = Arrays.copyOf (m_aNanos, m_nCount);
+    Arrays.sort (aSorted);
+    final double dSeconds = nDurationNanos / 1_000_000_000d;
+    LOGGER.info (String.format ("%s: %d requests (%d errors) in %.1f s = %.1f req/s; latency ms p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f",
+                                sScenario,
+                                Integer.valueOf (m_nCount),
+                                Integer.valueOf (m_nErrors),
+                                Double.valueOf (dSeconds),
+                                Double.valueOf (m_nCount / dSeconds),
+                                Double.valueOf (_getMillis (_getPercentile (aSorted, 0.5))),
+                                Double.valueOf (_getMillis (_getPercentile (aSorted, 0.9))),
+                                Double.valueOf (_getMillis (_getPercentile (aSorted, 0.99))),
+                                Double.valueOf (_getMillis (_getPercentile (aSorted, 0.999))),
+                                Double.valueOf (_getMillis (aSorted[aSorted.length - 1]))));
+  }
+
+  private static long _getPercentile (@Nonnull final long [] aSorted, final double dPercentile)
+  {
+    final int nIndex = (int) Math.ceil (dPercentile * aSorted.length) - 1;
+    return aSorted[Math.max (0, Math.min (nIndex, aSorted.length - 1))];
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.http.CHttp;
+import com.helger.commons.http.CHttpHeader;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.string.StringHelper;
+
+/**
+ * Simple load driver for a running IAL, e.g. started with
+ * {@link eu.de4a.ial.webapp.jetty.RunInJettyIALWithStubs}. It first measures
+ * sequential requests with cold caches (all caches are cleared before each
+ * request) and afterwards concurrent requests with warm caches, and logs the
+ * throughput and latency percentiles of both scenarios.<br>
+ * Configuration via system properties:
+ * <ul>
+ * <li><code>ial.load.url</code> - the API base URL. Defaults to
+ * <code>http://localhost:8080/api</code></li>
+ * <li><code>ial.load.cotids</code> - comma separated Canonical Object Type
+ * IDs</li>
+ * <li><code>ial.load.atucodes</code> - comma separated ATU codes. An empty
+ * entry means no ATU code.</li>
+ * <li><code>ial.load.format</code> - the requested MIME type</li>
+ * <li><code>ial.load.cold-requests</code> - number of cold cache requests</li>
+ * <li><code>ial.load.threads</code> - number of concurrent warm cache
+ * clients</li>
+ * <li><code>ial.load.warm-seconds</code> - duration of the warm cache
+ * scenario</li>
+ * </ul>
+ *
+ * @author Philip Helger
+ */
+public final class MainIALLoadDriver
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (MainIALLoadDriver.class);
+
+  private MainIALLoadDriver ()
+  {}
+
+  @Nonnull
+  private static ICommonsList <String> _getList (@Nonnull final String sPropertyName, @Nonnull final String sDefault)
+  {
+    return StringHelper.getExploded (',', System.getProperty (sPropertyName, sDefault));
+  }
+
+  /**
+   * Perform a single GET request and read the complete response.
+   *
+   * @return <code>true</code> if the response status was HTTP 200.
+   */
+  public static boolean get (@Nonnull final String sURL, @Nullable final String sAccept)
+  {
+    try
+    {
+      final HttpURLConnection aConn = (HttpURLConnection) new URL (sURL).openConnection ();
+      if (sAccept != null)
+        aConn.setRequestProperty (CHttpHeader.ACCEPT, sAccept);
+      final int nStatusCode = aConn.getResponseCode ();
+      // Read the whole body, so that the connection can be reused
+      try (final InputStream aIS = nStatusCode < 400 ? aConn.getInputStream () : aConn.getErrorStream ())
+      {
+        if (aIS != null)
+          StreamHelper.getAllBytes (aIS);
+      }
+      return nStatusCode == CHttp.HTTP_OK;
+    }
+    catch (final IOException ex)
+    {
+      LOGGER.warn ("Request to '" + sURL + "' failed: " + ex.getMessage ());
+      return false;
+    }
+  }
+
+  @Nonnull
+  private static LatencyRecorder _runCold (@Nonnull final String sBaseURL,
+                                           @Nonnull final List <String> aQueries,
+                                           @Nullable final String sAccept,
+                                           @Nonnegative final int nRequests)
+  {
+    final LatencyRecorder ret = new LatencyRecorder ();
+    for (int i = 0; i < nRequests; ++i)
+    {
+      if (!get (sBaseURL + "/internal/clear-smpclient-cache", null))
+        LOGGER.warn ("Failed to clear the IAL caches");
+
+      final long nStart = System.nanoTime ();
+      final boolean bSuccess = get (aQueries.get (i % aQueries.size ()), sAccept);
+      ret.add (System.nanoTime () - nStart, bSuccess);
+    }
+    return ret;
+  }
+
+  @Nonnull
+  private static LatencyRecorder _runWarm (@Nonnull final List <String> aQueries,
+                                           @Nullable final String sAccept,
+                                           @Nonnegative final int nThreads,
+                                           final long nEndNanos) throws Exception
+  {
+    final ExecutorService aES = Executors.newFixedThreadPool (nThreads);
+    try
+    {
+      final ICommonsList <Future <LatencyRecorder>> aFutures = new CommonsArrayList <> ();
+      for (int i = 0; i < nThreads; ++i)
+        aFutures.add (aES.submit ( () -> {
+          final LatencyRecorder aRecorder = new LatencyRecorder ();
+          int nIndex = ThreadLocalRandom.current ().nextInt (aQueries.size ());
+          while (System.nanoTime () < nEndNanos)
+          {
+            final long nStart = System.nanoTime ();
+            final boolean bSuccess = get (aQueries.get (nIndex++ % aQueries.size ()), sAccept);
+            aRecorder.add (System.nanoTime () - nStart, bSuccess);
+          }
+          return aRecorder;
+        }));
+
+      final LatencyRecorder ret = new LatencyRecorder ();
+      for (final Future <LatencyRecorder> aFuture : aFutures)
+        ret.addAll (aFuture.get ());
+      return ret;
+    }
+    finally
+    {
+      aES.shutdownNow ();
+    }
+  }
+
+  public static void main (final String [] args) throws Exception
+  {
+    final String sBaseURL = StringHelper.trimEnd (System.getProperty ("ial.load.url", "http://localhost:8080/api"),
+                                                  "/");
+    final ICommonsList <String> aCOTIDs = _getList ("ial.load.cotids",
+                                                    "urn:de4a-eu:CanonicalEvidenceType::CompanyRegistration:1.0,urn:de4a-eu:CanonicalEvidenceType::BirthEvidence:1.0");
+    final ICommonsList <String> aAtuCodes = _getList ("ial.load.atucodes", ",AT,SE");
+    final String sAccept = System.getProperty ("ial.load.format");
+    final int nColdRequests = Integer.getInteger ("ial.load.cold-requests", 20).intValue ();
+    final int nThreads = Integer.getInteger ("ial.load.threads", 8).intValue ();
+    final int nWarmSeconds = Integer.getInteger ("ial.load.warm-seconds", 30).intValue ();
+
+    // Allow keep-alive connections for all threads
+    System.setProperty ("http.maxConnections", Integer.toString (Math.max (5, nThreads)));
+
+    final ICommonsList <String> aQueries = new CommonsArrayList <> ();
+    for (final String sCOTID : aCOTIDs)
+      for (final String sAtuCode : aAtuCodes)
+        aQueries.add (sBaseURL + "/provision/" + sCOTID + (StringHelper.hasText (sAtuCode) ? "/" + sAtuCode : ""));
+    LOGGER.info ("Running load test with " + aQueries.size () + " different queries against " + sBaseURL);
+
+    // Cold caches
+    long nStart = System.nanoTime ();
+    final LatencyRecorder aCold = _runCold (sBaseURL, aQueries, sAccept, nColdRequests);
+    aCold.log ("Cold cache", System.nanoTime () - nStart);
+
+    // Fill the caches
+    for (final String sQuery : aQueries)
+      get (sQuery, sAccept);
+
+    // Warm caches
+    nStart = System.nanoTime ();
+    final LatencyRecorder aWarm = _runWarm (aQueries,
+                                            sAccept,
+                                            nThreads,
+                                            nStart + TimeUnit.SECONDS.toNanos (nWarmSeconds));
+    aWarm.log ("Warm cache with " + nThreads + " threads", System.nanoTime () - nStart);
+  }
+}
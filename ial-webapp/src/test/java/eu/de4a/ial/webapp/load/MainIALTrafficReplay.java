@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.load;
+
+import java.io.File;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.collection.impl.CommonsConcurrentHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.string.StringHelper;
+
+import eu.de4a.ial.webapp.load.TrafficRecording.RecordedRequest;
+
+/**
+ * Replay a traffic recording of
+ * {@link eu.de4a.ial.webapp.api.IALTrafficRecorder} against a running IAL,
+ * ideally started with {@link eu.de4a.ial.webapp.jetty.RunInJettyIALWithStubs}
+ * and the same recording, so that the upstream systems answer as recorded.
+ * The requests are sent in the recorded order and the throughput and latency
+ * percentiles are logged in total and for the most frequent queries.<br>
+ * Configuration via system properties:
+ * <ul>
+ * <li><code>ial.replay.file</code> - the recording to replay. Required.</li>
+ * <li><code>ial.load.url</code> - the API base URL. Defaults to
+ * <code>http://localhost:8080/api</code></li>
+ * <li><code>ial.replay.threads</code> - the number of concurrent clients.
+ * Defaults to 1.</li>
+ * <li><code>ial.replay.speed</code> - <code>0</code> to send the requests as
+ * fast as possible (default), <code>1</code> to keep the recorded intervals,
+ * <code>2</code> to send the requests twice as fast etc.</li>
+ * </ul>
+ *
+ * @author Philip Helger
+ */
+public final class MainIALTrafficReplay
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (MainIALTrafficReplay.class);
+  private static final int TOP_QUERY_COUNT = 10;
+
+  private MainIALTrafficReplay ()
+  {}
+
+  private static void _sleepUntil (final long nNanos)
+  {
+    final long nSleepMillis = TimeUnit.NANOSECONDS.toMillis (nNanos - System.nanoTime ());
+    if (nSleepMillis > 0)
+      try
+      {
+        Thread.sleep (nSleepMillis);
+      }
+      catch (final InterruptedException ex)
+      {
+        Thread.currentThread ().interrupt ();
+      }
+  }
+
+  @Nonnull
+  private static String _getURL (@Nonnull final String sBaseURL, @Nonnull final RecordedRequest aRequest)
+  {
+    return sBaseURL + aRequest.getPath () + (StringHelper.hasText (aRequest.getQuery ()) ? "?" + aRequest.getQuery () : "");
+  }
+
+  public static void main (final String [] args) throws Exception
+  {
+    final String sFile = System.getProperty ("ial.replay.file");
+    if (StringHelper.hasNoText (sFile))
+      throw new IllegalArgumentException ("The system property 'ial.replay.file' is missing");
+    final String sBaseURL = StringHelper.trimEnd (System.getProperty ("ial.load.url", "http://localhost:8080/api"),
+                                                  "/");
+    final int nThreads = Integer.getInteger ("ial.replay.threads", 1).intValue ();
+    final double dSpeed = Double.parseDouble (System.getProperty ("ial.replay.speed", "0"));
+
+    // Allow keep-alive connections for all threads
+    System.setProperty ("http.maxConnections", Integer.toString (Math.max (5, nThreads)));
+
+    final ICommonsList <RecordedRequest> aRequests = TrafficRecording.read (new File (sFile)).getAllRequests ();
+    if (aRequests.isEmpty ())
+    {
+      LOGGER.warn ("The recording contains no requests");
+      return;
+    }
+    LOGGER.info ("Replaying " + aRequests.size () + " requests with " + nThreads + " threads against " + sBaseURL);
+
+    final LatencyRecorder aTotal = new LatencyRecorder ();
+    final LatencyRecorder aRecorded = new LatencyRecorder ();
+    final ICommonsMap <String, LatencyRecorder> aPerQuery = new CommonsConcurrentHashMap <> ();
+    final long nFirstRecordedTime = aRequests.getFirst ().getTime ();
+    final AtomicInteger aNextIndex = new AtomicInteger (0);
+
+    final long nStart = System.nanoTime ();
+    final ExecutorService aES = Executors.newFixedThreadPool (nThreads);
+    for (int i = 0; i < nThreads; ++i)
+      aES.submit ( () -> {
+        int nIndex;
+        // Take the requests strictly in the recorded order
+        while ((nIndex = aNextIndex.getAndIncrement ()) < aRequests.size ())
+        {
+          final RecordedRequest aRequest = aRequests.get (nIndex);
+          if (dSpeed > 0)
+            _sleepUntil (nStart +
+                         (long) (TimeUnit.MILLISECONDS.toNanos (aRequest.getTime () - nFirstRecordedTime) / dSpeed));
+
+          final long nRequestStart = System.nanoTime ();
+          final boolean bSuccess = MainIALLoadDriver.get (_getURL (sBaseURL, aRequest), aRequest.getAccept ());
+          final long nDuration = System.nanoTime () - nRequestStart;
+          aTotal.add (nDuration, bSuccess);
+          aRecorded.add (TimeUnit.MILLISECONDS.toNanos (aRequest.getDurationMillis ()), true);
+          aPerQuery.computeIfAbsent (aRequest.getPath (), k -> new LatencyRecorder ()).add (nDuration, bSuccess);
+        }
+      });
+    aES.shutdown ();
+    aES.awaitTermination (1, TimeUnit.DAYS);
+    final long nDuration = System.nanoTime () - nStart;
+
+    aTotal.log ("Replay", nDuration);
+    aRecorded.log ("Recorded server durations", nDuration);
+    int nQueries = 0;
+    for (final Map.Entry <String, LatencyRecorder> aEntry : aPerQuery.getSortedByValue (Comparator.comparingInt (LatencyRecorder::getCount)
+                                                                                                  .reversed ())
+                                                                      .entrySet ())
+    {
+      if (nQueries++ >= TOP_QUERY_COUNT)
+        break;
+      aEntry.getValue ().log ("  " + aEntry.getKey (), nDuration);
+    }
+  }
+}
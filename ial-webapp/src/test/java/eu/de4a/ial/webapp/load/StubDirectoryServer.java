@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.http.CHttp;
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.url.URLHelper;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Stub of the Directory search API <code>/search/1.0/xml</code>. The response
+ * for the document type <code>urn:...::Name:1.0</code> is read from the class
+ * path resource <code>fixtures/directory/Name_1.0.xml</code>. Unknown document
+ * types result in an empty result list. Recorded responses take precedence
+ * over the fixtures.
+ *
+ * @author Philip Helger
+ */
+public class StubDirectoryServer extends AbstractStubServer
+{
+  public static final String FIXTURE_PATH = "fixtures/directory/";
+  private static final String SEARCH_PATH = "/search/1.0/xml";
+  private static final byte [] EMPTY_RESULT = ("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+                                               "<resultlist version=\"1.0\" total-result-count=\"0\" used-result-count=\"0\"" +
+                                               " result-page-index=\"0\" result-page-count=\"0\" first-result-index=\"0\"" +
+                                               " last-result-index=\"0\" query-terms=\"\" creation-dt=\"2023-01-01T00:00:00Z\" />").getBytes (StandardCharsets.UTF_8);
+
+  private final Map <String, byte []> m_aFixtures = new ConcurrentHashMap <> ();
+  private final Map <String, byte []> m_aRecordedResponses = new ConcurrentHashMap <> ();
+  private final Map <String, Integer> m_aRecordedErrors = new ConcurrentHashMap <> ();
+
+  public StubDirectoryServer (@Nonnegative final int nPort) throws IOException
+  {
+    super ("stub-directory", nPort);
+  }
+
+  /**
+   * @param sDocTypeID
+   *        The URI encoded document type ID. May not be <code>null</code>.
+   * @return The name of the fixture without the file extension. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public static String getFixtureName (@Nonnull final String sDocTypeID)
+  {
+    final int nIndex = sDocTypeID.lastIndexOf ("::");
+    return (nIndex >= 0 ? sDocTypeID.substring (nIndex + 2) : sDocTypeID).replace (':', '_');
+  }
+
+  /**
+   * Use a recorded Directory response instead of the fixture.
+   *
+   * @param sDocTypeID
+   *        The URI encoded document type ID. May not be <code>null</code>.
+   * @param nStatusCode
+   *        The recorded HTTP status code.
+   * @param aXML
+   *        The recorded response. Only used for HTTP 200.
+   */
+  public void setRecordedResponse (@Nonnull final String sDocTypeID,
+                                   final int nStatusCode,
+                                   @Nullable final byte [] aXML)
+  {
+    if (nStatusCode == CHttp.HTTP_OK && aXML != null)
+    {
+      m_aRecordedResponses.put (sDocTypeID, aXML);
+      m_aRecordedErrors.remove (sDocTypeID);
+    }
+    else
+    {
+      m_aRecordedErrors.put (sDocTypeID, Integer.valueOf (nStatusCode));
+      m_aRecordedResponses.remove (sDocTypeID);
+    }
+  }
+
+  @Nullable
+  private static String _getDocType (@Nullable final String sRawQuery)
+  {
+    if (sRawQuery != null)
+      for (final String sParam : StringHelper.getExploded ('&', sRawQuery))
+        if (sParam.startsWith ("doctype="))
+          return URLHelper.urlDecode (sParam.substring ("doctype=".length ()));
+    return null;
+  }
+
+  @Nonnull
+  private static byte [] _readFixture (@Nonnull final String sFixtureName)
+  {
+    try (final InputStream aIS = new ClassPathResource (FIXTURE_PATH + sFixtureName + ".xml").getInputStream ())
+    {
+      return aIS == null ? EMPTY_RESULT : StreamHelper.getAllBytes (aIS);
+    }
+    catch (final IOException ex)
+    {
+      return EMPTY_RESULT;
+    }
+  }
+
+  @Override
+  @Nullable
+  protected byte [] getResponse (@Nonnull final HttpExchange aExchange)
+  {
+    if (!SEARCH_PATH.equals (aExchange.getRequestURI ().getPath ()))
+      return null;
+
+    final String sDocType = _getDocType (aExchange.getRequestURI ().getRawQuery ());
+    if (StringHelper.hasNoText (sDocType))
+      return EMPTY_RESULT;
+
+    final Integer aRecordedError = m_aRecordedErrors.get (sDocType);
+    if (aRecordedError != null)
+      throw new StubHttpStatusException (aRecordedError.intValue ());
+    final byte [] aRecorded = m_aRecordedResponses.get (sDocType);
+    if (aRecorded != null)
+      return aRecorded;
+    return m_aFixtures.computeIfAbsent (getFixtureName (sDocType), StubDirectoryServer::_readFixture);
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.load;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.state.ETriState;
+import com.helger.commons.string.StringHelper;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Stub of an OASIS BDXR SMP v1 server. By default a ServiceMetadata with the
+ * DE4A "request" process is returned for every participant and document type.
+ * The responses are not signed, so the IAL must use the streaming SMP check.
+ *
+ * @author Philip Helger
+ */
+public class StubSMPServer extends AbstractStubServer
+{
+  private static final String SERVICES = "/services/";
+
+  private final Map <String, ETriState> m_aStates = new ConcurrentHashMap <> ();
+
+  public StubSMPServer (@Nonnegative final int nPort) throws IOException
+  {
+    super ("stub-smp", nPort);
+  }
+
+  /**
+   * Set the state of a single participant and document type.
+   *
+   * @param sParticipantID
+   *        The URI encoded participant ID. May not be <code>null</code>.
+   * @param sDocTypeID
+   *        The URI encoded document type ID. May not be <code>null</code>.
+   * @param eState
+   *        {@link ETriState#TRUE} to contain the "request" process,
+   *        {@link ETriState#FALSE} to contain only another process and
+   *        {@link ETriState#UNDEFINED} to answer with HTTP 404.
+   */
+  public void setState (@Nonnull final String sParticipantID,
+                        @Nonnull final String sDocTypeID,
+                        @Nonnull final ETriState eState)
+  {
+    m_aStates.put (sParticipantID + ' ' + sDocTypeID, eState);
+  }
+
+  @Nonnull
+  private static String _getIDXML (@Nonnull final String sElement, @Nonnull final String sURIEncodedID)
+  {
+    final int nIndex = sURIEncodedID.indexOf ("::");
+    final String sScheme = nIndex >= 0 ? sURIEncodedID.substring (0, nIndex) : "";
+    final String sValue = nIndex >= 0 ? sURIEncodedID.substring (nIndex + 2) : sURIEncodedID;
+    return "<" +
+           sElement +
+           " scheme=\"" +
+           _escape (sScheme) +
+           "\">" +
+           _escape (sValue) +
+           "</" +
+           sElement +
+           ">";
+  }
+
+  @Nonnull
+  private static String _escape (@Nonnull final String s)
+  {
+    return StringHelper.replaceMultiple (s,
+                                         new String [] { "&", "<", ">", "\"" },
+                                         new String [] { "&amp;", "&lt;", "&gt;", "&quot;" });
+  }
+
+  @Override
+  @Nullable
+  protected byte [] getResponse (@Nonnull final HttpExchange aExchange)
+  {
+    // Path is "/{participantID}/services/{docTypeID}"
+    final String sPath = aExchange.getRequestURI ().getPath ();
+    final int nIndex = sPath.indexOf (SERVICES);
+    if (nIndex <= 1)
+      return null;
+    final String sParticipantID = sPath.substring (1, nIndex);
+    final String sDocTypeID = sPath.substring (nIndex + SERVICES.length ());
+    final ETriState eState = m_aStates.getOrDefault (sParticipantID + ' ' + sDocTypeID, ETriState.TRUE);
+    if (eState.isUndefined ())
+      return null;
+
+    final String sXML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                        "<SignedServiceMetadata xmlns=\"http://docs.oasis-open.org/bdxr/ns/SMP/2016/05\">" +
+                        "<ServiceMetadata><ServiceInformation>" +
+                        _getIDXML ("ParticipantIdentifier", sParticipantID) +
+                        _getIDXML ("DocumentIdentifier", sDocTypeID) +
+                        "<ProcessList><Process>" +
+                        "<ProcessIdentifier scheme=\"urn:de4a-eu:MessageType\">" +
+                        (eState.isTrue () ? "request" : "response") +
+                        "</ProcessIdentifier>" +
+                        "<ServiceEndpointList><Endpoint transportProfile=\"bdxr-transport-ebms3-as4-v1p0\">" +
+                        "<EndpointURI>" +
+                        _escape (getBaseURL ()) +
+                        "as4</EndpointURI>" +
+                        "<Certificate>AA==</Certificate>" +
+                        "<ServiceDescription>Stub</ServiceDescription>" +
+                        "<TechnicalContactUrl>" +
+                        _escape (getBaseURL ()) +
+                        "</TechnicalContactUrl>" +
+                        "</Endpoint></ServiceEndpointList>" +
+                        "</Process></ProcessList>" +
+                        "</ServiceInformation></ServiceMetadata>" +
+                        "</SignedServiceMetadata>";
+    return sXML.getBytes (StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2023, Partners of the EU funded DE4A project consortium
+ *   (https://www.de4a.eu/consortium), under Grant Agreement No.870635
+ * Author: Austrian Federal Computing Center (BRZ)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.de4a.ial.webapp.load;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.io.file.FileHelper;
+import com.helger.commons.state.ETriState;
+import com.helger.commons.string.StringHelper;
+import com.helger.json.IJson;
+import com.helger.json.IJsonObject;
+import com.helger.json.serialize.JsonReader;
+
+import eu.de4a.ial.webapp.api.IALTrafficRecorder;
+
+/**
+ * A traffic recording of {@link IALTrafficRecorder} read into memory. The
+ * requests are kept in the recorded order, the upstream answers only in their
+ * last recorded state.
+ *
+ * @author Philip Helger
+ */
+public final class TrafficRecording
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (TrafficRecording.class);
+
+  /**
+   * A single recorded request.
+   */
+  @Immutable
+  public static final class RecordedRequest
+  {
+    private final long m_nTime;
+    private final String m_sPath;
+    private final String m_sQuery;
+    private final String m_sAccept;
+    private final long m_nDurationMillis;
+
+    RecordedRequest (final long nTime,
+                     @Nonnull final String sPath,
+                     @Nullable final String sQuery,
+                     @Nullable final String sAccept,
+                     final long nDurationMillis)
+    {
+      m_nTime = nTime;
+      m_sPath = sPath;
+      m_sQuery = sQuery;
+      m_sAccept = sAccept;
+      m_nDurationMillis = nDurationMillis;
+    }
+
+    public long getTime ()
+    {
+      return m_nTime;
+    }
+
+    @Nonnull
+    public String getPath ()
+    {
+      return m_sPath;
+    }
+
+    @Nullable
+    public String getQuery ()
+    {
+      return m_sQuery;
+    }
+
+    @Nullable
+    public String getAccept ()
+    {
+      return m_sAccept;
+    }
+
+    public long getDurationMillis ()
+    {
+      return m_nDurationMillis;
+    }
+  }
+
+  private final ICommonsList <RecordedRequest> m_aRequests = new CommonsArrayList <> ();
+  private final ICommonsOrderedMap <String, IJsonObject> m_aDirectoryResponses = new CommonsLinkedHashMap <> ();
+  private final ICommonsOrderedMap <String, IJsonObject> m_aSMPStates = new CommonsLinkedHashMap <> ();
+
+  private TrafficRecording ()
+  {}
+
+  /**
+   * @return All recorded requests in the recorded order. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public ICommonsList <RecordedRequest> getAllRequests ()
+  {
+    return m_aRequests;
+  }
+
+  /**
+   * Configure the stub servers with the recorded upstream answers.
+   *
+   * @param aDirectory
+   *        The Directory stub. May not be <code>null</code>.
+   * @param aSMP
+   *        The SMP stub. May not be <code>null</code>.
+   */
+  public void applyTo (@Nonnull final StubDirectoryServer aDirectory, @Nonnull final StubSMPServer aSMP)
+  {
+    for (final IJsonObject aRecord : m_aDirectoryResponses.values ())
+    {
+      final String sXML = aRecord.getAsString (IALTrafficRecorder.FIELD_XML);
+      aDirectory.setRecordedResponse (aRecord.getAsString (IALTrafficRecorder.FIELD_COTID),
+                                      aRecord.getAsInt (IALTrafficRecorder.FIELD_STATUS_CODE),
+                                      sXML == null ? null : sXML.getBytes (StandardCharsets.UTF_8));
+    }
+    for (final IJsonObject aRecord : m_aSMPStates.values ())
+    {
+      final String sState = aRecord.getAsString (IALTrafficRecorder.FIELD_STATE);
+      aSMP.setState (aRecord.getAsString (IALTrafficRecorder.FIELD_PARTICIPANT_ID),
+                     aRecord.getAsString (IALTrafficRecorder.FIELD_DOCTYPE_ID),
+                     "true".equals (sState) ? ETriState.TRUE : "false".equals (sState) ? ETriState.FALSE
+                                                                                       : ETriState.UNDEFINED);
+    }
+    LOGGER.info ("Applied " +
+                 m_aDirectoryResponses.size () +
+                 " recorded Directory responses and " +
+                 m_aSMPStates.size () +
+                 " recorded SMP states");
+  }
+
+  /**
+   * Read a traffic recording. Incomplete lines at the end of the file (e.g.
+   * while the recording is still active) are ignored.
+   *
+   * @param aFile
+   *        The gzip compressed recording. May not be <code>null</code>.
+   * @return The read recording. Never <code>null</code>.
+   * @throws IOException
+   *         If reading fails
+   */
+  @Nonnull
+  public static TrafficRecording read (@Nonnull final File aFile) throws IOException
+  {
+    final TrafficRecording ret = new TrafficRecording ();
+    try (final BufferedReader aReader = new BufferedReader (new InputStreamReader (new GZIPInputStream (FileHelper.getBufferedInputStream (aFile)),
+                                                                                   StandardCharsets.UTF_8)))
+    {
+      String sLine;
+      while ((sLine = aReader.readLine ()) != null)
+      {
+        if (StringHelper.hasNoText (sLine))
+          continue;
+
+        final IJson aJson = JsonReader.readFromString (sLine);
+        if (aJson == null || !aJson.isObject ())
+        {
+          LOGGER.warn ("Ignoring invalid traffic record '" + sLine + "'");
+          continue;
+        }
+
+        final IJsonObject aRecord = aJson.getAsObject ();
+        final String sType = aRecord.getAsString (IALTrafficRecorder.FIELD_TYPE);
+        if (IALTrafficRecorder.TYPE_REQUEST.equals (sType))
+          ret.m_aRequests.add (new RecordedRequest (aRecord.getAsLong (IALTrafficRecorder.FIELD_TIME),
+                                                    aRecord.getAsString (IALTrafficRecorder.FIELD_PATH),
+                                                    aRecord.getAsString (IALTrafficRecorder.FIELD_QUERY),
+                                                    aRecord.getAsString (IALTrafficRecorder.FIELD_ACCEPT),
+                                                    aRecord.getAsLong (IALTrafficRecorder.FIELD_DURATION_MILLIS)));
+        else
+          if (IALTrafficRecorder.TYPE_DIRECTORY.equals (sType))
+            ret.m_aDirectoryResponses.put (aRecord.getAsString (IALTrafficRecorder.FIELD_COTID), aRecord);
+          else
+            if (IALTrafficRecorder.TYPE_SMP.equals (sType))
+              ret.m_aSMPStates.put (aRecord.getAsString (IALTrafficRecorder.FIELD_PARTICIPANT_ID) +
+                                    ' ' +
+                                    aRecord.getAsString (IALTrafficRecorder.FIELD_DOCTYPE_ID),
+                                    aRecord);
+      }
+    }
+    catch (final EOFException ex)
+    {
+      // Recording was not closed properly
+      LOGGER.warn ("The traffic recording '" + aFile.getAbsolutePath () + "' is incomplete");
+    }
+    LOGGER.info ("Read " + ret.m_aRequests.size () + " recorded requests from '" + aFile.getAbsolutePath () + "'");
+    return ret;
+  }
+}